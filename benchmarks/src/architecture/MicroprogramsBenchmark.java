@@ -0,0 +1,82 @@
+package architecture;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import components.Memory;
+import components.Register;
+
+/**
+ * This benchmark measures each microprogram alone: the memory has only one instruction (in the position 0),
+ * and each operation points PC to it and executes it (fetch from the instruction cache, decode and execute).
+ * The registers operands are RPG0 and RPG1, the memory operand is the position 300 and the jumps go to 0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MicroprogramsBenchmark {
+
+	private static final int ADDRESS = 300;
+	private static final int IMMEDIATE = 5;
+
+	//the operands of each command, indexed as the commands list
+	private static final int OPERANDS[][] = {
+		{0, 1}, {ADDRESS, 1}, {0, ADDRESS}, {IMMEDIATE, 1},  //addRegReg, addMemReg, addRegMem, addImmReg
+		{0, 1}, {ADDRESS, 1}, {0, ADDRESS}, {IMMEDIATE, 1},  //subRegReg, subMemReg, subRegMem, subImmReg
+		{ADDRESS, 1}, {0, ADDRESS}, {0, 1},                  //imulMemReg, imulRegMem, imulRegReg
+		{ADDRESS, 1}, {0, ADDRESS}, {0, 1}, {IMMEDIATE, 1},  //moveMemReg, moveRegMem, moveRegReg, moveImmReg
+		{1},                                                 //incReg
+		{0}, {0}, {0},                                       //jmp, jn, jz
+		{0, 1, 0}, {0, 1, 0}, {0, 1, 0}, {0, 1, 0},          //jeq, jneq, jgt, jlw
+		{ADDRESS}, {ADDRESS}, {IMMEDIATE}                    //read, store, ldi
+	};
+
+	@Param({"addRegReg", "addMemReg", "addRegMem", "addImmReg", "subRegReg", "subMemReg", "subRegMem", "subImmReg",
+		"imulMemReg", "imulRegMem", "imulRegReg", "moveMemReg", "moveRegMem", "moveRegReg", "moveImmReg", "incReg",
+		"jmp", "jn", "jz", "jeq", "jneq", "jgt", "jlw", "read", "store", "ldi"})
+	public String command;
+
+	private Architecture arch;
+	private Register pc;
+	private Register rpg1;
+
+	@Setup
+	public void setup() {
+		arch = new Architecture();
+		int commandNumber = arch.getCommandsList().indexOf(command);
+		if (commandNumber < 0)
+			throw new IllegalArgumentException("Unknown command "+command);
+		Memory memory = arch.getMemory();
+		memory.setData(0, commandNumber);
+		int operands[] = OPERANDS[commandNumber];
+		for (int i = 0; i < operands.length; i++)
+			memory.setData(i + 1, operands[i]);
+		memory.setData(operands.length + 1, -1);
+		memory.setData(ADDRESS, 3);
+		pc = arch.getPC();
+		rpg1 = arch.getRPG1();
+	}
+
+	@Benchmark
+	public int execute() {
+		pc.setData(0);
+		rpg1.setData(2); //the results don't grow without limits (as the multiplications)
+		arch.step();
+		return rpg1.getData();
+	}
+
+}
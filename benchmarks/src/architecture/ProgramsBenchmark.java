@@ -0,0 +1,66 @@
+package architecture;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This benchmark runs the bundled programs, in each execution engine.
+ * Each operation restores the program just loaded (see Architecture.restore: only the positions written
+ * by the last run are copied back, so the threaded code and the compiled blocks are kept)
+ * and runs it until the end or until INSTRUCTIONS instructions,
+ * since some programs (as operacoes) never reach the end.
+ * (program.dxf is not here: it uses a register that this architecture does not have)
+ * The programs (.dxf) are read from the directory in the system property "programs" (default: the current one)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProgramsBenchmark {
+
+	private static final long INSTRUCTIONS = 100000;
+
+	@Param({"operacoes", "idade", "imul"})
+	public String program;
+
+	@Param({"MICROPROGRAM", "FUNCTIONAL", "TIERED", "THREADED"})
+	public ExecutionEngine engine;
+
+	private Architecture arch;
+	private ArchitectureSnapshot loaded; //the architecture just after the program was loaded
+
+	@Setup
+	public void setup() throws IOException {
+		arch = new Architecture(false, engine);
+		arch.readExec(new File(System.getProperty("programs", "."), program).getPath());
+		loaded = arch.snapshot();
+	}
+
+	@Benchmark
+	public long run() {
+		arch.restore(loaded);
+		if (engine == ExecutionEngine.MICROPROGRAM) {
+			long executed = 0;
+			while ((executed < INSTRUCTIONS) && arch.step())
+				executed++;
+			return executed;
+		}
+		return arch.getFunctionalEngine().run(INSTRUCTIONS);
+	}
+
+}
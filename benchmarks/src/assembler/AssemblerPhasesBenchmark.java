@@ -0,0 +1,148 @@
+package assembler;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This benchmark measures each phase of the assembler (read, parse and makeExecutable) over a small source
+ * (the bundled operacoes.dsf) and over a large synthetic one (see AssemblerBenchmark.program).
+ * Each phase starts from an assembler that did the phases before it. Since an assembler can't parse nor
+ * make its executable twice, parse and makeExecutable run in batches of BATCH operations: the BATCH
+ * assemblers of a batch are made before the iteration, and each operation takes the next one
+ * (so only the phase is measured, without a setup around each operation). Their score is the time of a whole batch.
+ * The messages of the assembler ("Checking labels...", "Finished") are not shown while benchmarking
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AssemblerPhasesBenchmark {
+
+	private static final int SYNTHETIC_LINES = 100000;
+	private static final int BATCH = 20; //the operations of each iteration of parse and makeExecutable
+
+	@Param({"operacoes", "synthetic"})
+	public String source;
+
+	private String filename; //the source, without the extention
+	private String output; //the executable, without the extention
+	private Assembler read[]; //the assemblers that have read the source, one for each parse of the iteration
+	private Assembler parsed[]; //the assemblers that have parsed the source, one for each makeExecutable
+	private int next; //the next assembler of the batch
+	private PrintStream console;
+
+	@Setup(Level.Trial)
+	public void createSource() throws IOException {
+		console = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+
+			@Override
+			public void write(byte b[], int offset, int length) {
+			}
+		}));
+		File directory = new File(System.getProperty("java.io.tmpdir"));
+		output = new File(directory, "benchmark-output").getPath();
+		if ("synthetic".equals(source)) {
+			filename = new File(directory, "benchmark-synthetic").getPath();
+			ArrayList<String> lines = AssemblerBenchmark.program(SYNTHETIC_LINES);
+			FileWriter writer = new FileWriter(filename+".dsf");
+			for (String line : lines)
+				writer.write(line+"\n");
+			writer.close();
+		}
+		else
+			filename = new File(System.getProperty("programs", "."), source).getPath();
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteFiles() {
+		if ("synthetic".equals(source))
+			new File(filename+".dsf").delete();
+		new File(output+".dxf").delete();
+		System.setOut(console);
+	}
+
+	@Setup(Level.Iteration)
+	public void prepare() throws IOException {
+		read = new Assembler[BATCH];
+		parsed = new Assembler[BATCH];
+		for (int i = 0; i < BATCH; i++) {
+			read[i] = new Assembler();
+			read[i].read(filename);
+			parsed[i] = new Assembler();
+			parsed[i].read(filename);
+			parsed[i].parse();
+		}
+		next = 0;
+	}
+
+	@TearDown(Level.Iteration)
+	public void release() {
+		read = null;
+		parsed = null;
+	}
+
+	/**
+	 * This method returns the position of the next assembler of the batch
+	 * @return
+	 */
+	private int next() {
+		if (next == BATCH)
+			throw new IllegalStateException("Only "+BATCH+" operations were prepared for each iteration (see -bs)");
+		return next++;
+	}
+
+	@Benchmark
+	public Assembler read() throws IOException {
+		Assembler assembler = new Assembler();
+		assembler.read(filename);
+		return assembler;
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	@Warmup(iterations = 10, batchSize = BATCH)
+	@Measurement(iterations = 10, batchSize = BATCH)
+	public Assembler parse() {
+		Assembler assembler = read[next()];
+		assembler.parse();
+		return assembler;
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	@Warmup(iterations = 10, batchSize = BATCH)
+	@Measurement(iterations = 10, batchSize = BATCH)
+	public Assembler makeExecutable() throws IOException {
+		Assembler assembler = parsed[next()];
+		assembler.makeExecutable(output);
+		return assembler;
+	}
+
+}
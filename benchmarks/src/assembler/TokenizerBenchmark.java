@@ -0,0 +1,101 @@
+package assembler;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This benchmark compares the tokenization of a large generated program (see AssemblerBenchmark.program):
+ * split: the lines split with String.split and the operands classified with String.matches (as parse did before)
+ * tokenizer: the same work done by the Tokenizer
+ * parse: the whole parse of the assembler (that also creates the object program)
+ * Each operation is one line, so the score is the time of a line, and with -prof gc
+ * (see BenchmarkSuite) gc.alloc.rate.norm is the bytes allocated for each line
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenizerBenchmark {
+
+	private static final int LINES = 100000;
+
+	private ArrayList<String> lines;
+	private Tokenizer tokenizer;
+
+	@Setup
+	public void setup() {
+		lines = AssemblerBenchmark.program(LINES);
+		tokenizer = new Tokenizer();
+	}
+
+	/**
+	 * This method classifies the operands just like parse did before the tokenizer
+	 * @return a value that depends on all the lines (so the work is not discarded)
+	 */
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public long split() {
+		long result = 0;
+		for (String s : lines) {
+			String tokens[] = s.split(" ");
+			for (int i = 1; i < tokens.length; i++) {
+				if (tokens[i].startsWith("%"))
+					result += 1;
+				else if (tokens[i].matches("^[A-Za-z].*"))
+					result += 2;
+				else if (tokens[i].matches("[-]*[0-9]+"))
+					result += 3;
+			}
+			result += tokens[0].length();
+		}
+		return result;
+	}
+
+	/**
+	 * This method classifies the operands with the tokenizer
+	 * @return a value that depends on all the lines (so the work is not discarded)
+	 */
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public long tokenizer() {
+		long result = 0;
+		for (String s : lines) {
+			tokenizer.scan(s);
+			for (int i = 1; i < tokenizer.getCount(); i++) {
+				int kind = tokenizer.kind(i);
+				if (kind == Tokenizer.REGISTER)
+					result += 1;
+				else if (kind == Tokenizer.NAME)
+					result += 2;
+				else if (kind == Tokenizer.IMMEDIATE)
+					result += 3;
+			}
+			result += tokenizer.length(0);
+		}
+		return result;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public Assembler parse() {
+		Assembler assembler = new Assembler();
+		assembler.setLines(lines);
+		assembler.parse();
+		return assembler;
+	}
+
+}
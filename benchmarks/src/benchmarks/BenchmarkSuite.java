@@ -0,0 +1,40 @@
+package benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import architecture.MicroprogramsBenchmark;
+import architecture.ProgramsBenchmark;
+import assembler.AssemblerPhasesBenchmark;
+import assembler.TokenizerBenchmark;
+
+/**
+ * This class runs all the JMH benchmarks of the simulator and of the assembler, showing the throughput
+ * and the allocation of each one (the gc profiler, just like -prof gc).
+ * The JMH options can be given too, for example to run only some benchmarks:
+ * BenchmarkSuite ProgramsBenchmark -p engine=THREADED
+ *
+ * The benchmarks must run in the project directory (where the .dxf and .dsf programs are),
+ * or the directory must be given by the system property "programs" (-jvmArgsAppend -Dprograms=...)
+ */
+public class BenchmarkSuite {
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		OptionsBuilder options = new OptionsBuilder();
+		options.parent(commandLine);
+		if (commandLine.getIncludes().isEmpty()) {
+			options.include(MicroprogramsBenchmark.class.getSimpleName());
+			options.include(ProgramsBenchmark.class.getSimpleName());
+			options.include(AssemblerPhasesBenchmark.class.getSimpleName());
+			options.include(TokenizerBenchmark.class.getSimpleName());
+		}
+		options.addProfiler(GCProfiler.class);
+		new Runner(options.build()).run();
+	}
+
+}
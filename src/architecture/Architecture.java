@@ -2,21 +2,29 @@
 package architecture;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Scanner;
 
 import components.Bus;
+import components.Clock;
 import components.Demux;
 import components.Memory;
+import components.MemoryFactory;
 import components.Register;
 import components.Ula;
+import components.WriteBuffer;
 
 public class Architecture {
 	
 	private boolean simulation; //this boolean indicates if the execution is done in simulation mode.
 								//simulation mode shows the components' status after each instruction
+	private ExecutionEngine engine; //how the instructions are executed (microprograms or functional)
+	private FunctionalEngine functionalEngine; //the functional or the tiered engine
 	
 	private boolean halt;
 	private Bus extbus1;
@@ -39,12 +47,28 @@ public class Architecture {
 	
 	private ArrayList<String> commandsList;
 	private ArrayList<Register> registersList;
+	private Microprogram microprograms[]; //the microprogram of each command, indexed as commandsList
+	private InstructionCache instructionCache; //the instructions already decoded, indexed by address
+	private DecodedInstruction current; //the instruction being executed by its microprogram (null if there is none)
+	private HashMap<String, Integer> symbols; //the labels and variables of the binary executable loaded
+	private TraceWriter trace; //the trace being written (null when the execution is not traced)
+	private Scanner console; //used in simulation mode to wait for <Enter>
+	private PerformanceCounters counters; //the performance counters (null when the execution is not counted)
+	private PrintStream countersDump; //where the counters are shown after each program (null if they are not shown)
+	private TimingModel timing; //the cycles of the instructions (null when the execution is not timed)
+	
+	//the amount of operands of each command, indexed as commandsList
+	private static final int OPERANDS_COUNT[] = {2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 1, 1, 1, 1, 3, 3, 3, 3, 1, 1, 1};
+	
+	public static final int DEFAULT_MEMORY_SIZE = 401;
 	
 
 	/**
 	 * Instanciates all components in this architecture
+	 * @param memorySize
+	 * @param memoryFactory creates the main memory (null for a plain Memory)
 	 */
-	private void componentsInstances() {
+	private void componentsInstances(int memorySize, MemoryFactory memoryFactory) {
 		//don't forget the instantiation order
 		//buses -> registers -> ula -> memory
 		extbus1 = new Bus();
@@ -62,11 +86,14 @@ public class Architecture {
 		fillRegistersList();
 		ula = new Ula(intbus1, intbus2);
 		statusMemory = new Memory(2, extbus1);
-		memorySize = 401;
-		memory = new Memory(memorySize, extbus1);
+		this.memorySize = memorySize;
+		memory = (memoryFactory == null) ? new Memory(memorySize, extbus1) : memoryFactory.create(memorySize, extbus1);
 		demux = new Demux(); // this bus is used only for multiple register operations
 		
 		fillCommandsList();
+		fillMicroprogramsTable();
+		instructionCache = new InstructionCache(memorySize);
+		memory.addListener(instructionCache); //stores into the memory invalidate the decoded instructions
 	}
 	
 	/**
@@ -91,18 +118,62 @@ public class Architecture {
 	 * Constructor that instanciates all components according the architecture diagram
 	 */
 	public Architecture() {
-		componentsInstances();
+		componentsInstances(DEFAULT_MEMORY_SIZE, null);
 		
 		//by default, the execution method is never simulation mode
 		simulation = false;
+		engine = ExecutionEngine.MICROPROGRAM;
 	}
 
 	
 	public Architecture(boolean sim) {
-		componentsInstances();
+		componentsInstances(DEFAULT_MEMORY_SIZE, null);
 		
 		//in this constructor we can set the simoualtion mode on or off
 		simulation = sim;
+		engine = ExecutionEngine.MICROPROGRAM;
+	}
+
+	/**
+	 * Constructor that also chooses the execution engine.
+	 * The functional engine doesn't simulate the buses, so the simulation mode
+	 * shows the components only for the instructions delegated to the microprograms
+	 * @param sim
+	 * @param engine
+	 */
+	public Architecture(boolean sim, ExecutionEngine engine) {
+		this(sim, engine, DEFAULT_MEMORY_SIZE);
+	}
+
+	/**
+	 * Constructor that also chooses the memory size.
+	 * The memory pages are created only when written, so a large memory costs only what the program uses
+	 * @param sim
+	 * @param engine
+	 * @param memorySize
+	 */
+	public Architecture(boolean sim, ExecutionEngine engine, int memorySize) {
+		this(sim, engine, memorySize, null);
+	}
+
+	/**
+	 * Constructor that also chooses how the main memory is created (for example, the memory of
+	 * a core of a Multicore). The fork of this architecture has a plain memory
+	 * @param sim
+	 * @param engine
+	 * @param memorySize
+	 * @param memoryFactory
+	 */
+	public Architecture(boolean sim, ExecutionEngine engine, int memorySize, MemoryFactory memoryFactory) {
+		componentsInstances(memorySize, memoryFactory);
+		simulation = sim;
+		this.engine = engine;
+		if (engine == ExecutionEngine.FUNCTIONAL)
+			functionalEngine = new FunctionalEngine(this);
+		else if (engine == ExecutionEngine.TIERED)
+			functionalEngine = new TieredEngine(this);
+		else if (engine == ExecutionEngine.THREADED)
+			functionalEngine = new ThreadedEngine(this);
 	}
 
 	//getters
@@ -122,6 +193,18 @@ public class Architecture {
 		return memory;
 	}
 
+	protected Memory getStatusMemory() {
+		return statusMemory;
+	}
+
+	public ExecutionEngine getEngine() {
+		return engine;
+	}
+
+	protected FunctionalEngine getFunctionalEngine() {
+		return functionalEngine;
+	}
+
 	protected Register getPC() {
 		return PC;
 	}
@@ -166,6 +249,22 @@ public class Architecture {
 		return commandsList;
 	}
 
+	protected InstructionCache getInstructionCache() {
+		return instructionCache;
+	}
+
+	/**
+	 * This method returns the amount of operands used by a command.
+	 * Unknown commands (as -1, the end of the program) have no operands
+	 * @param command
+	 * @return
+	 */
+	public static int getOperandsCount(int command) {
+		if ((command < 0) || (command >= OPERANDS_COUNT.length))
+			return 0;
+		return OPERANDS_COUNT[command];
+	}
+
 	//all the microprograms must be impemented here
 	//the instructions table is
 	/*
@@ -218,6 +317,50 @@ public class Architecture {
 		commandsList.add("ldi");         //25
 	}
 
+	/**
+	 * This method fills the microprograms table, linking each command (indexed as the commands list)
+	 * to the method that implements its microprogram.
+	 * The table replaces the opcode switch when a decoded instruction is dispatched
+	 */
+	private void fillMicroprogramsTable() {
+		microprograms = new Microprogram[commandsList.size()];
+		microprograms[0] = new Microprogram() { public void execute() { addRegReg(); } };
+		microprograms[1] = new Microprogram() { public void execute() { addMemReg(); } };
+		microprograms[2] = new Microprogram() { public void execute() { addRegMem(); } };
+		microprograms[3] = new Microprogram() { public void execute() { addImmReg(); } };
+		microprograms[4] = new Microprogram() { public void execute() { subRegReg(); } };
+		microprograms[5] = new Microprogram() { public void execute() { subMemReg(); } };
+		microprograms[6] = new Microprogram() { public void execute() { subRegMem(); } };
+		microprograms[7] = new Microprogram() { public void execute() { subImmReg(); } };
+		microprograms[8] = new Microprogram() { public void execute() { imulMemReg(); } };
+		microprograms[9] = new Microprogram() { public void execute() { imulRegMem(); } };
+		microprograms[10] = new Microprogram() { public void execute() { imulRegReg(); } };
+		microprograms[11] = new Microprogram() { public void execute() { moveMemReg(); } };
+		microprograms[12] = new Microprogram() { public void execute() { moveRegMem(); } };
+		microprograms[13] = new Microprogram() { public void execute() { moveRegReg(); } };
+		microprograms[14] = new Microprogram() { public void execute() { moveImmReg(); } };
+		microprograms[15] = new Microprogram() { public void execute() { incReg(); } };
+		microprograms[16] = new Microprogram() { public void execute() { jmp(); } };
+		microprograms[17] = new Microprogram() { public void execute() { jn(); } };
+		microprograms[18] = new Microprogram() { public void execute() { jz(); } };
+		microprograms[19] = new Microprogram() { public void execute() { jeq(); } };
+		microprograms[20] = new Microprogram() { public void execute() { jneq(); } };
+		microprograms[21] = new Microprogram() { public void execute() { jgt(); } };
+		microprograms[22] = new Microprogram() { public void execute() { jlw(); } };
+		microprograms[23] = new Microprogram() { public void execute() { read(); } };
+		microprograms[24] = new Microprogram() { public void execute() { store(); } };
+		microprograms[25] = new Microprogram() { public void execute() { ldi(); } };
+	}
+
+	/**
+	 * This microprogram is used by every unknown command (as -1, the end of the program)
+	 */
+	private final Microprogram haltMicroprogram = new Microprogram() {
+		public void execute() {
+			halt = true;
+		}
+	};
+
 	
 	/**
 	 * This method is used after some ULA operations, setting the flags bits according the result.
@@ -308,8 +451,7 @@ public class Architecture {
 	    PC.internalStore(); // PC aponta para regA
 
 	    // Lê regA
-	    PC.read();
-	    memory.read();
+	    readOperand();
 	    demux.setValue(extbus1.get()); // Seleciona regA
 	    registersInternalRead(); // Coloca o valor de regA no intbus1
 	    ula.store(0); // Armazena regA na ULA (posição 0)
@@ -320,8 +462,7 @@ public class Architecture {
 	    PC.internalStore(); // PC aponta para regB
 
 	    // Lê regB
-	    PC.read();
-	    memory.read();
+	    readOperand();
 	    demux.setValue(extbus1.get()); // Seleciona regB
 	    registersInternalRead(); // Coloca o valor de regB no intbus1
 	    ula.store(1); // Armazena regB na ULA (posição 1)
@@ -350,15 +491,13 @@ public class Architecture {
 		ula.internalRead(1);
 		PC.internalStore();
 		
-		PC.read();
-		memory.read();
-		memory.read();
+		readOperand();
+		memory.readData();
 		IR.store(); //Valor da memoria agora esta em IR
 		ula.inc();
 		ula.internalRead(1); //Ula incrementa o valor de PC e escreve no bus2
 		PC.internalStore();
-		PC.read();
-		memory.read(); //Devolve o ID do RPG
+		readOperand(); //Devolve o ID do RPG
 		demux.setValue(extbus1.get());
 		registersInternalRead(); //O registrador coloca o dado no intbus1
 		ula.store(1);
@@ -384,8 +523,7 @@ public class Architecture {
 	    ula.internalRead(1);
 		PC.internalStore();
 	    
-	    PC.read();
-	    memory.read();
+	    readOperand();
 	    demux.setValue(extbus1.get());
 	    registersInternalRead();
 	    ula.store(0);
@@ -393,9 +531,8 @@ public class Architecture {
 	    ula.inc();
 	    ula.internalRead(1);
 	    PC.internalStore();
-	    PC.read();
-	    memory.read();
-	    memory.read();
+	    readOperand();
+	    memory.readData();
 	    IR.store();
 	    IR.internalRead();
 	    ula.internalStore(1);
@@ -404,8 +541,7 @@ public class Architecture {
 	    ula.internalRead(1);
 		setStatusFlags(intbus2.get());
 	    IR.internalStore();
-	    PC.read();
-	    memory.read();
+	    readOperand();
 	    memory.store();
 	    IR.read();
 	    memory.store();
@@ -425,14 +561,12 @@ public class Architecture {
 		ula.internalRead(1);
 		PC.internalStore();
 
-		PC.read();
-		memory.read(); //Devolve o valor imediato
+		readOperand(); //Devolve o valor imediato
 		IR.store(); //Armazena o valor imediato no IR
 		ula.inc();
 		ula.internalRead(1); //Ula incrementa o valor de PC e escreve no intbus2
 		PC.internalStore();
-		PC.read();
-		memory.read(); //Devolve o ID do RPG
+		readOperand(); //Devolve o ID do RPG
 		demux.setValue(extbus1.get());
 		registersInternalRead(); //O registrador coloca o dado no intbus1
 		ula.store(1);
@@ -522,8 +656,7 @@ public class Architecture {
 	    PC.internalStore();
 
 		// Armazena RegA em ULA(0)
-		PC.read();
-		memory.read();
+		readOperand();
 		demux.setValue(extbus1.get());
 		registersInternalRead();
 		ula.store(0);
@@ -534,8 +667,7 @@ public class Architecture {
 		PC.internalStore();
 
 		// Armazena RegB em ULA(1)
-		PC.read();
-		memory.read();
+		readOperand();
 		demux.setValue(extbus1.get());
 		registersInternalRead();
 		ula.store(1);
@@ -564,9 +696,8 @@ public class Architecture {
 	    PC.internalStore();
 
 	    // Lê o valor da memória
-	    PC.read();
-	    memory.read();
-	    memory.read(); // Coloca o valor que está na memória no extbus1
+	    readOperand();
+	    memory.readData(); // Coloca o valor que está na memória no extbus1
 	    IR.store(); // Armazena o valor que estava na memória no IR
 
 	    // Incrementa PC para apontar para o registrador
@@ -575,8 +706,7 @@ public class Architecture {
 	    PC.internalStore();
 
 	    // Lê regA
-	    PC.read();
-	    memory.read();
+	    readOperand();
 	    demux.setValue(extbus1.get()); // Seleciona regA
 	    registersInternalRead(); // Coloca o valor de regA no intbus1
 	    ula.store(1); // Armazena regA na ULA (posição 1)
@@ -605,17 +735,15 @@ public class Architecture {
 		ula.internalRead(1);
 		PC.internalStore();
 		
-		PC.read();
-		memory.read();
+		readOperand();
 		demux.setValue(extbus1.get());
 		ula.inc();
 		ula.internalRead(1);
 		PC.internalStore();
 		registersInternalRead(); 
 		ula.store(0);
-		PC.read(); 
-		memory.read();
-		memory.read(); 
+		readOperand();
+		memory.readData(); 
 		IR.store();
 		IR.internalRead();
 		ula.internalStore(1);
@@ -623,8 +751,7 @@ public class Architecture {
 		ula.internalRead(1);
 		setStatusFlags(intbus2.get());
 		IR.internalStore();
-		PC.read();
-		memory.read();
+		readOperand();
 		memory.store();
 		IR.read();
 		memory.store();
@@ -644,14 +771,12 @@ public class Architecture {
 		ula.internalRead(1);
 		PC.internalStore();
 		
-		PC.read();
-	    memory.read();
+		readOperand();
 	    IR.store();
 	    ula.inc();
 	    ula.internalRead(1);
 	    PC.internalStore();
-	    PC.read();
-	    memory.read();
+	    readOperand();
 	    demux.setValue(extbus1.get());
 	    registersInternalRead();
 	    ula.store(1);
@@ -669,1141 +794,122 @@ public class Architecture {
 	    PC.internalStore();
 	}
 
+	/**
+	 * This method implements the microprogram for
+	 * 					IMUL address %<regB>        || RegB <- memory[address] * RegB
+	 * The multiplication is done by the ula multiplier (see Ula.mul), just like the add:
+	 * the memory value goes through IR, the result goes to regB and the flags are set by the result.
+	 * No memory position is used besides the operand.
+	 */
 	public void imulMemReg(){
-		/*
-		 * PC++ para conseguir o primeiro param
-		*/
 		PC.internalRead();
 		ula.internalStore(1);
 		ula.inc();
 		ula.internalRead(1);
-		PC.internalStore();
-
-		//Guardamos PC na memoria
-		extbus1.put(301);
-		memory.store();
-		PC.read();
-		memory.store();
-
-		//Guardamos os RPGs
-		RPG0.read();
-		IR.internalStore();
-		extbus1.put(302);
-		memory.store();
-		IR.read();
-		memory.store();
-		
-		RPG1.read();
-		IR.internalStore();
-		extbus1.put(303);
-		memory.store();
-		IR.read();
-		memory.store();
-
-		RPG2.read();
-		IR.internalStore();
-		extbus1.put(304);
-		memory.store();
-		IR.read();
-		memory.store();
-
-		RPG3.read();
-		IR.internalStore();
-		extbus1.put(305);
-		memory.store();
-		IR.read();
-		memory.store();
-
-		/**
-		 * Move Mem Reg0 (upcode: 11)
-		 */
-		//Armazena o upcode do Move
-		extbus1.put(306);
-		memory.store();
-		extbus1.put(11);
-		memory.store();
-		//Recuperamos o endereço da memoria (o primeiro parametro)	
-		//Guardamos na memoria o primeiro parametro
-		extbus1.put(307);
-		memory.store();
-
-		PC.read();
-		memory.read();
-		memory.store();
-		//Poe o Reg0 na memoria
-		extbus1.put(308);
-		memory.store();
-		extbus1.put(0);
-		memory.store();
-
-		/**
-		 * Move imm Reg1 (setar Reg1 como 0)
-		 * REG
-			*/
-		//Colocamos o upcode de MoveImmReg na memoria
-		extbus1.put(309);
-		memory.store();
-		extbus1.put(14);
-		memory.store();
-		//Colocamos 0 na proxima posição
-		extbus1.put(310);
-		memory.store();
-		extbus1.put(0);
-		memory.store();
-		//Colocamos o ID do Reg1 na proxima posição
-		extbus1.put(311);
-		memory.store();
-		extbus1.put(1);
-		memory.store();
+		PC.internalStore(); //PC points to the address
 
-		/**
-		 * PC++ Para guardar o valor do segundo parametro
-		 */
-		PC.internalRead();
-		ula.internalStore(1);
+		readOperand();
+		memory.readData();
+		IR.store(); //the memory value is in IR
 		ula.inc();
 		ula.internalRead(1);
-		PC.internalStore(); //Nesse momento, PC aponta para REG A(do imul)
-		
-		/**
-		 * MoveRegReg (13) para guarduar o valor do param em REG3
-		 */
-		//Upcode da instrução na mem
-		extbus1.put(312);
-		memory.store();
-		extbus1.put(13);
-		memory.store();
-		//Valor do primeiro parâmetro
-		PC.read();
-		memory.read();
-		IR.store();
-		extbus1.put(313);
-		memory.store();
-		IR.read();
-		memory.store();
-		//Valor do segundo parâmetro (REG3)
-		extbus1.put(314);
-		memory.store();
-		extbus1.put(3);
-		memory.store();
-
-		/**
-		 * Realizamos o ADD Reg0 Reg1 (Onde o loop começa)
-		 */
-		//Colocamos o upcode de AddRegReg(0) na memoria
-		extbus1.put(315);
-		memory.store();
-		extbus1.put(0);
-		memory.store();
-		//Colocamos o primeiro parametro na memoria
-		extbus1.put(316);
-		memory.store();
-		extbus1.put(0);
-		memory.store();
-		//Colocamos o segundo paramentro na memoria
-		extbus1.put(317);
-		memory.store();
-		extbus1.put(1);
-		memory.store();
-		
-		/**
-		 * Move Imm Reg2 (Movemos 1 para o Reg2)
-		 */
-		//Upcode do moveImmReg
-		extbus1.put(318);
-		memory.store();
-		extbus1.put(14);
-		memory.store();
-		//Primeiro Parâmetro
-		extbus1.put(319);
-		memory.store();
-		extbus1.put(1);
-		memory.store();
-		//Segundo Parâmetro
-		extbus1.put(320);
-		memory.store();
-		extbus1.put(2);
-		memory.store();
-
-		/**
-		 * SUB Reg3 Reg2
-		 */
-		//Upcode do sub na mem
-		extbus1.put(321);
-		memory.store();
-		extbus1.put(4);
-		memory.store();
-		//Guarda o ID do reg3
-		extbus1.put(322);
-		memory.store();
-		extbus1.put(3);
-		memory.store();
-		//Guarda o ID do reg2
-		extbus1.put(323);
-		memory.store();
-		extbus1.put(2);
-		memory.store();
-
-		/**
-		 * Fazemos um Move Reg2Reg3 para guardar o resultado da subtração no local correto 
-		 */
-		//Upcode do moveRegReg (13)
-		extbus1.put(324);
-		memory.store();
-		extbus1.put(13);
-		memory.store();
-		//Primeiro parâmetro
-		extbus1.put(325);
-		memory.store();
-		extbus1.put(2);
-		memory.store();
-		//Segundo parâmetro
-		extbus1.put(326);
-		memory.store();
-		extbus1.put(3);
-		memory.store();
-
-		/**
-		 * JZ MoveRegMem
-		 */
-		//Upcode jz (18) na mem
-		extbus1.put(327);
-		memory.store();
-		extbus1.put(18);
-		memory.store();
-		//Apontar para o endereço do Upcode moveRegMem
-		extbus1.put(328);
-		memory.store();
-		extbus1.put(331); 
-		memory.store();
-
-		/**
-		 * JMP ADD (retorna pro laço, caso o segundo param > 0)
-		 */
-		//Guarda o Upcode do jmp (16)
-		extbus1.put(329);
-		memory.store();
-		extbus1.put(16);
-		memory.store();
-		//Guarda o endereço do add na memória (inicio do laco)
-		extbus1.put(330);
-		memory.store();
-		extbus1.put(315);
-		memory.store();
-		
-		/**
-		 * MoveRegMem (Após a multiplicação, guarda o resultado na memória)
-		 */
-		//Upcode do moveRegMem (12)
-		extbus1.put(331);
-		memory.store();
-		extbus1.put(12);
-		memory.store();
-		//Primeiro Parâmetro (Reg 1)
-		extbus1.put(332);
-		memory.store();
-		extbus1.put(1);
-		memory.store();
-		//Segundo Parametro (Mem)
-		extbus1.put(333);
-		memory.store();
-		extbus1.put(380);
-		memory.store();
-
-		/*Restaura os valores dos RPGs com MoveImmReg
-		 * RPG0 = 302
-		 * RPG1 = 303
-		 * RPG2 = 304
-		 * RPG3 = 305
-		*/
-		//Move o primeiro RPG
-		extbus1.put(302);
-		memory.read();
-		IR.store();//Guarda o valor do RPG no IR
-		//UPCODE DO Move (14)
-		extbus1.put(334);
-		memory.store();
-		extbus1.put(14);
-		memory.store();
-		//Primeiro Parâmetro
-		extbus1.put(335);
-		memory.store();
-		IR.read();
-		memory.store();
-		//Segundo Parâmetro
-		extbus1.put(336);
-		memory.store();
-		extbus1.put(0);
-		memory.store();
-
-		//Move o Segundo RPG
-		extbus1.put(303);
-		memory.read();
-		IR.store();//Guarda o valor do RPG no IR
-		//UPCODE DO Move (14)
-		extbus1.put(337);
-		memory.store();
-		extbus1.put(14);
-		memory.store();
-		//Primeiro Parâmetro
-		extbus1.put(338);
-		memory.store();
-		IR.read();
-		memory.store();
-		//Segundo Parâmetro
-		extbus1.put(339);
-		memory.store();
-		extbus1.put(1);
-		memory.store();
-
-		//Move o Terceiro RPG
-		extbus1.put(304);
-		memory.read();
-		IR.store();//Guarda o valor do RPG no IR
-		//UPCODE DO Move (14)
-		extbus1.put(340);
-		memory.store();
-		extbus1.put(14);
-		memory.store();
-		//Primeiro Parâmetro
-		extbus1.put(341);
-		memory.store();
-		IR.read();
-		memory.store();
-		//Segundo Parâmetro
-		extbus1.put(342);
-		memory.store();
-		extbus1.put(2);
-		memory.store();
-
-		//Move o Quarto RPG
-		extbus1.put(305);
-		memory.read();
-		IR.store();//Guarda o valor do RPG no IR
-		//UPCODE DO Move (14)
-		extbus1.put(343);
-		memory.store();
-		extbus1.put(14);
-		memory.store();
-		//Primeiro Parâmetro
-		extbus1.put(344);
-		memory.store();
-		IR.read();
-		memory.store();
-		//Segundo Parâmetro
-		extbus1.put(345);
-		memory.store();
-		extbus1.put(3);
-		memory.store();
-
-		/*
-		 * Memory reg, pegar o dado da memória e colocar no reg certo
-		 * memReg 11
-		 */
-		
-		//Upcode da instrução na mem
-		extbus1.put(346);
-		memory.store();
-		extbus1.put(11);
-		memory.store();
-		//Valor do primeiro parâmetro a memória que guardamos reg1
-		extbus1.put(347);
-		memory.store();
-		extbus1.put(380);
-		// memory.read();
-		memory.store();
-		//Armazena resultado no reg do segundo parâmetro do imul
-		extbus1.put(348);
-		memory.store();
-		extbus1.put(313);
-		memory.read();
-		memory.store();
+		PC.internalStore(); //PC points to regB
+		readOperand(); //the regB id
+		demux.setValue(extbus1.get());
+		registersInternalRead();
+		ula.store(1);
+		IR.internalRead();
+		ula.internalStore(0);
+		ula.mul();
+		ula.read(1);
+		setStatusFlags(intbus1.get());
+		registersInternalStore();
 
-		//PC++
 		PC.internalRead();
 		ula.internalStore(1);
 		ula.inc();
 		ula.internalRead(1);
 		PC.internalStore();
-
-		/**
-		 * JMP PROXIMA INSTRUCAO
-		 * Atualização de PC para a próxima instrução
-		 */
-		extbus1.put(349);
-		memory.store();
-		extbus1.put(16);
-		memory.store();
-
-		extbus1.put(350);
-		memory.store();
-		PC.read();
-		memory.store();
-		
-		/**
-		 * Faz PC = 306, nessa etapa, estamos desviando PC para 
-		 * que o fetch seja realizado na parte reservada na memória para
-		 * o IMUL (processo que fizemos acima), em vez de permitir 
-		 * que PC siga para a próxima instrução do executavel.
-		 * 
-		 * No fim da operação, fazemos um outro desvio que leva PC ao 
-		 * fluxo normal do executavel novamente para que o programa siga
-		 */
-		extbus1.put(306);
-		PC.store();
 	}
-	
-	public void imulRegMem(){
-		/*
-		 * PC++ para conseguir o primeiro param
-		*/
-		PC.internalRead();
-		ula.internalStore(1);
-		ula.inc();
-		ula.internalRead(1);
-		PC.internalStore();
-
-		//Guardamos PC na memoria
-		extbus1.put(301);
-		memory.store();
-		PC.read();
-		memory.store();
-
-		//Guardamos os RPGs
-		RPG0.read();
-		IR.internalStore();
-		extbus1.put(302);
-		memory.store();
-		IR.read();
-		memory.store();
-		
-		RPG1.read();
-		IR.internalStore();
-		extbus1.put(303);
-		memory.store();
-		IR.read();
-		memory.store();
-
-		RPG2.read();
-		IR.internalStore();
-		extbus1.put(304);
-		memory.store();
-		IR.read();
-		memory.store();
 
-		RPG3.read();
-		IR.internalStore();
-		extbus1.put(305);
-		memory.store();
-		IR.read();
-		memory.store();
-
-		/**
-		 * Move RegA Reg0 (upcode: 13)
-		 */
-		//Armazena o upcode do Move
-		extbus1.put(306);
-		memory.store();
-		extbus1.put(13);
-		memory.store();
-		//Recuperamos o ID do RegA (o primeiro parametro)
-		PC.read();
-		memory.read();
-		IR.store();		
-		//Guardamos na memoria o ID do RegA
-		extbus1.put(307);
-		memory.store();
-		IR.read();
-		memory.store();
-		//Poe o Reg0 na memoria
-		extbus1.put(308);
-		memory.store();
-		extbus1.put(0);
-		memory.store();
-
-		/**
-		 * Move imm Reg1 (setar Reg1 como 0)
-		 * REG
-			*/
-		//Colocamos o upcode de MoveImmReg na memoria
-		extbus1.put(309);
-		memory.store();
-		extbus1.put(14);
-		memory.store();
-		//Colocamos 0 na proxima posição
-		extbus1.put(310);
-		memory.store();
-		extbus1.put(0);
-		memory.store();
-		//Colocamos o ID do Reg1 na proxima posição
-		extbus1.put(311);
-		memory.store();
-		extbus1.put(1);
-		memory.store();
-
-		/**
-		 * PC++ Para guardar o valor do segundo parametro
-		 */
-		PC.internalRead();
-		ula.internalStore(1);
-		ula.inc();
-		ula.internalRead(1);
-		PC.internalStore(); //Nesse momento, PC aponta para Mem (do imul)
-		
-		/**
-		 * MoveMemReg (11) para guarduar o valor do param em REG3
-		 */
-		//Upcode da instrução na mem
-		extbus1.put(312);
-		memory.store();
-		extbus1.put(11);
-		memory.store();
-		//Valor do primeiro parâmetro
-		PC.read();
-		memory.read();
-		IR.store();
-		extbus1.put(313);
-		memory.store();
-		IR.read();
-		memory.store();
-		//Valor do segundo parâmetro (REG3)
-		extbus1.put(314);
-		memory.store();
-		extbus1.put(3);
-		memory.store();
-
-		/**
-		 * Realizamos o ADD Reg0 Reg1 (Onde o loop começa)
-		 */
-		//Colocamos o upcode de AddRegReg(0) na memoria
-		extbus1.put(315);
-		memory.store();
-		extbus1.put(0);
-		memory.store();
-		//Colocamos o primeiro parametro na memoria
-		extbus1.put(316);
-		memory.store();
-		extbus1.put(0);
-		memory.store();
-		//Colocamos o segundo paramentro na memoria
-		extbus1.put(317);
-		memory.store();
-		extbus1.put(1);
-		memory.store();
-		
-		/**
-		 * Move Imm Reg2 (Movemos 1 para o Reg2)
-		 */
-		//Upcode do moveImmReg
-		extbus1.put(318);
-		memory.store();
-		extbus1.put(14);
-		memory.store();
-		//Primeiro Parâmetro
-		extbus1.put(319);
-		memory.store();
-		extbus1.put(1);
-		memory.store();
-		//Segundo Parâmetro
-		extbus1.put(320);
-		memory.store();
-		extbus1.put(2);
-		memory.store();
-
-		/**
-		 * SUB Reg3 Reg2
-		 */
-		//Upcode do sub na mem
-		extbus1.put(321);
-		memory.store();
-		extbus1.put(4);
-		memory.store();
-		//Guarda o ID do reg3
-		extbus1.put(322);
-		memory.store();
-		extbus1.put(3);
-		memory.store();
-		//Guarda o ID do reg2
-		extbus1.put(323);
-		memory.store();
-		extbus1.put(2);
-		memory.store();
-
-		/**
-		 * Fazemos um Move Reg2Reg3 para guardar o resultado da subtração no local correto 
-		 */
-		//Upcode do moveRegReg (13)
-		extbus1.put(324);
-		memory.store();
-		extbus1.put(13);
-		memory.store();
-		//Primeiro parâmetro
-		extbus1.put(325);
-		memory.store();
-		extbus1.put(2);
-		memory.store();
-		//Segundo parâmetro
-		extbus1.put(326);
-		memory.store();
-		extbus1.put(3);
-		memory.store();
-
-		/**
-		 * JZ MoveRegMem
-		 */
-		//Upcode jz (18) na mem
-		extbus1.put(327);
-		memory.store();
-		extbus1.put(18);
-		memory.store();
-		//Apontar para o endereço do Upcode moveRegMem
-		extbus1.put(328);
-		memory.store();
-		extbus1.put(331); 
-		memory.store();
-
-		/**
-		 * JMP ADD (retorna pro laço, caso o segundo param > 0)
-		 */
-		//Guarda o Upcode do jmp (16)
-		extbus1.put(329);
-		memory.store();
-		extbus1.put(16);
-		memory.store();
-		//Guarda o endereço do add na memória (inicio do laco)
-		extbus1.put(330);
-		memory.store();
-		extbus1.put(315);
-		memory.store();
-		
-		/**
-		 * MoveRegMem (Após a multiplicação, guarda o resultado na memória)
-		 */
-		//Upcode do moveRegMem (12)
-		extbus1.put(331);
-		memory.store();
-		extbus1.put(12);
-		memory.store();
-		//Primeiro Parâmetro (Reg 1)
-		extbus1.put(332);
-		memory.store();
-		extbus1.put(1);
-		memory.store();
-		//Segundo Parâmetro (Mem)
-		PC.read();
-		memory.read();
-		IR.store(); //Guarda o endereço do dado em IR
-		extbus1.put(333);
-		memory.store();
-		IR.read();
-		memory.store();
-
-		/*Restaura os valores dos RPGs com MoveImmReg
-		 * RPG0 = 302
-		 * RPG1 = 303
-		 * RPG2 = 304
-		 * RPG3 = 305
-		*/
-		//Move o primeiro RPG
-		extbus1.put(302);
-		memory.read();
-		IR.store();//Guarda o valor do RPG no IR
-		//UPCODE DO Move (14)
-		extbus1.put(334);
-		memory.store();
-		extbus1.put(14);
-		memory.store();
-		//Primeiro Parâmetro
-		extbus1.put(335);
-		memory.store();
-		IR.read();
-		memory.store();
-		//Segundo Parâmetro
-		extbus1.put(336);
-		memory.store();
-		extbus1.put(0);
-		memory.store();
-
-		//Move o Segundo RPG
-		extbus1.put(303);
-		memory.read();
-		IR.store();//Guarda o valor do RPG no IR
-		//UPCODE DO Move (14)
-		extbus1.put(337);
-		memory.store();
-		extbus1.put(14);
-		memory.store();
-		//Primeiro Parâmetro
-		extbus1.put(338);
-		memory.store();
-		IR.read();
-		memory.store();
-		//Segundo Parâmetro
-		extbus1.put(339);
-		memory.store();
-		extbus1.put(1);
-		memory.store();
-
-		//Move o Terceiro RPG
-		extbus1.put(304);
-		memory.read();
-		IR.store();//Guarda o valor do RPG no IR
-		//UPCODE DO Move (14)
-		extbus1.put(340);
-		memory.store();
-		extbus1.put(14);
-		memory.store();
-		//Primeiro Parâmetro
-		extbus1.put(341);
-		memory.store();
-		IR.read();
-		memory.store();
-		//Segundo Parâmetro
-		extbus1.put(342);
-		memory.store();
-		extbus1.put(2);
-		memory.store();
-
-		//Move o Quarto RPG
-		extbus1.put(305);
-		memory.read();
-		IR.store();//Guarda o valor do RPG no IR
-		//UPCODE DO Move (14)
-		extbus1.put(343);
-		memory.store();
-		extbus1.put(14);
-		memory.store();
-		//Primeiro Parâmetro
-		extbus1.put(344);
-		memory.store();
-		IR.read();
-		memory.store();
-		//Segundo Parâmetro
-		extbus1.put(345);
-		memory.store();
-		extbus1.put(3);
-		memory.store();
-		
-		//PC++
-		PC.internalRead();
-		ula.internalStore(1);
-		ula.inc();
-		ula.internalRead(1);
-		PC.internalStore();
-
-		/**
-		 * JMP PROXIMA INSTRUCAO
-		 * Atualização de PC para a próxima instrução
-		 */
-		extbus1.put(346);
-		memory.store();
-		extbus1.put(16);
-		memory.store();
-
-		extbus1.put(347);
-		memory.store();
-		PC.read();
-		memory.store();
-		
-		/**
-		 * Faz PC = 306, nessa etapa, estamos desviando PC para 
-		 * que o fetch seja realizado na parte reservada na memória para
-		 * o IMUL (processo que fizemos acima), em vez de permitir 
-		 * que PC siga para a próxima instrução do executavel.
-		 * 
-		 * No fim da operação, fazemos um outro desvio que leva PC ao 
-		 * fluxo normal do executavel novamente para que o programa siga
-		 */
-		extbus1.put(306);
-		PC.store();		
-	}
-
-	public void imulRegReg(){
-		/*
-		 * PC++ para conseguir o primeiro param
-		*/
-		PC.internalRead();
-		ula.internalStore(1);
-		ula.inc();
-		ula.internalRead(1);
-		PC.internalStore();
-
-		//Guardamos PC na memoria
-		extbus1.put(301);
-		memory.store();
-		PC.read();
-		memory.store();
-
-		//Guardamos os RPGs
-		RPG0.read();
-		IR.internalStore();
-		extbus1.put(302);
-		memory.store();
-		IR.read();
-		memory.store();
-		
-		RPG1.read();
-		IR.internalStore();
-		extbus1.put(303);
-		memory.store();
-		IR.read();
-		memory.store();
-
-		RPG2.read();
-		IR.internalStore();
-		extbus1.put(304);
-		memory.store();
-		IR.read();
-		memory.store();
-
-		RPG3.read();
-		IR.internalStore();
-		extbus1.put(305);
-		memory.store();
-		IR.read();
-		memory.store();
-
-		/**
-		 * Move RegA Reg0 (upcode: 13)
-		 */
-		//Armazena o upcode do Move
-		extbus1.put(306);
-		memory.store();
-		extbus1.put(13);
-		memory.store();
-		//Recuperamos o ID do RegA (o primeiro parametro)
-		PC.read();
-		memory.read();
-		IR.store();		
-		//Guardamos na memoria o ID do RegA
-		extbus1.put(307);
-		memory.store();
-		IR.read();
-		memory.store();
-		//Pôe o Reg0 na memoria
-		extbus1.put(308);
-		memory.store();
-		extbus1.put(0);
-		memory.store();
-
-		/**
-		 * Move imm Reg1 (setar Reg1 como 0)
-		 * REG
-			*/
-		//Colocamos o upcode de MoveImmReg na memoria
-		extbus1.put(309);
-		memory.store();
-		extbus1.put(14);
-		memory.store();
-		//Colocamos 0 na proxima posição
-		extbus1.put(310);
-		memory.store();
-		extbus1.put(0);
-		memory.store();
-		//Colocamos o ID do Reg1 na proxima posição
-		extbus1.put(311);
-		memory.store();
-		extbus1.put(1);
-		memory.store();
-
-		/**
-		 * PC++ Para guardar o valor do segundo parametro
-		 */
-		PC.internalRead();
-		ula.internalStore(1);
-		ula.inc();
-		ula.internalRead(1);
-		PC.internalStore(); //Nesse momento, PC aponta para Mem (do imul)
-		
-		/**
-		 * Move RegB Reg3 (opcode: 13) 
-		 */
-		//armazena o upcode do Move
-		extbus1.put(312);
-		memory.store();
-		extbus1.put(13);
-		memory.store();
-		//Recuperamos o ID do RegB (o segundo parametro)
-		PC.read();
-		memory.read();
-		IR.store();		
-		//Guardamos na memoria o ID do RegB
-		extbus1.put(313);
-		memory.store();
-		IR.read();
-		memory.store();
-		//Poe o Reg3 na memoria
-		extbus1.put(314);
-		memory.store();
-		extbus1.put(3);
-		memory.store();
-
-		/**
-		 * Realizamos o ADD Reg0 Reg1 (Onde o loop começa)
-		 */
-		//Colocamos o upcode de AddRegReg(0) na memoria
-		extbus1.put(315);
-		memory.store();
-		extbus1.put(0);
-		memory.store();
-		//Colocamos o primeiro parametro na memoria
-		extbus1.put(316);
-		memory.store();
-		extbus1.put(0);
-		memory.store();
-		//Colocamos o segundo paramentro na memoria
-		extbus1.put(317);
-		memory.store();
-		extbus1.put(1);
-		memory.store();
-		
-		/**
-		 * Move Imm Reg2 (Movemos 1 para o Reg2)
-		 */
-		//Upcode do moveImmReg
-		extbus1.put(318);
-		memory.store();
-		extbus1.put(14);
-		memory.store();
-		//Primeiro parâmetro
-		extbus1.put(319);
-		memory.store();
-		extbus1.put(1);
-		memory.store();
-		//Segundo parâmetro
-		extbus1.put(320);
-		memory.store();
-		extbus1.put(2);
-		memory.store();
-
-		/**
-		 * SUB Reg3 Reg2
-		 */
-		//Upcode do sub na mem
-		extbus1.put(321);
-		memory.store();
-		extbus1.put(4);
-		memory.store();
-		//Guarda o ID do reg3
-		extbus1.put(322);
-		memory.store();
-		extbus1.put(3);
-		memory.store();
-		//Guarda o ID do reg2
-		extbus1.put(323);
-		memory.store();
-		extbus1.put(2);
-		memory.store();
-
-		/**
-		 * Fazemos um Move Reg2Reg3 para guardar o resultado da subtração no local correto 
-		 */
-		//Upcode do moveRegReg (13)
-		extbus1.put(324);
-		memory.store();
-		extbus1.put(13);
-		memory.store();
-		//Primeiro parâmetro
-		extbus1.put(325);
-		memory.store();
-		extbus1.put(2);
-		memory.store();
-		//Segundo parâmetro
-		extbus1.put(326);
-		memory.store();
-		extbus1.put(3);
-		memory.store();
-
-		/**
-		 * JZ MoveRegMem
-		 */
-		//Upcode jz (18) na mem
-		extbus1.put(327);
-		memory.store();
-		extbus1.put(18);
-		memory.store();
-		//Apontar para o endereço do Upcode moveRegMem
-		extbus1.put(328);
-		memory.store();
-		extbus1.put(331); 
-		memory.store();
-
-		/**
-		 * JMP ADD (retorna pro laço, caso o segundo param > 0)
-		 */
-		//Guarda o Upcode do jmp (16)
-		extbus1.put(329);
-		memory.store();
-		extbus1.put(16);
-		memory.store();
-		//Guarda o endereço do add na memória (inicio do laco)
-		extbus1.put(330);
-		memory.store();
-		extbus1.put(315);
-		memory.store();
-		
-		/**
-		 * MoveRegMem (Após a multiplicação, guarda o resultado na memória, pois o dado seria perdido no momento de recuperação dos valores dos RPGs)
-		 */
-		//Upcode do moveRegMem (12)
-		extbus1.put(331);
-		memory.store();
-		extbus1.put(12);
-		memory.store();
-		//Primeiro Parâmetro (Reg 1)
-		extbus1.put(332);
-		memory.store();
-		extbus1.put(1);
-		memory.store();
-		//Segundo Parametro (Mem)
-		PC.read();
-		//memory.read();
-		IR.store(); //Guarda o endereço do dado em IR
-		extbus1.put(333);
-		memory.store();
-		extbus1.put(380);
-		memory.store();
-
-		/*Restaura os valores dos RPGs com MoveImmReg
-		 * RPG0 = 302
-		 * RPG1 = 303
-		 * RPG2 = 304
-		 * RPG3 = 305
-		**/
-		//Move o primeiro RPG0
-		extbus1.put(302);
-		memory.read();
-		IR.store();//Guarda o valor do RPG no IR
-		//UPCODE DO Move (14)
-		extbus1.put(334);
-		memory.store();
-		extbus1.put(14);
-		memory.store();
-		//Primeiro Parâmetro
-		extbus1.put(335);
-		memory.store();
-		IR.read();
-		memory.store();
-		//Segundo Parâmetro
-		extbus1.put(336);
-		memory.store();
-		extbus1.put(0);
-		memory.store();
-
-		//Move o Segundo RPG1
-		extbus1.put(303);
-		memory.read();
-		IR.store();//Guarda o valor do RPG no IR
-		//UPCODE DO Move (14)
-		extbus1.put(337);
-		memory.store();
-		extbus1.put(14);
-		memory.store();
-		//Primeiro Parâmetro
-		extbus1.put(338);
-		memory.store();
-		IR.read();
-		memory.store();
-		//Segundo Parâmetro
-		extbus1.put(339);
-		memory.store();
-		extbus1.put(1);
-		memory.store();
-
-		//Move o Terceiro RPG2
-		extbus1.put(304);
-		memory.read();
-		IR.store();//Guarda o valor do RPG no IR
-		//UPCODE DO Move (14)
-		extbus1.put(340);
-		memory.store();
-		extbus1.put(14);
-		memory.store();
-		//Primeiro Parâmetro
-		extbus1.put(341);
-		memory.store();
-		IR.read();
-		memory.store();
-		//Segundo Parâmetro
-		extbus1.put(342);
-		memory.store();
-		extbus1.put(2);
-		memory.store();
+	/**
+	 * This method implements the microprogram for
+	 * 					IMUL %<regA> address        || memory[address] <- RegA * memory[address]
+	 * The result goes to the memory (and stays in IR), as in the addRegMem
+	 */
+	public void imulRegMem(){
+		PC.internalRead();
+		ula.internalStore(1);
+		ula.inc();
+		ula.internalRead(1);
+		PC.internalStore(); //PC points to regA
 
-		//Move o Quarto RPG3
-		extbus1.put(305);
-		memory.read();
-		IR.store();//Guarda o valor do RPG no IR
-		//UPCODE DO Move (14)
-		extbus1.put(343);
-		memory.store();
-		extbus1.put(14);
-		memory.store();
-		//Primeiro Parâmetro
-		extbus1.put(344);
-		memory.store();
-		IR.read();
-		memory.store();
-		//Segundo Parâmetro
-		extbus1.put(345);
-		memory.store();
-		extbus1.put(3);
-		memory.store();
+		readOperand();
+		demux.setValue(extbus1.get());
+		registersInternalRead();
+		ula.store(0);
 
-		/*
-		 * MoveMemReg (preciso recuperar o resultado da memória para o registrador)
-		**/
-		//Opcode do moveMemReg (11)
-		extbus1.put(346);
-		memory.store();
-		extbus1.put(11);
-		memory.store();
+		ula.inc();
+		ula.internalRead(1);
+		PC.internalStore(); //PC points to the address
+		readOperand();
+		memory.readData();
+		IR.store();
+		IR.internalRead();
+		ula.internalStore(1);
 
-		//Primeiro parâmetro (Mem)
-		extbus1.put(347);
+		ula.mul();
+		ula.internalRead(1);
+		setStatusFlags(intbus2.get());
+		IR.internalStore();
+		readOperand();
 		memory.store();
-		extbus1.put(380);
+		IR.read();
 		memory.store();
 
-		//Segundo parâmetro (RegB)
-		extbus1.put(348);
-		memory.store();
-		extbus1.put(313);
-		memory.read();
-		memory.store();
-		
-		//PC++
 		PC.internalRead();
 		ula.internalStore(1);
 		ula.inc();
 		ula.internalRead(1);
 		PC.internalStore();
+	}
 
-		/**
-		 * JMP PROXIMA INSTRUCAO
-		 * Atualização de PC para a próxima instrução
-		 */
-		extbus1.put(349);
-		memory.store();
-		extbus1.put(16);
-		memory.store();
+	/**
+	 * This method implements the microprogram for
+	 * 					IMUL %<regA> %<regB>        || RegB <- RegA * RegB
+	 */
+	public void imulRegReg(){
+		PC.internalRead();
+		ula.internalStore(1);
+		ula.inc();
+		ula.internalRead(1);
+		PC.internalStore(); //PC points to regA
 
-		extbus1.put(350);
-		memory.store();
-		PC.read();
-		memory.store();
-		
-		/**
-		 * Faz PC = 306, nessa etapa, estamos desviando PC para 
-		 * que o fetch seja realizado na parte reservada na memória para
-		 * o IMUL (processo que fizemos acima), em vez de permitir 
-		 * que PC siga para a próxima instrução do executavel.
-		 * 
-		 * No fim da operação, fazemos um outro desvio que leva PC ao 
-		 * fluxo normal do executavel novamente para que o programa siga
-		 */
-		extbus1.put(306);
-		PC.store();		
+		readOperand();
+		demux.setValue(extbus1.get());
+		registersInternalRead();
+		ula.store(0);
+
+		ula.inc();
+		ula.internalRead(1);
+		PC.internalStore(); //PC points to regB
+
+		readOperand();
+		demux.setValue(extbus1.get());
+		registersInternalRead();
+		ula.store(1);
+
+		ula.mul();
+		ula.read(1);
+		setStatusFlags(intbus1.get());
+		demux.setValue(extbus1.get());
+		registersInternalStore();
+
+		PC.internalRead();
+		ula.internalStore(1);
+		ula.inc();
+		ula.internalRead(1);
+		PC.internalStore();
 	}
 
 	public void moveMemReg() {
@@ -1812,15 +918,13 @@ public class Architecture {
 		ula.inc();
 		ula.internalRead(1);
 		PC.internalStore(); // Now PC points to the first parameter
-		PC.read(); 
-		memory.read(); // The address memory is now in the external bus.
-		memory.read(); // The data memory is now in the external bus.
+		readOperand(); // The address memory is now in the external bus.
+		memory.readData(); // The data memory is now in the external bus.
 		IR.store();
 		ula.inc();
 		ula.internalRead(1);
 		PC.internalStore(); // Now PC points to the second parameter (the second reg id)
-		PC.read();
-		memory.read(); // The register id is now in the external bus.
+		readOperand(); // The register id is now in the external bus.
 		demux.setValue(extbus1.get()); // Points to the correct register
 		IR.internalRead();
 		registersStore(); // Performs an internal store for the register identified into demux bus
@@ -1841,8 +945,7 @@ public class Architecture {
 		PC.internalStore();
 
 		// Acessa RegA e posiciona em IR
-		PC.read();
-		memory.read();
+		readOperand();
 		demux.setValue(extbus1.get());
 		registersRead();
 		IR.internalStore();
@@ -1853,8 +956,7 @@ public class Architecture {
 		PC.internalStore();
 
 		// Acessa memoria[mem] no modo store e armazena RegA nessa posição de memória
-		PC.read();
-		memory.read();
+		readOperand();
 		memory.store();
 		IR.read();
 		memory.store();
@@ -1909,8 +1011,7 @@ public class Architecture {
 	    ula.inc();
 	    ula.internalRead(1);
 	    PC.internalStore(); // PC aponta para regA
-	    PC.read();
-	    memory.read();  // Lê regA // The first register id is now in the external bus.
+	    readOperand();  // Lê regA // The first register id is now in the external bus.
 	    
 	    //Now PC points to the second parameter (the second reg id)
 	    PC.internalRead();
@@ -1921,8 +1022,7 @@ public class Architecture {
 		
 	    demux.setValue(extbus1.get()); // Seleciona regA
 	    registersInternalRead(); //Starts the read from the register identified into demux bus // Coloca o valor de regA no intbus1
-		PC.read();
-		memory.read(); // The second register id is now in the external bus.
+		readOperand(); // The second register id is now in the external bus.
 		
 		demux.setValue(extbus1.get()); // Seleciona regB //Points to the correct register
 		registersInternalStore(); //Performs an internal store for the register identified into demux bus
@@ -1942,14 +1042,12 @@ public class Architecture {
 		ula.internalRead(1);
 		PC.internalStore();
 		
-		PC.read(); 
-		memory.read(); 
+		readOperand(); 
 		IR.store(); 
 		ula.inc();
 		ula.internalRead(1);
 		PC.internalStore();
-		PC.read();
-		memory.read();
+		readOperand();
 		demux.setValue(extbus1.get());
 		IR.internalRead();
 		registersStore();
@@ -2011,8 +1109,7 @@ public class Architecture {
 	    ula.internalRead(1);
 	    PC.internalStore();
 
-	    PC.read();
-	    memory.read();
+	    readOperand();
 	    demux.setValue(extbus1.get());
 	    registersInternalRead();
 	    ula.store(1);
@@ -2056,8 +1153,7 @@ public class Architecture {
 		ula.inc();
 		ula.internalRead(1);
 		PC.internalStore(); //now PC points to the parameter address
-		PC.read();
-		memory.read();
+		readOperand();
 		PC.store();
 	}
 	
@@ -2098,8 +1194,7 @@ public class Architecture {
 		ula.internalRead(1);
 		PC.internalStore();// now PC points to the parameter address
 		
-		PC.read();
-		memory.read();// now the parameter value (address of the jz) is in the external bus
+		readOperand();// now the parameter value (address of the jz) is in the external bus
 		statusMemory.storeIn1(); // the address is in position 1 of the status memory
 		
 		ula.inc();
@@ -2155,8 +1250,7 @@ public class Architecture {
 	    PC.internalStore(); // PC aponta para o endereço
 
 	    // Lê o endereço de memória
-	    PC.read();
-	    memory.read(); // Coloca o endereço lido no extbus1
+	    readOperand(); // Coloca o endereço lido no extbus1
 	    statusMemory.storeIn1(); // Armazena o endereço na posição 1 da statusMemory
 
 	    // Incrementa PC para a próxima instrução
@@ -2182,8 +1276,7 @@ public class Architecture {
 	    ula.internalRead(1);
 	    PC.internalStore();
 	    
-	    PC.read();
-	    memory.read();
+	    readOperand();
 	    demux.setValue(extbus1.get());
 	    registersInternalRead();
 	    ula.store(0);
@@ -2191,15 +1284,13 @@ public class Architecture {
 	    ula.inc();
 	    ula.internalRead(1);
 	    PC.internalStore();
-	    PC.read();
-	    memory.read();
+	    readOperand();
 	    demux.setValue(extbus1.get());
 	    
 	    ula.inc();
 	    ula.internalRead(1);
 	    PC.internalStore();
-	    PC.read();
-	    memory.read();
+	    readOperand();
 	    statusMemory.storeIn1();
 	    ula.inc();
 	    ula.internalRead(1);
@@ -2224,8 +1315,7 @@ public class Architecture {
 	    ula.internalRead(1);
 	    PC.internalStore();
 
-	    PC.read();
-	    memory.read();
+	    readOperand();
 	    demux.setValue(extbus1.get());
 	    registersInternalRead();
 	    ula.store(0);
@@ -2233,15 +1323,13 @@ public class Architecture {
 	    ula.inc();
 	    ula.internalRead(1);
 	    PC.internalStore();
-	    PC.read();
-	    memory.read();
+	    readOperand();
 	    demux.setValue(extbus1.get());
 
 	    ula.inc();
 	    ula.internalRead(1);
 	    PC.internalStore();
-	    PC.read();
-	    memory.read();
+	    readOperand();
 	    statusMemory.storeIn0();
 	    ula.inc();
 	    ula.internalRead(1);
@@ -2265,10 +1353,9 @@ public class Architecture {
 		ula.inc();
 		ula.internalRead(1);
 		PC.internalStore();
-		PC.read();
 
 		//REG A
-		memory.read();
+		readOperand();
 		demux.setValue(extbus1.get());
 		registersInternalRead();
 		ula.store(0);
@@ -2277,16 +1364,14 @@ public class Architecture {
 		ula.inc();
 		ula.internalRead(1);
 		PC.internalStore();
-		PC.read();
-		memory.read();
+		readOperand();
 		IR.store();
 		
 		//Pega o último parâmetro e adiciona na posição 1 status Memory (JMP 1)
 		ula.inc();
 		ula.internalRead(1);
 		PC.internalStore();
-		PC.read();
-		memory.read();
+		readOperand();
 		statusMemory.storeIn1();
 		
 		//JUMP 0
@@ -2318,8 +1403,7 @@ public class Architecture {
 		PC.internalStore();
 		
 		// lê o dado de RegA
-		PC.read();
-		memory.read();
+		readOperand();
 		demux.setValue(extbus1.get());
 		registersInternalRead();
 		ula.store(0);
@@ -2330,8 +1414,7 @@ public class Architecture {
 		PC.internalStore();
 		
 		// Lê o dado de RegB e armazena em IR
-		PC.read();
-		memory.read();
+		readOperand();
 		IR.store();
 		
 		// "PC++"
@@ -2340,8 +1423,7 @@ public class Architecture {
 		PC.internalStore();
 		
 		// JUMP 1
-		PC.read();
-		memory.read();
+		readOperand();
 		statusMemory.storeIn1();
 		
 		// "PC++"
@@ -2402,9 +1484,8 @@ public class Architecture {
 		ula.inc();
 		ula.internalRead(1);
 		PC.internalStore(); //now PC points to the parameter address
-		PC.read(); 
-		memory.read(); // the address is now in the external bus.
-		memory.read(); // the data is now in the external bus.
+		readOperand(); // the address is now in the external bus.
+		memory.readData(); // the data is now in the external bus.
 
 		IR.store();
 		IR.internalRead();
@@ -2451,8 +1532,7 @@ public class Architecture {
 		ula.inc();
 		ula.internalRead(1);
 		PC.internalStore(); //now PC points to the parameter address
-		PC.read(); 
-		memory.read();   //the parameter address (pointing to the addres where data must be stored
+		readOperand();   //the parameter address (pointing to the addres where data must be stored
 		                 //is now in externalbus1
 		memory.store(); //the address is in the memory. Now we must to send the data
 		
@@ -2499,8 +1579,7 @@ public class Architecture {
 		ula.inc();
 		ula.internalRead(1);
 		PC.internalStore(); //now PC points to the parameter address
-		PC.read(); 
-		memory.read(); // the immediate is now in the external bus.
+		readOperand(); // the immediate is now in the external bus.
 		
 		IR.store();
 		IR.internalRead();
@@ -2525,6 +1604,24 @@ public class Architecture {
 		registersList.get(demux.getValue()).read();
 	}
 	
+	/**
+	 * This method puts into the external bus the word pointed by PC, just like PC.read() and memory.read() do.
+	 * When the word is an operand of the instruction being executed, it comes from the decoded instruction:
+	 * the memory is not read again, but the read is counted and timed as usual (see Memory.readCached)
+	 */
+	private void readOperand() {
+		PC.read();
+		DecodedInstruction instruction = current;
+		if ((instruction != null) && instruction.isValid()) {
+			int operand = PC.getData() - instruction.getAddress() - 1;
+			if ((operand >= 0) && (operand < instruction.getOperandsCount())) {
+				memory.readCached(instruction.getOperand(operand));
+				return;
+			}
+		}
+		memory.read();
+	}
+
 	/**
 	 * This method performs an (internal) read from a register into the register list.
 	 * The register id must be in the demux bus
@@ -2551,12 +1648,19 @@ public class Architecture {
 
 	/**
 	 * This method reads an entire file in machine code and
-	 * stores it into the memory
+	 * stores it into the memory.
+	 * In the threaded engine, the program is also translated into threaded code.
+	 * The file can be a text executable or a binary one (see ExecutableFile)
 	 * NOT TESTED
 	 * @param filename
 	 * @throws IOException 
 	 */
 	public void readExec(String filename) throws IOException {
+		File file = new File(filename+".dxf");
+		if (ExecutableFile.isBinary(file)) {
+			readBinaryExec(file);
+			return;
+		}
 		BufferedReader br = new BufferedReader(new		 
 		FileReader(filename+".dxf"));
 		String linha;
@@ -2569,142 +1673,416 @@ public class Architecture {
 			i++;
 		}
 		br.close();
+		if (engine == ExecutionEngine.THREADED)
+			((ThreadedEngine) functionalEngine).translate();
+	}
+	
+	/**
+	 * This method loads a binary executable, copying the words straight into the memory
+	 * (without the store handshake), and points PC to the entry point.
+	 * The decoded (or compiled) instructions are discarded by the memory listeners
+	 * @param file
+	 * @throws IOException
+	 */
+	private void readBinaryExec(File file) throws IOException {
+		symbols = new HashMap<String, Integer>();
+		PC.setData(ExecutableFile.load(file, memory, symbols));
+		if (engine == ExecutionEngine.THREADED)
+			((ThreadedEngine) functionalEngine).translate();
+	}
+	
+	/**
+	 * This method returns the symbols (labels and variables addresses) of the binary executable loaded,
+	 * or null if no binary executable was loaded
+	 * @return
+	 */
+	public HashMap<String, Integer> getSymbols() {
+		return symbols;
+	}
+	
+	/**
+	 * This method copies the whole state of this architecture into a new snapshot
+	 * @return
+	 */
+	public ArchitectureSnapshot snapshot() {
+		ArchitectureSnapshot snapshot = new ArchitectureSnapshot(registersList.size(), 2, memorySize, 2);
+		snapshot(snapshot);
+		return snapshot;
+	}
+	
+	/**
+	 * This method copies the whole state of this architecture into a snapshot created before
+	 * (by this architecture or by another one with the same memory size), without allocating anything
+	 * @param snapshot
+	 */
+	public void snapshot(ArchitectureSnapshot snapshot) {
+		int registers[] = snapshot.getRegisters();
+		for (int i = 0; i < registers.length; i++)
+			registers[i] = registersList.get(i).getData();
+		snapshot.getFlagBits()[0] = Flags.getBit(0);
+		snapshot.getFlagBits()[1] = Flags.getBit(1);
+		snapshot.getBuses()[0] = extbus1.get();
+		snapshot.getBuses()[1] = intbus1.get();
+		snapshot.getBuses()[2] = intbus2.get();
+		snapshot.setDemux(demux.getValue());
+		ula.saveState(snapshot.getUla());
+		memory.copyTo(snapshot.getMemory());
+		snapshot.setMemoryStorePosition(memory.getStorePosition());
+		statusMemory.copyTo(snapshot.getStatusMemory());
+		snapshot.setStatusMemoryStorePosition(statusMemory.getStorePosition());
+		snapshot.setHalt(halt);
+	}
+	
+	/**
+	 * This method puts this architecture back in the state kept by the snapshot.
+	 * It costs a copy of the memory and allocates nothing, so the same architecture can run
+	 * many programs (or the same program many times) without being created again.
+	 * Only the memory positions that differ from the snapshot are written (see Memory.copyFrom), so the memory listeners
+	 * discard only the decoded (or translated) instructions of those positions
+	 * @param snapshot
+	 */
+	public void restore(ArchitectureSnapshot snapshot) {
+		int registers[] = snapshot.getRegisters();
+		for (int i = 0; i < registers.length; i++)
+			registersList.get(i).setData(registers[i]);
+		Flags.setBit(0, snapshot.getFlagBits()[0]);
+		Flags.setBit(1, snapshot.getFlagBits()[1]);
+		extbus1.setData(snapshot.getBuses()[0]);
+		intbus1.setData(snapshot.getBuses()[1]);
+		intbus2.setData(snapshot.getBuses()[2]);
+		demux.setValue(snapshot.getDemux());
+		ula.restoreState(snapshot.getUla());
+		memory.copyFrom(snapshot.getMemory());
+		memory.setStorePosition(snapshot.getMemoryStorePosition());
+		statusMemory.copyFrom(snapshot.getStatusMemory());
+		statusMemory.setStorePosition(snapshot.getStatusMemoryStorePosition());
+		halt = snapshot.isHalt();
+	}
+	
+	/**
+	 * This method creates a new architecture (with the same engine and memory size) in the same state of this one.
+	 * The memory is not copied: both architectures share the memory pages, and each one copies
+	 * a page only before writing it (see Memory.fork). So a program loaded once can be cloned
+	 * into many architectures, paying only for the pages each one changes
+	 * @return
+	 */
+	public Architecture fork() {
+		Architecture fork = new Architecture(simulation, engine, memorySize);
+		for (int i = 0; i < registersList.size(); i++)
+			fork.registersList.get(i).setData(registersList.get(i).getData());
+		fork.Flags.setBit(0, Flags.getBit(0));
+		fork.Flags.setBit(1, Flags.getBit(1));
+		fork.extbus1.put(extbus1.get());
+		fork.intbus1.put(intbus1.get());
+		fork.intbus2.put(intbus2.get());
+		fork.demux.setValue(demux.getValue());
+		int ulaState[] = new int[ArchitectureSnapshot.ULA_STATE];
+		ula.saveState(ulaState);
+		fork.ula.restoreState(ulaState);
+		fork.memory.share(memory);
+		fork.memory.setStorePosition(memory.getStorePosition());
+		fork.statusMemory.share(statusMemory);
+		fork.statusMemory.setStorePosition(statusMemory.getStorePosition());
+		fork.halt = halt;
+		return fork;
 	}
 	
 	/**
 	 * This method executes a program that is stored in the memory
 	 */
 	public void controlUnitEexec() {
+		if (counters == null) {
+			execute();
+			return;
+		}
+		long start = System.nanoTime();
+		execute();
+		counters.addRunTime(System.nanoTime() - start);
+		if (countersDump != null)
+			countersDump.print(counters.dump());
+	}
+	
+	/**
+	 * This method executes a program that is stored in the memory, using the execution engine
+	 */
+	private void execute() {
 		halt = false;
+		memory.refresh(); //the memory could have been changed through getDataList
+		if (trace != null) { //each instruction is recorded, whatever the engine is
+			while (tracedStep());
+			return;
+		}
+		if ((engine != ExecutionEngine.MICROPROGRAM) && (counters != null)) { //each instruction is counted
+			while (step());
+			return;
+		}
+		if (engine != ExecutionEngine.MICROPROGRAM) {
+			functionalEngine.run();
+			return;
+		}
 		while (!halt) {
-			fetch();
-			decodeExecute();
+			DecodedInstruction instruction = fetchDecoded();
+			decodeExecute(instruction);
+		}
+	}
+	
+	/**
+	 * This method executes only the instruction pointed by PC, using the execution engine
+	 * of this architecture.
+	 * @return false if the instruction was the end of the program
+	 */
+	public boolean step() {
+		if (engine != ExecutionEngine.MICROPROGRAM) {
+			if (counters == null)
+				return functionalEngine.step();
+			int command = memory.getData(PC.getData());
+			boolean running = functionalEngine.step();
+			counters.retired(command);
+			return running;
+		}
+		return microprogramStep();
+	}
+	
+	/**
+	 * This method starts counting the work done by the programs (see PerformanceCounters)
+	 * @return the counters
+	 */
+	public PerformanceCounters enableCounters() {
+		if (counters == null)
+			setCounters(new PerformanceCounters(commandsList));
+		return counters;
+	}
+	
+	/**
+	 * This method sets the performance counters, that can be shared by many architectures
+	 * (null stops counting). The architecture is timed (see enableTiming), so its clock adds
+	 * the simulated cycles to the counters
+	 * @param counters
+	 */
+	public void setCounters(PerformanceCounters counters) {
+		this.counters = counters;
+		extbus1.setCounter((counters == null) ? null : counters.getExtbus1Counter());
+		intbus1.setCounter((counters == null) ? null : counters.getIntbus1Counter());
+		intbus2.setCounter((counters == null) ? null : counters.getIntbus2Counter());
+		if (counters == null) {
+			memory.setCounters(null, null);
+			statusMemory.setCounters(null, null);
+			ula.setCounters(null);
+			if (timing != null)
+				timing.getClock().setCounter(null);
+			return;
+		}
+		memory.setCounters(counters.getMemoryReadsCounter(), counters.getMemoryStoresCounter());
+		statusMemory.setCounters(counters.getStatusMemoryReadsCounter(), counters.getStatusMemoryStoresCounter());
+		ula.setCounters(counters.getUlaCounters());
+		enableTiming().getClock().setCounter(counters.getCyclesCounter());
+	}
+	
+	public PerformanceCounters getCounters() {
+		return counters;
+	}
+	
+	/**
+	 * This method chooses where the counters are shown (as text) when a program halts (null to not show them)
+	 * @param countersDump
+	 */
+	public void setCountersDump(PrintStream countersDump) {
+		this.countersDump = countersDump;
+	}
+	
+	/**
+	 * This method starts counting the simulated cycles of each instruction (see TimingModel).
+	 * The events have the default costs, and a multiplication takes the ula multiply latency
+	 * @return the timing model
+	 */
+	public TimingModel enableTiming() {
+		if (timing == null) {
+			TimingModel model = new TimingModel(commandsList);
+			setTiming(model);
+		}
+		return timing;
+	}
+	
+	/**
+	 * This method attaches the clock of the timing model to all the components (null stops timing).
+	 * Unlike the performance counters, a timing model belongs to only one architecture
+	 * @param timing
+	 */
+	public void setTiming(TimingModel timing) {
+		if (this.timing != null)
+			this.timing.getClock().setCounter(null);
+		this.timing = timing;
+		Clock clock = (timing == null) ? null : timing.getClock();
+		if ((counters != null) && (clock != null)) //the cycles of the new clock are counted too
+			clock.setCounter(counters.getCyclesCounter());
+		extbus1.setClock(clock);
+		intbus1.setClock(clock);
+		intbus2.setClock(clock);
+		for (Register register : registersList)
+			register.setClock(clock);
+		ula.setClock(clock);
+		memory.setClock(clock);
+		statusMemory.setClock(clock);
+	}
+	
+	public TimingModel getTiming() {
+		return timing;
+	}
+	
+	/**
+	 * This method puts the write buffer in front of the memory (null removes it).
+	 * The buffer uses the clock of the timing model (enabled if it was not), so the stalls
+	 * of the stores are in the cycles of their instructions. Only the microprogram engine uses the buffer
+	 * @param writeBuffer
+	 */
+	public void setWriteBuffer(WriteBuffer writeBuffer) {
+		memory.setWriteBuffer(writeBuffer, (writeBuffer == null) ? null : enableTiming().getClock());
+	}
+	
+	public WriteBuffer getWriteBuffer() {
+		return memory.getWriteBuffer();
+	}
+	
+	/**
+	 * This method executes only the instruction pointed by PC, recording it in the trace
+	 * @return false if the instruction was the end of the program
+	 */
+	private boolean tracedStep() {
+		trace.begin(PC.getData());
+		boolean running = step();
+		trace.end();
+		return running;
+	}
+	
+	/**
+	 * This method starts writing the trace of the execution: from now on, each instruction executed by
+	 * controlUnitEexec is recorded (PC, command, operands, changed registers and memory positions).
+	 * The trace is a compact binary file (see TraceWriter), written by a background thread
+	 * @param filename the trace file, without the extention (.dtr)
+	 * @throws IOException
+	 */
+	public void startTrace(String filename) throws IOException {
+		startTrace(filename, false);
+	}
+	
+	/**
+	 * This method starts writing the trace of the execution, choosing its format.
+	 * The compressed trace (filename.dct) keeps only the changes of each instruction, with keyframes
+	 * of the whole state, so any instruction can be replayed later (see CompressedTraceWriter and TraceReplayer).
+	 * Its index (filename.dci) tells which instructions changed each register and memory position (see TraceIndex)
+	 * @param filename the trace file, without the extention
+	 * @param compressed
+	 * @throws IOException
+	 */
+	public void startTrace(String filename, boolean compressed) throws IOException {
+		stopTrace();
+		if (compressed) {
+			CompressedTraceWriter writer = new CompressedTraceWriter(new File(filename+".dct"), registersList, Flags, memory,
+					TraceWriter.DEFAULT_CAPACITY, CompressedTraceWriter.DEFAULT_KEYFRAME_INTERVAL);
+			writer.setIndex(new File(filename+".dci"));
+			trace = writer;
+		}
+		else
+			trace = new TraceWriter(new File(filename+".dtr"), registersList, Flags, memory, TraceWriter.DEFAULT_CAPACITY);
+		trace.start();
+		memory.addListener(trace);
+	}
+	
+	/**
+	 * This method stops the trace, waiting for all the records to be written
+	 * @throws IOException
+	 */
+	public void stopTrace() throws IOException {
+		if (trace == null)
+			return;
+		memory.removeListener(trace);
+		TraceWriter finished = trace;
+		trace = null;
+		finished.close();
+	}
+	
+	/**
+	 * This method executes only the instruction pointed by PC, using its microprogram
+	 * @return false if the instruction was the end of the program
+	 */
+	protected boolean microprogramStep() {
+		halt = false;
+		DecodedInstruction instruction = fetchDecoded();
+		decodeExecute(instruction);
+		return !halt;
+	}
+	
+	/**
+	 * This method gets the instruction pointed by PC.
+	 * If the instruction was already decoded, it comes from the instruction cache: the memory is not accessed,
+	 * but the fetch is counted and timed just like the usual one, so the counters don't depend on the cache.
+	 * Otherwise, the usual fetch is performed and the instruction is decoded and cached
+	 * @return
+	 */
+	private DecodedInstruction fetchDecoded() {
+		int address = PC.getData();
+		DecodedInstruction instruction = instructionCache.lookup(address);
+		if (instruction != null) {
+			PC.read();
+			memory.readCached(instruction.getCommand());
+			IR.store();
+			simulationFetch();
+			return instruction;
 		}
+		fetch();
+		instruction = decode(address);
+		instructionCache.put(instruction);
+		return instruction;
+	}
+	
+	/**
+	 * This method decodes the instruction whose command is in IR (fetched from address),
+	 * reading its operands (the positions just after the command) and finding its microprogram
+	 * @param address
+	 * @return
+	 */
+	private DecodedInstruction decode(int address) {
+		int command = IR.getData();
+		int operands[] = new int[getOperandsCount(command)];
+		for (int i = 0; i < operands.length; i++)
+			operands[i] = memoryWord(address + i + 1);
+		Microprogram handler;
+		if ((command >= 0) && (command < microprograms.length))
+			handler = microprograms[command];
+		else
+			handler = haltMicroprogram;
+		return new DecodedInstruction(address, command, operands, handler);
+	}
+	
+	/**
+	 * This method returns the data in the memory position just like the memory read does:
+	 * positions out of the memory range returns the position itself (the bus is not changed)
+	 * @param position
+	 * @return
+	 */
+	private int memoryWord(int position) {
+		return memory.getData(position);
 	}
 	
 	/**
 	 * This method implements The decode proccess,
 	 * that is to find the correct operation do be executed
 	 * according the command.
-	 * And the execute proccess, that is the execution itself of the command
+	 * And the execute proccess, that is the execution itself of the command.
+	 * The instruction is already decoded, so the microprogram is called directly,
+	 * and it takes its operands from the decoded instruction (see readOperand)
 	 */
-
-	private void decodeExecute() {
+	private void decodeExecute(DecodedInstruction instruction) {
 		IR.internalRead(); //the instruction is in the internalbus2
-		int command = intbus2.get();
-		simulationDecodeExecuteBefore(command);
-		switch (command) {
-		// case 0:
-		// 	add();
-		// 	break;
-		case 0:
-			addRegReg();
-			break;
-		case 1:
-			addMemReg();
-			break;
-		case 2:
-			addRegMem();
-			break;
-		case 3:
-			addImmReg();
-			break;
-		/*case 5:
-			sub();
-			break;
-		*/
-		case 4:
-			subRegReg();
-			break;
-		
-		case 5:
-			subMemReg();
-			break;
-		
-		case 6:
-			subRegMem();
-			break;
-		
-		case 7:
-			subImmReg();
-			break;
-		
-		case 8:
-			imulMemReg(); //Linha 1310
-			break;
-
-		case 9:
-			imulRegMem(); //Linha 1314
-			break;
-
-		case 10:
-			imulRegReg(); //Linha 
-			break;
-
-		case 11:
-			moveMemReg();
-			break;
-
-		case 12:
-			moveRegMem();
-			break;
-
-		case 13:
-			moveRegReg();
-			break;
-		
-		case 14:
-			moveImmReg();
-			break;
-
-		case 15:
-			incReg(); 
-			break;
-
-		case 16:
-			jmp();
-			break;
-	
-		case 17:
-			jn();
-			break;
-
-		case 18:
-			jz();
-			break;
-			
-		case 19:
-			jeq();
-			break;
-
-		case 20:
-			jneq();
-			break;
-
-		case 21:
-			jgt();
-			break;
-
-		case 22:
-			jlw();
-			break;
-
-		case 23:
-			read();
-			break;
-
-		case 24:
-			store();
-			break;
-			
-		case 25:
-			ldi();
-			break;
-
-		default:
-			halt = true;
-			break;
-		}
+		if (simulation)
+			simulationDecodeExecuteBefore(instruction);
+		if ((counters != null) && (engine == ExecutionEngine.MICROPROGRAM)) //the other engines count in step()
+			counters.retired(instruction.getCommand());
+		current = instruction;
+		instruction.getHandler().execute();
+		current = null;
+		if (timing != null)
+			timing.retired(instruction.getCommand());
 		if (simulation)
 			simulationDecodeExecuteAfter();
 	}
@@ -2712,27 +2090,28 @@ public class Architecture {
 	/**
 	 * This method is used to show the components status in simulation conditions
 	 * NOT TESTED
-	 * @param command 
+	 * @param decoded 
 	 */
-	private void simulationDecodeExecuteBefore(int command) {
+	private void simulationDecodeExecuteBefore(DecodedInstruction decoded) {
 		System.out.println("----------BEFORE Decode and Execute phases--------------");
 		String instruction;
 		int parameter = 0;
+		int command = decoded.getCommand();
 		for (Register r:registersList) {
 			System.out.println(r.getRegisterName()+": "+r.getData());
 		}
-		if (command !=-1)
+		if ((command >= 0) && (command < commandsList.size()))
 			instruction = commandsList.get(command);
 		else
 			instruction = "END";
-		if (hasOperands(instruction)) {
-			parameter = memory.getDataList()[PC.getData()+1];
+		if (decoded.getOperandsCount() > 0) {
+			parameter = decoded.getOperand(0);
 			System.out.println("Instruction: "+instruction+" "+parameter);
 		}
 		else
 			System.out.println("Instruction: "+instruction);
 		if ("read".equals(instruction))
-			System.out.println("memory["+parameter+"]="+memory.getDataList()[parameter]);
+			System.out.println("memory["+parameter+"]="+memory.getData(parameter));
 			
 		
 	}
@@ -2745,10 +2124,10 @@ public class Architecture {
 		String instruction;
 		System.out.println("-----------AFTER Decode and Execute phases--------------");
 		System.out.println("Memory State");
-		for (int i = 0; i < 400; i++)
+		for (int i = 0; i < memorySize - 1; i++)
 		{
-			if (this.memory.getDataList()[i] != 0)
-				System.out.println("Memory["+i+"] = " + this.memory.getDataList()[i]);
+			if (this.memory.getData(i) != 0)
+				System.out.println("Memory["+i+"] = " + this.memory.getData(i));
 		}
 		System.out.println("Internal Bus 1: "+intbus1.get());
 		System.out.println("Internal Bus 2: "+intbus2.get());
@@ -2756,9 +2135,10 @@ public class Architecture {
 		for (Register r:registersList) {
 			System.out.println(r.getRegisterName()+": "+r.getData());
 		}
-		Scanner entrada = new Scanner(System.in);
+		if (console == null)
+			console = new Scanner(System.in);
 		System.out.println("Press <Enter>");
-		String mensagem = entrada.nextLine();
+		console.nextLine();
 	}
 
 	/**
@@ -2786,20 +2166,6 @@ public class Architecture {
 		}
 	}
 
-	/**
-	 * This method is used to show in a correct way the operands (if there is any) of instruction,
-	 * when in simulation mode
-	 * NOT TESTED!!!!!
-	 * @param instruction 
-	 * @return
-	 */
-	private boolean hasOperands(String instruction) {
-		if ("inc".equals(instruction)) //inc is the only one instruction having no operands
-			return false;
-		else
-			return true;
-	}
-
 	/**
 	 * This method returns the amount of positions allowed in the memory
 	 * of this architecture
@@ -2810,10 +2176,70 @@ public class Architecture {
 		return memorySize;
 	}
 	
-	public static void main(String[] args) throws IOException {
-		Architecture arch = new Architecture(true);
-		arch.readExec("operacoes");
+	/**
+	 * Usage: Architecture [-t | -c] [-s] [-p[:costs]] [-w[:entries/cycles]] [filename] (the default program is operacoes)
+	 * Without options, the program runs in simulation mode.
+	 * -t writes the trace of the program (filename.dtr) instead of showing the components
+	 * -c writes the compressed trace of the program (filename.dct)
+	 * -s counts the work done (published by JMX while running, and shown when the program halts)
+	 * -p shows the simulated cycles per instruction when the program halts;
+	 *    the costs can be changed as in -p:mul=8,register=1 (see TimingModel.setCosts)
+	 * -w puts a write buffer in front of the memory (implies -p), as in -w:4/8 (the entries and the cycles per write),
+	 *    and shows its statistics when the program halts
+	 * @param args
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		boolean traced = false;
+		boolean compressed = false;
+		boolean counted = false;
+		String timed = null; //the costs changed (empty if none was changed)
+		WriteBuffer writeBuffer = null;
+		String filename = "operacoes";
+		for (String arg : args) {
+			if ("-t".equals(arg))
+				traced = true;
+			else if ("-c".equals(arg))
+				traced = compressed = true;
+			else if ("-s".equals(arg))
+				counted = true;
+			else if (arg.startsWith("-p"))
+				timed = arg.startsWith("-p:") ? arg.substring(3) : "";
+			else if (arg.startsWith("-w")) {
+				if (arg.startsWith("-w:")) {
+					String fields[] = arg.substring(3).split("/");
+					writeBuffer = new WriteBuffer(Integer.parseInt(fields[0]),
+							(fields.length > 1) ? Integer.parseInt(fields[1]) : WriteBuffer.DEFAULT_DRAIN_CYCLES);
+				}
+				else
+					writeBuffer = new WriteBuffer();
+				if (timed == null)
+					timed = "";
+			}
+			else
+				filename = arg;
+		}
+		Architecture arch = new Architecture(!traced && !counted && (timed == null));
+		arch.readExec(filename);
+		if (traced)
+			arch.startTrace(filename, compressed);
+		if (counted) {
+			arch.enableCounters().register(filename);
+			arch.setCountersDump(System.out);
+		}
+		if (timed != null) {
+			TimingModel timing = arch.enableTiming();
+			if (!timed.isEmpty())
+				timing.setCosts(timed);
+		}
+		if (writeBuffer != null)
+			arch.setWriteBuffer(writeBuffer);
 		arch.controlUnitEexec();
+		arch.stopTrace();
+		if (timed != null)
+			System.out.print(arch.getTiming().report());
+		if (writeBuffer != null)
+			System.out.print(writeBuffer.report());
 	}
 	
 
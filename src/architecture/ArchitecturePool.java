@@ -0,0 +1,90 @@
+package architecture;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+
+/**
+ * This class keeps architectures ready to run the same program.
+ * The program is loaded only once, in a first architecture, and its state is kept in a snapshot.
+ * An architecture given back to the pool is restored to this snapshot, so the next one to take it
+ * finds the program just loaded, without creating the components again.
+ *
+ * The pool can be used by many threads at the same time, but each architecture must be used
+ * by only one thread until it is given back.
+ */
+public class ArchitecturePool {
+
+	private ExecutionEngine engine;
+	private ArchitectureSnapshot image; //the state just after the program was loaded
+	private ArrayDeque<Architecture> free;
+	private int created;
+
+	/**
+	 * This constructor loads the program (as in Architecture.readExec) into the first architecture of the pool
+	 * @param filename
+	 * @param engine
+	 * @throws IOException
+	 */
+	public ArchitecturePool(String filename, ExecutionEngine engine) throws IOException {
+		this.engine = engine;
+		this.free = new ArrayDeque<Architecture>();
+		Architecture first = newArchitecture();
+		first.readExec(filename);
+		image = first.snapshot();
+		free.push(first);
+	}
+
+	/**
+	 * This constructor uses a snapshot taken before as the initial state of the architectures
+	 * @param image
+	 * @param engine
+	 */
+	public ArchitecturePool(ArchitectureSnapshot image, ExecutionEngine engine) {
+		this.engine = engine;
+		this.free = new ArrayDeque<Architecture>();
+		this.image = image;
+	}
+
+	private Architecture newArchitecture() {
+		created++;
+		return new Architecture(false, engine);
+	}
+
+	/**
+	 * This method returns an architecture in the initial state.
+	 * A new one is created only if there is no free architecture in the pool
+	 * @return
+	 */
+	public synchronized Architecture acquire() {
+		Architecture arch = free.poll();
+		if (arch == null) {
+			arch = newArchitecture();
+			arch.restore(image);
+		}
+		return arch;
+	}
+
+	/**
+	 * This method gives back an architecture, that is restored to the initial state
+	 * @param arch
+	 */
+	public void release(Architecture arch) {
+		arch.restore(image); //done out of the lock, since it copies the whole memory
+		synchronized (this) {
+			free.push(arch);
+		}
+	}
+
+	/**
+	 * This method returns how many architectures were created by this pool
+	 * @return
+	 */
+	public synchronized int getCreated() {
+		return created;
+	}
+
+	public synchronized int getFree() {
+		return free.size();
+	}
+
+}
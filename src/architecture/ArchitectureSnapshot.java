@@ -0,0 +1,90 @@
+package architecture;
+
+/**
+ * This class keeps a copy of the whole state of an architecture:
+ * the registers (and the flags bits), the buses, the demux, the ula internal state,
+ * the memory (with its store handshake) and the status memory.
+ * It is created by Architecture.snapshot() and used by Architecture.restore(),
+ * so the same snapshot may be restored many times without allocating anything.
+ */
+public class ArchitectureSnapshot {
+
+	public static final int ULA_STATE = 3; //the ula registers and its internal bus
+
+	private int registers[]; //indexed as the architecture registers list
+	private int flagBits[];
+	private int buses[]; //extbus1, intbus1 and intbus2
+	private int demux;
+	private int ula[];
+	private int memory[];
+	private int memoryStorePosition;
+	private int statusMemory[];
+	private int statusMemoryStorePosition;
+	private boolean halt;
+
+	public ArchitectureSnapshot(int registersCount, int flagsCount, int memorySize, int statusMemorySize) {
+		registers = new int[registersCount];
+		flagBits = new int[flagsCount];
+		buses = new int[3];
+		ula = new int[ULA_STATE];
+		memory = new int[memorySize];
+		statusMemory = new int[statusMemorySize];
+	}
+
+	public int[] getRegisters() {
+		return registers;
+	}
+
+	public int[] getFlagBits() {
+		return flagBits;
+	}
+
+	public int[] getBuses() {
+		return buses;
+	}
+
+	public int getDemux() {
+		return demux;
+	}
+
+	public void setDemux(int demux) {
+		this.demux = demux;
+	}
+
+	public int[] getUla() {
+		return ula;
+	}
+
+	public int[] getMemory() {
+		return memory;
+	}
+
+	public int getMemoryStorePosition() {
+		return memoryStorePosition;
+	}
+
+	public void setMemoryStorePosition(int memoryStorePosition) {
+		this.memoryStorePosition = memoryStorePosition;
+	}
+
+	public int[] getStatusMemory() {
+		return statusMemory;
+	}
+
+	public int getStatusMemoryStorePosition() {
+		return statusMemoryStorePosition;
+	}
+
+	public void setStatusMemoryStorePosition(int statusMemoryStorePosition) {
+		this.statusMemoryStorePosition = statusMemoryStorePosition;
+	}
+
+	public boolean isHalt() {
+		return halt;
+	}
+
+	public void setHalt(boolean halt) {
+		this.halt = halt;
+	}
+
+}
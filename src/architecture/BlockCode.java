@@ -0,0 +1,20 @@
+package architecture;
+
+import components.Memory;
+
+/**
+ * This interface is implemented by the classes generated by the block compiler.
+ * Each class executes a whole basic block over the register file of the functional engine
+ */
+public interface BlockCode {
+
+	/**
+	 * This method executes the block
+	 * @param registers the register file (followed by the flags bits)
+	 * @param memory
+	 * @param statusMemory
+	 * @return the address of the next instruction (the new PC)
+	 */
+	public int run(int registers[], Memory memory, Memory statusMemory);
+
+}
@@ -0,0 +1,440 @@
+package architecture;
+
+import components.Memory;
+
+/**
+ * This class translates a basic block of the program (a sequence of instructions without jumps,
+ * ended by a jump or by an instruction that can not be compiled) into a new JVM class.
+ * The generated class works over the register file of the functional engine, so the
+ * state it produces is the same one produced by the functional engine (and by the microprograms).
+ *
+ * The instructions operands are read only once, when the block is compiled. So the block
+ * must be discarded if any of its memory positions is overwritten.
+ *
+ * The generated classes can be unloaded only together with their class loader, so the classes are
+ * defined in generations: reset() starts a new class loader, and the old one is released
+ * as soon as the blocks of its generation are discarded.
+ */
+public class BlockCompiler {
+
+	public static final int MAX_INSTRUCTIONS = 64;
+	//a block also ends after a store into the memory positions it may use
+	public static final int MAX_BLOCK_LENGTH = MAX_INSTRUCTIONS * 4;
+
+	private static final String BLOCK_CODE = "architecture/BlockCode";
+	private static final String MEMORY = "components/Memory";
+	private static final String RUN_DESCRIPTOR = "([ILcomponents/Memory;Lcomponents/Memory;)I";
+
+	//locals of the generated method (0 is this)
+	private static final int LOCAL_RESULT = 4;
+	private static final int LOCAL_IR = 5;
+
+	private BlockClassLoader loader; //the class loader of the current generation
+	private int compiledClasses;
+	private int generations;
+
+	/**
+	 * The generated classes are defined by this class loader, so they can see BlockCode and Memory
+	 */
+	private static class BlockClassLoader extends ClassLoader {
+
+		public BlockClassLoader() {
+			super(BlockCode.class.getClassLoader());
+		}
+
+		public Class<?> define(String name, byte bytes[]) {
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+
+	public BlockCompiler() {
+		reset();
+	}
+
+	/**
+	 * This method starts a new generation: the next blocks are defined by a new class loader.
+	 * It must be used when all the blocks compiled before are discarded, so their classes can be unloaded
+	 */
+	public void reset() {
+		loader = new BlockClassLoader();
+		generations++;
+	}
+
+	/**
+	 * This method returns true if the instruction can be executed by a compiled block
+	 * @param memory
+	 * @param address
+	 * @return
+	 */
+	private static boolean isCompilable(Memory memory, int address) {
+		int command = memory.getData(address);
+		int length = Architecture.getOperandsCount(command) + 1;
+		if ((command < 0) || (command > 25)) //the end of the program
+			return false;
+		if (address + length > memory.getSize()) //the whole instruction must be in the memory
+			return false;
+		switch (command) {
+		case 0: case 4: case 10: case 13: case 19: case 20: case 21: case 22:
+			return FunctionalEngine.isGeneral(memory.getData(address+1)) && FunctionalEngine.isGeneral(memory.getData(address+2));
+		case 1: case 3: case 5: case 7: case 8: case 11: case 14:
+			return FunctionalEngine.isGeneral(memory.getData(address+2));
+		case 15:
+			return FunctionalEngine.isGeneral(memory.getData(address+1));
+		case 2: case 6: case 9: case 12:
+			return FunctionalEngine.isGeneral(memory.getData(address+1)) && isInMemory(memory, memory.getData(address+2));
+		case 24:
+			return isInMemory(memory, memory.getData(address+1));
+		default:
+			return true;
+		}
+	}
+
+	private static boolean isInMemory(Memory memory, int position) {
+		return (position >= 0) && (position < memory.getSize());
+	}
+
+	private static boolean isJump(int command) {
+		return (command >= 16) && (command <= 22);
+	}
+
+	/**
+	 * This method returns the memory address written by a store instruction, or -1 if the instruction does not store
+	 * @param memory
+	 * @param address
+	 * @return
+	 */
+	private static int storeAddress(Memory memory, int address) {
+		int command = memory.getData(address);
+		switch (command) {
+		case 2: case 6: case 9: case 12:
+			return memory.getData(address+2);
+		case 24:
+			return memory.getData(address+1);
+		default:
+			return -1;
+		}
+	}
+
+	/**
+	 * This method compiles the basic block starting at the address
+	 * @param memory
+	 * @param start
+	 * @return the compiled block, or null if the first instruction can not be compiled
+	 */
+	public CompiledBlock compile(Memory memory, int start) {
+		//first, finds where the block ends
+		int address = start;
+		int instructions = 0;
+		while ((instructions < MAX_INSTRUCTIONS) && isCompilable(memory, address)) {
+			int command = memory.getData(address);
+			int stored = storeAddress(memory, address);
+			address += Architecture.getOperandsCount(command) + 1;
+			instructions++;
+			if (isJump(command))
+				break;
+			if ((stored >= start) && (stored < start + MAX_BLOCK_LENGTH)) //the block may be changing itself
+				break;
+		}
+		if (instructions == 0)
+			return null;
+
+		//then, generates the code
+		ClassFileWriter writer = new ClassFileWriter();
+		ClassFileWriter.ByteCode code = writer.newByteCode();
+		address = start;
+		for (int i = 0; i < instructions; i++) {
+			emitInstruction(code, memory, address, i == instructions - 1);
+			address += Architecture.getOperandsCount(memory.getData(address)) + 1;
+		}
+
+		String name = "architecture/GeneratedBlock" + start + "_" + (compiledClasses++);
+		byte bytes[] = writer.toByteArray(name, BLOCK_CODE, "run", RUN_DESCRIPTOR, code, 8, 6);
+		BlockCode blockCode;
+		try {
+			blockCode = (BlockCode) loader.define(name.replace('/', '.'), bytes).getConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+		return new CompiledBlock(start, address - start, instructions, blockCode);
+	}
+
+	public int getCompiledClasses() {
+		return compiledClasses;
+	}
+
+	public int getGenerations() {
+		return generations;
+	}
+
+	//the helpers below leave the value in the stack (the pushes) or consume it (the stores)
+
+	private static void pushRegister(ClassFileWriter.ByteCode code, int register) {
+		code.op(ClassFileWriter.ByteCode.ALOAD_1);
+		code.pushInt(register);
+		code.op(ClassFileWriter.ByteCode.IALOAD);
+	}
+
+	/**
+	 * The register array and index are pushed before the value; iastore must be emitted after the value
+	 */
+	private static void prepareRegisterStore(ClassFileWriter.ByteCode code, int register) {
+		code.op(ClassFileWriter.ByteCode.ALOAD_1);
+		code.pushInt(register);
+	}
+
+	private static void pushMemory(ClassFileWriter.ByteCode code, int position) {
+		code.op(ClassFileWriter.ByteCode.ALOAD_2);
+		code.pushInt(position);
+		code.invoke(ClassFileWriter.ByteCode.INVOKEVIRTUAL, MEMORY, "getData", "(I)I");
+	}
+
+	private static void pushLocal(ClassFileWriter.ByteCode code, int local) {
+		code.op(ClassFileWriter.ByteCode.ILOAD, local);
+	}
+
+	private static void storeLocal(ClassFileWriter.ByteCode code, int local) {
+		code.op(ClassFileWriter.ByteCode.ISTORE, local);
+	}
+
+	/**
+	 * This method copies a local into a register
+	 */
+	private static void storeRegister(ClassFileWriter.ByteCode code, int register, int local) {
+		prepareRegisterStore(code, register);
+		pushLocal(code, local);
+		code.op(ClassFileWriter.ByteCode.IASTORE);
+	}
+
+	/**
+	 * This method copies a local into a memory position
+	 */
+	private static void storeMemory(ClassFileWriter.ByteCode code, int position, int local) {
+		code.op(ClassFileWriter.ByteCode.ALOAD_2);
+		code.pushInt(position);
+		pushLocal(code, local);
+		code.invoke(ClassFileWriter.ByteCode.INVOKEVIRTUAL, MEMORY, "setData", "(II)V");
+	}
+
+	/**
+	 * The flags are computed without jumps:
+	 * negative is the sign bit and zero is 1 only when both result and -result have the sign bit 0
+	 */
+	private static void setStatusFlags(ClassFileWriter.ByteCode code) {
+		prepareRegisterStore(code, FunctionalEngine.BIT_ZERO);
+		pushLocal(code, LOCAL_RESULT);
+		pushLocal(code, LOCAL_RESULT);
+		code.op(ClassFileWriter.ByteCode.INEG);
+		code.op(ClassFileWriter.ByteCode.IOR);
+		code.pushInt(31);
+		code.op(ClassFileWriter.ByteCode.IUSHR);
+		code.pushInt(1);
+		code.op(ClassFileWriter.ByteCode.IXOR);
+		code.op(ClassFileWriter.ByteCode.IASTORE);
+		prepareRegisterStore(code, FunctionalEngine.BIT_NEGATIVE);
+		pushLocal(code, LOCAL_RESULT);
+		code.pushInt(31);
+		code.op(ClassFileWriter.ByteCode.IUSHR);
+		code.op(ClassFileWriter.ByteCode.IASTORE);
+	}
+
+	/**
+	 * This method writes the status memory and returns address0 if the bit is 0 or address1 if the bit is 1,
+	 * computed as address0 + ((address1 - address0) & -bit)
+	 */
+	private static void branch(ClassFileWriter.ByteCode code, int bit, int address0, int address1) {
+		code.op(ClassFileWriter.ByteCode.ALOAD_3);
+		code.pushInt(0);
+		code.pushInt(address0);
+		code.invoke(ClassFileWriter.ByteCode.INVOKEVIRTUAL, MEMORY, "setData", "(II)V");
+		code.op(ClassFileWriter.ByteCode.ALOAD_3);
+		code.pushInt(1);
+		code.pushInt(address1);
+		code.invoke(ClassFileWriter.ByteCode.INVOKEVIRTUAL, MEMORY, "setData", "(II)V");
+		code.pushInt(address0);
+		code.pushInt(address1 - address0);
+		pushRegister(code, bit);
+		code.op(ClassFileWriter.ByteCode.INEG);
+		code.op(ClassFileWriter.ByteCode.IAND);
+		code.op(ClassFileWriter.ByteCode.IADD);
+		code.op(ClassFileWriter.ByteCode.IRETURN);
+	}
+
+	/**
+	 * This method generates the code of one instruction, with the same semantics of FunctionalEngine.execute().
+	 * IR is written only by the last instruction of the block, since nobody reads it in the middle of the block.
+	 * @param code
+	 * @param memory
+	 * @param pc
+	 * @param last
+	 */
+	private static void emitInstruction(ClassFileWriter.ByteCode code, Memory memory, int pc, boolean last) {
+		int command = memory.getData(pc);
+		int operand1 = memory.getData(pc+1);
+		int operand2 = memory.getData(pc+2);
+		int next = pc + Architecture.getOperandsCount(command) + 1;
+		boolean irIsResult = false; //otherwise IR keeps the command, or is written by the case itself
+		switch (command) {
+		case 0: //addRegReg
+		case 4: //subRegReg
+		case 10: //imulRegReg
+			pushRegister(code, operand1);
+			pushRegister(code, operand2);
+			code.op(arithmetic(command));
+			storeLocal(code, LOCAL_RESULT);
+			setStatusFlags(code);
+			storeRegister(code, operand2, LOCAL_RESULT);
+			break;
+		case 1: //addMemReg
+		case 5: //subMemReg
+		case 8: //imulMemReg
+			pushMemory(code, operand1);
+			storeLocal(code, LOCAL_IR);
+			pushLocal(code, LOCAL_IR);
+			pushRegister(code, operand2);
+			code.op(arithmetic(command));
+			storeLocal(code, LOCAL_RESULT);
+			setStatusFlags(code);
+			storeRegister(code, operand2, LOCAL_RESULT);
+			if (last)
+				storeRegister(code, FunctionalEngine.IR, LOCAL_IR);
+			break;
+		case 2: //addRegMem
+		case 6: //subRegMem
+		case 9: //imulRegMem
+			pushRegister(code, operand1);
+			pushMemory(code, operand2);
+			code.op(arithmetic(command));
+			storeLocal(code, LOCAL_RESULT);
+			setStatusFlags(code);
+			storeMemory(code, operand2, LOCAL_RESULT);
+			irIsResult = true;
+			break;
+		case 3: //addImmReg
+		case 7: //subImmReg
+			code.pushInt(operand1);
+			pushRegister(code, operand2);
+			code.op(arithmetic(command));
+			storeLocal(code, LOCAL_RESULT);
+			setStatusFlags(code);
+			storeRegister(code, operand2, LOCAL_RESULT);
+			if (last)
+				setIr(code, operand1);
+			break;
+		case 11: //moveMemReg
+			pushMemory(code, operand1);
+			storeLocal(code, LOCAL_RESULT);
+			storeRegister(code, operand2, LOCAL_RESULT);
+			irIsResult = true;
+			break;
+		case 12: //moveRegMem
+			pushRegister(code, operand1);
+			storeLocal(code, LOCAL_RESULT);
+			storeMemory(code, operand2, LOCAL_RESULT);
+			irIsResult = true;
+			break;
+		case 13: //moveRegReg
+			pushRegister(code, operand1);
+			storeLocal(code, LOCAL_RESULT);
+			storeRegister(code, operand2, LOCAL_RESULT);
+			break;
+		case 14: //moveImmReg
+			prepareRegisterStore(code, operand2);
+			code.pushInt(operand1);
+			code.op(ClassFileWriter.ByteCode.IASTORE);
+			if (last)
+				setIr(code, operand1);
+			break;
+		case 15: //incReg
+			pushRegister(code, operand1);
+			code.pushInt(1);
+			code.op(ClassFileWriter.ByteCode.IADD);
+			storeLocal(code, LOCAL_RESULT);
+			setStatusFlags(code);
+			storeRegister(code, operand1, LOCAL_RESULT);
+			break;
+		case 16: //jmp
+			setIr(code, command);
+			code.pushInt(operand1);
+			code.op(ClassFileWriter.ByteCode.IRETURN);
+			return;
+		case 17: //jn
+			setIr(code, command);
+			branch(code, FunctionalEngine.BIT_NEGATIVE, next, operand1);
+			return;
+		case 18: //jz
+			setIr(code, command);
+			branch(code, FunctionalEngine.BIT_ZERO, next, operand1);
+			return;
+		case 19: //jeq
+		case 20: //jneq
+		case 21: //jgt
+		case 22: //jlw
+			int address = memory.getData(pc+3);
+			setIr(code, (command >= 21) ? operand2 : command); //jgt and jlw use IR to keep the regB id
+			pushRegister(code, operand1);
+			pushRegister(code, operand2);
+			code.op(ClassFileWriter.ByteCode.ISUB);
+			storeLocal(code, LOCAL_RESULT);
+			setStatusFlags(code);
+			if (command == 19)
+				branch(code, FunctionalEngine.BIT_ZERO, next, address);
+			else if (command == 20)
+				branch(code, FunctionalEngine.BIT_ZERO, address, next);
+			else if (command == 21)
+				branch(code, FunctionalEngine.BIT_ZERO, next, address);
+			else
+				branch(code, FunctionalEngine.BIT_NEGATIVE, next, address);
+			return;
+		case 23: //read
+			pushMemory(code, operand1);
+			storeLocal(code, LOCAL_RESULT);
+			storeRegister(code, 0, LOCAL_RESULT);
+			irIsResult = true;
+			break;
+		case 24: //store
+			pushRegister(code, 0);
+			storeLocal(code, LOCAL_RESULT);
+			storeMemory(code, operand1, LOCAL_RESULT);
+			irIsResult = true;
+			break;
+		case 25: //ldi
+			prepareRegisterStore(code, 0);
+			code.pushInt(operand1);
+			code.op(ClassFileWriter.ByteCode.IASTORE);
+			if (last)
+				setIr(code, operand1);
+			break;
+		default:
+			throw new IllegalArgumentException("the instruction at " + pc + " can not be compiled");
+		}
+		if (last) {
+			if (irIsResult)
+				storeRegister(code, FunctionalEngine.IR, LOCAL_RESULT);
+			else if (command == 0 || command == 4 || command == 10 || command == 13 || command == 15)
+				setIr(code, command);
+			//the block did not end with a jump, so the next PC is known
+			code.pushInt(next);
+			code.op(ClassFileWriter.ByteCode.IRETURN);
+		}
+	}
+
+	/**
+	 * This method returns the bytecode of the ula operation performed by the command
+	 * @param command
+	 * @return
+	 */
+	private static int arithmetic(int command) {
+		if (command <= 3)
+			return ClassFileWriter.ByteCode.IADD;
+		if (command <= 7)
+			return ClassFileWriter.ByteCode.ISUB;
+		return ClassFileWriter.ByteCode.IMUL;
+	}
+
+	private static void setIr(ClassFileWriter.ByteCode code, int value) {
+		prepareRegisterStore(code, FunctionalEngine.IR);
+		code.pushInt(value);
+		code.op(ClassFileWriter.ByteCode.IASTORE);
+	}
+
+}
@@ -0,0 +1,24 @@
+package architecture;
+
+/**
+ * This interface is implemented by the branch predictors: they guess if a conditional jump
+ * (jn, jz, jeq, jneq, jgt and jlw) is taken before it is executed, and learn from what really happened
+ * (see BranchUnit)
+ */
+public interface BranchPredictor {
+
+	/**
+	 * This method guesses if the conditional jump in the address is taken
+	 * @param pc
+	 * @return
+	 */
+	public boolean predict(int pc);
+
+	/**
+	 * This method is called just after the conditional jump was executed, with its outcome
+	 * @param pc
+	 * @param taken
+	 */
+	public void update(int pc, boolean taken);
+
+}
@@ -0,0 +1,60 @@
+package architecture;
+
+import java.util.Arrays;
+
+/**
+ * This class is a branch target buffer: a direct mapped table with the target of the jumps already taken,
+ * indexed by the lower bits of their addresses. A jump found in it is redirected in the fetch itself,
+ * without waiting for the decode to read the target
+ */
+public class BranchTargetBuffer {
+
+	public static final int DEFAULT_ENTRIES = 256;
+
+	private int tags[]; //the address of the jump in each entry (-1 if the entry is empty)
+	private int targets[];
+	private int mask;
+
+	public BranchTargetBuffer() {
+		this(DEFAULT_ENTRIES);
+	}
+
+	/**
+	 * @param entries the amount of entries (a power of 2)
+	 */
+	public BranchTargetBuffer(int entries) {
+		if ((entries <= 0) || ((entries & (entries - 1)) != 0))
+			throw new IllegalArgumentException("The entries must be a power of 2: "+entries);
+		tags = new int[entries];
+		Arrays.fill(tags, -1);
+		targets = new int[entries];
+		mask = entries - 1;
+	}
+
+	/**
+	 * This method returns the target of the jump in the address (-1 if it is not in the buffer)
+	 * @param pc
+	 * @return
+	 */
+	public int lookup(int pc) {
+		int index = pc & mask;
+		return (tags[index] == pc) ? targets[index] : -1;
+	}
+
+	/**
+	 * This method keeps the target of the jump in the address, replacing the jump that was in its entry
+	 * @param pc
+	 * @param target
+	 */
+	public void update(int pc, int target) {
+		int index = pc & mask;
+		tags[index] = pc;
+		targets[index] = target;
+	}
+
+	@Override
+	public String toString() {
+		return "BTB ("+tags.length+" entries)";
+	}
+
+}
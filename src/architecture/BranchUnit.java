@@ -0,0 +1,335 @@
+package architecture;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.TreeMap;
+
+import components.Memory;
+
+/**
+ * This class simulates the branch prediction: each jump executed (its address, target and outcome) is given
+ * to the predictor (the conditional jumps) and to the branch target buffer (all the jumps taken),
+ * and the statistics of each jump are kept.
+ *
+ * A jump costs cycles when:
+ * - the direction of a conditional jump was mispredicted: the penalty (by default 2 cycles,
+ *   as the pipeline finds the direction in EX)
+ * - a jump taken (jmp, or a conditional jump predicted taken) was not in the branch target buffer,
+ *   so the target is known only after the decode: the target penalty (by default 1 cycle).
+ *   Without a buffer, it happens to every jump taken.
+ * The unit can run a program by itself (see run) or be used by a Pipeline (see Pipeline.setBranchUnit)
+ */
+public class BranchUnit {
+
+	//the outcomes of a jump
+	public static final int CORRECT = 0;
+	public static final int TARGET_MISSED = 1;
+	public static final int MISPREDICTED = 2;
+
+	public static final int DEFAULT_PENALTY = 2;
+	public static final int DEFAULT_TARGET_PENALTY = 1;
+
+	private static final int JMP = 16;
+
+	/**
+	 * This class keeps the statistics of a jump
+	 */
+	public static class Branch {
+
+		private int pc;
+		private int command;
+		private long executions;
+		private long taken;
+		private long mispredictions;
+		private long targetMisses;
+		private long penaltyCycles;
+
+		private Branch(int pc, int command) {
+			this.pc = pc;
+			this.command = command;
+		}
+
+		public int getPc() {
+			return pc;
+		}
+
+		public int getCommand() {
+			return command;
+		}
+
+		public long getExecutions() {
+			return executions;
+		}
+
+		public long getTaken() {
+			return taken;
+		}
+
+		public long getMispredictions() {
+			return mispredictions;
+		}
+
+		public long getTargetMisses() {
+			return targetMisses;
+		}
+
+		public long getPenaltyCycles() {
+			return penaltyCycles;
+		}
+
+		/**
+		 * This method returns the fraction of the executions whose direction was predicted right
+		 * @return
+		 */
+		public double getAccuracy() {
+			return (executions == 0) ? 0 : 1 - (double) mispredictions / executions;
+		}
+
+	}
+
+	private BranchPredictor predictor;
+	private BranchTargetBuffer buffer; //null if there is no buffer
+	private int penalty;
+	private int targetPenalty;
+	private TreeMap<Integer, Branch> branches; //indexed by the address of the jump
+
+	/**
+	 * @param predictor
+	 * @param buffer the branch target buffer (null if there is none)
+	 */
+	public BranchUnit(BranchPredictor predictor, BranchTargetBuffer buffer) {
+		this.predictor = predictor;
+		this.buffer = buffer;
+		penalty = DEFAULT_PENALTY;
+		targetPenalty = DEFAULT_TARGET_PENALTY;
+		branches = new TreeMap<Integer, Branch>();
+	}
+
+	public BranchPredictor getPredictor() {
+		return predictor;
+	}
+
+	public BranchTargetBuffer getBuffer() {
+		return buffer;
+	}
+
+	/**
+	 * This method sets the cycles lost by a conditional jump mispredicted
+	 * @param penalty
+	 */
+	public void setPenalty(int penalty) {
+		this.penalty = penalty;
+	}
+
+	public int getPenalty() {
+		return penalty;
+	}
+
+	/**
+	 * This method sets the cycles lost by a jump taken whose target was not in the branch target buffer
+	 * @param targetPenalty
+	 */
+	public void setTargetPenalty(int targetPenalty) {
+		this.targetPenalty = targetPenalty;
+	}
+
+	public int getTargetPenalty() {
+		return targetPenalty;
+	}
+
+	/**
+	 * This method returns if the command is a jump (jmp or a conditional jump)
+	 * @param command
+	 * @return
+	 */
+	public static boolean isJump(int command) {
+		return (command >= JMP) && (command <= JMP + 6);
+	}
+
+	/**
+	 * This method predicts the jump, learns its outcome and counts it
+	 * @param pc the address of the jump
+	 * @param command jmp or one of the conditional jumps
+	 * @param target the address the jump goes when it is taken
+	 * @param taken
+	 * @return CORRECT, TARGET_MISSED or MISPREDICTED
+	 */
+	public int branch(int pc, int command, int target, boolean taken) {
+		int predictedTarget = (buffer == null) ? -1 : buffer.lookup(pc);
+		int outcome;
+		if (command == JMP)
+			outcome = (predictedTarget == target) ? CORRECT : TARGET_MISSED;
+		else {
+			boolean predicted = predictor.predict(pc);
+			predictor.update(pc, taken);
+			if (predicted != taken)
+				outcome = MISPREDICTED;
+			else if (taken && (predictedTarget != target))
+				outcome = TARGET_MISSED;
+			else
+				outcome = CORRECT;
+		}
+		if (taken && (buffer != null))
+			buffer.update(pc, target);
+
+		Branch branch = branches.get(pc);
+		if (branch == null) {
+			branch = new Branch(pc, command);
+			branches.put(pc, branch);
+		}
+		branch.executions++;
+		if (taken)
+			branch.taken++;
+		if (outcome == MISPREDICTED) {
+			branch.mispredictions++;
+			branch.penaltyCycles += penalty;
+		}
+		else if (outcome == TARGET_MISSED) {
+			branch.targetMisses++;
+			branch.penaltyCycles += targetPenalty;
+		}
+		return outcome;
+	}
+
+	/**
+	 * This method executes the instruction pointed by PC and, if it is a jump, gives it to the unit
+	 * @param arch
+	 * @return false if the instruction was the end of the program
+	 */
+	public boolean step(Architecture arch) {
+		Memory memory = arch.getMemory();
+		int pc = arch.getPC().getData();
+		int command = memory.getData(pc);
+		boolean running = arch.step();
+		if (isJump(command)) {
+			int size = Architecture.getOperandsCount(command) + 1;
+			int target = memory.getData(pc + size - 1); //the last operand
+			branch(pc, command, target, arch.getPC().getData() != pc + size);
+		}
+		return running;
+	}
+
+	/**
+	 * This method executes the program stored in the memory of the architecture, until the end of the program
+	 * or until the amount of instructions is executed
+	 * @param arch
+	 * @param maxInstructions
+	 * @return the amount of instructions executed (the end of the program too)
+	 */
+	public long run(Architecture arch, long maxInstructions) {
+		long count = 0;
+		boolean running = true;
+		while (running && (count < maxInstructions)) {
+			running = step(arch);
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * This method returns the statistics of each jump executed, sorted by the address
+	 * @return
+	 */
+	public Collection<Branch> getBranches() {
+		return branches.values();
+	}
+
+	/**
+	 * This method returns the statistics of the jump in the address (null if it was never executed)
+	 * @param pc
+	 * @return
+	 */
+	public Branch getBranch(int pc) {
+		return branches.get(pc);
+	}
+
+	public long getExecutions() {
+		long sum = 0;
+		for (Branch branch : branches.values())
+			sum += branch.executions;
+		return sum;
+	}
+
+	public long getMispredictions() {
+		long sum = 0;
+		for (Branch branch : branches.values())
+			sum += branch.mispredictions;
+		return sum;
+	}
+
+	public long getTargetMisses() {
+		long sum = 0;
+		for (Branch branch : branches.values())
+			sum += branch.targetMisses;
+		return sum;
+	}
+
+	public long getPenaltyCycles() {
+		long sum = 0;
+		for (Branch branch : branches.values())
+			sum += branch.penaltyCycles;
+		return sum;
+	}
+
+	/**
+	 * This method returns the fraction of all the jumps whose direction was predicted right
+	 * @return
+	 */
+	public double getAccuracy() {
+		long executions = getExecutions();
+		return (executions == 0) ? 0 : 1 - (double) getMispredictions() / executions;
+	}
+
+	/**
+	 * This method clears the statistics (the predictor and the buffer keep what they learned)
+	 */
+	public void reset() {
+		branches.clear();
+	}
+
+	/**
+	 * This method returns the statistics as text, one line per jump
+	 * @param commandsList the names of the commands
+	 * @return
+	 */
+	public String report(ArrayList<String> commandsList) {
+		StringBuilder text = new StringBuilder();
+		text.append(String.format("%s%s, penalty %d, target penalty %d%n", predictor,
+				(buffer == null) ? "" : ", "+buffer, penalty, targetPenalty));
+		text.append(String.format("jumps: %d, accuracy: %.2f%%, mispredictions: %d, target misses: %d, penalty cycles: %d%n",
+				getExecutions(), getAccuracy() * 100, getMispredictions(), getTargetMisses(), getPenaltyCycles()));
+		for (Branch branch : branches.values())
+			text.append(String.format("  %5d %-5s %8d executions %6.2f%% taken %7.2f%% accuracy %8d penalty cycles%n",
+					branch.pc, commandsList.get(branch.command), branch.executions,
+					100.0 * branch.taken / branch.executions, branch.getAccuracy() * 100, branch.penaltyCycles));
+		return text.toString();
+	}
+
+	/**
+	 * Usage: BranchUnit [filename [penalty [maxInstructions]]] (the default program is operacoes, that never ends,
+	 * so by default only the first Pipeline.DEFAULT_MAX_INSTRUCTIONS instructions are executed)
+	 * The program runs with each predictor (static not taken without buffer, 2-bit and gshare with a buffer),
+	 * and the statistics of each one are shown
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		String filename = (args.length > 0) ? args[0] : "operacoes";
+		int penalty = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_PENALTY;
+		long maxInstructions = (args.length > 2) ? Long.parseLong(args[2]) : Pipeline.DEFAULT_MAX_INSTRUCTIONS;
+		BranchUnit units[] = {
+			new BranchUnit(new NotTakenPredictor(), null),
+			new BranchUnit(new TwoBitPredictor(), new BranchTargetBuffer()),
+			new BranchUnit(new GsharePredictor(), new BranchTargetBuffer())
+		};
+		for (BranchUnit unit : units) {
+			Architecture arch = new Architecture();
+			arch.readExec(filename);
+			unit.setPenalty(penalty);
+			unit.run(arch, maxInstructions);
+			System.out.print(unit.report(arch.getCommandsList()));
+		}
+	}
+
+}
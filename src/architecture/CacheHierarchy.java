@@ -0,0 +1,191 @@
+package architecture;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import components.Cache;
+import components.Memory;
+
+/**
+ * This class puts an instruction cache and a data cache (L1) in front of the memory of an architecture,
+ * optionally sharing a second level (see setNext in Cache).
+ * Each instruction executed reads its words (the command and the operands) from the instruction cache,
+ * and the memory operands are read and written in the data cache:
+ * - addMemReg, subMemReg, imulMemReg, moveMemReg and read read the memory operand
+ * - addRegMem, subRegMem and imulRegMem read and then write it
+ * - moveRegMem and store write it
+ * The status memory used by the conditional jumps is not cached.
+ *
+ * The accesses are taken from the instructions (and not from the memory calls), so the fetch and the data
+ * are told apart and the caches work with any execution engine
+ */
+public class CacheHierarchy {
+
+	public static final String DEFAULT_L1 = "64/4/2/lru/wb";
+
+	private Cache instructions;
+	private Cache data;
+
+	/**
+	 * @param instructions the L1 instruction cache
+	 * @param data the L1 data cache
+	 */
+	public CacheHierarchy(Cache instructions, Cache data) {
+		this.instructions = instructions;
+		this.data = data;
+	}
+
+	public Cache getInstructionCache() {
+		return instructions;
+	}
+
+	public Cache getDataCache() {
+		return data;
+	}
+
+	/**
+	 * This method returns all the caches, level by level: the L1 instruction cache, the L1 data cache
+	 * and their next levels (each one only once)
+	 * @return
+	 */
+	public ArrayList<Cache> getCaches() {
+		ArrayList<Cache> caches = new ArrayList<Cache>();
+		caches.add(instructions);
+		caches.add(data);
+		for (int i = 0; i < caches.size(); i++) {
+			Cache next = caches.get(i).getNext();
+			if ((next != null) && !caches.contains(next))
+				caches.add(next);
+		}
+		return caches;
+	}
+
+	/**
+	 * This method adds the region (from start to end, inclusive) to all the caches
+	 * @param name
+	 * @param start
+	 * @param end
+	 */
+	public void addRegion(String name, int start, int end) {
+		for (Cache cache : getCaches())
+			cache.addRegion(name, start, end);
+	}
+
+	/**
+	 * This method executes the instruction pointed by PC, accessing the caches as it does
+	 * @param arch
+	 * @return false if the instruction was the end of the program
+	 */
+	public boolean step(Architecture arch) {
+		Memory memory = arch.getMemory();
+		int pc = arch.getPC().getData();
+		int command = memory.getData(pc);
+		int size = ((command >= 0) && (command < arch.getCommandsList().size())) ? Architecture.getOperandsCount(command) + 1 : 1;
+		for (int i = 0; i < size; i++)
+			instructions.read(pc + i);
+		switch (command) {
+		case 1: case 5: case 8: case 11: //addMemReg, subMemReg, imulMemReg, moveMemReg
+		case 23: //read
+			data.read(memory.getData(pc + 1));
+			break;
+		case 2: case 6: case 9: //addRegMem, subRegMem, imulRegMem
+			data.read(memory.getData(pc + 2));
+			data.write(memory.getData(pc + 2));
+			break;
+		case 12: //moveRegMem
+			data.write(memory.getData(pc + 2));
+			break;
+		case 24: //store
+			data.write(memory.getData(pc + 1));
+			break;
+		default:
+		}
+		return arch.step();
+	}
+
+	/**
+	 * This method executes the program stored in the memory of the architecture, until the end of the program
+	 * or until the amount of instructions is executed
+	 * @param arch
+	 * @param maxInstructions
+	 * @return the amount of instructions executed (the end of the program too)
+	 */
+	public long run(Architecture arch, long maxInstructions) {
+		long count = 0;
+		boolean running = true;
+		while (running && (count < maxInstructions)) {
+			running = step(arch);
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * This method empties all the caches and clears their statistics
+	 */
+	public void reset() {
+		for (Cache cache : getCaches())
+			cache.reset();
+	}
+
+	/**
+	 * This method returns the statistics of all the caches as text
+	 * @return
+	 */
+	public String report() {
+		StringBuilder text = new StringBuilder();
+		for (Cache cache : getCaches())
+			text.append(cache.report());
+		return text.toString();
+	}
+
+	/**
+	 * Usage: CacheHierarchy [-i cache] [-d cache] [-2 cache] [-r name:start-end]... [filename [maxInstructions]]
+	 * -i and -d configure the L1 instruction and data caches (by default DEFAULT_L1, see Cache.parse)
+	 * -2 adds a second level shared by both
+	 * -r adds a region (for example -r scratch:301-350)
+	 * The default program is operacoes, that never ends, so by default only the first
+	 * Pipeline.DEFAULT_MAX_INSTRUCTIONS instructions are executed
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		String l1i = DEFAULT_L1, l1d = DEFAULT_L1, l2 = null;
+		ArrayList<String> regions = new ArrayList<String>();
+		ArrayList<String> others = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			if ("-i".equals(args[i]))
+				l1i = args[++i];
+			else if ("-d".equals(args[i]))
+				l1d = args[++i];
+			else if ("-2".equals(args[i]))
+				l2 = args[++i];
+			else if ("-r".equals(args[i]))
+				regions.add(args[++i]);
+			else
+				others.add(args[i]);
+		}
+		String filename = (others.size() > 0) ? others.get(0) : "operacoes";
+		long maxInstructions = (others.size() > 1) ? Long.parseLong(others.get(1)) : Pipeline.DEFAULT_MAX_INSTRUCTIONS;
+
+		CacheHierarchy hierarchy = new CacheHierarchy(Cache.parse("L1I", l1i), Cache.parse("L1D", l1d));
+		if (l2 != null) {
+			Cache shared = Cache.parse("L2", l2);
+			hierarchy.getInstructionCache().setNext(shared);
+			hierarchy.getDataCache().setNext(shared);
+		}
+		for (String region : regions) {
+			int colon = region.indexOf(':');
+			int dash = region.indexOf('-', colon);
+			if ((colon < 0) || (dash < 0))
+				throw new IllegalArgumentException("Expected name:start-end: "+region);
+			hierarchy.addRegion(region.substring(0, colon), Integer.parseInt(region.substring(colon + 1, dash)),
+					Integer.parseInt(region.substring(dash + 1)));
+		}
+		Architecture arch = new Architecture();
+		arch.readExec(filename);
+		hierarchy.run(arch, maxInstructions);
+		System.out.print(hierarchy.report());
+	}
+
+}
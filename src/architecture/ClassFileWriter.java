@@ -0,0 +1,278 @@
+package architecture;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+
+/**
+ * This class writes the bytes of a (very simple) JVM class file.
+ * It is used by the block compiler to generate one class for each hot basic block.
+ *
+ * The generated classes have only a default constructor and one method, whose code
+ * is written into a ByteCode object. The code never has jumps, so no stack map frames are needed.
+ */
+public class ClassFileWriter {
+
+	private static final int JAVA_7 = 51; //the class file version
+	private static final int ACC_PUBLIC = 0x0001;
+	private static final int ACC_FINAL = 0x0010;
+	private static final int ACC_SUPER = 0x0020;
+
+	//constant pool tags
+	private static final int CONSTANT_UTF8 = 1;
+	private static final int CONSTANT_INTEGER = 3;
+	private static final int CONSTANT_CLASS = 7;
+	private static final int CONSTANT_METHODREF = 10;
+	private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+	private ByteArrayOutputStream pool;
+	private DataOutputStream poolOutput;
+	private int poolCount;
+	private HashMap<String, Integer> poolIndexes; //avoids repeated constants
+
+	/**
+	 * This class keeps the bytecode of a method
+	 */
+	public static class ByteCode {
+
+		//the opcodes used by the block compiler
+		public static final int ICONST_0 = 0x03;
+		public static final int BIPUSH = 0x10;
+		public static final int SIPUSH = 0x11;
+		public static final int LDC_W = 0x13;
+		public static final int ILOAD = 0x15;
+		public static final int ALOAD_0 = 0x2a;
+		public static final int ALOAD_1 = 0x2b;
+		public static final int ALOAD_2 = 0x2c;
+		public static final int ALOAD_3 = 0x2d;
+		public static final int IALOAD = 0x2e;
+		public static final int ISTORE = 0x36;
+		public static final int IASTORE = 0x4f;
+		public static final int IADD = 0x60;
+		public static final int ISUB = 0x64;
+		public static final int IMUL = 0x68;
+		public static final int INEG = 0x74;
+		public static final int IUSHR = 0x7c;
+		public static final int IAND = 0x7e;
+		public static final int IOR = 0x80;
+		public static final int IXOR = 0x82;
+		public static final int IRETURN = 0xac;
+		public static final int RETURN = 0xb1;
+		public static final int INVOKEVIRTUAL = 0xb6;
+		public static final int INVOKESPECIAL = 0xb7;
+
+		private ByteArrayOutputStream code = new ByteArrayOutputStream();
+		private ClassFileWriter writer;
+
+		private ByteCode(ClassFileWriter writer) {
+			this.writer = writer;
+		}
+
+		public void op(int opcode) {
+			code.write(opcode);
+		}
+
+		public void op(int opcode, int index) {
+			code.write(opcode);
+			code.write(index);
+		}
+
+		private void u2(int value) {
+			code.write(value >> 8);
+			code.write(value);
+		}
+
+		/**
+		 * This method pushes an int constant using the shortest instruction
+		 * @param value
+		 */
+		public void pushInt(int value) {
+			if ((value >= -1) && (value <= 5))
+				code.write(ICONST_0 + value);
+			else if ((value >= Byte.MIN_VALUE) && (value <= Byte.MAX_VALUE)) {
+				code.write(BIPUSH);
+				code.write(value);
+			}
+			else if ((value >= Short.MIN_VALUE) && (value <= Short.MAX_VALUE)) {
+				code.write(SIPUSH);
+				u2(value);
+			}
+			else {
+				code.write(LDC_W);
+				u2(writer.integer(value));
+			}
+		}
+
+		/**
+		 * This method invokes a method of an object already in the stack
+		 * @param opcode INVOKEVIRTUAL or INVOKESPECIAL
+		 * @param owner the internal name of the class (as components/Memory)
+		 * @param name
+		 * @param descriptor
+		 */
+		public void invoke(int opcode, String owner, String name, String descriptor) {
+			code.write(opcode);
+			u2(writer.methodref(owner, name, descriptor));
+		}
+
+		public int size() {
+			return code.size();
+		}
+	}
+
+	public ClassFileWriter() {
+		pool = new ByteArrayOutputStream();
+		poolOutput = new DataOutputStream(pool);
+		poolCount = 1; //the index 0 is never used
+		poolIndexes = new HashMap<String, Integer>();
+	}
+
+	/**
+	 * This method creates an empty bytecode, whose constants are kept in this class file
+	 * @return
+	 */
+	public ByteCode newByteCode() {
+		return new ByteCode(this);
+	}
+
+	private int utf8(String value) {
+		String key = "U"+value;
+		Integer index = poolIndexes.get(key);
+		if (index != null)
+			return index;
+		try {
+			poolOutput.writeByte(CONSTANT_UTF8);
+			poolOutput.writeUTF(value);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return newIndex(key);
+	}
+
+	private int integer(int value) {
+		String key = "I"+value;
+		Integer index = poolIndexes.get(key);
+		if (index != null)
+			return index;
+		try {
+			poolOutput.writeByte(CONSTANT_INTEGER);
+			poolOutput.writeInt(value);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return newIndex(key);
+	}
+
+	private int classref(String internalName) {
+		String key = "C"+internalName;
+		Integer index = poolIndexes.get(key);
+		if (index != null)
+			return index;
+		int name = utf8(internalName);
+		try {
+			poolOutput.writeByte(CONSTANT_CLASS);
+			poolOutput.writeShort(name);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return newIndex(key);
+	}
+
+	private int methodref(String owner, String name, String descriptor) {
+		String key = "M"+owner+"."+name+descriptor;
+		Integer index = poolIndexes.get(key);
+		if (index != null)
+			return index;
+		int ownerIndex = classref(owner);
+		int nameIndex = utf8(name);
+		int descriptorIndex = utf8(descriptor);
+		int nameAndType;
+		try {
+			poolOutput.writeByte(CONSTANT_NAME_AND_TYPE);
+			poolOutput.writeShort(nameIndex);
+			poolOutput.writeShort(descriptorIndex);
+			nameAndType = newIndex("N"+name+descriptor);
+			poolOutput.writeByte(CONSTANT_METHODREF);
+			poolOutput.writeShort(ownerIndex);
+			poolOutput.writeShort(nameAndType);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return newIndex(key);
+	}
+
+	private int newIndex(String key) {
+		poolIndexes.put(key, poolCount);
+		return poolCount++;
+	}
+
+	/**
+	 * This method returns the bytes of a public final class with a default constructor
+	 * and one public method
+	 * @param className internal name of the class (as architecture/Block0)
+	 * @param interfaceName internal name of the interface implemented by the class
+	 * @param methodName
+	 * @param methodDescriptor
+	 * @param method the method code
+	 * @param maxStack
+	 * @param maxLocals
+	 * @return
+	 */
+	public byte[] toByteArray(String className, String interfaceName, String methodName, String methodDescriptor,
+			ByteCode method, int maxStack, int maxLocals) {
+		//all the constants must be in the pool before it is written
+		int thisClass = classref(className);
+		int superClass = classref("java/lang/Object");
+		int interfaceIndex = classref(interfaceName);
+		int codeName = utf8("Code");
+		int initName = utf8("<init>");
+		int initDescriptor = utf8("()V");
+		int methodNameIndex = utf8(methodName);
+		int methodDescriptorIndex = utf8(methodDescriptor);
+		ByteCode constructor = newByteCode();
+		constructor.op(ByteCode.ALOAD_0);
+		constructor.invoke(ByteCode.INVOKESPECIAL, "java/lang/Object", "<init>", "()V");
+		constructor.op(ByteCode.RETURN);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream output = new DataOutputStream(bytes);
+		try {
+			output.writeInt(0xCAFEBABE);
+			output.writeShort(0);
+			output.writeShort(JAVA_7);
+			output.writeShort(poolCount);
+			pool.writeTo(output);
+			output.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+			output.writeShort(thisClass);
+			output.writeShort(superClass);
+			output.writeShort(1); //one interface
+			output.writeShort(interfaceIndex);
+			output.writeShort(0); //no fields
+			output.writeShort(2); //two methods
+			writeMethod(output, initName, initDescriptor, codeName, constructor, 1, 1);
+			writeMethod(output, methodNameIndex, methodDescriptorIndex, codeName, method, maxStack, maxLocals);
+			output.writeShort(0); //no class attributes
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	private void writeMethod(DataOutputStream output, int name, int descriptor, int codeName,
+			ByteCode code, int maxStack, int maxLocals) throws IOException {
+		output.writeShort(ACC_PUBLIC);
+		output.writeShort(name);
+		output.writeShort(descriptor);
+		output.writeShort(1); //only the Code attribute
+		output.writeShort(codeName);
+		output.writeInt(12 + code.size()); //the attribute length
+		output.writeShort(maxStack);
+		output.writeShort(maxLocals);
+		output.writeInt(code.size());
+		code.code.writeTo(output);
+		output.writeShort(0); //no exceptions table
+		output.writeShort(0); //no code attributes
+	}
+
+}
@@ -0,0 +1,46 @@
+package architecture;
+
+/**
+ * This class keeps a basic block already compiled:
+ * the addresses it uses in the memory and the generated code that executes it
+ */
+public class CompiledBlock {
+	
+	private int start; //the address of the first instruction
+	private int length; //the amount of memory positions used by the instructions
+	private int instructions;
+	private BlockCode code;
+	
+	public CompiledBlock(int start, int length, int instructions, BlockCode code) {
+		this.start = start;
+		this.length = length;
+		this.instructions = instructions;
+		this.code = code;
+	}
+
+	public int getStart() {
+		return start;
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	public int getInstructions() {
+		return instructions;
+	}
+
+	public BlockCode getCode() {
+		return code;
+	}
+	
+	/**
+	 * This method returns true if the memory position is used by one of the block instructions
+	 * @param position
+	 * @return
+	 */
+	public boolean contains(int position) {
+		return (position >= start) && (position < start + length);
+	}
+
+}
@@ -0,0 +1,204 @@
+package architecture;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.zip.Deflater;
+
+import components.Memory;
+import components.Register;
+
+/**
+ * This class writes a compressed trace, that can be replayed from any instruction (see TraceReplayer).
+ * Each record keeps only the registers and the memory positions changed by the instruction, as varints:
+ * the registers count, and for each register its id and its new value minus the old one,
+ * the positions count, and for each position its distance to the position before and its new value minus the old one
+ * (the differences are zigzag encoded, so small negative numbers are small varints too).
+ *
+ * The records are grouped into segments of keyframeInterval records, and each segment starts with a keyframe:
+ * all the registers and the whole memory. Each segment is compressed alone (Deflater), so the replayer
+ * can start in any segment. The file is:
+ * <header>   magic, version, registers count, memory size and keyframe interval (32 bits integers)
+ * <segments> the compressed segments
+ * <index>    the segments count and the records count, and for each segment the number of its first record,
+ *            its position in the file, its compressed size and its size (64 bits numbers for the records and positions),
+ *            followed by the position of the index (the last 8 bytes of the file)
+ *
+ * The writer thread keeps its own copy of the registers and of the memory (updated by the records),
+ * so the keyframes are made without touching the architecture. It can also build the index of the trace
+ * (see TraceIndex), saved into another file when the trace ends.
+ */
+public class CompressedTraceWriter extends TraceWriter {
+
+	public static final int MAGIC = 0x44584354; //"DXCT"
+	public static final int VERSION = 1;
+	public static final int HEADER_SIZE = 5 * 4;
+	public static final int DEFAULT_KEYFRAME_INTERVAL = 65536;
+
+	private int keyframeInterval;
+	private int registers[]; //the registers after the records written
+	private int cells[]; //the memory after the records written
+	private long records;
+	private long segmentFirst; //the first record of the segment being made
+	private byte segment[];
+	private int segmentSize;
+	private Deflater deflater;
+	private byte compressed[];
+	private long offset; //where the next segment is written
+	private ArrayList<long[]> index; //for each segment: first record, offset, compressed size and size
+	private File traceIndexFile; //where the trace index is saved (null if there is no trace index)
+	private TraceIndex traceIndex;
+
+	public CompressedTraceWriter(File file, ArrayList<Register> registers, Register flags, Memory memory,
+			int capacity, int keyframeInterval) throws IOException {
+		super(file, registers, flags, memory, capacity);
+		this.keyframeInterval = keyframeInterval;
+		segment = new byte[64 * 1024];
+		compressed = new byte[64 * 1024];
+		deflater = new Deflater();
+		index = new ArrayList<long[]>();
+	}
+
+	/**
+	 * This method chooses to build the index of the registers and memory positions changes
+	 * while the trace is written. It must be called before start()
+	 * @param file where the index is saved when the trace ends
+	 */
+	public void setIndex(File file) {
+		traceIndexFile = file;
+	}
+
+	/**
+	 * This method writes the header, and keeps the registers and the memory for the first keyframe
+	 */
+	@Override
+	protected void writeHeader(FileChannel channel, int registers[]) throws IOException {
+		this.registers = registers;
+		if (traceIndexFile != null)
+			traceIndex = new TraceIndex(getRegisterNames(), registers);
+		cells = new int[memory.getSize()];
+		memory.copyTo(cells);
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(MAGIC).putInt(VERSION).putInt(registers.length).putInt(cells.length).putInt(keyframeInterval);
+		header.flip();
+		while (header.hasRemaining())
+			channel.write(header);
+		offset = HEADER_SIZE;
+	}
+
+	/**
+	 * This method encodes a record (see TraceWriter) in the segment, starting a new segment when the segment is full
+	 */
+	@Override
+	protected void record(int record[], int size, FileChannel channel) throws IOException {
+		if (records - segmentFirst == keyframeInterval)
+			writeSegment(channel);
+		if (segmentSize == 0)
+			keyframe();
+		int position = 4 + record[3]; //after the size, PC, the command, the operands count and the operands
+		int count = record[position++];
+		putVarint(count);
+		for (int i = 0; i < count; i++, position += 2) {
+			int id = record[position];
+			putVarint(id);
+			putVarint(zigzag(record[position + 1] - registers[id]));
+			registers[id] = record[position + 1];
+			if (traceIndex != null)
+				traceIndex.registerChanged(records, id, registers[id]);
+		}
+		count = record[position++];
+		putVarint(count);
+		int last = 0;
+		for (int i = 0; i < count; i++, position += 2) {
+			int address = record[position];
+			putVarint(zigzag(address - last));
+			last = address;
+			if ((address >= 0) && (address < cells.length)) {
+				putVarint(zigzag(record[position + 1] - cells[address]));
+				cells[address] = record[position + 1];
+			}
+			else //a store out of the memory changes nothing
+				putVarint(0);
+			if (traceIndex != null)
+				traceIndex.cellWritten(records, address, record[position + 1]);
+		}
+		records++;
+	}
+
+	/**
+	 * This method writes the last segment and the index
+	 */
+	@Override
+	protected void finish(FileChannel channel) throws IOException {
+		if ((segmentSize > 0) || index.isEmpty()) {
+			if (segmentSize == 0) //no record: only the keyframe of the state when the trace started
+				keyframe();
+			writeSegment(channel);
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(4 + 8 + index.size() * 24 + 8);
+		buffer.putInt(index.size()).putLong(records);
+		for (long entry[] : index)
+			buffer.putLong(entry[0]).putLong(entry[1]).putInt((int) entry[2]).putInt((int) entry[3]);
+		buffer.putLong(offset);
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		if (traceIndex != null) {
+			traceIndex.setInstructions(records);
+			traceIndex.save(traceIndexFile);
+		}
+	}
+
+	/**
+	 * This method puts all the registers and the whole memory in the segment
+	 */
+	private void keyframe() {
+		for (int register : registers)
+			putVarint(zigzag(register));
+		for (int cell : cells)
+			putVarint(zigzag(cell));
+	}
+
+	/**
+	 * This method compresses the segment, writes it and adds it to the index
+	 * @param channel
+	 * @throws IOException
+	 */
+	private void writeSegment(FileChannel channel) throws IOException {
+		deflater.reset();
+		deflater.setInput(segment, 0, segmentSize);
+		deflater.finish();
+		long length = 0;
+		while (!deflater.finished()) {
+			int n = deflater.deflate(compressed);
+			ByteBuffer buffer = ByteBuffer.wrap(compressed, 0, n);
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+			length += n;
+		}
+		index.add(new long[] {segmentFirst, offset, length, segmentSize});
+		offset += length;
+		segmentFirst = records;
+		segmentSize = 0;
+	}
+
+	private static int zigzag(int value) {
+		return (value << 1) ^ (value >> 31);
+	}
+
+	private void putVarint(int value) {
+		if (segmentSize + 5 > segment.length) {
+			byte newSegment[] = new byte[segment.length * 2];
+			System.arraycopy(segment, 0, newSegment, 0, segmentSize);
+			segment = newSegment;
+		}
+		while ((value & ~0x7f) != 0) {
+			segment[segmentSize++] = (byte) ((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		segment[segmentSize++] = (byte) value;
+	}
+
+}
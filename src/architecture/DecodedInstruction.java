@@ -0,0 +1,75 @@
+package architecture;
+
+/**
+ * This class keeps an instruction already decoded:
+ * the command (opcode), the operands found in the positions just after it
+ * and the microprogram that executes it.
+ *
+ * The microprograms take their operands from here instead of reading the memory again, but the buses
+ * still carry them, so the datapath they simulate (and what the counters, the timing model and the traces see)
+ * is the same one. An instruction is invalidated when one of its positions is overwritten
+ * (see InstructionCache), and after that its microprogram reads the operands from the memory.
+ */
+public class DecodedInstruction {
+
+	private int address; //the memory position where the instruction starts
+	private int command;
+	private int operands[];
+	private Microprogram handler;
+	private boolean valid;
+
+	public DecodedInstruction(int address, int command, int operands[], Microprogram handler) {
+		this.address = address;
+		this.command = command;
+		this.operands = operands;
+		this.handler = handler;
+		this.valid = true;
+	}
+
+	public int getAddress() {
+		return address;
+	}
+
+	public int getCommand() {
+		return command;
+	}
+
+	/**
+	 * This method returns the operand in the position pos (0 is the first operand)
+	 * @param pos
+	 * @return
+	 */
+	public int getOperand(int pos) {
+		return operands[pos];
+	}
+
+	public int getOperandsCount() {
+		return operands.length;
+	}
+
+	/**
+	 * This method returns the amount of memory positions used by the instruction
+	 * (the command itself plus its operands)
+	 * @return
+	 */
+	public int getLength() {
+		return operands.length + 1;
+	}
+
+	public Microprogram getHandler() {
+		return handler;
+	}
+
+	/**
+	 * This method returns false after a position used by the instruction was overwritten
+	 * @return
+	 */
+	public boolean isValid() {
+		return valid;
+	}
+
+	public void invalidate() {
+		valid = false;
+	}
+
+}
@@ -0,0 +1,312 @@
+package architecture;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import components.Memory;
+
+/**
+ * This class is the binary executable format, an alternative to the text one (a decimal word per line).
+ * All the numbers are 32 bits integers (big endian):
+ * <header>   magic, version, entry point, code start, code length, data start, data length, symbols count
+ * <code>     the code words (the program, including the -1 in the end), stored from code start
+ * <data>     the data words (the variables), stored from data start
+ * <symbols>  for each symbol: its address, the length of its name and the name bytes (UTF-8)
+ *
+ * The binary file has the same extention (.dxf) of the text one: the magic number tells them apart,
+ * since a text executable always starts with a digit or a minus sign.
+ * The file is loaded through a memory map, and the words are copied straight into the memory pages.
+ */
+public class ExecutableFile {
+
+	public static final int MAGIC = 0x44584246; //"DXBF"
+	public static final int VERSION = 1;
+	public static final int HEADER_SIZE = 8 * 4;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private int entry;
+	private int codeStart;
+	private int code[];
+	private int dataStart;
+	private int data[];
+	private LinkedHashMap<String, Integer> symbols;
+
+	public ExecutableFile(int entry, int codeStart, int code[], int dataStart, int data[]) {
+		this.entry = entry;
+		this.codeStart = codeStart;
+		this.code = code;
+		this.dataStart = dataStart;
+		this.data = data;
+		symbols = new LinkedHashMap<String, Integer>();
+	}
+
+	/**
+	 * This method adds a symbol (a label or a variable) to the optional symbols section
+	 * @param name
+	 * @param address
+	 */
+	public void addSymbol(String name, int address) {
+		symbols.put(name, address);
+	}
+
+	public int getEntry() {
+		return entry;
+	}
+
+	public int getCodeStart() {
+		return codeStart;
+	}
+
+	public int[] getCode() {
+		return code;
+	}
+
+	public int getDataStart() {
+		return dataStart;
+	}
+
+	public int[] getData() {
+		return data;
+	}
+
+	public Map<String, Integer> getSymbols() {
+		return symbols;
+	}
+
+	/**
+	 * This method writes this executable into the file
+	 * @param file
+	 * @throws IOException
+	 */
+	public void save(File file) throws IOException {
+		save(file, 0);
+	}
+
+	/**
+	 * This method writes this executable into a file that already has the same executable
+	 * up to the code word fromWord (the header and the words from fromWord to the end are written).
+	 * So, when only the end of a program changes, only the end of its file is written again
+	 * @param file
+	 * @param fromWord
+	 * @return the amount of bytes written
+	 * @throws IOException
+	 */
+	public int save(File file, int fromWord) throws IOException {
+		ArrayList<byte[]> names = new ArrayList<byte[]>();
+		int symbolsSize = 0;
+		for (String name : symbols.keySet()) {
+			byte bytes[] = name.getBytes(UTF8);
+			names.add(bytes);
+			symbolsSize += 8 + bytes.length;
+		}
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(MAGIC).putInt(VERSION).putInt(entry).putInt(codeStart).putInt(code.length);
+		header.putInt(dataStart).putInt(data.length).putInt(symbols.size());
+		header.flip();
+		ByteBuffer words = ByteBuffer.allocate(4 * (code.length - fromWord + data.length) + symbolsSize);
+		words.asIntBuffer().put(code, fromWord, code.length - fromWord).put(data);
+		words.position(4 * (code.length - fromWord + data.length));
+		int i = 0;
+		for (int address : symbols.values()) {
+			words.putInt(address);
+			words.putInt(names.get(i).length);
+			words.put(names.get(i));
+			i++;
+		}
+		words.flip();
+		RandomAccessFile out = new RandomAccessFile(file, "rw");
+		try {
+			FileChannel channel = out.getChannel();
+			long position = HEADER_SIZE + 4L * fromWord;
+			while (header.hasRemaining())
+				channel.write(header, header.position());
+			while (words.hasRemaining())
+				channel.write(words, position + words.position());
+			channel.truncate(position + words.limit());
+		}
+		finally {
+			out.close();
+		}
+		return HEADER_SIZE + words.limit();
+	}
+
+	/**
+	 * This method writes again only the code words from start to end (exclusive) into the file,
+	 * that must have this executable with the same size
+	 * @param file
+	 * @param start
+	 * @param end
+	 * @throws IOException
+	 */
+	public void patch(File file, int start, int end) throws IOException {
+		ByteBuffer words = ByteBuffer.allocate(4 * (end - start));
+		words.asIntBuffer().put(code, start, end - start);
+		RandomAccessFile out = new RandomAccessFile(file, "rw");
+		try {
+			FileChannel channel = out.getChannel();
+			long position = HEADER_SIZE + 4L * start;
+			while (words.hasRemaining())
+				channel.write(words, position + words.position());
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * This method returns true if the file starts with the magic number of the binary executables
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static boolean isBinary(File file) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			int magic = 0;
+			for (int i = 0; i < 4; i++) {
+				int b = in.read();
+				if (b < 0)
+					return false;
+				magic = (magic << 8) | b;
+			}
+			return magic == MAGIC;
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * This method loads the binary executable into the memory, without the store handshake and
+	 * without warning the memory listeners.
+	 * The symbols are put into the map (if it is not null)
+	 * @param file
+	 * @param memory
+	 * @param symbols
+	 * @return the entry point
+	 * @throws IOException if the file is not a valid executable or it doesn't fit into the memory
+	 */
+	public static int load(File file, Memory memory, Map<String, Integer> symbols) throws IOException {
+		FileChannel channel = new FileInputStream(file).getChannel();
+		try {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			IntBuffer header = header(buffer, file);
+			int entry = header.get(2);
+			int codeStart = header.get(3);
+			int codeLength = header.get(4);
+			int dataStart = header.get(5);
+			int dataLength = header.get(6);
+			int symbolsCount = header.get(7);
+			checkExtent(file, "code", codeStart, codeLength, memory.getSize());
+			checkExtent(file, "data", dataStart, dataLength, memory.getSize());
+			long wordsEnd = HEADER_SIZE + 4L * codeLength + 4L * dataLength;
+			if (wordsEnd > buffer.limit())
+				throw new IOException(file+" is truncated");
+			buffer.position(HEADER_SIZE);
+			IntBuffer words = buffer.asIntBuffer();
+			memory.load(codeStart, words, codeLength);
+			memory.load(dataStart, words, dataLength);
+			if (symbols != null) {
+				buffer.position((int) wordsEnd);
+				readSymbols(buffer, symbolsCount, symbols, file);
+			}
+			return entry;
+		}
+		finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * This method reads the whole executable file (used by the tools that must change it)
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static ExecutableFile read(File file) throws IOException {
+		FileChannel channel = new FileInputStream(file).getChannel();
+		try {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			IntBuffer header = header(buffer, file);
+			int codeLength = header.get(4);
+			int dataLength = header.get(6);
+			if ((codeLength < 0) || (dataLength < 0))
+				throw new IOException(file+" is not a valid executable");
+			if (HEADER_SIZE + 4L * codeLength + 4L * dataLength > buffer.limit())
+				throw new IOException(file+" is truncated");
+			int code[] = new int[codeLength];
+			int data[] = new int[dataLength];
+			buffer.position(HEADER_SIZE);
+			IntBuffer words = buffer.asIntBuffer();
+			words.get(code);
+			words.get(data);
+			ExecutableFile executable = new ExecutableFile(header.get(2), header.get(3), code, header.get(5), data);
+			buffer.position(HEADER_SIZE + 4 * (code.length + data.length));
+			readSymbols(buffer, header.get(7), executable.symbols, file);
+			return executable;
+		}
+		finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * This method checks the magic number and the version, returning the header words
+	 * @param buffer
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	private static IntBuffer header(ByteBuffer buffer, File file) throws IOException {
+		if (buffer.limit() < HEADER_SIZE)
+			throw new IOException(file+" is not a binary executable");
+		IntBuffer header = buffer.asIntBuffer();
+		if (header.get(0) != MAGIC)
+			throw new IOException(file+" is not a binary executable");
+		if (header.get(1) != VERSION)
+			throw new IOException(file+" has the version "+header.get(1)+", but only the version "+VERSION+" is known");
+		return header;
+	}
+
+	private static void checkExtent(File file, String name, int start, int length, int memorySize) throws IOException {
+		if ((start < 0) || (length < 0) || ((long) start + length > memorySize))
+			throw new IOException("The "+name+" of "+file+" ("+start+" to "+((long) start + length)+") doesn't fit into a memory of "+memorySize+" positions");
+	}
+
+	/**
+	 * This method reads the symbol section, checking each count against the bytes left in the file
+	 * (so a damaged file is an IOException, not a huge array)
+	 * @param buffer
+	 * @param count
+	 * @param symbols
+	 * @param file
+	 * @throws IOException
+	 */
+	private static void readSymbols(ByteBuffer buffer, int count, Map<String, Integer> symbols, File file) throws IOException {
+		if ((count < 0) || (count > buffer.remaining() / 8)) //each symbol has at least its address and its name length
+			throw new IOException(file+" has an invalid symbol section ("+count+" symbols)");
+		for (int i = 0; i < count; i++) {
+			if (buffer.remaining() < 8)
+				throw new IOException(file+" is truncated");
+			int address = buffer.getInt();
+			int length = buffer.getInt();
+			if ((length < 0) || (length > buffer.remaining()))
+				throw new IOException(file+" has an invalid symbol name length ("+length+")");
+			byte name[] = new byte[length];
+			buffer.get(name);
+			symbols.put(new String(name, UTF8), address);
+		}
+	}
+
+}
@@ -0,0 +1,13 @@
+package architecture;
+
+/**
+ * This enum identifies how the architecture executes a program
+ */
+public enum ExecutionEngine {
+	
+	MICROPROGRAM, //each instruction runs its microprogram, moving the data through the buses
+	FUNCTIONAL,   //each instruction is executed directly over a register file (only the final result is simulated)
+	TIERED,       //as the functional one, but the hot basic blocks are compiled into JVM classes
+	THREADED      //the program is translated when loaded into a chain of instructions bound to their operands
+
+}
@@ -0,0 +1,349 @@
+package architecture;
+
+import java.util.ArrayList;
+
+import components.Memory;
+import components.Register;
+
+/**
+ * This class executes the same instructions of the architecture, but without the microprograms.
+ * The registers are kept into an int array (indexed as the architecture registers list) and
+ * each instruction changes only the architectural state (registers, flags and memory).
+ * So, a program runs much faster, but the buses and the ula are not simulated.
+ * 
+ * The final registers, flags and memory are the same ones produced by the microprograms.
+ * The instructions that depend on the buses (instructions using registers that are not
+ * general purpose registers) are delegated to the microprograms.
+ */
+public class FunctionalEngine {
+	
+	//registers ids, as in the architecture registers list
+	protected static final int GENERAL_REGISTERS = 4; //RPG0 to RPG3
+	protected static final int PC = 6;
+	protected static final int IR = 7;
+	protected static final int REGISTERS = 9;
+	//the flags bits are kept just after the registers
+	protected static final int BIT_ZERO = 9;
+	protected static final int BIT_NEGATIVE = 10;
+
+	protected Architecture arch;
+	protected Memory memory;
+	protected Memory statusMemory;
+	protected int registers[]; //the register file, followed by the flags bits
+	
+	public FunctionalEngine(Architecture arch) {
+		this.arch = arch;
+		this.memory = arch.getMemory();
+		this.statusMemory = arch.getStatusMemory();
+		this.registers = new int[REGISTERS + 2];
+	}
+	
+	/**
+	 * This method executes a program stored in the memory, until the end of the program
+	 */
+	public void run() {
+		run(Long.MAX_VALUE);
+	}
+	
+	/**
+	 * This method executes a program stored in the memory, until the end of the program
+	 * or until the amount of instructions is executed
+	 * @param maxInstructions
+	 * @return the amount of instructions executed
+	 */
+	public long run(long maxInstructions) {
+		load();
+		long executed = 0;
+		while ((executed < maxInstructions) && execute())
+			executed++;
+		save();
+		return executed;
+	}
+	
+	/**
+	 * This method executes only the instruction pointed by PC
+	 * @return false if the instruction was the end of the program
+	 */
+	public boolean step() {
+		load();
+		boolean running = execute();
+		save();
+		return running;
+	}
+
+	/**
+	 * This method copies the registers and the flags from the architecture into the register file
+	 */
+	protected void load() {
+		ArrayList<Register> registersList = arch.getRegistersList();
+		for (int i = 0; i < REGISTERS; i++)
+			registers[i] = registersList.get(i).getData();
+		registers[BIT_ZERO] = arch.getFlags().getBit(0);
+		registers[BIT_NEGATIVE] = arch.getFlags().getBit(1);
+	}
+	
+	/**
+	 * This method copies the register file back into the architecture registers and flags
+	 */
+	protected void save() {
+		ArrayList<Register> registersList = arch.getRegistersList();
+		for (int i = 0; i < REGISTERS; i++)
+			registersList.get(i).setData(registers[i]);
+		arch.getFlags().setBit(0, registers[BIT_ZERO]);
+		arch.getFlags().setBit(1, registers[BIT_NEGATIVE]);
+	}
+	
+	/**
+	 * This method executes the instruction pointed by PC using the microprograms.
+	 * @return false if the instruction was the end of the program
+	 */
+	protected boolean delegate() {
+		save();
+		boolean running = arch.microprogramStep();
+		load();
+		return running;
+	}
+	
+	/**
+	 * The flags are set just like the architecture does after the ula operations
+	 * @param result
+	 */
+	private void setStatusFlags(int result) {
+		registers[BIT_ZERO] = (result == 0) ? 1 : 0;
+		registers[BIT_NEGATIVE] = (result < 0) ? 1 : 0;
+	}
+	
+	protected static boolean isGeneral(int registerId) {
+		return (registerId >= 0) && (registerId < GENERAL_REGISTERS);
+	}
+	
+	/**
+	 * The conditional jumps use the status memory:
+	 * position 0 receives the address when the bit is 0 and position 1 receives the address when the bit is 1
+	 * @param bit
+	 * @param address0
+	 * @param address1
+	 */
+	private void branch(int bit, int address0, int address1) {
+		statusMemory.setData(0, address0);
+		statusMemory.setData(1, address1);
+		registers[PC] = (bit == 0) ? address0 : address1;
+	}
+
+	/**
+	 * This method executes the instruction pointed by PC
+	 * @return false if the instruction was the end of the program
+	 */
+	protected boolean execute() {
+		int pc = registers[PC];
+		int command = memory.getData(pc); //fetch
+		registers[IR] = command;
+		int regA, regB, address, result;
+		switch (command) {
+		case 0: //addRegReg
+			regA = memory.getData(pc+1);
+			regB = memory.getData(pc+2);
+			if (!isGeneral(regA) || !isGeneral(regB))
+				return delegate();
+			result = registers[regA] + registers[regB];
+			setStatusFlags(result);
+			registers[regB] = result;
+			registers[PC] = pc + 3;
+			break;
+		case 1: //addMemReg
+			regB = memory.getData(pc+2);
+			if (!isGeneral(regB))
+				return delegate();
+			registers[IR] = memory.getData(memory.getData(pc+1));
+			result = registers[IR] + registers[regB];
+			setStatusFlags(result);
+			registers[regB] = result;
+			registers[PC] = pc + 3;
+			break;
+		case 2: //addRegMem
+			regA = memory.getData(pc+1);
+			if (!isGeneral(regA))
+				return delegate();
+			address = memory.getData(pc+2);
+			result = registers[regA] + memory.getData(address);
+			setStatusFlags(result);
+			registers[IR] = result;
+			memory.setData(address, result);
+			registers[PC] = pc + 3;
+			break;
+		case 3: //addImmReg
+			regB = memory.getData(pc+2);
+			if (!isGeneral(regB))
+				return delegate();
+			registers[IR] = memory.getData(pc+1);
+			result = registers[IR] + registers[regB];
+			setStatusFlags(result);
+			registers[regB] = result;
+			registers[PC] = pc + 3;
+			break;
+		case 4: //subRegReg
+			regA = memory.getData(pc+1);
+			regB = memory.getData(pc+2);
+			if (!isGeneral(regA) || !isGeneral(regB))
+				return delegate();
+			result = registers[regA] - registers[regB];
+			setStatusFlags(result);
+			registers[regB] = result;
+			registers[PC] = pc + 3;
+			break;
+		case 5: //subMemReg
+			regB = memory.getData(pc+2);
+			if (!isGeneral(regB))
+				return delegate();
+			registers[IR] = memory.getData(memory.getData(pc+1));
+			result = registers[IR] - registers[regB];
+			setStatusFlags(result);
+			registers[regB] = result;
+			registers[PC] = pc + 3;
+			break;
+		case 6: //subRegMem
+			regA = memory.getData(pc+1);
+			if (!isGeneral(regA))
+				return delegate();
+			address = memory.getData(pc+2);
+			result = registers[regA] - memory.getData(address);
+			setStatusFlags(result);
+			registers[IR] = result;
+			memory.setData(address, result);
+			registers[PC] = pc + 3;
+			break;
+		case 7: //subImmReg
+			regB = memory.getData(pc+2);
+			if (!isGeneral(regB))
+				return delegate();
+			registers[IR] = memory.getData(pc+1);
+			result = registers[IR] - registers[regB];
+			setStatusFlags(result);
+			registers[regB] = result;
+			registers[PC] = pc + 3;
+			break;
+		case 8: //imulMemReg
+			regB = memory.getData(pc+2);
+			if (!isGeneral(regB))
+				return delegate();
+			registers[IR] = memory.getData(memory.getData(pc+1));
+			result = registers[IR] * registers[regB];
+			setStatusFlags(result);
+			registers[regB] = result;
+			registers[PC] = pc + 3;
+			break;
+		case 9: //imulRegMem
+			regA = memory.getData(pc+1);
+			if (!isGeneral(regA))
+				return delegate();
+			address = memory.getData(pc+2);
+			result = registers[regA] * memory.getData(address);
+			setStatusFlags(result);
+			registers[IR] = result;
+			memory.setData(address, result);
+			registers[PC] = pc + 3;
+			break;
+		case 10: //imulRegReg
+			regA = memory.getData(pc+1);
+			regB = memory.getData(pc+2);
+			if (!isGeneral(regA) || !isGeneral(regB))
+				return delegate();
+			result = registers[regA] * registers[regB];
+			setStatusFlags(result);
+			registers[regB] = result;
+			registers[PC] = pc + 3;
+			break;
+		case 11: //moveMemReg
+			regB = memory.getData(pc+2);
+			if (!isGeneral(regB))
+				return delegate();
+			registers[IR] = memory.getData(memory.getData(pc+1));
+			registers[regB] = registers[IR];
+			registers[PC] = pc + 3;
+			break;
+		case 12: //moveRegMem
+			regA = memory.getData(pc+1);
+			if (!isGeneral(regA))
+				return delegate();
+			registers[IR] = registers[regA];
+			memory.setData(memory.getData(pc+2), registers[IR]);
+			registers[PC] = pc + 3;
+			break;
+		case 13: //moveRegReg
+			regA = memory.getData(pc+1);
+			regB = memory.getData(pc+2);
+			if (!isGeneral(regA) || !isGeneral(regB))
+				return delegate();
+			registers[regB] = registers[regA];
+			registers[PC] = pc + 3;
+			break;
+		case 14: //moveImmReg
+			regB = memory.getData(pc+2);
+			if (!isGeneral(regB))
+				return delegate();
+			registers[IR] = memory.getData(pc+1);
+			registers[regB] = registers[IR];
+			registers[PC] = pc + 3;
+			break;
+		case 15: //incReg
+			regA = memory.getData(pc+1);
+			if (!isGeneral(regA))
+				return delegate();
+			result = registers[regA] + 1;
+			setStatusFlags(result);
+			registers[regA] = result;
+			registers[PC] = pc + 2;
+			break;
+		case 16: //jmp
+			registers[PC] = memory.getData(pc+1);
+			break;
+		case 17: //jn
+			branch(registers[BIT_NEGATIVE], pc + 2, memory.getData(pc+1));
+			break;
+		case 18: //jz
+			branch(registers[BIT_ZERO], pc + 2, memory.getData(pc+1));
+			break;
+		case 19: //jeq
+		case 20: //jneq
+		case 21: //jgt
+		case 22: //jlw
+			regA = memory.getData(pc+1);
+			regB = memory.getData(pc+2);
+			if (!isGeneral(regA) || !isGeneral(regB))
+				return delegate();
+			address = memory.getData(pc+3);
+			if (command >= 21) //jgt and jlw use IR to keep the regB id
+				registers[IR] = regB;
+			result = registers[regA] - registers[regB];
+			setStatusFlags(result);
+			if (command == 19)
+				branch(registers[BIT_ZERO], pc + 4, address);
+			else if (command == 20)
+				branch(registers[BIT_ZERO], address, pc + 4);
+			else if (command == 21)
+				branch(registers[BIT_ZERO], pc + 4, address);
+			else
+				branch(registers[BIT_NEGATIVE], pc + 4, address);
+			break;
+		case 23: //read
+			registers[IR] = memory.getData(memory.getData(pc+1));
+			registers[0] = registers[IR];
+			registers[PC] = pc + 2;
+			break;
+		case 24: //store
+			registers[IR] = registers[0];
+			memory.setData(memory.getData(pc+1), registers[IR]);
+			registers[PC] = pc + 2;
+			break;
+		case 25: //ldi
+			registers[IR] = memory.getData(pc+1);
+			registers[0] = registers[IR];
+			registers[PC] = pc + 2;
+			break;
+		default: //the end of the program
+			return false;
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,41 @@
+package architecture;
+
+/**
+ * This predictor is a table of 2 bits saturating counters (see TwoBitPredictor) indexed by the address
+ * xor the global history: the outcomes of the last conditional jumps, one bit each (1 is taken).
+ * So the same jump can be predicted differently depending on the path that reached it
+ */
+public class GsharePredictor extends TwoBitPredictor {
+
+	public static final int DEFAULT_HISTORY_BITS = 10;
+
+	private int history;
+
+	public GsharePredictor() {
+		this(DEFAULT_HISTORY_BITS);
+	}
+
+	/**
+	 * @param historyBits the amount of outcomes kept (the table has 2^historyBits counters)
+	 */
+	public GsharePredictor(int historyBits) {
+		super(1 << historyBits);
+	}
+
+	@Override
+	protected int index(int pc) {
+		return (pc ^ history) & getMask();
+	}
+
+	@Override
+	public void update(int pc, boolean taken) {
+		super.update(pc, taken);
+		history = ((history << 1) | (taken ? 1 : 0)) & getMask();
+	}
+
+	@Override
+	public String toString() {
+		return "gshare ("+Integer.bitCount(getMask())+" history bits)";
+	}
+
+}
@@ -0,0 +1,104 @@
+package architecture;
+
+import components.MemoryListener;
+
+/**
+ * This class keeps the instructions already decoded, indexed by the address (PC) where they start.
+ * So, a loop is decoded only once and then dispatched many times.
+ * The cache listens the memory: when a position used by a cached instruction is overwritten
+ * (a program that writes into its own code, for example), the instruction is invalidated
+ */
+public class InstructionCache implements MemoryListener {
+
+	private static final int MAX_LENGTH = 4; //the longest instructions (jeq, jneq, jgt, jlw) use 4 positions
+
+	private PagedTable<DecodedInstruction> entries; //only the pages with decoded instructions are created
+	private long hits;
+	private long misses;
+	private long invalidations;
+
+	public InstructionCache(int size) {
+		entries = new PagedTable<DecodedInstruction>(size) {
+			@Override
+			protected void cleared(DecodedInstruction instruction) {
+				instruction.invalidate();
+			}
+		};
+	}
+
+	/**
+	 * This method returns the instruction decoded in the address or null if it is not in the cache
+	 * @param address
+	 * @return
+	 */
+	public DecodedInstruction lookup(int address) {
+		if ((address < 0) || (address >= entries.getSize()))
+			return null;
+		DecodedInstruction instruction = entries.get(address);
+		if (instruction == null)
+			misses++;
+		else
+			hits++;
+		return instruction;
+	}
+
+	/**
+	 * This method inserts a decoded instruction into the cache.
+	 * Instructions that are not entirely inside the memory are never cached, so they are invalidated at once
+	 * (the cache would not see the stores into them)
+	 * @param instruction
+	 */
+	public void put(DecodedInstruction instruction) {
+		int address = instruction.getAddress();
+		if ((address >= 0) && (address + instruction.getLength() <= entries.getSize()))
+			entries.set(address, instruction);
+		else
+			instruction.invalidate();
+	}
+
+	/**
+	 * This method is called by the memory after a position was overwritten.
+	 * Every cached instruction using this position (as command or as operand) is removed
+	 */
+	@Override
+	public void stored(int position) {
+		for (int i = 0; i < MAX_LENGTH; i++) {
+			int address = position - i;
+			DecodedInstruction instruction = entries.get(address);
+			if ((instruction != null) && (instruction.getLength() > i)) {
+				instruction.invalidate();
+				entries.set(address, null);
+				invalidations++;
+			}
+		}
+	}
+
+	/**
+	 * This method is called by the memory after many positions were overwritten at once:
+	 * all the instructions are removed
+	 */
+	@Override
+	public void reloaded() {
+		clear();
+	}
+
+	/**
+	 * This method removes all instructions from the cache (only the pages with instructions are visited)
+	 */
+	public void clear() {
+		entries.clear();
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	public long getInvalidations() {
+		return invalidations;
+	}
+
+}
@@ -0,0 +1,62 @@
+package architecture;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+/**
+ * This class compares how long the text and the binary executables take to be loaded by readExec.
+ * The same image (a million words, by default) is saved in both formats into temporary files,
+ * and each one is loaded many times into a memory big enough for it.
+ *
+ * Usage: LoadBenchmark [words]
+ */
+public class LoadBenchmark {
+
+	private static final int RUNS = 5;
+
+	private static String temporaryName(String prefix) throws IOException {
+		File file = File.createTempFile(prefix, ".dxf");
+		file.deleteOnExit();
+		return file.getPath().substring(0, file.getPath().length() - 4);
+	}
+
+	/**
+	 * This method loads the executable RUNS times, each one into a new architecture
+	 * @param filename
+	 * @param memorySize
+	 * @return the best time in milliseconds
+	 * @throws IOException
+	 */
+	private static double measure(String filename, int memorySize) throws IOException {
+		double best = Double.MAX_VALUE;
+		for (int i = 0; i < RUNS; i++) {
+			Architecture arch = new Architecture(false, ExecutionEngine.MICROPROGRAM, memorySize);
+			long start = System.nanoTime();
+			arch.readExec(filename);
+			best = Math.min(best, (System.nanoTime() - start) / 1e6);
+		}
+		return best;
+	}
+
+	public static void main(String[] args) throws IOException {
+		int words = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+		int image[] = new int[words];
+		for (int i = 0; i < words - 1; i++)
+			image[i] = i % 26; //any words, the program is not executed
+		image[words - 1] = -1;
+
+		String text = temporaryName("text");
+		BufferedWriter writer = new BufferedWriter(new FileWriter(text+".dxf"));
+		for (int word : image)
+			writer.write(word+"\n");
+		writer.close();
+		String binary = temporaryName("binary");
+		new ExecutableFile(0, 0, image, 0, new int[0]).save(new File(binary+".dxf"));
+
+		System.out.printf("text:   %10.2f ms%n", measure(text, words));
+		System.out.printf("binary: %10.2f ms%n", measure(binary, words));
+	}
+
+}
@@ -0,0 +1,149 @@
+package architecture;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import components.Memory;
+import components.Register;
+
+/**
+ * This class runs the same program in two architectures, one using the microprograms and
+ * the other one using the functional engine, one instruction at a time.
+ * After each instruction the registers, the flags and the memories of both are compared,
+ * so the first instruction producing different results is reported
+ */
+public class LockstepRunner {
+	
+	private Architecture microprogram;
+	private Architecture functional;
+	
+	/**
+	 * This class describes the first instruction where the engines diverged
+	 */
+	public static class Divergence {
+		private long index; //how many instructions were executed before this one
+		private int address;
+		private int command;
+		private String description;
+		
+		public Divergence(long index, int address, int command, String description) {
+			this.index = index;
+			this.address = address;
+			this.command = command;
+			this.description = description;
+		}
+
+		public long getIndex() {
+			return index;
+		}
+
+		public int getAddress() {
+			return address;
+		}
+
+		public int getCommand() {
+			return command;
+		}
+
+		public String getDescription() {
+			return description;
+		}
+		
+		@Override
+		public String toString() {
+			return "Instruction "+index+" (command "+command+" at address "+address+"): "+description;
+		}
+	}
+	
+	/**
+	 * This constructor loads the executable file into both architectures
+	 * @param filename
+	 * @throws IOException
+	 */
+	public LockstepRunner(String filename) throws IOException {
+		this(new Architecture(false, ExecutionEngine.MICROPROGRAM), new Architecture(false, ExecutionEngine.FUNCTIONAL));
+		microprogram.readExec(filename);
+		functional.readExec(filename);
+	}
+	
+	/**
+	 * This constructor uses two architectures already loaded with the same program
+	 * @param microprogram
+	 * @param functional
+	 */
+	public LockstepRunner(Architecture microprogram, Architecture functional) {
+		this.microprogram = microprogram;
+		this.functional = functional;
+	}
+	
+	/**
+	 * This method runs both architectures until the end of the program (or until maxInstructions
+	 * instructions were executed)
+	 * @param maxInstructions
+	 * @return the first divergence found or null if both architectures reached the same state
+	 */
+	public Divergence run(long maxInstructions) {
+		boolean running = true;
+		for (long i = 0; running && (i < maxInstructions); i++) {
+			int address = microprogram.getPC().getData();
+			int command = microprogram.getMemory().getData(address);
+			boolean microprogramRunning = microprogram.step();
+			boolean functionalRunning = functional.step();
+			String difference = compare();
+			if ((difference == null) && (microprogramRunning != functionalRunning))
+				difference = "only one of the engines reached the end of the program";
+			if (difference != null)
+				return new Divergence(i, address, command, difference);
+			running = microprogramRunning;
+		}
+		return null;
+	}
+	
+	/**
+	 * This method compares the architectural state of both architectures
+	 * @return the description of the first difference found or null if there is no difference
+	 */
+	private String compare() {
+		ArrayList<Register> microprogramRegisters = microprogram.getRegistersList();
+		ArrayList<Register> functionalRegisters = functional.getRegistersList();
+		for (int i = 0; i < microprogramRegisters.size(); i++) {
+			int expected = microprogramRegisters.get(i).getData();
+			int found = functionalRegisters.get(i).getData();
+			if (expected != found)
+				return difference(microprogramRegisters.get(i).getRegisterName(), expected, found);
+		}
+		for (int bit = 0; bit < 2; bit++) {
+			int expected = microprogram.getFlags().getBit(bit);
+			int found = functional.getFlags().getBit(bit);
+			if (expected != found)
+				return difference("Flags bit "+bit, expected, found);
+		}
+		String difference = compareMemories("Memory", microprogram.getMemory(), functional.getMemory());
+		if (difference == null)
+			difference = compareMemories("Status memory", microprogram.getStatusMemory(), functional.getStatusMemory());
+		return difference;
+	}
+	
+	private String compareMemories(String name, Memory expected, Memory found) {
+		for (int i = 0; i < expected.getSize(); i++) {
+			if (expected.getData(i) != found.getData(i))
+				return difference(name+"["+i+"]", expected.getData(i), found.getData(i));
+		}
+		return null;
+	}
+	
+	private String difference(String component, int expected, int found) {
+		return component+" is "+expected+" using the microprograms but "+found+" using the functional engine";
+	}
+	
+	public static void main(String[] args) throws IOException {
+		String filename = args[0];
+		LockstepRunner runner = new LockstepRunner(filename);
+		Divergence divergence = runner.run(Long.MAX_VALUE);
+		if (divergence == null)
+			System.out.println("No divergence found in "+filename+".dxf");
+		else
+			System.out.println(divergence);
+	}
+
+}
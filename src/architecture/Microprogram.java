@@ -0,0 +1,15 @@
+package architecture;
+
+/**
+ * This interface represents a microprogram of the architecture (addRegReg, jmp, ldi...)
+ * It is used to dispatch a decoded instruction directly to its microprogram,
+ * without the opcode switch
+ */
+public interface Microprogram {
+
+	/**
+	 * This method runs the microprogram
+	 */
+	public void execute();
+
+}
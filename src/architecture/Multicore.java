@@ -0,0 +1,315 @@
+package architecture;
+
+import java.io.IOException;
+
+import components.Bus;
+import components.CoherentMemory;
+import components.Memory;
+import components.MemoryFactory;
+import components.SharedMemory;
+
+/**
+ * This class puts many cores together: each core is an architecture with its own registers, ula and memory,
+ * and all of them share a region of the memory (see SharedMemory), kept coherent by the MESI protocol
+ * through a private cache in each core (see CoherentMemory).
+ * Each core runs in its own thread, so the cores really execute at the same time and fight only for the
+ * lines they share.
+ *
+ * By default the shared region goes from DEFAULT_SHARED_START to the end of the memory: the variables
+ * of the programs (the assembler allocates them downwards from the memory size - 101).
+ * A snapshot of a core (see Architecture.snapshot) takes the shared region from the shared memory,
+ * but restoring it changes only the private memory of the core
+ */
+public class Multicore {
+
+	public static final int DEFAULT_SHARED_START = Architecture.DEFAULT_MEMORY_SIZE / 4;
+	public static final int DEFAULT_LINE_SIZE = 4;
+
+	private SharedMemory shared;
+	private Architecture cores[];
+	private CoherentMemory memories[];
+	private long instructions[]; //executed by each core in the last run
+	private long elapsed; //the nanoseconds of the last run
+
+	/**
+	 * Creates the cores with the default memory, shared region and caches
+	 * @param cores
+	 * @param engine
+	 */
+	public Multicore(int cores, ExecutionEngine engine) {
+		this(cores, engine, Architecture.DEFAULT_MEMORY_SIZE, DEFAULT_SHARED_START, Architecture.DEFAULT_MEMORY_SIZE,
+				DEFAULT_LINE_SIZE, CoherentMemory.DEFAULT_CACHE_LINES);
+	}
+
+	/**
+	 * @param cores the amount of cores (up to SharedMemory.MAX_CORES)
+	 * @param engine the execution engine of all the cores
+	 * @param memorySize the memory size of each core
+	 * @param sharedStart the first position of the shared region
+	 * @param sharedEnd the position after the last one of the shared region
+	 * @param lineSize the words in each line of the private caches (a power of 2)
+	 * @param cacheLines the lines of each private cache (a power of 2)
+	 */
+	public Multicore(int cores, ExecutionEngine engine, int memorySize, int sharedStart, int sharedEnd,
+			int lineSize, final int cacheLines) {
+		shared = new SharedMemory(sharedStart, sharedEnd, lineSize, cores);
+		this.cores = new Architecture[cores];
+		memories = new CoherentMemory[cores];
+		instructions = new long[cores];
+		for (int i = 0; i < cores; i++) {
+			final int core = i;
+			this.cores[i] = new Architecture(false, engine, memorySize, new MemoryFactory() {
+				@Override
+				public Memory create(int size, Bus bus) {
+					memories[core] = new CoherentMemory(size, bus, shared, core, cacheLines);
+					return memories[core];
+				}
+			});
+		}
+	}
+
+	public int getCores() {
+		return cores.length;
+	}
+
+	public Architecture getCore(int core) {
+		return cores[core];
+	}
+
+	public CoherentMemory getMemory(int core) {
+		return memories[core];
+	}
+
+	public SharedMemory getSharedMemory() {
+		return shared;
+	}
+
+	/**
+	 * This method loads the same program into all the cores, and the shared region loaded into
+	 * the first one becomes the initial data of the shared memory
+	 * @param filename
+	 * @throws IOException
+	 */
+	public void readExec(String filename) throws IOException {
+		for (Architecture core : cores)
+			core.readExec(filename);
+		memories[0].publish();
+	}
+
+	/**
+	 * This method loads a program into only one core (the shared memory is not changed: see publish)
+	 * @param core
+	 * @param filename
+	 * @throws IOException
+	 */
+	public void readExec(int core, String filename) throws IOException {
+		cores[core].readExec(filename);
+	}
+
+	/**
+	 * This method copies the shared region loaded into the core to the shared memory
+	 * @param core
+	 */
+	public void publish(int core) {
+		memories[core].publish();
+	}
+
+	/**
+	 * This method runs all the cores at the same time, each one in its own thread, until each one ends
+	 * its program or executes the amount of instructions
+	 * @param maxInstructions the instructions of each core
+	 * @return the amount of instructions executed by all the cores (the ends of the programs too)
+	 */
+	public long run(final long maxInstructions) {
+		Thread threads[] = new Thread[cores.length];
+		final Throwable errors[] = new Throwable[cores.length];
+		for (int i = 0; i < cores.length; i++) {
+			final int core = i;
+			threads[i] = new Thread("core "+i) {
+				@Override
+				public void run() {
+					try {
+						long count = 0;
+						boolean running = true;
+						while (running && (count < maxInstructions)) {
+							running = cores[core].step();
+							count++;
+						}
+						instructions[core] = count;
+					}
+					catch (Throwable e) {
+						errors[core] = e;
+					}
+				}
+			};
+		}
+		long start = System.nanoTime();
+		for (Thread thread : threads)
+			thread.start();
+		for (Thread thread : threads) {
+			boolean joined = false;
+			while (!joined) {
+				try {
+					thread.join();
+					joined = true;
+				}
+				catch (InterruptedException e) {
+					//keeps waiting: the cores must stop before their statistics are read
+				}
+			}
+		}
+		elapsed = System.nanoTime() - start;
+		for (int i = 0; i < errors.length; i++)
+			if (errors[i] != null)
+				throw new IllegalStateException("The core "+i+" failed", errors[i]);
+		return getInstructions();
+	}
+
+	/**
+	 * This method returns the instructions executed by the core in the last run
+	 * @param core
+	 * @return
+	 */
+	public long getInstructions(int core) {
+		return instructions[core];
+	}
+
+	/**
+	 * This method returns the instructions executed by all the cores in the last run
+	 * @return
+	 */
+	public long getInstructions() {
+		long sum = 0;
+		for (long count : instructions)
+			sum += count;
+		return sum;
+	}
+
+	/**
+	 * This method returns the seconds of the last run
+	 * @return
+	 */
+	public double getSeconds() {
+		return elapsed / 1e9;
+	}
+
+	/**
+	 * This method returns the instructions executed per second by all the cores together in the last run
+	 * @return
+	 */
+	public double getThroughput() {
+		return (elapsed == 0) ? 0 : getInstructions() / getSeconds();
+	}
+
+	/**
+	 * This method returns a statistic of all the cores together
+	 * @param statistic a statistic constant of SharedMemory
+	 * @return
+	 */
+	public long get(int statistic) {
+		long sum = 0;
+		for (CoherentMemory memory : memories)
+			sum += memory.getStatistics()[statistic];
+		return sum;
+	}
+
+	/**
+	 * This method returns the coherence traffic: the bus transactions of all the cores
+	 * (the read misses, the write misses, the upgrades and the write-backs)
+	 * @return
+	 */
+	public long getTraffic() {
+		return get(SharedMemory.READ_MISSES) + get(SharedMemory.WRITE_MISSES) + get(SharedMemory.UPGRADES)
+				+ get(SharedMemory.WRITE_BACKS);
+	}
+
+	/**
+	 * This method empties the private caches and clears the statistics (the memories and the registers are kept)
+	 */
+	public void reset() {
+		shared.reset();
+		for (CoherentMemory memory : memories)
+			memory.reset();
+		for (int i = 0; i < instructions.length; i++)
+			instructions[i] = 0;
+		elapsed = 0;
+	}
+
+	/**
+	 * This method returns the statistics of the last run as text, one line per core
+	 * @return
+	 */
+	public String report() {
+		StringBuilder text = new StringBuilder();
+		text.append(String.format("%d cores, shared %d-%d, %d words per line: %d instructions in %.3f s, %.0f instructions/s%n",
+				cores.length, shared.getStart(), shared.getEnd() - 1, shared.getLineSize(), getInstructions(), getSeconds(),
+				getThroughput()));
+		text.append(String.format("  %-6s %12s", "core", "instructions"));
+		for (String statistic : SharedMemory.STATISTICS_NAMES)
+			text.append(String.format(" %13s", statistic));
+		text.append(String.format("%n"));
+		for (int i = 0; i < cores.length; i++) {
+			text.append(String.format("  %-6d %12d", i, instructions[i]));
+			for (long count : memories[i].getStatistics())
+				text.append(String.format(" %13d", count));
+			text.append(String.format("%n"));
+		}
+		text.append(String.format("coherence traffic: %d transactions, %d invalidations%n", getTraffic(),
+				get(SharedMemory.INVALIDATIONS)));
+		return text.toString();
+	}
+
+	/**
+	 * Usage: Multicore [-c cores] [-e engine] [-s start-end] [filename [maxInstructions]]
+	 * Runs the program in 1, 2, 4... cores (up to -c, by default the processors of the host) and shows
+	 * how the throughput and the coherence traffic grow with the cores, and then the report of the last run.
+	 * -e chooses the execution engine (by default THREADED)
+	 * -s chooses the shared region (by default from DEFAULT_SHARED_START to the end of the memory)
+	 * The default program is operacoes, that never ends, so by default each core executes only
+	 * Pipeline.DEFAULT_MAX_INSTRUCTIONS instructions
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		int maxCores = Math.min(Runtime.getRuntime().availableProcessors(), SharedMemory.MAX_CORES);
+		ExecutionEngine engine = ExecutionEngine.THREADED;
+		int start = DEFAULT_SHARED_START, end = Architecture.DEFAULT_MEMORY_SIZE;
+		String filename = "operacoes";
+		long maxInstructions = Pipeline.DEFAULT_MAX_INSTRUCTIONS;
+		int others = 0;
+		for (int i = 0; i < args.length; i++) {
+			if ("-c".equals(args[i]))
+				maxCores = Integer.parseInt(args[++i]);
+			else if ("-e".equals(args[i]))
+				engine = ExecutionEngine.valueOf(args[++i].toUpperCase());
+			else if ("-s".equals(args[i])) {
+				String region = args[++i];
+				int dash = region.indexOf('-');
+				if (dash < 0)
+					throw new IllegalArgumentException("Expected start-end: "+region);
+				start = Integer.parseInt(region.substring(0, dash));
+				end = Integer.parseInt(region.substring(dash + 1)) + 1;
+			}
+			else if (others++ == 0)
+				filename = args[i];
+			else
+				maxInstructions = Long.parseLong(args[i]);
+		}
+
+		Multicore multicore = null;
+		System.out.printf("%6s %14s %12s %14s %12s %14s%n", "cores", "instructions", "ms", "instructions/s", "traffic",
+				"invalidations");
+		for (int cores = 1; cores <= maxCores; cores *= 2) {
+			multicore = new Multicore(cores, engine, Architecture.DEFAULT_MEMORY_SIZE, start, end, DEFAULT_LINE_SIZE,
+					CoherentMemory.DEFAULT_CACHE_LINES);
+			multicore.readExec(filename);
+			multicore.run(maxInstructions);
+			System.out.printf("%6d %14d %12.1f %14.0f %12d %14d%n", cores, multicore.getInstructions(),
+					multicore.getSeconds() * 1000, multicore.getThroughput(), multicore.getTraffic(),
+					multicore.get(SharedMemory.INVALIDATIONS));
+		}
+		if (multicore != null)
+			System.out.print(multicore.report());
+	}
+
+}
@@ -0,0 +1,22 @@
+package architecture;
+
+/**
+ * This predictor guesses that no conditional jump is taken (what a pipeline without prediction does)
+ */
+public class NotTakenPredictor implements BranchPredictor {
+
+	@Override
+	public boolean predict(int pc) {
+		return false;
+	}
+
+	@Override
+	public void update(int pc, boolean taken) {
+	}
+
+	@Override
+	public String toString() {
+		return "not taken";
+	}
+
+}
@@ -0,0 +1,88 @@
+package architecture;
+
+import components.Memory;
+
+/**
+ * This class is a table with an entry for each memory position (the instructions decoded, translated
+ * or compiled, indexed by address). Just like the memory, it is divided into pages of Memory.PAGE_SIZE entries,
+ * and a page is created only when one of its entries is set. So a table over a large memory costs only
+ * the pages the program really uses, and clear() visits only those pages.
+ *
+ * A subclass can override cleared() to be warned about each entry removed by clear()
+ * @param <T>
+ */
+public class PagedTable<T> {
+
+	private static final int PAGE_MASK = Memory.PAGE_SIZE - 1;
+
+	private int size;
+	private Object pages[][];
+	private int created[]; //the pages created since the last clear, in the order they were created
+	private int createdCount;
+
+	public PagedTable(int size) {
+		this.size = size;
+		pages = new Object[(size + PAGE_MASK) >>> Memory.PAGE_BITS][];
+		created = new int[pages.length];
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * This method returns the entry of the position, or null if there is none (or if the position is out of the table)
+	 * @param position
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public T get(int position) {
+		if ((position < 0) || (position >= size))
+			return null;
+		Object page[] = pages[position >>> Memory.PAGE_BITS];
+		if (page == null)
+			return null;
+		return (T) page[position & PAGE_MASK];
+	}
+
+	/**
+	 * This method sets the entry of the position (null removes it), creating its page if needed
+	 * @param position
+	 * @param value
+	 */
+	public void set(int position, T value) {
+		int index = position >>> Memory.PAGE_BITS;
+		Object page[] = pages[index];
+		if (page == null) {
+			if (value == null)
+				return;
+			page = new Object[Memory.PAGE_SIZE];
+			pages[index] = page;
+			created[createdCount++] = index;
+		}
+		page[position & PAGE_MASK] = value;
+	}
+
+	/**
+	 * This method removes all the entries, releasing the pages created
+	 */
+	@SuppressWarnings("unchecked")
+	public void clear() {
+		for (int i = 0; i < createdCount; i++) {
+			Object page[] = pages[created[i]];
+			for (Object value : page)
+				if (value != null)
+					cleared((T) value);
+			pages[created[i]] = null;
+		}
+		createdCount = 0;
+	}
+
+	/**
+	 * This method is called by clear() for each entry removed
+	 * @param value
+	 */
+	protected void cleared(T value) {
+	}
+
+}
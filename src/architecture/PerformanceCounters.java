@@ -0,0 +1,272 @@
+package architecture;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import components.StripedCounter;
+import components.Ula;
+
+/**
+ * This class keeps the performance counters of an architecture: the instructions retired per opcode
+ * (indexed as the commands list, the last one counts the unknown commands as the end of the program),
+ * the puts into each bus, the read and store calls of the memory and of the status memory, the ula
+ * operations, and the time spent running (so the instructions per second of the host are known).
+ *
+ * The simulated cycles are added by the clock of each architecture counted (see Clock.setCounter):
+ * an architecture counted is always timed (see Architecture.setCounters), so the counters of only one
+ * architecture show the same cycles as its timing model, and counters shared by many architectures
+ * show the cycles of all of them.
+ * The functional engines don't use the buses, so only their instructions are counted.
+ *
+ * The counters are striped (see StripedCounter), so many architectures can share them and the
+ * increments stay cheap. They can be published as a JMX MBean (see register)
+ */
+public class PerformanceCounters implements PerformanceCountersMBean {
+
+	private String opcodes[];
+	private StripedCounter instructions[];
+	private StripedCounter extbus1Puts;
+	private StripedCounter intbus1Puts;
+	private StripedCounter intbus2Puts;
+	private StripedCounter memoryReads;
+	private StripedCounter memoryStores;
+	private StripedCounter statusMemoryReads;
+	private StripedCounter statusMemoryStores;
+	private StripedCounter ulaOperations[];
+	private StripedCounter runNanos;
+	private StripedCounter cycles; //the simulated cycles, added by the clocks of the architectures
+	private ObjectName name; //the name in the MBean server (null if not registered)
+
+	/**
+	 * This constructor creates the counters of the commands
+	 * @param commandsList
+	 */
+	public PerformanceCounters(ArrayList<String> commandsList) {
+		opcodes = new String[commandsList.size() + 1];
+		commandsList.toArray(opcodes);
+		opcodes[commandsList.size()] = "END";
+		instructions = new StripedCounter[opcodes.length];
+		for (int i = 0; i < instructions.length; i++)
+			instructions[i] = new StripedCounter();
+		extbus1Puts = new StripedCounter();
+		intbus1Puts = new StripedCounter();
+		intbus2Puts = new StripedCounter();
+		memoryReads = new StripedCounter();
+		memoryStores = new StripedCounter();
+		statusMemoryReads = new StripedCounter();
+		statusMemoryStores = new StripedCounter();
+		ulaOperations = new StripedCounter[Ula.OPERATIONS];
+		for (int i = 0; i < ulaOperations.length; i++)
+			ulaOperations[i] = new StripedCounter();
+		runNanos = new StripedCounter();
+		cycles = new StripedCounter();
+	}
+
+	/**
+	 * This method counts an instruction retired
+	 * @param command
+	 */
+	public void retired(int command) {
+		if ((command >= 0) && (command < instructions.length - 1))
+			instructions[command].increment();
+		else
+			instructions[instructions.length - 1].increment();
+	}
+
+	/**
+	 * This method adds the time spent running a program
+	 * @param nanos
+	 */
+	public void addRunTime(long nanos) {
+		runNanos.add(nanos);
+	}
+
+	protected StripedCounter getExtbus1Counter() {
+		return extbus1Puts;
+	}
+
+	protected StripedCounter getIntbus1Counter() {
+		return intbus1Puts;
+	}
+
+	protected StripedCounter getIntbus2Counter() {
+		return intbus2Puts;
+	}
+
+	protected StripedCounter getMemoryReadsCounter() {
+		return memoryReads;
+	}
+
+	protected StripedCounter getMemoryStoresCounter() {
+		return memoryStores;
+	}
+
+	protected StripedCounter getStatusMemoryReadsCounter() {
+		return statusMemoryReads;
+	}
+
+	protected StripedCounter getStatusMemoryStoresCounter() {
+		return statusMemoryStores;
+	}
+
+	protected StripedCounter[] getUlaCounters() {
+		return ulaOperations;
+	}
+
+	protected StripedCounter getCyclesCounter() {
+		return cycles;
+	}
+
+	@Override
+	public long getInstructions() {
+		long sum = 0;
+		for (StripedCounter counter : instructions)
+			sum += counter.get();
+		return sum;
+	}
+
+	@Override
+	public long[] getInstructionsPerOpcode() {
+		long counts[] = new long[instructions.length];
+		for (int i = 0; i < counts.length; i++)
+			counts[i] = instructions[i].get();
+		return counts;
+	}
+
+	@Override
+	public String[] getOpcodes() {
+		return opcodes.clone();
+	}
+
+	@Override
+	public long getExtbus1Puts() {
+		return extbus1Puts.get();
+	}
+
+	@Override
+	public long getIntbus1Puts() {
+		return intbus1Puts.get();
+	}
+
+	@Override
+	public long getIntbus2Puts() {
+		return intbus2Puts.get();
+	}
+
+	@Override
+	public long getMemoryReads() {
+		return memoryReads.get();
+	}
+
+	@Override
+	public long getMemoryStores() {
+		return memoryStores.get();
+	}
+
+	@Override
+	public long getStatusMemoryReads() {
+		return statusMemoryReads.get();
+	}
+
+	@Override
+	public long getStatusMemoryStores() {
+		return statusMemoryStores.get();
+	}
+
+	@Override
+	public long getUlaAdds() {
+		return ulaOperations[Ula.ADD].get();
+	}
+
+	@Override
+	public long getUlaSubs() {
+		return ulaOperations[Ula.SUB].get();
+	}
+
+	@Override
+	public long getUlaMuls() {
+		return ulaOperations[Ula.MUL].get();
+	}
+
+	@Override
+	public long getUlaIncs() {
+		return ulaOperations[Ula.INC].get();
+	}
+
+	@Override
+	public long getCycles() {
+		return cycles.get();
+	}
+
+	@Override
+	public double getInstructionsPerSecond() {
+		long nanos = runNanos.get();
+		return (nanos == 0) ? 0 : getInstructions() / (nanos / 1e9);
+	}
+
+	/**
+	 * This method returns all the counters as text, one per line (only the opcodes executed are shown)
+	 */
+	@Override
+	public String dump() {
+		StringBuilder text = new StringBuilder();
+		text.append(String.format("instructions retired: %d%n", getInstructions()));
+		for (int i = 0; i < instructions.length; i++) {
+			long count = instructions[i].get();
+			if (count > 0)
+				text.append(String.format("  %-8s %d%n", opcodes[i], count));
+		}
+		text.append(String.format("bus puts: extbus1 %d, intbus1 %d, intbus2 %d%n", getExtbus1Puts(), getIntbus1Puts(), getIntbus2Puts()));
+		text.append(String.format("memory: %d reads, %d stores%n", getMemoryReads(), getMemoryStores()));
+		text.append(String.format("status memory: %d reads, %d stores%n", getStatusMemoryReads(), getStatusMemoryStores()));
+		text.append(String.format("ula: %d add, %d sub, %d mul, %d inc%n", getUlaAdds(), getUlaSubs(), getUlaMuls(), getUlaIncs()));
+		text.append(String.format("simulated cycles: %d%n", getCycles()));
+		text.append(String.format("host instructions per second: %.0f%n", getInstructionsPerSecond()));
+		return text.toString();
+	}
+
+	@Override
+	public void reset() {
+		for (StripedCounter counter : instructions)
+			counter.reset();
+		extbus1Puts.reset();
+		intbus1Puts.reset();
+		intbus2Puts.reset();
+		memoryReads.reset();
+		memoryStores.reset();
+		statusMemoryReads.reset();
+		statusMemoryStores.reset();
+		for (StripedCounter counter : ulaOperations)
+			counter.reset();
+		runNanos.reset();
+		cycles.reset();
+	}
+
+	/**
+	 * This method publishes the counters in the platform MBean server,
+	 * as architecture:type=PerformanceCounters,name=(the name)
+	 * @param name
+	 * @throws JMException
+	 */
+	public void register(String name) throws JMException {
+		unregister();
+		ObjectName objectName = new ObjectName("architecture:type=PerformanceCounters,name="+ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		this.name = objectName;
+	}
+
+	/**
+	 * This method removes the counters from the platform MBean server
+	 * @throws JMException
+	 */
+	public void unregister() throws JMException {
+		if (name != null) {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+			name = null;
+		}
+	}
+
+}
@@ -0,0 +1,48 @@
+package architecture;
+
+/**
+ * This interface is the JMX view of the performance counters of an architecture (see PerformanceCounters)
+ */
+public interface PerformanceCountersMBean {
+
+	public long getInstructions();
+
+	public long[] getInstructionsPerOpcode();
+
+	public String[] getOpcodes();
+
+	public long getExtbus1Puts();
+
+	public long getIntbus1Puts();
+
+	public long getIntbus2Puts();
+
+	public long getMemoryReads();
+
+	public long getMemoryStores();
+
+	public long getStatusMemoryReads();
+
+	public long getStatusMemoryStores();
+
+	public long getUlaAdds();
+
+	public long getUlaSubs();
+
+	public long getUlaMuls();
+
+	public long getUlaIncs();
+
+	/**
+	 * This method returns the cycles of the clock attached (0 if the architecture is not timed)
+	 * @return
+	 */
+	public long getCycles();
+
+	public double getInstructionsPerSecond();
+
+	public String dump();
+
+	public void reset();
+
+}
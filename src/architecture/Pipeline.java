@@ -0,0 +1,345 @@
+package architecture;
+
+import java.io.IOException;
+
+import components.Memory;
+
+/**
+ * This class is a model of a five stages pipelined core (IF, ID, EX, MEM, WB) for the same instructions.
+ * Each instruction is executed by the architecture (so the results are the same ones of any engine),
+ * and the model finds in which cycle the instruction enters each stage, one instruction per stage per cycle.
+ *
+ * An instruction waits in ID while:
+ * - one of its RPG0 to RPG3 operands is not ready (a data hazard).
+ *   Without forwarding, the result is ready in the cycle after WB (it is written in the first half of WB
+ *   and read in the second half of ID). With forwarding, the result of EX goes straight into the next EX,
+ *   and the result of MEM (the instructions with a memory operand, as moveMemReg) into the EX after it.
+ * - the flags it uses (jn and jz) are not ready, just like the registers (a flags hazard).
+ * The jumps are fetched as if they were not taken: jmp finds its target in ID and the conditional jumps
+ * in EX, so the instructions fetched after a taken jump are discarded (a control hazard).
+ * With a branch unit (see setBranchUnit), the fetch follows its prediction instead: only a mispredicted
+ * direction waits for EX, and a jump predicted taken whose target is not in the buffer waits for ID.
+ *
+ * The memory operands are read and written in MEM, so the instructions that use them finish there,
+ * and the whole instruction (command and operands) is fetched in one cycle
+ */
+public class Pipeline {
+
+	//the causes of the stalls
+	public static final int DATA = 0;
+	public static final int FLAGS = 1;
+	public static final int CONTROL = 2;
+	public static final int CAUSES = 3;
+	public static final String CAUSE_NAMES[] = {"data", "flags", "control"};
+
+	public static final int STAGES = 5;
+	public static final long DEFAULT_MAX_INSTRUCTIONS = 1000000;
+
+	private static final int NONE = -1;
+	//the general purpose registers, RPG0 to RPG3, and the flags (all of them are a single resource)
+	private static final int FLAGS_RESOURCE = FunctionalEngine.GENERAL_REGISTERS;
+
+	private Architecture arch;
+	private Memory memory;
+	private boolean forwarding;
+	private BranchUnit branches; //predicts the jumps (null if the jumps are predicted not taken)
+
+	//the cycle each stage received the last instruction
+	private long fetched, decoded, executed, memoryAccessed, written;
+	private long redirect; //the first cycle the next instruction can be fetched (after a taken jump)
+	private long ready[]; //the first cycle an instruction can enter EX using each resource
+	private long instructions;
+	private long stalls[]; //indexed by the causes
+
+	/**
+	 * This constructor creates a pipeline that executes the program in the architecture
+	 * @param arch
+	 * @param forwarding if the results are forwarded to EX
+	 */
+	public Pipeline(Architecture arch, boolean forwarding) {
+		this.arch = arch;
+		this.memory = arch.getMemory();
+		this.forwarding = forwarding;
+		ready = new long[FLAGS_RESOURCE + 1];
+		stalls = new long[CAUSES];
+		reset();
+	}
+
+	public boolean isForwarding() {
+		return forwarding;
+	}
+
+	/**
+	 * This method sets the branch unit that predicts the jumps (null predicts all the jumps not taken)
+	 * @param branches
+	 */
+	public void setBranchUnit(BranchUnit branches) {
+		this.branches = branches;
+	}
+
+	public BranchUnit getBranchUnit() {
+		return branches;
+	}
+
+	/**
+	 * This method empties the pipeline and clears the statistics
+	 */
+	public void reset() {
+		fetched = decoded = executed = memoryAccessed = written = -1;
+		redirect = 0;
+		for (int i = 0; i < ready.length; i++)
+			ready[i] = 0;
+		instructions = 0;
+		for (int i = 0; i < CAUSES; i++)
+			stalls[i] = 0;
+	}
+
+	/**
+	 * This method executes the program stored in the memory, until the end of the program
+	 * @return the amount of instructions executed (the end of the program too)
+	 */
+	public long run() {
+		return run(Long.MAX_VALUE);
+	}
+
+	/**
+	 * This method executes the program stored in the memory, until the end of the program
+	 * or until the amount of instructions is executed
+	 * @param maxInstructions
+	 * @return the amount of instructions executed (the end of the program too)
+	 */
+	public long run(long maxInstructions) {
+		long count = 0;
+		boolean running = true;
+		while (running && (count < maxInstructions)) {
+			running = step();
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * This method executes the instruction pointed by PC and moves it through the pipeline
+	 * @return false if the instruction was the end of the program
+	 */
+	public boolean step() {
+		int pc = arch.getPC().getData();
+		int command = memory.getData(pc);
+		boolean running = arch.step();
+		issue(pc, command, arch.getPC().getData());
+		return running;
+	}
+
+	/**
+	 * This method returns the register in the operand of the instruction (NONE if it is not RPG0 to RPG3)
+	 * @param pc
+	 * @param operand
+	 * @return
+	 */
+	private int register(int pc, int operand) {
+		int id = memory.getData(pc + operand);
+		return FunctionalEngine.isGeneral(id) ? id : NONE;
+	}
+
+	/**
+	 * This method finds the cycles of the instruction in each stage and the stalls it caused
+	 * @param pc
+	 * @param command
+	 * @param next the address of the instruction executed after this one
+	 */
+	private void issue(int pc, int command, int next) {
+		int source1 = NONE, source2 = NONE, destination = NONE;
+		boolean readsFlags = false, writesFlags = false;
+		boolean memoryResult = false; //the result (register or flags) is ready only after MEM
+		boolean jump = false, conditional = false;
+		switch (command) {
+		case 0: case 4: case 10: //addRegReg, subRegReg, imulRegReg
+			source1 = register(pc, 1);
+			source2 = destination = register(pc, 2);
+			writesFlags = true;
+			break;
+		case 1: case 5: case 8: //addMemReg, subMemReg, imulMemReg
+			source1 = destination = register(pc, 2);
+			writesFlags = memoryResult = true;
+			break;
+		case 2: case 6: case 9: //addRegMem, subRegMem, imulRegMem
+			source1 = register(pc, 1);
+			writesFlags = memoryResult = true;
+			break;
+		case 3: case 7: //addImmReg, subImmReg
+			source1 = destination = register(pc, 2);
+			writesFlags = true;
+			break;
+		case 11: //moveMemReg
+			destination = register(pc, 2);
+			memoryResult = true;
+			break;
+		case 12: //moveRegMem
+			source1 = register(pc, 1);
+			break;
+		case 13: //moveRegReg
+			source1 = register(pc, 1);
+			destination = register(pc, 2);
+			break;
+		case 14: //moveImmReg
+			destination = register(pc, 2);
+			break;
+		case 15: //incReg
+			source1 = destination = register(pc, 1);
+			writesFlags = true;
+			break;
+		case 16: //jmp
+			jump = true;
+			break;
+		case 17: case 18: //jn, jz
+			readsFlags = conditional = true;
+			break;
+		case 19: case 20: case 21: case 22: //jeq, jneq, jgt, jlw
+			source1 = register(pc, 1);
+			source2 = register(pc, 2);
+			writesFlags = conditional = true;
+			break;
+		case 23: //read
+			destination = 0;
+			memoryResult = true;
+			break;
+		case 24: //store
+			source1 = 0;
+			break;
+		case 25: //ldi
+			destination = 0;
+			break;
+		default: //the end of the program
+		}
+
+		//each stage receives the instruction when it is free (the instruction before has left it)
+		long fetch = Math.max(Math.max(fetched + 1, decoded), redirect);
+		long decode = Math.max(fetch + 1, executed);
+		long free = Math.max(decode + 1, memoryAccessed); //EX without the hazards
+		long dataReady = Math.max((source1 == NONE) ? 0 : ready[source1], (source2 == NONE) ? 0 : ready[source2]);
+		long flagsReady = readsFlags ? ready[FLAGS_RESOURCE] : 0;
+		long execute = Math.max(free, Math.max(dataReady, flagsReady));
+		long access = execute + 1;
+		long write = access + 1;
+
+		if (instructions > 0) { //the cycles between this WB and the last one, besides the one expected
+			long stall = write - written - 1;
+			long hazard = execute - free;
+			stalls[(dataReady >= flagsReady) ? DATA : FLAGS] += hazard;
+			stalls[CONTROL] += stall - hazard;
+		}
+		instructions++;
+
+		//when the results are ready to the next instructions
+		long resultReady;
+		if (!forwarding)
+			resultReady = write + 1;
+		else
+			resultReady = memoryResult ? access + 1 : execute + 1;
+		if (destination != NONE)
+			ready[destination] = resultReady;
+		if (writesFlags)
+			ready[FLAGS_RESOURCE] = resultReady;
+
+		//a jump not predicted discards the instructions fetched after it
+		if (jump || conditional) {
+			int size = Architecture.getOperandsCount(command) + 1;
+			boolean taken = jump || (next != pc + size);
+			int outcome;
+			if (branches != null)
+				outcome = branches.branch(pc, command, memory.getData(pc + size - 1), taken);
+			else
+				outcome = !taken ? BranchUnit.CORRECT : jump ? BranchUnit.TARGET_MISSED : BranchUnit.MISPREDICTED;
+			if (outcome == BranchUnit.MISPREDICTED)
+				redirect = execute + 1;
+			else if (outcome == BranchUnit.TARGET_MISSED)
+				redirect = decode + 1;
+		}
+
+		fetched = fetch;
+		decoded = decode;
+		executed = execute;
+		memoryAccessed = access;
+		written = write;
+	}
+
+	public long getInstructions() {
+		return instructions;
+	}
+
+	/**
+	 * This method returns the cycles since the first instruction was fetched until the last one was written
+	 * @return
+	 */
+	public long getCycles() {
+		return written + 1;
+	}
+
+	/**
+	 * This method returns the stall cycles of the cause
+	 * @param cause DATA, FLAGS or CONTROL
+	 * @return
+	 */
+	public long getStalls(int cause) {
+		return stalls[cause];
+	}
+
+	public long getStalls() {
+		long sum = 0;
+		for (long count : stalls)
+			sum += count;
+		return sum;
+	}
+
+	/**
+	 * This method returns the cycles per instruction (0 if nothing was executed)
+	 * @return
+	 */
+	public double getCPI() {
+		return (instructions == 0) ? 0 : (double) getCycles() / instructions;
+	}
+
+	/**
+	 * This method returns the throughput: the instructions finished per cycle (0 if nothing was executed)
+	 * @return
+	 */
+	public double getThroughput() {
+		return (instructions == 0) ? 0 : (double) instructions / getCycles();
+	}
+
+	/**
+	 * This method returns the statistics as text
+	 * @return
+	 */
+	public String report() {
+		StringBuilder text = new StringBuilder();
+		text.append(String.format("pipeline %s forwarding%n", forwarding ? "with" : "without"));
+		text.append(String.format("instructions: %d, cycles: %d, CPI: %.2f, throughput: %.2f instructions per cycle%n",
+				instructions, getCycles(), getCPI(), getThroughput()));
+		text.append(String.format("stalls: %d", getStalls()));
+		for (int i = 0; i < CAUSES; i++)
+			text.append(String.format(", %s %d", CAUSE_NAMES[i], stalls[i]));
+		text.append(String.format("%n"));
+		return text.toString();
+	}
+
+	/**
+	 * Usage: Pipeline [filename [maxInstructions]] (the default program is operacoes, that never ends,
+	 * so by default only the first DEFAULT_MAX_INSTRUCTIONS instructions are executed)
+	 * The program runs without and with forwarding, and both statistics are shown
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		String filename = (args.length > 0) ? args[0] : "operacoes";
+		long maxInstructions = (args.length > 1) ? Long.parseLong(args[1]) : DEFAULT_MAX_INSTRUCTIONS;
+		for (boolean forwarding : new boolean[] {false, true}) {
+			Architecture arch = new Architecture();
+			arch.readExec(filename);
+			Pipeline pipeline = new Pipeline(arch, forwarding);
+			pipeline.run(maxInstructions);
+			System.out.print(pipeline.report());
+		}
+	}
+
+}
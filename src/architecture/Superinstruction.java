@@ -0,0 +1,22 @@
+package architecture;
+
+/**
+ * This enum identifies the pairs of instructions that the threaded engine executes as only one instruction
+ */
+public enum Superinstruction {
+
+	READ_STORE("read + store"),        //copies a variable into another one
+	LDI_STORE("ldi + store"),          //initializes a variable
+	SUB_MEM_REG_JN("subMemReg + jn");  //the loop test
+
+	private String description;
+
+	private Superinstruction(String description) {
+		this.description = description;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+}
@@ -488,7 +488,11 @@ public class TestArchitecture {
 		assertEquals(5, arch.getIntbus2().get());
 		
 		arch.getRPG3().read();
-		assertEquals(10, arch.getIntbus2().get());		
+		assertEquals(10, arch.getIntbus2().get());
+		
+		//the multiplication doesn't use the memory
+		for (int i = 301; i <= 380; i++)
+			assertEquals(0, arch.getMemory().getDataList()[i]);
 	}
 	
 	@Test
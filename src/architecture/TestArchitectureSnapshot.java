@@ -0,0 +1,151 @@
+package architecture;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class TestArchitectureSnapshot {
+
+	@Test
+	public void testSnapshotRestore() throws IOException {
+		Architecture arch = new Architecture();
+		arch.readExec("idade");
+		ArchitectureSnapshot loaded = arch.snapshot();
+
+		arch.controlUnitEexec();
+		ArchitectureSnapshot finished = arch.snapshot();
+
+		//after the restore, the program runs again and reaches the same state
+		arch.restore(loaded);
+		arch.getPC().read();
+		assertEquals(0, arch.getExtbus1().get());
+		arch.controlUnitEexec();
+		ArchitectureSnapshot again = arch.snapshot();
+		assertArrayEquals(finished.getRegisters(), again.getRegisters());
+		assertArrayEquals(finished.getFlagBits(), again.getFlagBits());
+		assertArrayEquals(finished.getMemory(), again.getMemory());
+		assertArrayEquals(finished.getStatusMemory(), again.getStatusMemory());
+	}
+
+	@Test
+	public void testBusesAndHandshake() {
+		Architecture arch = new Architecture();
+		//the memory is in the middle of a store: it is waiting for the data of the position 10
+		arch.getExtbus1().put(10);
+		arch.getMemory().store();
+		arch.getIntbus1().put(5);
+		arch.getIntbus2().put(6);
+		arch.getFlags().setBit(1, 1);
+		ArchitectureSnapshot snapshot = arch.snapshot();
+
+		arch.getExtbus1().put(0);
+		arch.getMemory().store(); //completes the first store (position 10 = 0)
+		arch.getMemory().store(); //starts another one
+		arch.getIntbus1().put(0);
+		arch.getIntbus2().put(0);
+		arch.getFlags().setBit(1, 0);
+
+		arch.restore(snapshot);
+		assertEquals(10, arch.getExtbus1().get());
+		assertEquals(5, arch.getIntbus1().get());
+		assertEquals(6, arch.getIntbus2().get());
+		assertEquals(1, arch.getFlags().getBit(1));
+		//the restored handshake receives the data
+		arch.getExtbus1().put(77);
+		arch.getMemory().store();
+		assertEquals(77, arch.getMemory().getDataList()[10]);
+	}
+
+	@Test
+	public void testRestoreDiscardsDecodedInstructions() {
+		Architecture arch = new Architecture(false, ExecutionEngine.THREADED);
+		arch.getMemory().getDataList()[0] = 25; //ldi 3
+		arch.getMemory().getDataList()[1] = 3;
+		arch.getMemory().getDataList()[2] = -1;
+		ArchitectureSnapshot first = arch.snapshot();
+		arch.controlUnitEexec();
+		assertEquals(3, arch.getRPG0().getData());
+
+		//another program, restored without the store handshake
+		arch.getMemory().getDataList()[1] = 9;
+		ArchitectureSnapshot second = arch.snapshot();
+		second.getRegisters()[6] = 0; //PC
+		arch.restore(second);
+		arch.controlUnitEexec();
+		assertEquals(9, arch.getRPG0().getData());
+		arch.restore(first);
+		arch.controlUnitEexec();
+		assertEquals(3, arch.getRPG0().getData());
+	}
+
+	@Test
+	public void testPool() throws IOException {
+		ArchitecturePool pool = new ArchitecturePool("idade", ExecutionEngine.FUNCTIONAL);
+		Architecture arch = pool.acquire();
+		arch.controlUnitEexec();
+		ArchitectureSnapshot finished = arch.snapshot();
+		pool.release(arch);
+
+		//the same architecture is used again, in the initial state
+		Architecture reused = pool.acquire();
+		assertSame(arch, reused);
+		reused.getPC().read();
+		assertEquals(0, reused.getExtbus1().get());
+		reused.controlUnitEexec();
+		assertArrayEquals(finished.getMemory(), reused.snapshot().getMemory());
+
+		//a new architecture is created only when there is no free one
+		Architecture other = pool.acquire();
+		assertNotSame(reused, other);
+		assertEquals(2, pool.getCreated());
+		other.controlUnitEexec();
+		assertArrayEquals(finished.getRegisters(), other.snapshot().getRegisters());
+		pool.release(other);
+		pool.release(reused);
+		assertEquals(2, pool.getFree());
+	}
+
+	@Test
+	public void testFork() throws IOException {
+		Architecture arch = new Architecture(false, ExecutionEngine.THREADED);
+		arch.readExec("idade");
+		Architecture fork = arch.fork();
+		assertEquals(0, fork.getMemory().getAllocatedPages()); //the program is shared, not copied
+
+		//both architectures run the program from the start and reach the same state
+		arch.controlUnitEexec();
+		fork.controlUnitEexec();
+		ArchitectureSnapshot finished = arch.snapshot();
+		assertArrayEquals(finished.getRegisters(), fork.snapshot().getRegisters());
+		assertArrayEquals(finished.getMemory(), fork.snapshot().getMemory());
+
+		//a larger memory costs only the pages written
+		Architecture large = new Architecture(false, ExecutionEngine.FUNCTIONAL, 1 << 20);
+		assertEquals(1 << 20, large.getMemorySize());
+		large.getMemory().setData(0, 25); //ldi 9
+		large.getMemory().setData(1, 9);
+		large.getMemory().setData(2, -1);
+		large.controlUnitEexec();
+		assertEquals(9, large.getRPG0().getData());
+		assertEquals(1, large.getMemory().getAllocatedPages());
+	}
+
+	@Test
+	public void testSparseMemoryEngines() {
+		//the tables of the engines are paged too, so a huge memory costs only the pages used
+		for (ExecutionEngine engine : ExecutionEngine.values()) {
+			Architecture huge = new Architecture(false, engine, 1 << 28);
+			huge.getMemory().setData(0, 25); //ldi 9
+			huge.getMemory().setData(1, 9);
+			huge.getMemory().setData(2, -1);
+			for (int i = 0; i < 3; i++) {
+				Architecture fork = huge.fork();
+				fork.controlUnitEexec();
+				assertEquals(9, fork.getRPG0().getData());
+			}
+		}
+	}
+
+}
@@ -0,0 +1,154 @@
+package architecture;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import components.Memory;
+
+public class TestBranchUnit {
+
+	//RPG1 counts from 1 to 10: jlw (in the position 8) is taken 9 times and not taken once
+	private static final Object LOOP[] = {"moveImmReg", 0, 1, "moveImmReg", 10, 2, "incReg", 1, "jlw", 1, 2, 6};
+	private static final int LOOP_JUMP = 8;
+
+	/**
+	 * This method creates an architecture with the program (commands names and operands) from the position 0,
+	 * followed by the end of the program
+	 * @param program
+	 * @return
+	 */
+	private Architecture load(Object... program) {
+		Architecture arch = new Architecture();
+		Memory memory = arch.getMemory();
+		int position = 0;
+		for (Object word : program) {
+			if (word instanceof String)
+				memory.setData(position++, arch.getCommandsList().indexOf(word));
+			else
+				memory.setData(position++, (Integer) word);
+		}
+		memory.setData(position, -1);
+		return arch;
+	}
+
+	private BranchUnit run(BranchUnit unit, Object... program) {
+		unit.run(load(program), Long.MAX_VALUE);
+		return unit;
+	}
+
+	@Test
+	public void testNotTaken() {
+		BranchUnit unit = run(new BranchUnit(new NotTakenPredictor(), null), LOOP);
+		assertEquals(10, unit.getExecutions());
+		assertEquals(9, unit.getMispredictions());
+		assertEquals(0, unit.getTargetMisses());
+		assertEquals(9 * BranchUnit.DEFAULT_PENALTY, unit.getPenaltyCycles());
+		assertEquals(0.1, unit.getAccuracy(), 1e-9);
+		BranchUnit.Branch branch = unit.getBranch(LOOP_JUMP);
+		assertEquals(10, branch.getExecutions());
+		assertEquals(9, branch.getTaken());
+		assertEquals(0.1, branch.getAccuracy(), 1e-9);
+		assertNull(unit.getBranch(0));
+
+		//the penalty is configurable
+		unit = new BranchUnit(new NotTakenPredictor(), null);
+		unit.setPenalty(10);
+		assertEquals(90, run(unit, LOOP).getPenaltyCycles());
+	}
+
+	@Test
+	public void testTwoBit() {
+		//only the first taken and the last not taken are mispredicted
+		BranchUnit unit = run(new BranchUnit(new TwoBitPredictor(), new BranchTargetBuffer()), LOOP);
+		assertEquals(2, unit.getMispredictions());
+		assertEquals(0, unit.getTargetMisses()); //the first taken put the target into the buffer
+		assertEquals(0.8, unit.getAccuracy(), 1e-9);
+		assertEquals(2 * BranchUnit.DEFAULT_PENALTY, unit.getPenaltyCycles());
+		//without a buffer, each jump predicted taken waits for its target
+		unit = run(new BranchUnit(new TwoBitPredictor(), null), LOOP);
+		assertEquals(2, unit.getMispredictions());
+		assertEquals(8, unit.getTargetMisses());
+		assertEquals(2 * BranchUnit.DEFAULT_PENALTY + 8 * BranchUnit.DEFAULT_TARGET_PENALTY, unit.getPenaltyCycles());
+		String report = unit.report(new Architecture().getCommandsList());
+		assertTrue(report.contains("jumps: 10"));
+		assertTrue(report.contains(LOOP_JUMP+" jlw"));
+	}
+
+	@Test
+	public void testGshare() {
+		//a jump taken every other time: the history tells the next outcome
+		BranchPredictor predictors[] = {new TwoBitPredictor(), new GsharePredictor(4)};
+		int mispredictions[] = new int[predictors.length];
+		for (int p = 0; p < predictors.length; p++)
+			for (int i = 0; i < 100; i++) {
+				boolean taken = (i % 2) == 0;
+				if (predictors[p].predict(20) != taken)
+					mispredictions[p]++;
+				predictors[p].update(20, taken);
+			}
+		assertTrue(mispredictions[0] >= 50);
+		assertTrue(mispredictions[1] <= 5);
+
+		BranchUnit unit = run(new BranchUnit(new GsharePredictor(), new BranchTargetBuffer()), LOOP);
+		assertEquals(10, unit.getExecutions());
+		//the history is new in each iteration, so each taken jump uses a counter never trained
+		assertEquals(9, unit.getMispredictions());
+	}
+
+	@Test
+	public void testBranchTargetBuffer() {
+		//jmp (in the position 9) runs twice: its target is in the buffer the second time
+		Object program[] = {"moveImmReg", 3, 2, "incReg", 1, "jeq", 1, 2, 11, "jmp", 3};
+		BranchUnit unit = run(new BranchUnit(new NotTakenPredictor(), new BranchTargetBuffer()), program);
+		assertEquals(2, unit.getBranch(9).getExecutions());
+		assertEquals(1, unit.getBranch(9).getTargetMisses());
+		assertEquals(0, unit.getBranch(9).getMispredictions());
+		unit = run(new BranchUnit(new NotTakenPredictor(), null), program);
+		assertEquals(2, unit.getBranch(9).getTargetMisses());
+
+		//two jumps in the same entry replace each other
+		BranchTargetBuffer buffer = new BranchTargetBuffer(4);
+		buffer.update(1, 100);
+		assertEquals(100, buffer.lookup(1));
+		buffer.update(5, 200);
+		assertEquals(-1, buffer.lookup(1));
+		assertEquals(200, buffer.lookup(5));
+	}
+
+	@Test
+	public void testPipeline() throws IOException {
+		//without a unit, the pipeline predicts not taken
+		Pipeline plain = new Pipeline(load(LOOP), true);
+		plain.run();
+		assertEquals(9 * 2, plain.getStalls(Pipeline.CONTROL));
+		Pipeline notTaken = new Pipeline(load(LOOP), true);
+		notTaken.setBranchUnit(new BranchUnit(new NotTakenPredictor(), null));
+		notTaken.run();
+		assertEquals(plain.getCycles(), notTaken.getCycles());
+		Pipeline predicted = new Pipeline(load(LOOP), true);
+		predicted.setBranchUnit(new BranchUnit(new TwoBitPredictor(), new BranchTargetBuffer()));
+		predicted.run();
+		assertEquals(2 * 2, predicted.getStalls(Pipeline.CONTROL));
+		assertEquals(plain.getCycles() - 14, predicted.getCycles());
+
+		//the same results of the architecture
+		Architecture expected = new Architecture();
+		expected.readExec("idade");
+		expected.controlUnitEexec();
+		Architecture arch = new Architecture();
+		arch.readExec("idade");
+		BranchUnit unit = new BranchUnit(new GsharePredictor(), new BranchTargetBuffer());
+		unit.run(arch, Long.MAX_VALUE);
+		assertArrayEquals(expected.getMemory().getDataList(), arch.getMemory().getDataList());
+		assertTrue(unit.getExecutions() > 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testEntries() {
+		new TwoBitPredictor(100);
+	}
+
+}
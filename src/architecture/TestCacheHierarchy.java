@@ -0,0 +1,64 @@
+package architecture;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import components.Cache;
+
+public class TestCacheHierarchy {
+
+	@Test
+	public void testProgram() throws IOException {
+		//imul: ldi 4, move %RPG0 %RPG1, ldi 2, move %RPG0 var1 (300), imul %RPG1 var1 and the end
+		Architecture arch = new Architecture();
+		arch.readExec("imul");
+		CacheHierarchy hierarchy = new CacheHierarchy(new Cache("L1I", 16, 4, 1, Cache.LRU, true),
+				new Cache("L1D", 16, 4, 1, Cache.LRU, true));
+		hierarchy.addRegion("code", 0, 99);
+		hierarchy.addRegion("variables", 300, 300);
+		assertEquals(6, hierarchy.run(arch, Long.MAX_VALUE));
+		Cache instructions = hierarchy.getInstructionCache();
+		Cache data = hierarchy.getDataCache();
+		assertEquals(2 + 3 + 2 + 3 + 3 + 1, instructions.get(Cache.HITS) + instructions.get(Cache.MISSES));
+		assertEquals(4, instructions.get("code", Cache.MISSES)); //14 words in 4 lines
+		assertEquals(0, instructions.get(Cache.EVICTIONS));
+		//moveRegMem writes var1 and imulRegMem reads and writes it
+		assertEquals(1, data.get("variables", Cache.MISSES));
+		assertEquals(2, data.get("variables", Cache.HITS));
+		assertEquals(0, data.get("code", Cache.MISSES));
+		assertEquals(8, arch.getMemory().getData(300)); //the program ran
+		assertTrue(hierarchy.report().startsWith("L1I: 16 words"));
+
+		hierarchy.reset();
+		assertEquals(0, instructions.get(Cache.HITS) + data.get(Cache.HITS));
+	}
+
+	@Test
+	public void testSecondLevel() throws IOException {
+		Cache l2 = new Cache("L2", 256, 8, 4, Cache.LRU, true);
+		CacheHierarchy hierarchy = new CacheHierarchy(new Cache("L1I", 8, 4, 1, Cache.LRU, true),
+				new Cache("L1D", 8, 4, 1, Cache.FIFO, false));
+		hierarchy.getInstructionCache().setNext(l2);
+		hierarchy.getDataCache().setNext(l2);
+		assertEquals(3, hierarchy.getCaches().size());
+		hierarchy.addRegion("all", 0, 400);
+		Architecture arch = new Architecture();
+		arch.readExec("idade");
+		hierarchy.run(arch, Long.MAX_VALUE);
+		//the second level receives the misses of the instruction cache and the writes of the data cache
+		//(the write misses of a write-through cache are not filled)
+		Cache data = hierarchy.getDataCache();
+		long instructionMisses = hierarchy.getInstructionCache().get(Cache.MISSES);
+		long l2Accesses = l2.get("all", Cache.HITS) + l2.get("all", Cache.MISSES);
+		assertTrue(l2Accesses >= instructionMisses + data.get(Cache.WRITE_THROUGHS));
+		assertTrue(l2Accesses <= instructionMisses + data.get(Cache.WRITE_THROUGHS) + data.get(Cache.MISSES));
+		assertTrue(l2.get("all", Cache.HITS) > 0);
+		assertTrue(data.get(Cache.WRITE_THROUGHS) > 0);
+		assertEquals(0, data.get(Cache.WRITE_BACKS));
+		assertTrue(hierarchy.report().contains("L2: 256 words"));
+	}
+
+}
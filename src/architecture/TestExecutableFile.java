@@ -0,0 +1,176 @@
+package architecture;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import assembler.Assembler;
+import components.Bus;
+import components.Memory;
+
+public class TestExecutableFile {
+
+	@Test
+	public void testSaveLoad() throws IOException {
+		File file = File.createTempFile("executable", ".dxf");
+		file.deleteOnExit();
+		//the code crosses the first page boundary
+		int code[] = new int[Memory.PAGE_SIZE + 10];
+		for (int i = 0; i < code.length; i++)
+			code[i] = i * 3;
+		ExecutableFile executable = new ExecutableFile(5, 100, code, 3000, new int[] {7, 8});
+		executable.addSymbol("laco", 105);
+		executable.addSymbol("x", 3000);
+		executable.save(file);
+		assertTrue(ExecutableFile.isBinary(file));
+
+		Memory memory = new Memory(4 * Memory.PAGE_SIZE, new Bus());
+		HashMap<String, Integer> symbols = new HashMap<String, Integer>();
+		assertEquals(5, ExecutableFile.load(file, memory, symbols));
+		assertEquals(0, memory.getData(99));
+		assertEquals(0, memory.getData(100));
+		assertEquals(3, memory.getData(101));
+		assertEquals(3 * (Memory.PAGE_SIZE + 9), memory.getData(100 + Memory.PAGE_SIZE + 9));
+		assertEquals(0, memory.getData(100 + Memory.PAGE_SIZE + 10));
+		assertEquals(7, memory.getData(3000));
+		assertEquals(8, memory.getData(3001));
+		assertEquals(3, memory.getAllocatedPages()); //only the pages written were created
+		assertEquals(2, symbols.size());
+		assertEquals(105, (int) symbols.get("laco"));
+
+		//the whole file can be read back too
+		ExecutableFile read = ExecutableFile.read(file);
+		assertArrayEquals(code, read.getCode());
+		assertArrayEquals(new int[] {7, 8}, read.getData());
+		assertEquals(3000, (int) read.getSymbols().get("x"));
+
+		//the program must fit into the memory
+		try {
+			ExecutableFile.load(file, new Memory(3001, new Bus()), null);
+			fail();
+		}
+		catch (IOException e) {
+		}
+	}
+	/**
+	 * This method writes an int into the file (to damage it)
+	 * @param file
+	 * @param offset
+	 * @param value
+	 * @throws IOException
+	 */
+	private void damage(File file, long offset, int value) throws IOException {
+		RandomAccessFile random = new RandomAccessFile(file, "rw");
+		random.seek(offset);
+		random.writeInt(value);
+		random.close();
+	}
+
+	/**
+	 * This method tells if the damaged file is refused both by load and by read
+	 * @param file
+	 * @return
+	 */
+	private boolean refused(File file) {
+		try {
+			ExecutableFile.load(file, new Memory(100, new Bus()), new HashMap<String, Integer>());
+			return false;
+		}
+		catch (IOException e) {
+		}
+		try {
+			ExecutableFile.read(file);
+			return false;
+		}
+		catch (IOException e) {
+		}
+		return true;
+	}
+
+	@Test
+	public void testDamagedSymbols() throws IOException {
+		File file = File.createTempFile("executable", ".dxf");
+		file.deleteOnExit();
+		ExecutableFile executable = new ExecutableFile(0, 0, new int[] {1, 2}, 50, new int[] {3});
+		executable.addSymbol("laco", 1);
+		executable.save(file);
+		long symbols = ExecutableFile.HEADER_SIZE + 3 * 4; //after the code and the data
+		assertFalse(refused(file));
+
+		damage(file, 7 * 4, Integer.MAX_VALUE); //the amount of symbols
+		assertTrue(refused(file));
+		damage(file, 7 * 4, -1);
+		assertTrue(refused(file));
+		damage(file, 7 * 4, 1);
+		assertFalse(refused(file));
+
+		damage(file, symbols + 4, Integer.MAX_VALUE); //the length of the name
+		assertTrue(refused(file));
+		damage(file, symbols + 4, -5);
+		assertTrue(refused(file));
+
+		damage(file, symbols + 4, 4);
+		damage(file, 6 * 4, -1); //the length of the data
+		assertTrue(refused(file));
+	}
+
+	@Test
+	public void testTextIsNotBinary() throws IOException {
+		assertFalse(ExecutableFile.isBinary(new File("idade.dxf")));
+		File file = File.createTempFile("executable", ".dxf");
+		file.deleteOnExit();
+		FileWriter writer = new FileWriter(file);
+		writer.write("-1");
+		writer.close();
+		assertFalse(ExecutableFile.isBinary(file));
+		try {
+			ExecutableFile.read(file);
+			fail();
+		}
+		catch (IOException e) {
+		}
+	}
+
+	/**
+	 * This method assembles the program into a temporary executable, returning its name (without the extention)
+	 * @param program
+	 * @param binary
+	 * @return
+	 * @throws IOException
+	 */
+	private String assemble(String program, boolean binary) throws IOException {
+		File file = File.createTempFile(program, ".dxf");
+		file.deleteOnExit();
+		String filename = file.getPath().substring(0, file.getPath().length() - 4);
+		Assembler assembler = new Assembler();
+		assembler.setBinary(binary);
+		assembler.read(program);
+		assembler.parse();
+		assembler.makeExecutable(filename);
+		return filename;
+	}
+
+	@Test
+	public void testAssembleBinary() throws IOException {
+		//the binary program is loaded just like the text one
+		Architecture text = new Architecture();
+		text.readExec(assemble("idade", false));
+		Architecture binary = new Architecture(false, ExecutionEngine.THREADED);
+		binary.readExec(assemble("idade", true));
+		assertArrayEquals(text.snapshot().getMemory(), binary.snapshot().getMemory());
+		assertEquals(300, (int) binary.getSymbols().get("ano1"));
+		assertEquals(297, (int) binary.getSymbols().get("idade"));
+
+		text.controlUnitEexec();
+		binary.controlUnitEexec();
+		assertArrayEquals(text.snapshot().getRegisters(), binary.snapshot().getRegisters());
+		assertArrayEquals(text.snapshot().getMemory(), binary.snapshot().getMemory());
+	}
+
+}
@@ -0,0 +1,107 @@
+package architecture;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class TestFunctionalEngine {
+	
+	/*
+	 * A program using all the commands of the architecture
+	 * (variables in the positions 100 and 101)
+	 */
+	private static final int PROGRAM[] = {
+			25, 5,         //0: ldi 5
+			24, 100,       //2: store 100
+			14, 3, 1,      //4: move 3 %RPG1
+			0, 0, 1,       //7: add %RPG0 %RPG1        RPG1 = 8
+			1, 100, 2,     //10: add 100 %RPG2         RPG2 = 5
+			2, 1, 101,     //13: add %RPG1 101         mem[101] = 8
+			3, -2, 3,      //16: add -2 %RPG3          RPG3 = -2
+			4, 1, 2,       //19: sub %RPG1 %RPG2       RPG2 = 3
+			5, 101, 3,     //22: sub 101 %RPG3         RPG3 = 10
+			6, 2, 100,     //25: sub %RPG2 100         mem[100] = -2
+			7, 7, 0,       //28: sub 7 %RPG0           RPG0 = 2
+			11, 101, 1,    //31: move 101 %RPG1        RPG1 = 8
+			12, 0, 100,    //34: move %RPG0 100        mem[100] = 2
+			13, 3, 2,      //37: move %RPG3 %RPG2      RPG2 = 10
+			15, 0,         //40: inc %RPG0             RPG0 = 3
+			17, 99,        //42: jn 99                 (not taken)
+			18, 99,        //44: jz 99                 (not taken)
+			19, 0, 1, 99,  //46: jeq %RPG0 %RPG1 99    (not taken)
+			20, 0, 1, 56,  //50: jneq %RPG0 %RPG1 56   (taken)
+			16, 99,        //54: jmp 99
+			21, 1, 0, 99,  //56: jgt %RPG1 %RPG0 99    (not taken)
+			22, 0, 1, 66,  //60: jlw %RPG0 %RPG1 66    (taken)
+			16, 99,        //64: jmp 99
+			23, 101,       //66: read 101              RPG0 = 8
+			10, 2, 3,      //68: imul %RPG2 %RPG3      RPG3 = 100
+			8, 100, 2,     //71: imul 100 %RPG2        RPG2 = 20
+			9, 0, 101,     //74: imul %RPG0 101        mem[101] = 64
+			14, -1, 0,     //77: move -1 %RPG0
+			15, 0,         //80: inc %RPG0             RPG0 = 0
+			18, 86,        //82: jz 86                 (taken)
+			16, 99,        //84: jmp 99
+			-1             //86: end
+	};
+	
+	private Architecture load(ExecutionEngine engine) {
+		Architecture arch = new Architecture(false, engine);
+		for (int i = 0; i < PROGRAM.length; i++)
+			arch.getMemory().getDataList()[i] = PROGRAM[i];
+		arch.getMemory().getDataList()[99] = -1;
+		return arch;
+	}
+
+	@Test
+	public void testAllCommands() {
+		Architecture arch = load(ExecutionEngine.FUNCTIONAL);
+		arch.controlUnitEexec();
+		
+		arch.getPC().read();
+		assertEquals(86, arch.getExtbus1().get());
+		assertEquals(0, arch.getRPG0().getData());
+		assertEquals(8, arch.getRPG1().getData());
+		assertEquals(20, arch.getRPG2().getData());
+		assertEquals(100, arch.getRPG3().getData());
+		assertEquals(2, arch.getMemory().getDataList()[100]);
+		assertEquals(64, arch.getMemory().getDataList()[101]);
+		//the last ula operation (inc) resulted zero
+		assertEquals(1, arch.getFlags().getBit(0));
+		assertEquals(0, arch.getFlags().getBit(1));
+	}
+	
+	@Test
+	public void testSameStateAsMicroprograms() {
+		Architecture microprogram = load(ExecutionEngine.MICROPROGRAM);
+		Architecture functional = load(ExecutionEngine.FUNCTIONAL);
+		LockstepRunner runner = new LockstepRunner(microprogram, functional);
+		assertNull(runner.run(100000));
+		
+		//the same for a complete program
+		try {
+			runner = new LockstepRunner("idade");
+		} catch (IOException e) {
+			fail(e.getMessage());
+		}
+		assertNull(runner.run(100000));
+	}
+	
+	@Test
+	public void testDivergenceReported() {
+		Architecture microprogram = load(ExecutionEngine.MICROPROGRAM);
+		Architecture functional = load(ExecutionEngine.FUNCTIONAL);
+		//the functional architecture starts with RPG3 = 7, so the first instruction already diverges
+		functional.getRPG3().setData(7);
+		LockstepRunner runner = new LockstepRunner(microprogram, functional);
+		LockstepRunner.Divergence divergence = runner.run(100000);
+		assertNotNull(divergence);
+		assertEquals(0, divergence.getIndex());
+		assertEquals(0, divergence.getAddress());
+		assertEquals(25, divergence.getCommand());
+		assertTrue(divergence.getDescription().startsWith("RPG3"));
+	}
+
+}
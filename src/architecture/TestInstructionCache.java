@@ -0,0 +1,115 @@
+package architecture;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import components.Bus;
+import components.Memory;
+
+public class TestInstructionCache {
+
+	@Test
+	public void testLookupPutInvalidate() {
+		Bus bus = new Bus();
+		Memory memory = new Memory(32, bus);
+		InstructionCache cache = new InstructionCache(32);
+		memory.addListener(cache);
+		
+		//an empty cache has no instructions
+		assertNull(cache.lookup(10));
+		
+		//jmp 20 decoded in the position 10 (it uses the positions 10 and 11)
+		DecodedInstruction jmp = new DecodedInstruction(10, 16, new int[] {20}, null);
+		cache.put(jmp);
+		assertEquals(16, cache.lookup(10).getCommand());
+		assertEquals(20, cache.lookup(10).getOperand(0));
+		
+		//storing into the position 12 doesn't affect the instruction
+		bus.put(12);
+		memory.store();
+		bus.put(7);
+		memory.store();
+		assertNotNull(cache.lookup(10));
+		
+		//storing into the operand position removes the instruction
+		bus.put(11);
+		memory.store();
+		bus.put(30);
+		memory.store();
+		assertNull(cache.lookup(10));
+		assertEquals(1, cache.getInvalidations());
+		assertFalse(jmp.isValid()); //its microprogram must read the new operand from the memory
+		
+		//instructions not entirely inside the memory are never cached (nor used for their operands)
+		DecodedInstruction outside = new DecodedInstruction(31, 16, new int[] {20}, null);
+		cache.put(outside);
+		assertNull(cache.lookup(31));
+		assertFalse(outside.isValid());
+	}
+
+	@Test
+	public void testLoopDecodedOnce() {
+		Architecture arch = new Architecture();
+		/*
+		 * ldi -3
+		 * laco:
+		 * incReg %RPG0
+		 * jn laco
+		 */
+		arch.getMemory().getDataList()[0] = 25;
+		arch.getMemory().getDataList()[1] = -3;
+		arch.getMemory().getDataList()[2] = 15;
+		arch.getMemory().getDataList()[3] = 0;
+		arch.getMemory().getDataList()[4] = 17;
+		arch.getMemory().getDataList()[5] = 2;
+		arch.getMemory().getDataList()[6] = -1;
+		
+		arch.controlUnitEexec();
+		
+		//RPG0 was incremented until 0
+		arch.getRPG0().read();
+		assertEquals(0, arch.getIntbus2().get());
+		
+		//8 instructions were executed, but only 4 of them were decoded (ldi, incReg, jn and the end)
+		assertEquals(4, arch.getInstructionCache().getMisses());
+		assertEquals(4, arch.getInstructionCache().getHits());
+		
+		//PC is pointing to the end of the program
+		arch.getPC().read();
+		assertEquals(6, arch.getExtbus1().get());
+	}
+
+	@Test
+	public void testSelfModifyingCode() {
+		Architecture arch = new Architecture();
+		/*
+		 * 0: move -2 %RPG3
+		 * 3: move 1 %RPG1
+		 * 6: add %RPG1 %RPG2
+		 * 9: ldi 7
+		 * 11: store 4
+		 * 13: inc %RPG3
+		 * 15: jn 3
+		 * the store changes the immediate of the instruction in 3 (move 7 %RPG1),
+		 * so the cached instruction must be discarded before the second loop
+		 */
+		int program[] = {14, -2, 3, 14, 1, 1, 0, 1, 2, 25, 7, 24, 4, 15, 3, 17, 3, -1};
+		for (int i = 0; i < program.length; i++)
+			arch.getMemory().getDataList()[i] = program[i];
+		
+		arch.controlUnitEexec();
+		
+		//RPG2 = 1 + 7
+		arch.getRPG2().read();
+		assertEquals(8, arch.getIntbus2().get());
+		arch.getRPG1().read();
+		assertEquals(7, arch.getIntbus2().get());
+		
+		//the program finished in the correct place
+		arch.getPC().read();
+		assertEquals(17, arch.getExtbus1().get());
+		assertTrue(arch.getInstructionCache().getInvalidations() > 0);
+	}
+
+}
@@ -0,0 +1,108 @@
+package architecture;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import components.Memory;
+import components.SharedMemory;
+
+public class TestMulticore {
+
+	/**
+	 * This method loads the program (commands names and operands) into the core from the position 0,
+	 * followed by the end of the program, and points PC to it
+	 * @param multicore
+	 * @param core
+	 * @param program
+	 */
+	private void load(Multicore multicore, int core, Object... program) {
+		Architecture arch = multicore.getCore(core);
+		Memory memory = arch.getMemory();
+		int position = 0;
+		for (Object word : program) {
+			if (word instanceof String)
+				memory.setData(position++, arch.getCommandsList().indexOf(word));
+			else
+				memory.setData(position++, (Integer) word);
+		}
+		memory.setData(position, -1);
+		arch.getPC().setData(0);
+	}
+
+	@Test
+	public void testSingleCore() throws IOException {
+		Architecture expected = new Architecture();
+		expected.readExec("idade");
+		expected.controlUnitEexec();
+		int data[] = new int[Architecture.DEFAULT_MEMORY_SIZE];
+		for (ExecutionEngine engine : ExecutionEngine.values()) {
+			Multicore multicore = new Multicore(1, engine);
+			multicore.readExec("idade");
+			assertTrue(multicore.run(Long.MAX_VALUE) > 0);
+			multicore.getMemory(0).copyTo(data);
+			assertArrayEquals(engine.toString(), expected.getMemory().getDataList(), data);
+			assertEquals(0, multicore.get(SharedMemory.INVALIDATIONS)); //nobody else has the lines
+		}
+	}
+
+	@Test
+	public void testSharing() {
+		Multicore multicore = new Multicore(2, ExecutionEngine.MICROPROGRAM);
+		SharedMemory shared = multicore.getSharedMemory();
+		load(multicore, 0, "moveImmReg", 7, 0, "moveRegMem", 0, 300);
+		load(multicore, 1);
+		multicore.run(Long.MAX_VALUE);
+		assertEquals(7, shared.get(300));
+		assertEquals(SharedMemory.MODIFIED, shared.getState(0, 300));
+		assertEquals(SharedMemory.INVALID, shared.getState(1, 300));
+		assertEquals(3, multicore.getInstructions(0));
+		assertEquals(1, multicore.getInstructions(1));
+
+		//the second core reads the data written by the first one, and writes into the same line
+		load(multicore, 0);
+		load(multicore, 1, "moveMemReg", 300, 1, "moveRegMem", 1, 301);
+		multicore.run(Long.MAX_VALUE);
+		assertEquals(7, shared.get(301));
+		assertEquals(7, multicore.getMemory(1).getDataList()[301]);
+		assertEquals(SharedMemory.INVALID, shared.getState(0, 300));
+		assertEquals(SharedMemory.MODIFIED, shared.getState(1, 300));
+		long statistics[] = multicore.getMemory(1).getStatistics();
+		assertEquals(1, statistics[SharedMemory.READ_MISSES]);
+		assertEquals(1, statistics[SharedMemory.WRITE_BACKS]);
+		assertEquals(1, statistics[SharedMemory.UPGRADES]);
+		assertEquals(1, statistics[SharedMemory.INVALIDATIONS]);
+		assertEquals(4, multicore.getTraffic()); //and the first write, a miss
+		assertTrue(multicore.report().contains("coherence traffic: 4 transactions, 1 invalidations"));
+
+		multicore.reset();
+		assertEquals(0, multicore.getTraffic());
+		assertEquals(SharedMemory.INVALID, shared.getState(1, 300));
+		assertEquals(7, shared.get(301));
+	}
+
+	@Test
+	public void testThreads() throws IOException {
+		Multicore multicore = new Multicore(4, ExecutionEngine.THREADED);
+		multicore.readExec("operacoes");
+		assertEquals(4 * 10000, multicore.run(10000));
+		for (int core = 0; core < multicore.getCores(); core++)
+			assertEquals(10000, multicore.getInstructions(core));
+		assertTrue(multicore.getTraffic() > 0);
+		assertTrue(multicore.getThroughput() > 0);
+		//each line is modified in one core at most
+		SharedMemory shared = multicore.getSharedMemory();
+		for (int position = shared.getStart(); position < shared.getEnd(); position += shared.getLineSize()) {
+			int owners = 0;
+			for (int core = 0; core < multicore.getCores(); core++) {
+				int state = shared.getState(core, position);
+				if ((state == SharedMemory.MODIFIED) || (state == SharedMemory.EXCLUSIVE))
+					owners++;
+			}
+			assertTrue(owners <= 1);
+		}
+	}
+
+}
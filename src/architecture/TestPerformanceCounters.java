@@ -0,0 +1,179 @@
+package architecture;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import components.Clock;
+import components.StripedCounter;
+
+public class TestPerformanceCounters {
+
+	private long sum(long counts[]) {
+		long sum = 0;
+		for (long count : counts)
+			sum += count;
+		return sum;
+	}
+
+	@Test
+	public void testMicroprogram() throws IOException {
+		Architecture arch = new Architecture();
+		arch.readExec("idade");
+		ArchitectureSnapshot loaded = arch.snapshot();
+		long instructions = 1; //the end of the program
+		while (arch.step())
+			instructions++;
+
+		arch.restore(loaded);
+		PerformanceCounters counters = arch.enableCounters();
+		assertEquals(0, counters.getCycles());
+		TimingModel timing = arch.getTiming(); //counting times the architecture too
+		assertNotNull(timing);
+		ByteArrayOutputStream dump = new ByteArrayOutputStream();
+		arch.setCountersDump(new PrintStream(dump, true));
+		arch.controlUnitEexec();
+		assertEquals(instructions, counters.getInstructions());
+		long perOpcode[] = counters.getInstructionsPerOpcode();
+		assertEquals(instructions, sum(perOpcode));
+		assertEquals(1, perOpcode[perOpcode.length - 1]); //only one end
+		assertEquals("END", counters.getOpcodes()[perOpcode.length - 1]);
+		assertTrue(counters.getMemoryReads() > 0);
+		assertTrue(counters.getExtbus1Puts() > 0);
+		assertTrue(counters.getIntbus1Puts() + counters.getIntbus2Puts() > 0);
+		assertTrue(counters.getCycles() > counters.getExtbus1Puts());
+		assertEquals(timing.getCycles(), counters.getCycles()); //the same clock
+		assertTrue(dump.toString().contains("simulated cycles: "+timing.getCycles()));
+		assertTrue(counters.getInstructionsPerSecond() > 0);
+		assertTrue(dump.toString().startsWith("instructions retired: "+instructions));
+
+		//the instructions that use the ula
+		long ulaOperations = counters.getUlaAdds() + counters.getUlaSubs() + counters.getUlaMuls() + counters.getUlaIncs();
+		assertTrue(ulaOperations > 0);
+		assertTrue(counters.getUlaIncs() >= perOpcode[arch.getCommandsList().indexOf("incReg")]);
+
+		counters.reset();
+		timing.reset();
+		assertEquals(0, counters.getInstructions());
+		assertEquals(0, counters.getCycles());
+		Clock clock = timing.getClock();
+		arch.setTiming(null);
+		assertNull(clock.getCounter());
+		arch.setCounters(null);
+		arch.restore(loaded);
+		arch.controlUnitEexec();
+		assertEquals(0, counters.getInstructions());
+		assertEquals(0, counters.getExtbus1Puts());
+	}
+
+	@Test
+	public void testWarmInstructionCache() throws IOException {
+		//the second run finds all the instructions already decoded, but counts the same work
+		Architecture arch = new Architecture();
+		arch.readExec("idade");
+		ArchitectureSnapshot loaded = arch.snapshot();
+		PerformanceCounters counters = arch.enableCounters();
+		TimingModel timing = arch.enableTiming();
+		arch.controlUnitEexec();
+		long extbus1Puts = counters.getExtbus1Puts();
+		long memoryReads = counters.getMemoryReads();
+		long cycles = counters.getCycles();
+		long misses = arch.getInstructionCache().getMisses();
+
+		arch.restore(loaded);
+		counters.reset();
+		timing.reset();
+		arch.controlUnitEexec();
+		assertEquals(misses, arch.getInstructionCache().getMisses()); //no instruction was decoded again
+		assertEquals(extbus1Puts, counters.getExtbus1Puts());
+		assertEquals(memoryReads, counters.getMemoryReads());
+		assertEquals(cycles, counters.getCycles());
+	}
+
+	@Test
+	public void testFunctionalEngine() throws IOException {
+		//the same instructions are retired by the engines
+		Architecture microprogram = new Architecture();
+		microprogram.readExec("idade");
+		PerformanceCounters expected = microprogram.enableCounters();
+		microprogram.controlUnitEexec();
+		Architecture functional = new Architecture(false, ExecutionEngine.THREADED);
+		functional.readExec("idade");
+		PerformanceCounters counters = functional.enableCounters();
+		functional.controlUnitEexec();
+		assertArrayEquals(expected.getInstructionsPerOpcode(), counters.getInstructionsPerOpcode());
+	}
+
+	@Test
+	public void testSharedCounters() throws Exception {
+		final PerformanceCounters counters = new Architecture().enableCounters();
+		Thread threads[] = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				public void run() {
+					try {
+						Architecture arch = new Architecture();
+						arch.readExec("idade");
+						arch.setCounters(counters);
+						arch.controlUnitEexec();
+					}
+					catch (IOException e) {
+						throw new RuntimeException(e);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		Architecture arch = new Architecture();
+		arch.readExec("idade");
+		PerformanceCounters single = arch.enableCounters();
+		arch.controlUnitEexec();
+		assertEquals(4 * single.getInstructions(), counters.getInstructions());
+		assertEquals(4 * single.getMemoryStores(), counters.getMemoryStores());
+		assertTrue(single.getCycles() > 0);
+		assertEquals(4 * single.getCycles(), counters.getCycles()); //the cycles of all the architectures
+
+		final StripedCounter counter = new StripedCounter();
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				public void run() {
+					for (int j = 0; j < 100000; j++)
+						counter.increment();
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		assertEquals(400000, counter.get());
+	}
+
+	@Test
+	public void testMBean() throws IOException, JMException {
+		Architecture arch = new Architecture();
+		arch.readExec("idade");
+		PerformanceCounters counters = arch.enableCounters();
+		counters.register("idade");
+		arch.controlUnitEexec();
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName("architecture:type=PerformanceCounters,name=\"idade\"");
+		assertEquals(counters.getInstructions(), server.getAttribute(name, "Instructions"));
+		assertArrayEquals(counters.getInstructionsPerOpcode(), (long[]) server.getAttribute(name, "InstructionsPerOpcode"));
+		server.invoke(name, "reset", null, null);
+		assertEquals(0L, server.getAttribute(name, "Instructions"));
+		counters.unregister();
+		assertFalse(server.isRegistered(name));
+	}
+
+}
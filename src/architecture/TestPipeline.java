@@ -0,0 +1,134 @@
+package architecture;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import components.Memory;
+
+public class TestPipeline {
+
+	/**
+	 * This method writes the program (commands names and operands) from the position 0,
+	 * followed by the end of the program
+	 * @param arch
+	 * @param program
+	 */
+	private void write(Architecture arch, Object... program) {
+		Memory memory = arch.getMemory();
+		int position = 0;
+		for (Object word : program) {
+			if (word instanceof String)
+				memory.setData(position++, arch.getCommandsList().indexOf(word));
+			else
+				memory.setData(position++, (Integer) word);
+		}
+		memory.setData(position, -1);
+	}
+
+	private Pipeline run(boolean forwarding, Object... program) {
+		Architecture arch = new Architecture();
+		write(arch, program);
+		Pipeline pipeline = new Pipeline(arch, forwarding);
+		pipeline.run();
+		return pipeline;
+	}
+
+	@Test
+	public void testIndependent() {
+		//4 instructions (the end too), no stalls: the first one takes 5 cycles and the others 1 cycle each
+		Pipeline pipeline = run(false, "moveImmReg", 1, 1, "moveImmReg", 2, 2, "moveImmReg", 3, 3);
+		assertEquals(4, pipeline.getInstructions());
+		assertEquals(0, pipeline.getStalls());
+		assertEquals(Pipeline.STAGES + 3, pipeline.getCycles());
+		assertEquals(8.0 / 4, pipeline.getCPI(), 1e-9);
+		assertEquals(4.0 / 8, pipeline.getThroughput(), 1e-9);
+	}
+
+	@Test
+	public void testDataHazard() {
+		Object program[] = {"moveImmReg", 5, 1, "addRegReg", 1, 2};
+		//without forwarding, addRegReg waits in ID until moveImmReg writes RPG1
+		Pipeline pipeline = run(false, program);
+		assertEquals(2, pipeline.getStalls(Pipeline.DATA));
+		assertEquals(2, pipeline.getStalls());
+		assertEquals(Pipeline.STAGES + 2 + 2, pipeline.getCycles());
+		//with forwarding, the result of EX goes into the next EX
+		assertEquals(0, run(true, program).getStalls());
+
+		//the memory operand is ready only after MEM (like a load)
+		pipeline = run(true, "moveMemReg", 300, 1, "addRegReg", 1, 2);
+		assertEquals(1, pipeline.getStalls(Pipeline.DATA));
+		pipeline = run(false, "moveMemReg", 300, 1, "addRegReg", 1, 2);
+		assertEquals(2, pipeline.getStalls(Pipeline.DATA));
+
+		//only RPG0 to RPG3 and only the registers really used
+		assertEquals(0, run(false, "moveImmReg", 5, 1, "addRegReg", 2, 3).getStalls());
+		assertEquals(0, run(false, "moveImmReg", 5, 1, "moveImmReg", 5, 1).getStalls());
+		assertEquals(2, run(false, "ldi", 7, "store", 300).getStalls(Pipeline.DATA));
+	}
+
+	@Test
+	public void testFlagsHazard() {
+		Pipeline pipeline = run(false, "incReg", 1, "jz", 0);
+		assertEquals(2, pipeline.getStalls(Pipeline.FLAGS));
+		assertEquals(0, pipeline.getStalls(Pipeline.DATA));
+		assertEquals(0, pipeline.getStalls(Pipeline.CONTROL)); //1 is not 0, so jz is not taken
+		assertEquals(0, run(true, "incReg", 1, "jz", 0).getStalls());
+	}
+
+	@Test
+	public void testControlHazard() {
+		//jmp finds its target in ID: one instruction discarded
+		Pipeline pipeline = run(false, "jmp", 2);
+		assertEquals(1, pipeline.getStalls(Pipeline.CONTROL));
+		//a conditional jump taken finds its target in EX: two instructions discarded
+		Architecture arch = new Architecture();
+		write(arch, "moveImmReg", 0, 1, "moveImmReg", 1, 2, "jeq", 1, 1, 12, "incReg", 1, "moveImmReg", 0, 3);
+		pipeline = new Pipeline(arch, true);
+		pipeline.run();
+		assertEquals(5, pipeline.getInstructions());
+		assertEquals(2, pipeline.getStalls(Pipeline.CONTROL));
+		assertEquals(0, arch.getRegistersList().get(1).getData()); //incReg was jumped over
+		//not taken: nothing is discarded
+		arch = new Architecture();
+		write(arch, "moveImmReg", 0, 1, "moveImmReg", 1, 2, "jeq", 1, 2, 12, "incReg", 1, "moveImmReg", 0, 3);
+		pipeline = new Pipeline(arch, true);
+		pipeline.run();
+		assertEquals(6, pipeline.getInstructions());
+		assertEquals(0, pipeline.getStalls(Pipeline.CONTROL));
+	}
+
+	@Test
+	public void testProgram() throws IOException {
+		//the pipeline gets the same results of the architecture
+		Architecture expected = new Architecture();
+		expected.readExec("idade");
+		long instructions = 1;
+		while (expected.step())
+			instructions++;
+		long cycles[] = new long[2];
+		for (int i = 0; i < 2; i++) {
+			Architecture arch = new Architecture();
+			arch.readExec("idade");
+			Pipeline pipeline = new Pipeline(arch, i == 1);
+			assertEquals(instructions, pipeline.run());
+			assertEquals(instructions, pipeline.getInstructions());
+			assertArrayEquals(expected.getMemory().getDataList(), arch.getMemory().getDataList());
+			for (int r = 0; r < arch.getRegistersList().size(); r++)
+				assertEquals(expected.getRegistersList().get(r).getData(), arch.getRegistersList().get(r).getData());
+			assertEquals(pipeline.getInstructions() + Pipeline.STAGES - 1 + pipeline.getStalls(), pipeline.getCycles());
+			assertEquals(1 / pipeline.getCPI(), pipeline.getThroughput(), 1e-9);
+			assertTrue(pipeline.report().contains("instructions: "+instructions));
+			cycles[i] = pipeline.getCycles();
+		}
+		assertTrue(cycles[1] < cycles[0]); //the forwarding helps
+
+		Architecture arch = new Architecture();
+		arch.readExec("operacoes");
+		assertEquals(1000, new Pipeline(arch, true).run(1000)); //it never ends
+	}
+
+}
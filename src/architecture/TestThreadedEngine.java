@@ -0,0 +1,181 @@
+package architecture;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class TestThreadedEngine {
+
+	private Architecture load(ExecutionEngine engine, int program[]) {
+		Architecture arch = new Architecture(false, engine);
+		for (int i = 0; i < program.length; i++)
+			arch.getMemory().getDataList()[i] = program[i];
+		return arch;
+	}
+
+	private void assertSameState(Architecture expected, Architecture actual) {
+		for (int i = 0; i < expected.getRegistersList().size(); i++)
+			assertEquals(expected.getRegistersList().get(i).getData(), actual.getRegistersList().get(i).getData());
+		assertEquals(expected.getFlags().getBit(0), actual.getFlags().getBit(0));
+		assertEquals(expected.getFlags().getBit(1), actual.getFlags().getBit(1));
+		assertArrayEquals(expected.getMemory().getDataList(), actual.getMemory().getDataList());
+		assertArrayEquals(expected.getStatusMemory().getDataList(), actual.getStatusMemory().getDataList());
+	}
+
+	@Test
+	public void testAllCommands() {
+		int program[] = {
+				25, 5,         //0: ldi 5
+				24, 100,       //2: store 100
+				14, 3, 1,      //4: move 3 %RPG1
+				0, 0, 1,       //7: add %RPG0 %RPG1
+				1, 100, 2,     //10: add 100 %RPG2
+				2, 1, 101,     //13: add %RPG1 101
+				3, -2, 3,      //16: add -2 %RPG3
+				4, 1, 2,       //19: sub %RPG1 %RPG2
+				5, 101, 3,     //22: sub 101 %RPG3
+				6, 2, 100,     //25: sub %RPG2 100
+				7, 7, 0,       //28: sub 7 %RPG0
+				11, 101, 1,    //31: move 101 %RPG1
+				12, 0, 100,    //34: move %RPG0 100
+				13, 3, 2,      //37: move %RPG3 %RPG2
+				15, 0,         //40: inc %RPG0
+				17, 99,        //42: jn 99
+				18, 99,        //44: jz 99
+				19, 0, 1, 99,  //46: jeq %RPG0 %RPG1 99
+				20, 0, 1, 56,  //50: jneq %RPG0 %RPG1 56
+				16, 99,        //54: jmp 99
+				21, 1, 0, 99,  //56: jgt %RPG1 %RPG0 99
+				22, 0, 1, 66,  //60: jlw %RPG0 %RPG1 66
+				16, 99,        //64: jmp 99
+				23, 101,       //66: read 101
+				10, 2, 3,      //68: imul %RPG2 %RPG3      RPG3 = 100
+				-1             //71: end
+		};
+		Architecture functional = load(ExecutionEngine.FUNCTIONAL, program);
+		functional.getMemory().getDataList()[99] = -1;
+		functional.controlUnitEexec();
+		Architecture threaded = load(ExecutionEngine.THREADED, program);
+		threaded.getMemory().getDataList()[99] = -1;
+		threaded.controlUnitEexec();
+
+		assertSameState(functional, threaded);
+		assertEquals(8, threaded.getRPG0().getData());
+		assertEquals(100, threaded.getRPG3().getData());
+	}
+
+	@Test
+	public void testSelfModifyingCode() {
+		/*
+		 * the store at 2 changes the immediate of the next instruction
+		 * (move 1 %RPG1 becomes move 7 %RPG1)
+		 */
+		int program[] = {
+				25, 7,         //0: ldi 7
+				24, 5,         //2: store 5
+				14, 1, 1,      //4: move 1 %RPG1
+				-1             //7: end
+		};
+		Architecture threaded = load(ExecutionEngine.THREADED, program);
+		ThreadedEngine engine = (ThreadedEngine) threaded.getFunctionalEngine();
+		threaded.controlUnitEexec();
+
+		assertEquals(7, threaded.getRPG1().getData());
+		assertEquals(1, engine.getInvalidations());
+	}
+
+	@Test
+	public void testSuperinstructions() {
+		int program[] = {
+				25, 3,         //0: ldi 3                  (ldi + store)
+				24, 100,       //2: store 100
+				25, 0,         //4: ldi 0                  (ldi + store)
+				24, 101,       //6: store 101
+				23, 100,       //8: read 100               (read + store)
+				24, 102,       //10: store 102
+				15, 1,         //12: inc %RPG1
+				13, 1, 2,      //14: move %RPG1 %RPG2
+				5, 102, 2,     //17: sub 102 %RPG2         (subMemReg + jn)
+				17, 25,        //20: jn 25
+				16, 12,        //22: jmp 12
+				-1,            //24: end
+				24, 101,       //25: store 101             (jumps to the second instruction of a pair)
+				16, 24         //27: jmp 24
+		};
+		Architecture functional = load(ExecutionEngine.FUNCTIONAL, program);
+		functional.controlUnitEexec();
+		Architecture threaded = load(ExecutionEngine.THREADED, program);
+		ThreadedEngine engine = (ThreadedEngine) threaded.getFunctionalEngine();
+		threaded.controlUnitEexec();
+
+		assertSameState(functional, threaded);
+		assertEquals(2, engine.getFusions(Superinstruction.LDI_STORE));
+		assertEquals(2, engine.getFusionHits(Superinstruction.LDI_STORE));
+		assertEquals(1, engine.getFusionHits(Superinstruction.READ_STORE));
+		assertTrue(engine.getFusionHits(Superinstruction.SUB_MEM_REG_JN) > 1);
+
+		//without the superinstructions the state is the same
+		Architecture unfused = load(ExecutionEngine.THREADED, program);
+		ThreadedEngine unfusedEngine = (ThreadedEngine) unfused.getFunctionalEngine();
+		unfusedEngine.setFusion(false);
+		unfused.controlUnitEexec();
+		assertSameState(threaded, unfused);
+		assertEquals(0, unfusedEngine.getFusions(Superinstruction.LDI_STORE));
+	}
+
+	@Test
+	public void testLimitedRun() {
+		int program[] = {
+				15, 0,         //0: inc %RPG0
+				16, 0          //2: jmp 0
+		};
+		Architecture threaded = load(ExecutionEngine.THREADED, program);
+		assertEquals(1000, threaded.getFunctionalEngine().run(1000));
+		assertEquals(500, threaded.getRPG0().getData());
+	}
+
+	@Test
+	public void testReadExec() throws IOException {
+		Architecture microprogram = new Architecture();
+		microprogram.readExec("idade");
+		microprogram.controlUnitEexec();
+		Architecture threaded = new Architecture(false, ExecutionEngine.THREADED);
+		threaded.readExec("idade");
+		ThreadedEngine engine = (ThreadedEngine) threaded.getFunctionalEngine();
+		assertTrue(engine.getTranslations() > 0);
+		threaded.controlUnitEexec();
+
+		assertSameState(microprogram, threaded);
+	}
+
+	@Test
+	public void testReloadedProgram() {
+		int first[] = {
+				25, 5,         //0: ldi 5
+				-1             //2: end
+		};
+		int second[] = {
+				25, 9,         //0: ldi 9
+				-1             //2: end
+		};
+		Architecture threaded = load(ExecutionEngine.THREADED, first);
+		threaded.controlUnitEexec();
+		assertEquals(5, threaded.getRPG0().getData());
+
+		//the program is written straight into the array, without the store handshake
+		int data[] = threaded.getMemory().getDataList();
+		threaded.getPC().setData(0);
+		data[1] = second[1];
+		threaded.controlUnitEexec();
+		assertEquals(9, threaded.getRPG0().getData());
+
+		//the same array, written again after the run
+		threaded.getPC().setData(0);
+		data[1] = first[1];
+		threaded.controlUnitEexec();
+		assertEquals(5, threaded.getRPG0().getData());
+	}
+
+}
@@ -0,0 +1,183 @@
+package architecture;
+
+import static org.junit.Assert.*;
+
+import java.nio.IntBuffer;
+
+import org.junit.Test;
+
+public class TestTieredEngine {
+
+	/*
+	 * A loop that runs 60 times, with an imul inside it
+	 */
+	private static final int LOOP[] = {
+			14, -60, 0,    //0: move -60 %RPG0
+			14, 1, 2,      //3: move 1 %RPG2
+			14, 3, 3,      //6: move 3 %RPG3
+			10, 2, 3,      //9: imul %RPG2 %RPG3      RPG3 = 3
+			15, 0,         //12: inc %RPG0
+			17, 9,         //14: jn 9
+			-1             //16: end
+	};
+
+	private Architecture load(ExecutionEngine engine, int program[]) {
+		Architecture arch = new Architecture(false, engine);
+		for (int i = 0; i < program.length; i++)
+			arch.getMemory().getDataList()[i] = program[i];
+		return arch;
+	}
+
+	private void assertSameState(Architecture expected, Architecture actual) {
+		for (int i = 0; i < expected.getRegistersList().size(); i++)
+			assertEquals(expected.getRegistersList().get(i).getData(), actual.getRegistersList().get(i).getData());
+		assertEquals(expected.getFlags().getBit(0), actual.getFlags().getBit(0));
+		assertEquals(expected.getFlags().getBit(1), actual.getFlags().getBit(1));
+		assertArrayEquals(expected.getMemory().getDataList(), actual.getMemory().getDataList());
+		assertArrayEquals(expected.getStatusMemory().getDataList(), actual.getStatusMemory().getDataList());
+	}
+
+	@Test
+	public void testCompiledLoop() {
+		Architecture functional = load(ExecutionEngine.FUNCTIONAL, LOOP);
+		functional.controlUnitEexec();
+		Architecture tiered = load(ExecutionEngine.TIERED, LOOP);
+		TieredEngine engine = (TieredEngine) tiered.getFunctionalEngine();
+		engine.setThreshold(10);
+		tiered.controlUnitEexec();
+
+		assertSameState(functional, tiered);
+		assertEquals(0, tiered.getRPG0().getData());
+		assertTrue(engine.getCompiledBlocks() > 0);
+		assertTrue(engine.getBlockExecutions() > 0);
+	}
+
+	@Test
+	public void testSelfModifyingBlockDiscarded() {
+		/*
+		 * the block 5..14 is compiled, then the store at 17 changes the immediate at 6
+		 * (move 1 %RPG1 becomes move 2 %RPG1), so the block must be discarded
+		 */
+		int program[] = {
+				14, -20, 0,    //0: move -20 %RPG0
+				16, 5,         //3: jmp 5
+				14, 1, 1,      //5: move 1 %RPG1
+				0, 1, 2,       //8: add %RPG1 %RPG2
+				15, 0,         //11: inc %RPG0
+				17, 5,         //13: jn 5
+				25, 2,         //15: ldi 2
+				24, 6,         //17: store 6
+				7, 1, 3,       //19: sub 1 %RPG3      RPG3 = 1 - RPG3
+				18, 26,        //22: jz 26            (taken only in the second time)
+				16, 5,         //24: jmp 5
+				-1             //26: end
+		};
+		Architecture functional = load(ExecutionEngine.FUNCTIONAL, program);
+		functional.controlUnitEexec();
+		Architecture tiered = load(ExecutionEngine.TIERED, program);
+		TieredEngine engine = (TieredEngine) tiered.getFunctionalEngine();
+		engine.setThreshold(2);
+		tiered.controlUnitEexec();
+
+		assertSameState(functional, tiered);
+		assertTrue(engine.getInvalidations() > 0);
+	}
+
+	@Test
+	public void testAllCommandsCompiled() {
+		//with threshold 1, the whole program runs as compiled blocks
+		int program[] = {
+				25, 5,         //0: ldi 5
+				24, 100,       //2: store 100
+				14, 3, 1,      //4: move 3 %RPG1
+				0, 0, 1,       //7: add %RPG0 %RPG1
+				1, 100, 2,     //10: add 100 %RPG2
+				2, 1, 101,     //13: add %RPG1 101
+				3, -2, 3,      //16: add -2 %RPG3
+				4, 1, 2,       //19: sub %RPG1 %RPG2
+				5, 101, 3,     //22: sub 101 %RPG3
+				6, 2, 100,     //25: sub %RPG2 100
+				7, 7, 0,       //28: sub 7 %RPG0
+				11, 101, 1,    //31: move 101 %RPG1
+				12, 0, 100,    //34: move %RPG0 100
+				13, 3, 2,      //37: move %RPG3 %RPG2
+				15, 0,         //40: inc %RPG0
+				17, 99,        //42: jn 99
+				18, 99,        //44: jz 99
+				19, 0, 1, 99,  //46: jeq %RPG0 %RPG1 99
+				20, 0, 1, 56,  //50: jneq %RPG0 %RPG1 56
+				16, 99,        //54: jmp 99
+				21, 1, 0, 99,  //56: jgt %RPG1 %RPG0 99
+				22, 0, 1, 66,  //60: jlw %RPG0 %RPG1 66
+				16, 99,        //64: jmp 99
+				23, 101,       //66: read 101
+				-1             //68: end
+		};
+		Architecture functional = load(ExecutionEngine.FUNCTIONAL, program);
+		functional.getMemory().getDataList()[99] = -1;
+		functional.controlUnitEexec();
+		Architecture tiered = load(ExecutionEngine.TIERED, program);
+		tiered.getMemory().getDataList()[99] = -1;
+		TieredEngine engine = (TieredEngine) tiered.getFunctionalEngine();
+		engine.setThreshold(1);
+		tiered.controlUnitEexec();
+
+		assertSameState(functional, tiered);
+		assertEquals(8, tiered.getRPG0().getData());
+		assertTrue(engine.getCompiledBlocks() >= 5);
+	}
+
+	@Test
+	public void testBlocksKeptAcrossRuns() {
+		//the fork does not use the array of getDataList, so its memory is changed only through the listeners
+		Architecture tiered = load(ExecutionEngine.TIERED, LOOP).fork();
+		TieredEngine engine = (TieredEngine) tiered.getFunctionalEngine();
+		engine.setThreshold(10);
+		ArchitectureSnapshot snapshot = tiered.snapshot();
+		//the counters are kept too, so after threshold runs even the start of the program is compiled
+		for (int i = 0; i < engine.getThreshold(); i++) {
+			tiered.restore(snapshot);
+			tiered.controlUnitEexec();
+		}
+		int classes = engine.getCompiledClasses();
+		int generations = engine.getGenerations();
+		assertTrue(classes > 1);
+
+		for (int i = 0; i < 20; i++) {
+			tiered.restore(snapshot);
+			tiered.controlUnitEexec();
+			assertEquals(0, tiered.getRPG0().getData());
+			assertEquals(3, tiered.getRPG3().getData());
+		}
+		assertEquals(classes, engine.getCompiledClasses());
+		assertEquals(generations, engine.getGenerations());
+
+		//a program loaded at once discards all the blocks, and their class loader with them
+		tiered.getMemory().load(0, IntBuffer.wrap(LOOP), LOOP.length);
+		assertEquals(generations + 1, engine.getGenerations());
+	}
+
+	@Test
+	public void testSelfModifyingBlockNotRecompiledForever() {
+		//the block at 3 changes its own immediate in each iteration
+		int program[] = {
+				14, -100, 2,   //0: move -100 %RPG2
+				14, 1, 1,      //3: move 1 %RPG1
+				15, 2,         //6: inc %RPG2
+				25, 7,         //8: ldi 7
+				24, 4,         //10: store 4
+				17, 3,         //12: jn 3
+				-1             //14: end
+		};
+		Architecture functional = load(ExecutionEngine.FUNCTIONAL, program);
+		functional.controlUnitEexec();
+		Architecture tiered = load(ExecutionEngine.TIERED, program);
+		TieredEngine engine = (TieredEngine) tiered.getFunctionalEngine();
+		engine.setThreshold(2);
+		tiered.controlUnitEexec();
+
+		assertSameState(functional, tiered);
+		assertEquals(TieredEngine.MAX_RECOMPILATIONS, engine.getInvalidations());
+	}
+
+}
@@ -0,0 +1,194 @@
+package architecture;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import components.Clock;
+import components.Memory;
+import components.Ula;
+import components.WriteBuffer;
+
+public class TestTimingModel {
+
+	/**
+	 * This method writes only one instruction (in the position 0) followed by the end of the program
+	 * @param arch
+	 * @param command
+	 * @param operands
+	 */
+	private void writeInstruction(Architecture arch, String command, int... operands) {
+		Memory memory = arch.getMemory();
+		memory.setData(0, arch.getCommandsList().indexOf(command));
+		for (int i = 0; i < operands.length; i++)
+			memory.setData(i + 1, operands[i]);
+		memory.setData(operands.length + 1, -1);
+	}
+
+	/**
+	 * This method returns the cycles of the instruction in the position 0, executed alone
+	 * @param arch
+	 * @return
+	 */
+	private long cycles(Architecture arch) {
+		TimingModel timing = arch.getTiming();
+		long before = timing.getCycles();
+		arch.getPC().setData(0);
+		arch.step();
+		return timing.getCycles() - before;
+	}
+
+	@Test
+	public void testProgram() throws IOException {
+		Architecture arch = new Architecture();
+		arch.readExec("idade");
+		ArchitectureSnapshot loaded = arch.snapshot();
+		long instructions = 1; //the end of the program
+		while (arch.step())
+			instructions++;
+
+		arch.restore(loaded);
+		TimingModel timing = arch.enableTiming();
+		assertSame(timing, arch.enableTiming());
+		arch.controlUnitEexec();
+		assertEquals(instructions, timing.getInstructions());
+		assertEquals(1, timing.getInstructions("END"));
+		long sum = 0;
+		for (String opcode : timing.getOpcodes())
+			sum += timing.getCycles(opcode);
+		assertEquals(timing.getCycles(), sum);
+		assertEquals(timing.getClock().getCycles(), timing.getCycles());
+		assertEquals((double) timing.getCycles() / instructions, timing.getCPI(), 1e-9);
+		assertTrue(timing.getCPI() > 1);
+		assertTrue(timing.getCPI("incReg") > 0);
+		assertEquals(0, timing.getCPI("imulRegReg"), 0); //never executed
+		String report = timing.report();
+		assertTrue(report.startsWith("costs: bus=1 read=1 store=1 register=0"));
+		assertTrue(report.contains("instructions: "+instructions+", cycles: "+timing.getCycles()));
+
+		//the same program takes the same cycles
+		long cycles = timing.getCycles();
+		timing.reset();
+		assertEquals(0, timing.getCycles());
+		assertEquals(0, timing.getInstructions());
+		arch.restore(loaded);
+		arch.controlUnitEexec();
+		assertEquals(cycles, timing.getCycles());
+
+		arch.setTiming(null);
+		arch.restore(loaded);
+		arch.controlUnitEexec();
+		assertEquals(cycles, timing.getCycles());
+	}
+
+	@Test
+	public void testCosts() {
+		Architecture arch = new Architecture();
+		TimingModel timing = arch.enableTiming();
+		writeInstruction(arch, "addRegReg", 0, 1);
+		long add = cycles(arch);
+		writeInstruction(arch, "imulRegReg", 0, 1);
+		long imul = cycles(arch);
+		assertTrue(imul > add);
+		assertEquals(1, timing.getInstructions("imulRegReg"));
+		assertEquals(imul, timing.getCycles("imulRegReg"));
+
+		//a faster multiplier, taken by the running architecture
+		arch.getUla().setMultiplyLatency(1);
+		assertEquals(imul - (Ula.DEFAULT_MULTIPLY_LATENCY - 1), cycles(arch));
+		timing.setCost("mul", 0);
+		assertEquals(0, timing.getClock().getCost(Clock.ULA_MUL));
+
+		//nothing costs anything
+		for (String event : Clock.EVENT_NAMES)
+			timing.setCost(event, 0);
+		assertEquals(0, cycles(arch));
+
+		//only the memory reads cost
+		timing.setCosts("read=10");
+		assertEquals(0, cycles(arch) % 10);
+	}
+
+	@Test
+	public void testInstructionCache() {
+		//the instruction decoded before takes the same cycles as the first one
+		Architecture arch = new Architecture();
+		arch.enableTiming();
+		writeInstruction(arch, "moveMemReg", 300, 1);
+		long first = cycles(arch);
+		assertEquals(first, cycles(arch));
+		assertEquals(first, cycles(arch));
+	}
+
+	@Test
+	public void testWriteBuffer() throws IOException {
+		Architecture arch = new Architecture();
+		arch.readExec("idade");
+		Architecture plain = new Architecture();
+		plain.readExec("idade");
+		plain.enableTiming();
+		plain.controlUnitEexec();
+
+		//a write buffer that is never full takes the same cycles
+		WriteBuffer buffer = new WriteBuffer(64, 1);
+		arch.setWriteBuffer(buffer);
+		assertSame(buffer, arch.getWriteBuffer());
+		arch.controlUnitEexec();
+		assertArrayEquals(plain.getMemory().getDataList(), arch.getMemory().getDataList());
+		assertTrue(buffer.getStores() > 0);
+		assertEquals(0, buffer.getFullStalls());
+		assertEquals(plain.getTiming().getCycles(), arch.getTiming().getCycles());
+
+		//a single entry slow buffer stalls the stores close to each other
+		arch = new Architecture();
+		arch.readExec("idade");
+		buffer = new WriteBuffer(1, 1000);
+		arch.setWriteBuffer(buffer);
+		arch.controlUnitEexec();
+		assertArrayEquals(plain.getMemory().getDataList(), arch.getMemory().getDataList());
+		assertTrue(buffer.getFullStalls() > 0);
+		assertEquals(buffer.getStallCycles(), arch.getTiming().getClock().getStallCycles());
+		assertEquals(plain.getTiming().getCycles() + buffer.getStallCycles(), arch.getTiming().getCycles());
+		assertTrue(arch.getTiming().report().contains("stall cycles: "+buffer.getStallCycles()));
+
+		arch.setWriteBuffer(null);
+		assertNull(arch.getWriteBuffer());
+	}
+
+	@Test
+	public void testWriteBufferLoads() {
+		Architecture arch = new Architecture();
+		WriteBuffer buffer = new WriteBuffer(4, 1000);
+		arch.setWriteBuffer(buffer);
+
+		//the fetch and the operands of the instructions are not loads
+		writeInstruction(arch, "addRegReg", 0, 1);
+		cycles(arch);
+		cycles(arch);
+		assertEquals(0, buffer.getLoads());
+
+		//a store and then a load of the same position, forwarded from the buffer
+		arch.getRegistersList().get(0).setData(7);
+		writeInstruction(arch, "moveRegMem", 0, 50);
+		cycles(arch);
+		assertEquals(1, buffer.getStores());
+		writeInstruction(arch, "moveMemReg", 50, 1);
+		cycles(arch);
+		assertEquals(1, buffer.getLoads());
+		assertEquals(1, buffer.getForwarded());
+		assertEquals(7, arch.getRegistersList().get(1).getData());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownEvent() {
+		new Architecture().enableTiming().setCosts("bus=1,cache=3");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeCost() {
+		new Architecture().enableTiming().setCost("bus", -1);
+	}
+
+}
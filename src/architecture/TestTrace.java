@@ -0,0 +1,103 @@
+package architecture;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import components.Register;
+
+public class TestTrace {
+
+	private String temporaryName() throws IOException {
+		File file = File.createTempFile("trace", ".dtr");
+		file.deleteOnExit();
+		return file.getPath().substring(0, file.getPath().length() - 4);
+	}
+
+	/**
+	 * This method runs the program traced, and then applies the changes of the trace records over
+	 * the state of the program just loaded: the result must be the state of the program finished
+	 * @param engine
+	 * @throws IOException
+	 */
+	private void assertReplay(ExecutionEngine engine) throws IOException {
+		Architecture arch = new Architecture(false, engine);
+		arch.readExec("idade");
+		ArchitectureSnapshot loaded = arch.snapshot();
+		String filename = temporaryName();
+		arch.startTrace(filename);
+		arch.controlUnitEexec();
+		arch.stopTrace();
+		ArchitectureSnapshot finished = arch.snapshot();
+
+		arch.restore(loaded);
+		long instructions = 0;
+		while (arch.step())
+			instructions++;
+
+		TraceReader reader = new TraceReader(new File(filename+".dtr"));
+		int registers[] = reader.getInitialRegisters().clone();
+		assertEquals(loaded.getRegisters().length + 1, registers.length);
+		int memory[] = loaded.getMemory().clone();
+		long records = 0;
+		int lastCommand = 0;
+		while (reader.next()) {
+			assertEquals(registers[arch.getRegistersList().indexOf(arch.getPC())], reader.getPC());
+			assertEquals(memory[reader.getPC()], reader.getCommand());
+			assertEquals(Architecture.getOperandsCount(reader.getCommand()), reader.getOperandsCount());
+			for (int i = 0; i < reader.getChangedRegistersCount(); i++)
+				registers[reader.getChangedRegister(i)] = reader.getChangedRegisterValue(i);
+			for (int i = 0; i < reader.getChangedCellsCount(); i++)
+				memory[reader.getChangedCell(i)] = reader.getChangedCellValue(i);
+			lastCommand = reader.getCommand();
+			records++;
+		}
+		reader.close();
+		assertEquals(instructions + 1, records); //the end of the program is recorded too
+		assertEquals(-1, lastCommand);
+		for (int i = 0; i < finished.getRegisters().length; i++)
+			assertEquals(finished.getRegisters()[i], registers[i]);
+		assertEquals(finished.getFlagBits()[0] | (finished.getFlagBits()[1] << 1), registers[registers.length - 1]);
+		assertArrayEquals(finished.getMemory(), memory);
+	}
+
+	@Test
+	public void testMicroprogram() throws IOException {
+		assertReplay(ExecutionEngine.MICROPROGRAM);
+	}
+
+	@Test
+	public void testFunctional() throws IOException {
+		assertReplay(ExecutionEngine.FUNCTIONAL);
+	}
+
+	@Test
+	public void testSmallRing() throws IOException {
+		//a ring buffer much smaller than the trace: the records wrap around, waiting for the writer
+		Architecture arch = new Architecture();
+		arch.readExec("operacoes");
+		File file = new File(temporaryName()+".dtr");
+		TraceWriter writer = new TraceWriter(file, arch.getRegistersList(), arch.getFlags(), arch.getMemory(), 1000);
+		writer.start();
+		arch.getMemory().addListener(writer);
+		Register pc = arch.getPC();
+		for (int i = 0; i < 20000; i++) {
+			writer.begin(pc.getData());
+			arch.step();
+			writer.end();
+		}
+		writer.close();
+		assertTrue(writer.getWritten() > 1024 * 10);
+		assertEquals(4 * (3 + arch.getRegistersList().size() + 1 + writer.getWritten()), file.length());
+		TraceReader reader = new TraceReader(file);
+		int records = 0;
+		while (reader.next())
+			records++;
+		reader.close();
+		assertEquals(20000, records);
+	}
+
+}
@@ -0,0 +1,123 @@
+package architecture;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.junit.Test;
+
+public class TestTraceIndex {
+
+	private static final int INSTRUCTIONS = 5000;
+
+	private File temporaryFile(String suffix) throws IOException {
+		File file = File.createTempFile("trace", suffix);
+		file.deleteOnExit();
+		return file;
+	}
+
+	private void run(Architecture arch, TraceWriter writer) throws IOException {
+		writer.start();
+		arch.getMemory().addListener(writer);
+		for (int i = 0; i < INSTRUCTIONS; i++) {
+			writer.begin(arch.getPC().getData());
+			arch.step();
+			writer.end();
+		}
+		arch.getMemory().removeListener(writer);
+		writer.close();
+	}
+
+	@Test
+	public void testQueries() throws IOException {
+		Architecture arch = new Architecture();
+		arch.readExec("operacoes");
+		ArchitectureSnapshot loaded = arch.snapshot();
+		File trace = temporaryFile(".dct");
+		File indexFile = temporaryFile(".dci");
+		CompressedTraceWriter writer = new CompressedTraceWriter(trace, arch.getRegistersList(), arch.getFlags(), arch.getMemory(), 1024, 1000);
+		writer.setIndex(indexFile);
+		run(arch, writer);
+
+		//the same run in the uncompressed trace: the postings expected are found by reading it all
+		arch.restore(loaded);
+		File rawTrace = temporaryFile(".dtr");
+		run(arch, new TraceWriter(rawTrace, arch.getRegistersList(), arch.getFlags(), arch.getMemory(), 1024));
+		TraceReader reader = new TraceReader(rawTrace);
+		int registersCount = reader.getInitialRegisters().length;
+		ArrayList<ArrayList<long[]>> registers = new ArrayList<>();
+		for (int i = 0; i < registersCount; i++)
+			registers.add(new ArrayList<long[]>());
+		HashMap<Integer, ArrayList<long[]>> cells = new HashMap<>();
+		for (long instruction = 0; reader.next(); instruction++) {
+			for (int i = 0; i < reader.getChangedRegistersCount(); i++)
+				registers.get(reader.getChangedRegister(i)).add(new long[] {instruction, reader.getChangedRegisterValue(i)});
+			for (int i = 0; i < reader.getChangedCellsCount(); i++) {
+				if (!cells.containsKey(reader.getChangedCell(i)))
+					cells.put(reader.getChangedCell(i), new ArrayList<long[]>());
+				cells.get(reader.getChangedCell(i)).add(new long[] {instruction, reader.getChangedCellValue(i)});
+			}
+		}
+		reader.close();
+
+		TraceIndex index = TraceIndex.load(indexFile);
+		assertEquals(INSTRUCTIONS, index.getInstructions());
+		String names[] = index.getRegisterNames();
+		assertEquals(TraceWriter.FLAG_BITS, names[names.length - 1]);
+		for (int i = 0; i < registersCount; i++)
+			assertPostings(registers.get(i), index.getRegisterHistory(names[i]));
+		assertFalse(cells.isEmpty());
+		assertEquals(cells.size(), index.getWrittenAddresses().length);
+		for (int address : cells.keySet())
+			assertPostings(cells.get(address), index.getMemoryWrites(address));
+		assertEquals(0, index.getMemoryWrites(-5).getCount());
+
+		//the values after an instruction are the ones replayed after it
+		TraceReplayer replayer = new TraceReplayer(trace);
+		int pc = arch.getRegistersList().indexOf(arch.getPC());
+		for (long instruction = 0; instruction < INSTRUCTIONS; instruction += 97) {
+			replayer.seek(instruction + 1);
+			for (int i = 0; i < registersCount; i++)
+				assertEquals(replayer.getRegisters()[i], index.getRegisterValue(names[i], instruction));
+		}
+		replayer.close();
+		assertEquals(0, index.getRegisterValue(names[pc], -1)); //before the first instruction
+
+		//the last flip of the flags bits, found by reading the history backwards
+		ArrayList<long[]> flags = registers.get(registersCount - 1);
+		for (int bit = 0; bit < 2; bit++) {
+			long expected = -1;
+			for (int i = flags.size() - 1; (i >= 0) && (expected < 0); i--) {
+				long before = (i == 0) ? loaded.getFlagBits()[0] | (loaded.getFlagBits()[1] << 1) : flags.get(i - 1)[1];
+				if (((before ^ flags.get(i)[1]) & (1 << bit)) != 0)
+					expected = flags.get(i)[0];
+			}
+			assertEquals(expected, index.lastFlagFlip(bit, INSTRUCTIONS));
+		}
+
+		//the postings in an interval
+		TraceIndex.Postings history = index.getRegisterHistory(names[pc]);
+		assertEquals(history.getCount(), history.count(0, INSTRUCTIONS));
+		assertEquals(0, history.count(INSTRUCTIONS, INSTRUCTIONS + 10));
+		long middle = history.getInstruction(history.getCount() / 2);
+		assertEquals(history.getCount() / 2, history.count(0, middle));
+		try {
+			index.getRegisterHistory("RPG9");
+			fail();
+		}
+		catch (IllegalArgumentException e) {
+		}
+	}
+
+	private void assertPostings(ArrayList<long[]> expected, TraceIndex.Postings postings) {
+		assertEquals(expected.size(), postings.getCount());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i)[0], postings.getInstruction(i));
+			assertEquals(expected.get(i)[1], postings.getValue(i));
+		}
+	}
+
+}
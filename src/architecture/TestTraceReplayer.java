@@ -0,0 +1,112 @@
+package architecture;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+public class TestTraceReplayer {
+
+	private File temporaryFile() throws IOException {
+		File file = File.createTempFile("trace", ".dct");
+		file.deleteOnExit();
+		return file;
+	}
+
+	/**
+	 * This method returns the registers of the snapshot as they are in the trace (followed by the flags bits)
+	 * @param snapshot
+	 * @return
+	 */
+	private int[] traceRegisters(ArchitectureSnapshot snapshot) {
+		int registers[] = new int[snapshot.getRegisters().length + 1];
+		System.arraycopy(snapshot.getRegisters(), 0, registers, 0, snapshot.getRegisters().length);
+		registers[registers.length - 1] = snapshot.getFlagBits()[0] | (snapshot.getFlagBits()[1] << 1);
+		return registers;
+	}
+
+	private void assertState(ArchitectureSnapshot expected, TraceReplayer replayer) {
+		assertArrayEquals(traceRegisters(expected), replayer.getRegisters());
+		assertArrayEquals(expected.getMemory(), replayer.getMemory());
+	}
+
+	@Test
+	public void testSeek() throws IOException {
+		Architecture arch = new Architecture();
+		arch.readExec("operacoes");
+		ArchitectureSnapshot loaded = arch.snapshot();
+
+		//the states expected: after each instruction (executed again without the trace)
+		ArrayList<ArchitectureSnapshot> states = new ArrayList<>();
+		states.add(loaded);
+		for (int i = 0; i < 3000; i++) {
+			arch.step();
+			states.add(arch.snapshot());
+		}
+
+		arch.restore(loaded);
+		File file = temporaryFile();
+		TraceWriter writer = new CompressedTraceWriter(file, arch.getRegistersList(), arch.getFlags(), arch.getMemory(), 1024, 100);
+		writer.start();
+		arch.getMemory().addListener(writer);
+		for (int i = 0; i < 3000; i++) {
+			writer.begin(arch.getPC().getData());
+			arch.step();
+			writer.end();
+		}
+		arch.getMemory().removeListener(writer);
+		writer.close();
+
+		TraceReplayer replayer = new TraceReplayer(file);
+		assertEquals(3000, replayer.getInstructions());
+		assertEquals(100, replayer.getKeyframeInterval());
+		//forward, backward, in the keyframes and between them
+		long instructions[] = {0, 1, 99, 100, 101, 2999, 3000, 1234, 1200, 1299, 5, 2000};
+		for (long instruction : instructions) {
+			replayer.seek(instruction);
+			assertEquals(instruction, replayer.getPosition());
+			assertState(states.get((int) instruction), replayer);
+		}
+		//one instruction at a time, through all the segments
+		replayer.seek(0);
+		for (int i = 1; i <= 3000; i++) {
+			assertTrue(replayer.next());
+			if (i % 37 == 0 || i % 100 == 0 || i % 100 == 1)
+				assertState(states.get(i), replayer);
+		}
+		assertFalse(replayer.next());
+		try {
+			replayer.seek(3001);
+			fail();
+		}
+		catch (IllegalArgumentException e) {
+		}
+		replayer.close();
+		assertTrue(file.length() < 3000 * 8); //much smaller than the uncompressed trace
+	}
+
+	@Test
+	public void testArchitectureTrace() throws IOException {
+		Architecture arch = new Architecture(false, ExecutionEngine.FUNCTIONAL);
+		arch.readExec("idade");
+		ArchitectureSnapshot loaded = arch.snapshot();
+		String filename = temporaryFile().getPath();
+		filename = filename.substring(0, filename.length() - 4);
+		arch.startTrace(filename, true);
+		arch.controlUnitEexec();
+		arch.stopTrace();
+		ArchitectureSnapshot finished = arch.snapshot();
+
+		TraceReplayer replayer = new TraceReplayer(new File(filename+".dct"));
+		assertTrue(replayer.getInstructions() > 0);
+		replayer.seek(0);
+		assertState(loaded, replayer);
+		replayer.seek(replayer.getInstructions());
+		assertState(finished, replayer);
+		replayer.close();
+	}
+
+}
@@ -0,0 +1,97 @@
+package architecture;
+
+import java.io.IOException;
+
+import components.Register;
+
+/**
+ * This class compares how many instructions per second are executed by the microprograms interpreter
+ * (decodeExecute) and by the threaded engine, running the same programs.
+ * Each program runs many times (it is restored before each run), and each run is limited to a
+ * number of instructions, since some programs (as operacoes) never reach the end.
+ *
+ * Usage: ThreadedBenchmark [program ...] (the default programs are operacoes and idade)
+ */
+public class ThreadedBenchmark {
+
+	private static final long INSTRUCTIONS_PER_RUN = 100000;
+	private static final long WARMUP_MILLIS = 1000;
+	private static final long MEASURE_MILLIS = 2000;
+
+	private Architecture arch;
+	private int image[]; //the memory just after the program was loaded
+
+	public ThreadedBenchmark(String filename, ExecutionEngine engine) throws IOException {
+		arch = new Architecture(false, engine);
+		arch.readExec(filename);
+		image = arch.getMemory().getDataList().clone();
+	}
+
+	/**
+	 * This method restores the memory, the registers and the flags to the state just after the program was loaded.
+	 * The program itself is not changed, so the threaded code is still valid
+	 */
+	private void restore() {
+		System.arraycopy(image, 0, arch.getMemory().getDataList(), 0, image.length);
+		for (Register register : arch.getRegistersList())
+			register.setData(0);
+		arch.getFlags().setBit(0, 0);
+		arch.getFlags().setBit(1, 0);
+	}
+
+	/**
+	 * This method runs the program once
+	 * @return the amount of instructions executed
+	 */
+	private long runOnce() {
+		restore();
+		if (arch.getEngine() == ExecutionEngine.MICROPROGRAM) {
+			long executed = 0;
+			while ((executed < INSTRUCTIONS_PER_RUN) && arch.step())
+				executed++;
+			return executed;
+		}
+		return arch.getFunctionalEngine().run(INSTRUCTIONS_PER_RUN);
+	}
+
+	/**
+	 * This method runs the program again and again during the time
+	 * @param millis
+	 * @return the instructions per second
+	 */
+	private double measure(long millis) {
+		long executed = 0;
+		long start = System.nanoTime();
+		long end = start + millis * 1000000L;
+		long now;
+		do {
+			executed += runOnce();
+			now = System.nanoTime();
+		} while (now < end);
+		return executed / ((now - start) / 1e9);
+	}
+
+	public double run() {
+		measure(WARMUP_MILLIS);
+		return measure(MEASURE_MILLIS);
+	}
+
+	public static void main(String[] args) throws IOException {
+		String programs[] = (args.length > 0) ? args : new String[] {"operacoes", "idade"};
+		ExecutionEngine engines[] = {ExecutionEngine.MICROPROGRAM, ExecutionEngine.THREADED};
+		for (String program : programs) {
+			double base = 0;
+			for (ExecutionEngine engine : engines) {
+				ThreadedBenchmark benchmark = new ThreadedBenchmark(program, engine);
+				double ips = benchmark.run();
+				if (engine == ExecutionEngine.MICROPROGRAM)
+					base = ips;
+				System.out.println(String.format("%-10s %-13s %,15.0f instructions/s  (%.1fx)",
+						program, engine, ips, ips / base));
+				if (engine == ExecutionEngine.THREADED)
+					System.out.print(((ThreadedEngine) benchmark.arch.getFunctionalEngine()).fusionStatistics());
+			}
+		}
+	}
+
+}
@@ -0,0 +1,619 @@
+package architecture;
+
+import java.util.ArrayList;
+
+import components.Memory;
+import components.MemoryListener;
+
+/**
+ * This class executes a program translated into threaded code: each instruction of the program
+ * becomes an object already bound to its operands, that executes the instruction and returns the next one.
+ * So there is no fetch, no decoding and no switch over the commands while the program runs:
+ * the register file is changed directly, with the same semantics of the functional engine.
+ *
+ * The program is translated when it is loaded (see Architecture.readExec). The instructions that are not
+ * translated (the ones using registers that are not general purpose, and the end of the program)
+ * are executed by the functional engine. When a memory position used by a translated instruction is overwritten,
+ * the instruction is discarded and translated again when it is reached. When the whole memory is overwritten
+ * (see MemoryListener.reloaded), the whole program is translated again in the next run.
+ *
+ * Some common pairs of instructions (see Superinstruction) are fused when translated: the pair is executed
+ * by only one threaded instruction, with the same final PC, flags and memory. The second instruction of the pair
+ * is also translated alone, since a jump can reach it directly.
+ */
+public class ThreadedEngine extends FunctionalEngine implements MemoryListener {
+
+	private static final int MAX_LENGTH = 5; //the longest superinstruction (subMemReg + jn) uses 5 positions
+
+	private PagedTable<ThreadedInstruction> program; //the translated instructions, indexed by address
+	private boolean translated;
+	private long translations;
+	private long invalidations;
+	private boolean fusion; //true if the pairs of instructions are fused
+	private long fusions[]; //how many superinstructions were translated, indexed by the Superinstruction ordinal
+	private long fusionHits[]; //how many times the superinstructions were executed
+
+	/**
+	 * This class is a jump, bound also to the instruction in the jump target
+	 */
+	private static abstract class Jump extends ThreadedInstruction {
+
+		protected int target;
+		protected ThreadedInstruction targetInstruction;
+
+		public Jump(int address, int length, int target) {
+			this(address, length, 1, target);
+		}
+
+		public Jump(int address, int length, int instructions, int target) {
+			super(address, length, instructions);
+			this.target = target;
+		}
+
+		@Override
+		protected void link(PagedTable<ThreadedInstruction> program) {
+			super.link(program);
+			targetInstruction = program.get(target);
+		}
+	}
+
+	public ThreadedEngine(Architecture arch) {
+		super(arch);
+		program = new PagedTable<ThreadedInstruction>(memory.getSize()) {
+			@Override
+			protected void cleared(ThreadedInstruction instruction) {
+				instruction.valid = false;
+			}
+		};
+		fusion = true;
+		fusions = new long[Superinstruction.values().length];
+		fusionHits = new long[Superinstruction.values().length];
+		memory.addListener(this);
+	}
+
+	/**
+	 * This method turns on or off the superinstructions. It is used only in the next translation
+	 * @param fusion
+	 */
+	public void setFusion(boolean fusion) {
+		this.fusion = fusion;
+	}
+
+	public boolean isFusion() {
+		return fusion;
+	}
+
+	/**
+	 * This method returns how many times the superinstruction was translated
+	 * @param superinstruction
+	 * @return
+	 */
+	public long getFusions(Superinstruction superinstruction) {
+		return fusions[superinstruction.ordinal()];
+	}
+
+	/**
+	 * This method returns how many times the superinstruction was executed
+	 * @param superinstruction
+	 * @return
+	 */
+	public long getFusionHits(Superinstruction superinstruction) {
+		return fusionHits[superinstruction.ordinal()];
+	}
+
+	/**
+	 * This method returns the superinstructions statistics, one line for each pair
+	 * @return
+	 */
+	public String fusionStatistics() {
+		StringBuilder statistics = new StringBuilder();
+		for (Superinstruction superinstruction : Superinstruction.values())
+			statistics.append(String.format("%-16s translated %6d  executed %12d%n", superinstruction.getDescription(),
+					fusions[superinstruction.ordinal()], fusionHits[superinstruction.ordinal()]));
+		return statistics.toString();
+	}
+
+	public long getTranslations() {
+		return translations;
+	}
+
+	public long getInvalidations() {
+		return invalidations;
+	}
+
+	/**
+	 * This method translates the program stored in the memory, from the position 0 until the end of the program.
+	 * Instructions out of this sequence (after the end, for example) are translated only when they are reached
+	 */
+	public void translate() {
+		program.clear();
+		ArrayList<ThreadedInstruction> instructions = new ArrayList<ThreadedInstruction>();
+		int address = 0;
+		while ((address >= 0) && (address < memory.getSize())) {
+			int command = memory.getData(address);
+			if ((command < 0) || (command > 25)) //the end of the program
+				break;
+			ThreadedInstruction instruction = translate(address);
+			if (instruction != null) {
+				program.set(address, instruction);
+				instructions.add(instruction);
+			}
+			address += Architecture.getOperandsCount(command) + 1;
+		}
+		for (ThreadedInstruction instruction : instructions)
+			instruction.link(program);
+		translated = true;
+	}
+
+	/**
+	 * The whole memory may have changed, so the program is translated again before the next run
+	 */
+	@Override
+	public void reloaded() {
+		program.clear();
+		translated = false;
+	}
+
+	/**
+	 * This method returns the instruction starting in the address, translating it if it was not translated yet
+	 * @param address
+	 * @return the instruction, or null if it can not be translated
+	 */
+	private ThreadedInstruction at(int address) {
+		if ((address < 0) || (address >= memory.getSize()))
+			return null;
+		ThreadedInstruction instruction = program.get(address);
+		if (instruction == null) {
+			instruction = translate(address);
+			if (instruction != null) {
+				program.set(address, instruction);
+				instruction.link(program);
+			}
+		}
+		return instruction;
+	}
+
+	@Override
+	public long run(long maxInstructions) {
+		if (!translated)
+			translate();
+		load();
+		long executed = 0;
+		ThreadedInstruction current = at(registers[PC]);
+		while (executed < maxInstructions) {
+			if ((current == null) || !current.valid) {
+				current = at(registers[PC]);
+				if (current == null) { //not translated, so the functional engine executes it
+					if (!execute())
+						break;
+					executed++;
+					continue;
+				}
+			}
+			executed += current.instructions;
+			current = current.execute();
+		}
+		save();
+		return executed;
+	}
+
+	/**
+	 * This method discards the translated instructions using the overwritten memory position
+	 */
+	@Override
+	public void stored(int position) {
+		for (int i = 0; i < MAX_LENGTH; i++) {
+			ThreadedInstruction instruction = program.get(position - i);
+			if ((instruction != null) && instruction.contains(position)) {
+				instruction.valid = false;
+				program.set(position - i, null);
+				invalidations++;
+			}
+		}
+	}
+
+	private static void setStatusFlags(int r[], int result) {
+		r[BIT_ZERO] = (result == 0) ? 1 : 0;
+		r[BIT_NEGATIVE] = (result < 0) ? 1 : 0;
+	}
+
+	/**
+	 * This method creates the threaded instruction for the instruction stored in the address
+	 * @param address
+	 * @return the instruction, or null if it must be executed by the functional engine
+	 */
+	private ThreadedInstruction translate(int address) {
+		ThreadedInstruction instruction = newInstruction(address);
+		if (instruction == null)
+			return null;
+		translations++;
+		if (fusion) {
+			ThreadedInstruction superinstruction = newSuperinstruction(address, address + instruction.length);
+			if (superinstruction != null)
+				return superinstruction;
+		}
+		return instruction;
+	}
+
+	/**
+	 * This method creates the superinstruction for the pair of instructions stored in the addresses
+	 * @param address the first instruction, already translated
+	 * @param second the second instruction
+	 * @return the superinstruction, or null if the pair is not fused
+	 */
+	private ThreadedInstruction newSuperinstruction(final int address, final int second) {
+		final int command = memory.getData(address);
+		final int secondCommand = memory.getData(second);
+		final int length = second - address + Architecture.getOperandsCount(secondCommand) + 1;
+		if ((secondCommand < 0) || (secondCommand > 25) || (address + length > memory.getSize()))
+			return null;
+		final int operand1 = memory.getData(address+1);
+		final int operand2 = memory.getData(address+2);
+		final int secondOperand = memory.getData(second+1);
+		final int nextAddress = address + length;
+		final int r[] = registers;
+		final Memory m = memory;
+		final Memory s = statusMemory;
+		final long hits[] = fusionHits;
+		if ((command == 23) && (secondCommand == 24)) { //read x, store y
+			final int kind = Superinstruction.READ_STORE.ordinal();
+			fusions[kind]++;
+			return new ThreadedInstruction(address, length, 2) {
+				public ThreadedInstruction execute() {
+					hits[kind]++;
+					int data = m.getData(operand1);
+					r[0] = data;
+					r[IR] = data;
+					m.setData(secondOperand, data);
+					r[PC] = nextAddress;
+					return next;
+				}
+			};
+		}
+		if ((command == 25) && (secondCommand == 24)) { //ldi n, store v
+			final int kind = Superinstruction.LDI_STORE.ordinal();
+			fusions[kind]++;
+			return new ThreadedInstruction(address, length, 2) {
+				public ThreadedInstruction execute() {
+					hits[kind]++;
+					r[0] = operand1;
+					r[IR] = operand1;
+					m.setData(secondOperand, operand1);
+					r[PC] = nextAddress;
+					return next;
+				}
+			};
+		}
+		if ((command == 5) && (secondCommand == 17)) { //subMemReg c %RPGx, jn target
+			final int kind = Superinstruction.SUB_MEM_REG_JN.ordinal();
+			fusions[kind]++;
+			return new Jump(address, length, 2, secondOperand) {
+				public ThreadedInstruction execute() {
+					hits[kind]++;
+					int result = m.getData(operand1) - r[operand2];
+					setStatusFlags(r, result);
+					r[operand2] = result;
+					r[IR] = secondCommand;
+					s.setData(0, nextAddress);
+					s.setData(1, target);
+					if (result >= 0) {
+						r[PC] = nextAddress;
+						return next;
+					}
+					r[PC] = target;
+					return targetInstruction;
+				}
+			};
+		}
+		return null;
+	}
+
+	private ThreadedInstruction newInstruction(final int address) {
+		final int command = memory.getData(address);
+		if ((command < 0) || (command > 25))
+			return null;
+		final int length = Architecture.getOperandsCount(command) + 1;
+		if (address + length > memory.getSize())
+			return null;
+		final int operand1 = memory.getData(address+1);
+		final int operand2 = memory.getData(address+2);
+		final int nextAddress = address + length;
+		final int r[] = registers;
+		final Memory m = memory;
+		final Memory s = statusMemory;
+		switch (command) {
+		case 0: //addRegReg
+			if (!isGeneral(operand1) || !isGeneral(operand2))
+				return null;
+			return new ThreadedInstruction(address, length) {
+				public ThreadedInstruction execute() {
+					int result = r[operand1] + r[operand2];
+					setStatusFlags(r, result);
+					r[operand2] = result;
+					r[IR] = command;
+					r[PC] = nextAddress;
+					return next;
+				}
+			};
+		case 1: //addMemReg
+			if (!isGeneral(operand2))
+				return null;
+			return new ThreadedInstruction(address, length) {
+				public ThreadedInstruction execute() {
+					int data = m.getData(operand1);
+					int result = data + r[operand2];
+					setStatusFlags(r, result);
+					r[operand2] = result;
+					r[IR] = data;
+					r[PC] = nextAddress;
+					return next;
+				}
+			};
+		case 2: //addRegMem
+			if (!isGeneral(operand1))
+				return null;
+			return new ThreadedInstruction(address, length) {
+				public ThreadedInstruction execute() {
+					int result = r[operand1] + m.getData(operand2);
+					setStatusFlags(r, result);
+					r[IR] = result;
+					m.setData(operand2, result);
+					r[PC] = nextAddress;
+					return next;
+				}
+			};
+		case 3: //addImmReg
+			if (!isGeneral(operand2))
+				return null;
+			return new ThreadedInstruction(address, length) {
+				public ThreadedInstruction execute() {
+					int result = operand1 + r[operand2];
+					setStatusFlags(r, result);
+					r[operand2] = result;
+					r[IR] = operand1;
+					r[PC] = nextAddress;
+					return next;
+				}
+			};
+		case 4: //subRegReg
+			if (!isGeneral(operand1) || !isGeneral(operand2))
+				return null;
+			return new ThreadedInstruction(address, length) {
+				public ThreadedInstruction execute() {
+					int result = r[operand1] - r[operand2];
+					setStatusFlags(r, result);
+					r[operand2] = result;
+					r[IR] = command;
+					r[PC] = nextAddress;
+					return next;
+				}
+			};
+		case 5: //subMemReg
+			if (!isGeneral(operand2))
+				return null;
+			return new ThreadedInstruction(address, length) {
+				public ThreadedInstruction execute() {
+					int data = m.getData(operand1);
+					int result = data - r[operand2];
+					setStatusFlags(r, result);
+					r[operand2] = result;
+					r[IR] = data;
+					r[PC] = nextAddress;
+					return next;
+				}
+			};
+		case 6: //subRegMem
+			if (!isGeneral(operand1))
+				return null;
+			return new ThreadedInstruction(address, length) {
+				public ThreadedInstruction execute() {
+					int result = r[operand1] - m.getData(operand2);
+					setStatusFlags(r, result);
+					r[IR] = result;
+					m.setData(operand2, result);
+					r[PC] = nextAddress;
+					return next;
+				}
+			};
+		case 7: //subImmReg
+			if (!isGeneral(operand2))
+				return null;
+			return new ThreadedInstruction(address, length) {
+				public ThreadedInstruction execute() {
+					int result = operand1 - r[operand2];
+					setStatusFlags(r, result);
+					r[operand2] = result;
+					r[IR] = operand1;
+					r[PC] = nextAddress;
+					return next;
+				}
+			};
+		case 8: //imulMemReg
+			if (!isGeneral(operand2))
+				return null;
+			return new ThreadedInstruction(address, length) {
+				public ThreadedInstruction execute() {
+					int data = m.getData(operand1);
+					int result = data * r[operand2];
+					setStatusFlags(r, result);
+					r[operand2] = result;
+					r[IR] = data;
+					r[PC] = nextAddress;
+					return next;
+				}
+			};
+		case 9: //imulRegMem
+			if (!isGeneral(operand1))
+				return null;
+			return new ThreadedInstruction(address, length) {
+				public ThreadedInstruction execute() {
+					int result = r[operand1] * m.getData(operand2);
+					setStatusFlags(r, result);
+					r[IR] = result;
+					m.setData(operand2, result);
+					r[PC] = nextAddress;
+					return next;
+				}
+			};
+		case 10: //imulRegReg
+			if (!isGeneral(operand1) || !isGeneral(operand2))
+				return null;
+			return new ThreadedInstruction(address, length) {
+				public ThreadedInstruction execute() {
+					int result = r[operand1] * r[operand2];
+					setStatusFlags(r, result);
+					r[operand2] = result;
+					r[IR] = command;
+					r[PC] = nextAddress;
+					return next;
+				}
+			};
+		case 11: //moveMemReg
+			if (!isGeneral(operand2))
+				return null;
+			return new ThreadedInstruction(address, length) {
+				public ThreadedInstruction execute() {
+					int data = m.getData(operand1);
+					r[operand2] = data;
+					r[IR] = data;
+					r[PC] = nextAddress;
+					return next;
+				}
+			};
+		case 12: //moveRegMem
+			if (!isGeneral(operand1))
+				return null;
+			return new ThreadedInstruction(address, length) {
+				public ThreadedInstruction execute() {
+					int data = r[operand1];
+					r[IR] = data;
+					m.setData(operand2, data);
+					r[PC] = nextAddress;
+					return next;
+				}
+			};
+		case 13: //moveRegReg
+			if (!isGeneral(operand1) || !isGeneral(operand2))
+				return null;
+			return new ThreadedInstruction(address, length) {
+				public ThreadedInstruction execute() {
+					r[operand2] = r[operand1];
+					r[IR] = command;
+					r[PC] = nextAddress;
+					return next;
+				}
+			};
+		case 14: //moveImmReg
+			if (!isGeneral(operand2))
+				return null;
+			return new ThreadedInstruction(address, length) {
+				public ThreadedInstruction execute() {
+					r[operand2] = operand1;
+					r[IR] = operand1;
+					r[PC] = nextAddress;
+					return next;
+				}
+			};
+		case 15: //incReg
+			if (!isGeneral(operand1))
+				return null;
+			return new ThreadedInstruction(address, length) {
+				public ThreadedInstruction execute() {
+					int result = r[operand1] + 1;
+					setStatusFlags(r, result);
+					r[operand1] = result;
+					r[IR] = command;
+					r[PC] = nextAddress;
+					return next;
+				}
+			};
+		case 16: //jmp
+			return new Jump(address, length, operand1) {
+				public ThreadedInstruction execute() {
+					r[IR] = command;
+					r[PC] = target;
+					return targetInstruction;
+				}
+			};
+		case 17: //jn
+		case 18: //jz
+			final int bit = (command == 17) ? BIT_NEGATIVE : BIT_ZERO;
+			return new Jump(address, length, operand1) {
+				public ThreadedInstruction execute() {
+					r[IR] = command;
+					s.setData(0, nextAddress);
+					s.setData(1, target);
+					if (r[bit] == 0) {
+						r[PC] = nextAddress;
+						return next;
+					}
+					r[PC] = target;
+					return targetInstruction;
+				}
+			};
+		case 19: //jeq
+		case 20: //jneq
+		case 21: //jgt
+		case 22: //jlw
+			if (!isGeneral(operand1) || !isGeneral(operand2))
+				return null;
+			//jgt and jlw use IR to keep the regB id
+			final int ir = (command >= 21) ? operand2 : command;
+			final int conditionBit = (command == 22) ? BIT_NEGATIVE : BIT_ZERO;
+			//jneq jumps when the bit is 0, the others when the bit is 1
+			final int jumpWhen = (command == 20) ? 0 : 1;
+			return new Jump(address, length, memory.getData(address+3)) {
+				public ThreadedInstruction execute() {
+					r[IR] = ir;
+					setStatusFlags(r, r[operand1] - r[operand2]);
+					if (jumpWhen == 0) {
+						s.setData(0, target);
+						s.setData(1, nextAddress);
+					}
+					else {
+						s.setData(0, nextAddress);
+						s.setData(1, target);
+					}
+					if (r[conditionBit] == jumpWhen) {
+						r[PC] = target;
+						return targetInstruction;
+					}
+					r[PC] = nextAddress;
+					return next;
+				}
+			};
+		case 23: //read
+			return new ThreadedInstruction(address, length) {
+				public ThreadedInstruction execute() {
+					int data = m.getData(operand1);
+					r[0] = data;
+					r[IR] = data;
+					r[PC] = nextAddress;
+					return next;
+				}
+			};
+		case 24: //store
+			return new ThreadedInstruction(address, length) {
+				public ThreadedInstruction execute() {
+					int data = r[0];
+					r[IR] = data;
+					m.setData(operand1, data);
+					r[PC] = nextAddress;
+					return next;
+				}
+			};
+		case 25: //ldi
+			return new ThreadedInstruction(address, length) {
+				public ThreadedInstruction execute() {
+					r[0] = operand1;
+					r[IR] = operand1;
+					r[PC] = nextAddress;
+					return next;
+				}
+			};
+		default:
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,67 @@
+package architecture;
+
+/**
+ * This class is an instruction of the threaded program: it is created already bound to its
+ * operands (and to the register file and memories it uses), so executing it needs no decoding.
+ * Each instruction returns the next one to be executed, so the program is a chain of instructions.
+ */
+public abstract class ThreadedInstruction {
+
+	protected int address; //the memory position where the instruction starts
+	protected int length; //the amount of memory positions used by the instruction
+	protected int instructions; //the amount of program instructions executed (2 in the superinstructions)
+	protected ThreadedInstruction next; //the instruction just after this one (null while not translated)
+	protected boolean valid; //false after any of its memory positions is overwritten
+
+	public ThreadedInstruction(int address, int length) {
+		this(address, length, 1);
+	}
+
+	public ThreadedInstruction(int address, int length, int instructions) {
+		this.address = address;
+		this.length = length;
+		this.instructions = instructions;
+		this.valid = true;
+	}
+
+	/**
+	 * This method executes the instruction, changing the register file, the flags and the memory.
+	 * PC always receives the address of the next instruction
+	 * @return the next instruction, or null if it must be found by the PC value
+	 */
+	public abstract ThreadedInstruction execute();
+
+	/**
+	 * This method binds the targets of the instruction (the next one and, in the jumps, the jump target)
+	 * @param program the instructions, indexed by address
+	 */
+	protected void link(PagedTable<ThreadedInstruction> program) {
+		next = program.get(address + length);
+	}
+
+	public int getAddress() {
+		return address;
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	public int getInstructions() {
+		return instructions;
+	}
+
+	public boolean isValid() {
+		return valid;
+	}
+
+	/**
+	 * This method returns true if the memory position is used by the instruction
+	 * @param position
+	 * @return
+	 */
+	public boolean contains(int position) {
+		return (position >= address) && (position < address + length);
+	}
+
+}
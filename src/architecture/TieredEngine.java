@@ -0,0 +1,196 @@
+package architecture;
+
+import components.MemoryListener;
+
+/**
+ * This class executes a program in two tiers.
+ * At first, the instructions are executed by the functional engine (the interpreter tier).
+ * Each address where a basic block starts (the program start, a jump target or the address after
+ * a jump) has a counter, and when it reaches the threshold the block is compiled into a JVM class
+ * by the block compiler. After that, the whole block runs at once in the compiled tier.
+ *
+ * The compiled blocks keep the operands read from the memory, so this engine listens to the memory:
+ * when a position used by a compiled block is overwritten (self modifying code)
+ * the block is discarded and its counter starts again. A block discarded MAX_RECOMPILATIONS times
+ * is not compiled again, since each compilation defines a new class.
+ * The blocks are kept from one run to the next, and they are all discarded (with their classes)
+ * only when the whole memory is overwritten (see MemoryListener.reloaded).
+ */
+public class TieredEngine extends FunctionalEngine implements MemoryListener {
+
+	public static final int DEFAULT_THRESHOLD = 50;
+	public static final int MAX_RECOMPILATIONS = 4;
+
+	private BlockCompiler compiler;
+	private PagedTable<Position> positions; //only the positions of the blocks (and of the block starts) are kept
+	private int threshold;
+	private int compiledBlocks;
+	private long blockExecutions;
+	private int invalidations;
+
+	/**
+	 * This class keeps what the engine knows about a memory position
+	 */
+	private static class Position {
+		CompiledBlock block; //the compiled block starting in the position
+		int counter; //how many times a block start was reached in the position
+		int covered; //how many compiled blocks use the position
+		int recompilations; //how many times the blocks starting in the position were discarded
+	}
+
+	public TieredEngine(Architecture arch) {
+		super(arch);
+		compiler = new BlockCompiler();
+		positions = new PagedTable<Position>(memory.getSize());
+		threshold = DEFAULT_THRESHOLD;
+		memory.addListener(this);
+	}
+
+	/**
+	 * This method sets how many times a block start must be reached before the block is compiled
+	 * @param threshold
+	 */
+	public void setThreshold(int threshold) {
+		this.threshold = threshold;
+	}
+
+	public int getThreshold() {
+		return threshold;
+	}
+
+	public int getCompiledBlocks() {
+		return compiledBlocks;
+	}
+
+	public long getBlockExecutions() {
+		return blockExecutions;
+	}
+
+	public int getInvalidations() {
+		return invalidations;
+	}
+
+	public int getCompiledClasses() {
+		return compiler.getCompiledClasses();
+	}
+
+	public int getGenerations() {
+		return compiler.getGenerations();
+	}
+
+	/**
+	 * This method discards all the compiled blocks and the counters.
+	 * The next blocks are compiled in a new generation, so the classes of the old ones can be unloaded
+	 */
+	public void clear() {
+		positions.clear();
+		compiler.reset();
+	}
+
+	/**
+	 * This method returns what the engine knows about the position, creating it if needed
+	 * @param address
+	 * @return
+	 */
+	private Position position(int address) {
+		Position position = positions.get(address);
+		if (position == null) {
+			position = new Position();
+			positions.set(address, position);
+		}
+		return position;
+	}
+
+	/**
+	 * The whole memory may have changed, so all the compiled blocks are discarded
+	 */
+	@Override
+	public void reloaded() {
+		clear();
+	}
+
+	/**
+	 * This method executes a program stored in the memory, until the end of the program
+	 * or until the amount of instructions is executed (a compiled block is never interrupted, so a few
+	 * more instructions may be executed).
+	 * The blocks compiled in the runs before are still used
+	 * @param maxInstructions
+	 * @return the amount of instructions executed
+	 */
+	@Override
+	public long run(long maxInstructions) {
+		load();
+		long executed = 0;
+		boolean running = true;
+		boolean blockStart = true;
+		while (running && (executed < maxInstructions)) {
+			int pc = registers[PC];
+			if (blockStart && (pc >= 0) && (pc < positions.getSize())) {
+				Position position = position(pc);
+				CompiledBlock block = position.block;
+				if ((block == null) && (++position.counter >= threshold))
+					block = compile(pc, position);
+				if (block != null) {
+					registers[PC] = block.getCode().run(registers, memory, statusMemory);
+					blockExecutions++;
+					executed += block.getInstructions();
+					continue;
+				}
+			}
+			int command = memory.getData(pc);
+			running = execute();
+			if (running)
+				executed++;
+			//after a jump, a new block starts
+			blockStart = (command >= 16) && (command <= 22);
+		}
+		save();
+		return executed;
+	}
+
+	/**
+	 * This method compiles the block starting at the address.
+	 * If the block can not be compiled, its counter never reaches the threshold again
+	 * @param start
+	 * @param position the position of the start
+	 * @return the compiled block, or null
+	 */
+	private CompiledBlock compile(int start, Position position) {
+		CompiledBlock block = compiler.compile(memory, start);
+		if (block == null) {
+			position.counter = Integer.MIN_VALUE;
+			return null;
+		}
+		position.block = block;
+		for (int i = start; i < start + block.getLength(); i++)
+			position(i).covered++;
+		compiledBlocks++;
+		return block;
+	}
+
+	/**
+	 * This method discards the compiled blocks that use the overwritten memory position
+	 */
+	@Override
+	public void stored(int position) {
+		Position stored = positions.get(position);
+		if ((stored == null) || (stored.covered == 0))
+			return;
+		int first = Math.max(0, position - BlockCompiler.MAX_BLOCK_LENGTH + 1);
+		for (int start = first; start <= position; start++) {
+			Position starting = positions.get(start);
+			if ((starting == null) || (starting.block == null))
+				continue;
+			CompiledBlock block = starting.block;
+			if (block.contains(position)) {
+				starting.block = null;
+				starting.recompilations++;
+				starting.counter = (starting.recompilations < MAX_RECOMPILATIONS) ? 0 : Integer.MIN_VALUE;
+				for (int i = start; i < start + block.getLength(); i++)
+					positions.get(i).covered--;
+				invalidations++;
+			}
+		}
+	}
+
+}
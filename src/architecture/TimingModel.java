@@ -0,0 +1,175 @@
+package architecture;
+
+import java.util.ArrayList;
+
+import components.Clock;
+
+/**
+ * This class is the timing model of an architecture: a clock attached to all the components
+ * (see Clock for the cost of each event) and the cycles spent by each instruction, summed per opcode
+ * (indexed as the commands list, the last one is the end of the program).
+ * So the cycles per instruction (CPI) of each opcode and of the whole program are known,
+ * and two architectures (with different costs, for example) can be compared by the simulated runtime.
+ *
+ * The cycles of an instruction are all the cycles since the instruction before it retired,
+ * so the fetch is counted too. Only the microprogram engine uses the components,
+ * so the other engines are not timed
+ */
+public class TimingModel {
+
+	private Clock clock;
+	private String opcodes[];
+	private long instructions[]; //the instructions retired, per opcode
+	private long cycles[]; //the cycles of these instructions, per opcode
+	private long retiredAt; //the clock cycles when the last instruction retired
+
+	/**
+	 * This constructor creates the timing model of the commands, with the default costs
+	 * @param commandsList
+	 */
+	public TimingModel(ArrayList<String> commandsList) {
+		clock = new Clock();
+		opcodes = new String[commandsList.size() + 1];
+		commandsList.toArray(opcodes);
+		opcodes[commandsList.size()] = "END";
+		instructions = new long[opcodes.length];
+		cycles = new long[opcodes.length];
+	}
+
+	public Clock getClock() {
+		return clock;
+	}
+
+	/**
+	 * This method changes the cycles of an event (see Clock.EVENT_NAMES)
+	 * @param event the event name
+	 * @param cost
+	 */
+	public void setCost(String event, int cost) {
+		int number = Clock.event(event);
+		if (number < 0)
+			throw new IllegalArgumentException("Unknown event "+event);
+		clock.setCost(number, cost);
+	}
+
+	/**
+	 * This method changes the costs from a text like "read=2,register=1" (the events not given are kept)
+	 * @param costs
+	 */
+	public void setCosts(String costs) {
+		for (String cost : costs.split(",")) {
+			String pair[] = cost.split("=");
+			if (pair.length != 2)
+				throw new IllegalArgumentException("Expected event=cycles: "+cost);
+			setCost(pair[0].trim(), Integer.parseInt(pair[1].trim()));
+		}
+	}
+
+	/**
+	 * This method counts an instruction retired, with all the cycles since the last one
+	 * @param command
+	 */
+	public void retired(int command) {
+		int opcode = ((command >= 0) && (command < instructions.length - 1)) ? command : instructions.length - 1;
+		long now = clock.getCycles();
+		instructions[opcode]++;
+		cycles[opcode] += now - retiredAt;
+		retiredAt = now;
+	}
+
+	public String[] getOpcodes() {
+		return opcodes.clone();
+	}
+
+	/**
+	 * This method returns the position of the opcode in the counts (-1 if there is no such opcode)
+	 * @param opcode
+	 * @return
+	 */
+	private int opcode(String opcode) {
+		for (int i = 0; i < opcodes.length; i++)
+			if (opcodes[i].equals(opcode))
+				return i;
+		return -1;
+	}
+
+	public long getInstructions() {
+		long sum = 0;
+		for (long count : instructions)
+			sum += count;
+		return sum;
+	}
+
+	public long getInstructions(String opcode) {
+		int i = opcode(opcode);
+		return (i < 0) ? 0 : instructions[i];
+	}
+
+	/**
+	 * This method returns the cycles of all the instructions retired
+	 * @return
+	 */
+	public long getCycles() {
+		long sum = 0;
+		for (long count : cycles)
+			sum += count;
+		return sum;
+	}
+
+	public long getCycles(String opcode) {
+		int i = opcode(opcode);
+		return (i < 0) ? 0 : cycles[i];
+	}
+
+	/**
+	 * This method returns the cycles per instruction of the whole program (0 if nothing was retired)
+	 * @return
+	 */
+	public double getCPI() {
+		long count = getInstructions();
+		return (count == 0) ? 0 : (double) getCycles() / count;
+	}
+
+	/**
+	 * This method returns the cycles per instruction of the opcode (0 if it was never retired)
+	 * @param opcode
+	 * @return
+	 */
+	public double getCPI(String opcode) {
+		long count = getInstructions(opcode);
+		return (count == 0) ? 0 : (double) getCycles(opcode) / count;
+	}
+
+	/**
+	 * This method returns the CPI report as text: the costs, the program totals
+	 * and one line per opcode executed (instructions, cycles and CPI)
+	 * @return
+	 */
+	public String report() {
+		StringBuilder text = new StringBuilder("costs:");
+		for (int i = 0; i < Clock.EVENTS; i++)
+			text.append(' ').append(Clock.EVENT_NAMES[i]).append('=').append(clock.getCost(i));
+		text.append(String.format("%n"));
+		text.append(String.format("instructions: %d, cycles: %d, CPI: %.2f%n", getInstructions(), getCycles(), getCPI()));
+		if (clock.getStallCycles() > 0)
+			text.append(String.format("stall cycles: %d%n", clock.getStallCycles()));
+		for (int i = 0; i < opcodes.length; i++)
+			if (instructions[i] > 0)
+				text.append(String.format("  %-10s %8d %10d %8.2f%n", opcodes[i], instructions[i], cycles[i],
+						(double) cycles[i] / instructions[i]));
+		return text.toString();
+	}
+
+	/**
+	 * This method clears the instructions and the cycles (the costs are kept)
+	 */
+	public void reset() {
+		clock.reset();
+		retiredAt = 0;
+		for (int i = 0; i < opcodes.length; i++) {
+			instructions[i] = 0;
+			cycles[i] = 0;
+		}
+	}
+
+}
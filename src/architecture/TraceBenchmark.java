@@ -0,0 +1,76 @@
+package architecture;
+
+import java.io.File;
+import java.io.IOException;
+
+import components.Register;
+
+/**
+ * This class measures the cost of tracing a program: it runs a million instructions of a program
+ * without the trace, with the trace and with the compressed trace (written to a temporary file),
+ * showing the instructions per second and the trace size.
+ *
+ * Usage: TraceBenchmark [program] (the default program is operacoes, that never reaches the end)
+ */
+public class TraceBenchmark {
+
+	private static final int INSTRUCTIONS = 1000000;
+
+	/**
+	 * This method runs the instructions of the program, tracing them if there is a writer
+	 * @param arch
+	 * @param writer
+	 * @return the nanoseconds spent
+	 * @throws IOException
+	 */
+	private static long run(Architecture arch, TraceWriter writer) throws IOException {
+		Register pc = arch.getPC();
+		long start = System.nanoTime();
+		for (int i = 0; i < INSTRUCTIONS; i++) {
+			if (writer != null)
+				writer.begin(pc.getData());
+			arch.step();
+			if (writer != null)
+				writer.end();
+		}
+		if (writer != null)
+			writer.close();
+		return System.nanoTime() - start;
+	}
+
+	public static void main(String[] args) throws IOException {
+		String program = (args.length > 0) ? args[0] : "operacoes";
+		Architecture arch = new Architecture();
+		arch.readExec(program);
+		ArchitectureSnapshot loaded = arch.snapshot();
+		run(arch, null); //warmup
+		arch.restore(loaded);
+		long plain = run(arch, null);
+
+		File file = File.createTempFile("benchmark", ".dtr");
+		file.deleteOnExit();
+		arch.restore(loaded);
+		TraceWriter writer = new TraceWriter(file, arch.getRegistersList(), arch.getFlags(), arch.getMemory(), TraceWriter.DEFAULT_CAPACITY);
+		writer.start();
+		arch.getMemory().addListener(writer);
+		long traced = run(arch, writer);
+		arch.getMemory().removeListener(writer);
+		long tracedSize = file.length();
+
+		arch.restore(loaded);
+		writer = new CompressedTraceWriter(file, arch.getRegistersList(), arch.getFlags(), arch.getMemory(),
+				TraceWriter.DEFAULT_CAPACITY, CompressedTraceWriter.DEFAULT_KEYFRAME_INTERVAL);
+		writer.start();
+		arch.getMemory().addListener(writer);
+		long compressed = run(arch, writer);
+		arch.getMemory().removeListener(writer);
+		System.out.printf("%s: %d instructions%n", program, INSTRUCTIONS);
+		System.out.printf("  without trace:    %10.0f instructions/s%n", INSTRUCTIONS / (plain / 1e9));
+		System.out.printf("  with trace:       %10.0f instructions/s, %.1f MB written (%.1f MB/s)%n", INSTRUCTIONS / (traced / 1e9),
+				tracedSize / 1e6, tracedSize / 1e6 / (traced / 1e9));
+		System.out.printf("  compressed trace: %10.0f instructions/s, %.2f MB written%n", INSTRUCTIONS / (compressed / 1e9),
+				file.length() / 1e6);
+		file.delete();
+	}
+
+}
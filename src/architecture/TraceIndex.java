@@ -0,0 +1,340 @@
+package architecture;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * This class indexes a trace: for each register and for each memory position, the sorted list (postings)
+ * of the instructions that changed it, with the new values. So questions as "which instructions wrote memory[380]",
+ * "the values of RPG2" or "when did the flag bit 1 flip" are answered by a binary search, not by reading the trace.
+ *
+ * The instructions are numbered as the trace records: the first one is 0, and the state after the change
+ * of the instruction n is the one replayed by TraceReplayer.seek(n + 1).
+ * The index is built by the trace writer thread (see CompressedTraceWriter.setIndex) and saved when the trace ends.
+ */
+public class TraceIndex {
+
+	public static final int MAGIC = 0x44584349; //"DXCI"
+	public static final int VERSION = 1;
+
+	/**
+	 * This class is a postings list: the instructions (sorted) and the value written by each one
+	 */
+	public static class Postings {
+
+		private long instructions[];
+		private int values[];
+		private int count;
+
+		public Postings() {
+			this(4);
+		}
+
+		private Postings(int capacity) {
+			instructions = new long[capacity];
+			values = new int[capacity];
+		}
+
+		private void add(long instruction, int value) {
+			if (count == instructions.length) {
+				instructions = Arrays.copyOf(instructions, count * 2);
+				values = Arrays.copyOf(values, count * 2);
+			}
+			instructions[count] = instruction;
+			values[count] = value;
+			count++;
+		}
+
+		public int getCount() {
+			return count;
+		}
+
+		public long getInstruction(int i) {
+			return instructions[i];
+		}
+
+		public int getValue(int i) {
+			return values[i];
+		}
+
+		/**
+		 * This method returns the last posting of an instruction before (or equal to) the given one
+		 * @param instruction
+		 * @return the posting, or -1 if all the postings are after the instruction
+		 */
+		public int find(long instruction) {
+			int low = 0;
+			int high = count - 1;
+			while (low <= high) {
+				int middle = (low + high) >>> 1;
+				if (instructions[middle] <= instruction)
+					low = middle + 1;
+				else
+					high = middle - 1;
+			}
+			return high;
+		}
+
+		/**
+		 * This method returns how many postings are in the instructions interval [from, to)
+		 * @param from
+		 * @param to
+		 * @return
+		 */
+		public int count(long from, long to) {
+			return find(to - 1) - find(from - 1);
+		}
+
+	}
+
+	private String names[];
+	private int initialRegisters[];
+	private Postings registers[];
+	private HashMap<Integer, Postings> cells;
+	private long instructions;
+
+	/**
+	 * This constructor creates an empty index
+	 * @param names the registers names (as in the trace: the registers list followed by the flags bits)
+	 * @param initialRegisters the registers when the trace started
+	 */
+	public TraceIndex(String names[], int initialRegisters[]) {
+		this.names = names;
+		this.initialRegisters = initialRegisters.clone();
+		registers = new Postings[names.length];
+		for (int i = 0; i < names.length; i++)
+			registers[i] = new Postings();
+		cells = new HashMap<Integer, Postings>();
+	}
+
+	/**
+	 * This method adds a register changed by the instruction
+	 * @param instruction
+	 * @param id
+	 * @param value
+	 */
+	public void registerChanged(long instruction, int id, int value) {
+		registers[id].add(instruction, value);
+		instructions = Math.max(instructions, instruction + 1);
+	}
+
+	/**
+	 * This method adds a memory position written by the instruction
+	 * @param instruction
+	 * @param address
+	 * @param value
+	 */
+	public void cellWritten(long instruction, int address, int value) {
+		Postings postings = cells.get(address);
+		if (postings == null) {
+			postings = new Postings();
+			cells.put(address, postings);
+		}
+		postings.add(instruction, value);
+		instructions = Math.max(instructions, instruction + 1);
+	}
+
+	/**
+	 * This method sets how many instructions are in the trace (some of them may change nothing)
+	 * @param instructions
+	 */
+	public void setInstructions(long instructions) {
+		this.instructions = instructions;
+	}
+
+	public long getInstructions() {
+		return instructions;
+	}
+
+	public String[] getRegisterNames() {
+		return names;
+	}
+
+	/**
+	 * This method returns the id of a register (its index in the registers list)
+	 * @param name
+	 * @return
+	 */
+	private int registerId(String name) {
+		for (int i = 0; i < names.length; i++)
+			if (names[i].equals(name))
+				return i;
+		throw new IllegalArgumentException("Unknown register "+name);
+	}
+
+	/**
+	 * This method returns the changes of a register: the instructions that changed it and the new values
+	 * @param name the register name, as in the registers list (or TraceWriter.FLAG_BITS)
+	 * @return
+	 */
+	public Postings getRegisterHistory(String name) {
+		return registers[registerId(name)];
+	}
+
+	/**
+	 * This method returns the value of a register after an instruction
+	 * @param name
+	 * @param instruction
+	 * @return
+	 */
+	public int getRegisterValue(String name, long instruction) {
+		int id = registerId(name);
+		int posting = registers[id].find(instruction);
+		return (posting < 0) ? initialRegisters[id] : registers[id].getValue(posting);
+	}
+
+	/**
+	 * This method returns the writes of a memory position: the instructions that stored into it and the values stored
+	 * @param address
+	 * @return
+	 */
+	public Postings getMemoryWrites(int address) {
+		Postings postings = cells.get(address);
+		return (postings == null) ? new Postings(0) : postings;
+	}
+
+	/**
+	 * This method returns all the memory positions written, sorted
+	 * @return
+	 */
+	public int[] getWrittenAddresses() {
+		int addresses[] = new int[cells.size()];
+		int i = 0;
+		for (int address : cells.keySet())
+			addresses[i++] = address;
+		Arrays.sort(addresses);
+		return addresses;
+	}
+
+	/**
+	 * This method returns the last instruction (before or equal to the given one) that flipped a flag bit
+	 * @param bit 0 (zero) or 1 (negative)
+	 * @param instruction
+	 * @return the instruction, or -1 if the bit never flipped
+	 */
+	public long lastFlagFlip(int bit, long instruction) {
+		int id = names.length - 1; //the flags bits are the last pseudo register
+		Postings flags = registers[id];
+		for (int i = flags.find(instruction); i >= 0; i--) {
+			int before = (i == 0) ? initialRegisters[id] : flags.getValue(i - 1);
+			if (((before ^ flags.getValue(i)) & (1 << bit)) != 0)
+				return flags.getInstruction(i);
+		}
+		return -1;
+	}
+
+	/**
+	 * This method saves the index into a file
+	 * @param file
+	 * @throws IOException
+	 */
+	public void save(File file) throws IOException {
+		DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+		try {
+			output.writeInt(MAGIC);
+			output.writeInt(VERSION);
+			output.writeLong(instructions);
+			output.writeInt(names.length);
+			for (int i = 0; i < names.length; i++) {
+				output.writeUTF(names[i]);
+				output.writeInt(initialRegisters[i]);
+				write(output, registers[i]);
+			}
+			int addresses[] = getWrittenAddresses();
+			output.writeInt(addresses.length);
+			for (int address : addresses) {
+				output.writeInt(address);
+				write(output, cells.get(address));
+			}
+		}
+		finally {
+			output.close();
+		}
+	}
+
+	/**
+	 * Usage: TraceIndex filename query (filename without the extention .dci), where the query is one of
+	 * writes address     the instructions that wrote the memory position
+	 * history register   the values of the register (as RPG2 or FlagBits)
+	 * flip bit           the last instruction that flipped the flag bit
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		TraceIndex index = load(new File(args[0]+".dci"));
+		Postings postings;
+		if ("writes".equals(args[1]))
+			postings = index.getMemoryWrites(Integer.parseInt(args[2]));
+		else if ("history".equals(args[1]))
+			postings = index.getRegisterHistory(args[2]);
+		else {
+			System.out.println(index.lastFlagFlip(Integer.parseInt(args[2]), index.getInstructions()));
+			return;
+		}
+		for (int i = 0; i < postings.getCount(); i++)
+			System.out.println(postings.getInstruction(i)+": "+postings.getValue(i));
+	}
+
+	private static void write(DataOutputStream output, Postings postings) throws IOException {
+		output.writeInt(postings.count);
+		for (int i = 0; i < postings.count; i++) {
+			output.writeLong(postings.instructions[i]);
+			output.writeInt(postings.values[i]);
+		}
+	}
+
+	private static Postings read(DataInputStream input) throws IOException {
+		int count = input.readInt();
+		Postings postings = new Postings(count);
+		for (int i = 0; i < count; i++)
+			postings.add(input.readLong(), input.readInt());
+		return postings;
+	}
+
+	/**
+	 * This method loads an index saved into a file
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static TraceIndex load(File file) throws IOException {
+		DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+		try {
+			if (input.readInt() != MAGIC)
+				throw new IOException(file+" is not a trace index");
+			int version = input.readInt();
+			if (version != VERSION)
+				throw new IOException("Unknown trace index version "+version);
+			long instructions = input.readLong();
+			String names[] = new String[input.readInt()];
+			int initialRegisters[] = new int[names.length];
+			Postings registers[] = new Postings[names.length];
+			for (int i = 0; i < names.length; i++) {
+				names[i] = input.readUTF();
+				initialRegisters[i] = input.readInt();
+				registers[i] = read(input);
+			}
+			TraceIndex index = new TraceIndex(names, initialRegisters);
+			index.registers = registers;
+			int addresses = input.readInt();
+			for (int i = 0; i < addresses; i++) {
+				int address = input.readInt();
+				index.cells.put(address, read(input));
+			}
+			index.instructions = instructions;
+			return index;
+		}
+		finally {
+			input.close();
+		}
+	}
+
+}
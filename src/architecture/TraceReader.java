@@ -0,0 +1,122 @@
+package architecture;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * This class reads the records of a trace file (see TraceWriter), one at a time.
+ * The same record array is used for all the records, so reading a trace allocates nothing
+ */
+public class TraceReader {
+
+	private DataInputStream input;
+	private int initialRegisters[];
+	private int record[];
+	private int operandsCount;
+	private int registersPosition; //where the changed registers count is in the record
+	private int cellsPosition; //where the changed memory positions count is in the record
+
+	public TraceReader(File file) throws IOException {
+		input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+		if (input.readInt() != TraceWriter.MAGIC) {
+			input.close();
+			throw new IOException(file+" is not a trace file");
+		}
+		int version = input.readInt();
+		if (version != TraceWriter.VERSION) {
+			input.close();
+			throw new IOException("Unknown trace version "+version);
+		}
+		initialRegisters = new int[input.readInt()];
+		for (int i = 0; i < initialRegisters.length; i++)
+			initialRegisters[i] = input.readInt();
+		record = new int[64];
+	}
+
+	/**
+	 * This method returns the registers values when the trace started (indexed as the registers list,
+	 * the last one is the flags bits)
+	 * @return
+	 */
+	public int[] getInitialRegisters() {
+		return initialRegisters;
+	}
+
+	/**
+	 * This method reads the next record
+	 * @return false if there is no more records
+	 * @throws IOException
+	 */
+	public boolean next() throws IOException {
+		int size;
+		try {
+			size = input.readInt();
+		}
+		catch (EOFException e) {
+			return false;
+		}
+		if (size > record.length)
+			record = new int[Integer.highestOneBit(size) << 1];
+		record[0] = size;
+		for (int i = 1; i < size; i++)
+			record[i] = input.readInt();
+		operandsCount = record[3];
+		registersPosition = 4 + operandsCount;
+		cellsPosition = registersPosition + 1 + 2 * record[registersPosition];
+		return true;
+	}
+
+	public int getPC() {
+		return record[1];
+	}
+
+	public int getCommand() {
+		return record[2];
+	}
+
+	public int getOperandsCount() {
+		return operandsCount;
+	}
+
+	public int getOperand(int i) {
+		return record[4 + i];
+	}
+
+	public int getChangedRegistersCount() {
+		return record[registersPosition];
+	}
+
+	/**
+	 * This method returns the id (the index in the registers list) of the i-th register changed
+	 * @param i
+	 * @return
+	 */
+	public int getChangedRegister(int i) {
+		return record[registersPosition + 1 + 2 * i];
+	}
+
+	public int getChangedRegisterValue(int i) {
+		return record[registersPosition + 2 + 2 * i];
+	}
+
+	public int getChangedCellsCount() {
+		return record[cellsPosition];
+	}
+
+	public int getChangedCell(int i) {
+		return record[cellsPosition + 1 + 2 * i];
+	}
+
+	public int getChangedCellValue(int i) {
+		return record[cellsPosition + 2 + 2 * i];
+	}
+
+	public void close() throws IOException {
+		input.close();
+	}
+
+}
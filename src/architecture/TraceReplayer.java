@@ -0,0 +1,230 @@
+package architecture;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * This class rebuilds the state of the machine (the registers and the memory) after any instruction
+ * of a compressed trace (see CompressedTraceWriter), without executing the program again:
+ * seek goes to the keyframe of the segment of the instruction and applies the records from there.
+ * The state after instruction n is the state after the first n records (n = 0 is the state when the trace started)
+ */
+public class TraceReplayer {
+
+	private RandomAccessFile file;
+	private int registers[];
+	private int cells[];
+	private int keyframeInterval;
+	private long records;
+	private long firsts[]; //the first record of each segment
+	private long offsets[];
+	private int lengths[];
+	private int sizes[];
+
+	private int segment; //the segment loaded (-1 if none)
+	private byte raw[]; //the segment loaded, uncompressed
+	private int rawPosition;
+	private long position; //the records applied
+	private Inflater inflater;
+	private byte compressed[];
+
+	public TraceReplayer(File file) throws IOException {
+		this.file = new RandomAccessFile(file, "r");
+		if (this.file.readInt() != CompressedTraceWriter.MAGIC) {
+			this.file.close();
+			throw new IOException(file+" is not a compressed trace file");
+		}
+		int version = this.file.readInt();
+		if (version != CompressedTraceWriter.VERSION) {
+			this.file.close();
+			throw new IOException("Unknown compressed trace version "+version);
+		}
+		registers = new int[this.file.readInt()];
+		cells = new int[this.file.readInt()];
+		keyframeInterval = this.file.readInt();
+		this.file.seek(this.file.length() - 8);
+		this.file.seek(this.file.readLong());
+		int count = this.file.readInt();
+		records = this.file.readLong();
+		ByteBuffer index = ByteBuffer.allocate(count * 24);
+		this.file.readFully(index.array());
+		firsts = new long[count];
+		offsets = new long[count];
+		lengths = new int[count];
+		sizes = new int[count];
+		for (int i = 0; i < count; i++) {
+			firsts[i] = index.getLong();
+			offsets[i] = index.getLong();
+			lengths[i] = index.getInt();
+			sizes[i] = index.getInt();
+		}
+		inflater = new Inflater();
+		compressed = new byte[0];
+		raw = new byte[0];
+		segment = -1;
+	}
+
+	/**
+	 * This method returns how many instructions were recorded
+	 * @return
+	 */
+	public long getInstructions() {
+		return records;
+	}
+
+	public int getKeyframeInterval() {
+		return keyframeInterval;
+	}
+
+	/**
+	 * This method returns the instruction whose state is in the replayer (the records applied)
+	 * @return
+	 */
+	public long getPosition() {
+		return position;
+	}
+
+	/**
+	 * This method returns the registers (indexed as the registers list, the last one is the flags bits)
+	 * @return
+	 */
+	public int[] getRegisters() {
+		return registers;
+	}
+
+	public int[] getMemory() {
+		return cells;
+	}
+
+	/**
+	 * This method rebuilds the state after the instruction.
+	 * Going forward in the same segment only applies the records between the instructions,
+	 * otherwise the segment of the instruction is loaded (only one segment is read and uncompressed)
+	 * @param instruction
+	 * @throws IOException
+	 */
+	public void seek(long instruction) throws IOException {
+		if ((instruction < 0) || (instruction > records))
+			throw new IllegalArgumentException("Instruction "+instruction+" out of the trace (0 to "+records+")");
+		int target = segmentOf(instruction);
+		if ((target != segment) || (instruction < position))
+			load(target);
+		while (position < instruction)
+			apply();
+	}
+
+	/**
+	 * This method applies the next record
+	 * @return false if there is no more records
+	 * @throws IOException
+	 */
+	public boolean next() throws IOException {
+		if (position == records)
+			return false;
+		if (segment < 0)
+			load(0);
+		else if ((rawPosition == sizes[segment]) && (segment + 1 < firsts.length))
+			load(segment + 1); //the keyframe is the state just reached
+		apply();
+		return true;
+	}
+
+	/**
+	 * This method returns the segment of an instruction: the last one starting before (or in) the instruction
+	 * @param instruction
+	 * @return
+	 */
+	private int segmentOf(long instruction) {
+		int low = 0;
+		int high = firsts.length - 1;
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (firsts[middle] <= instruction)
+				low = middle;
+			else
+				high = middle - 1;
+		}
+		return low;
+	}
+
+	/**
+	 * This method reads and uncompresses a segment, and reads its keyframe
+	 * @param target
+	 * @throws IOException
+	 */
+	private void load(int target) throws IOException {
+		if (compressed.length < lengths[target])
+			compressed = new byte[lengths[target]];
+		if (raw.length < sizes[target])
+			raw = new byte[sizes[target]];
+		file.seek(offsets[target]);
+		file.readFully(compressed, 0, lengths[target]);
+		inflater.reset();
+		inflater.setInput(compressed, 0, lengths[target]);
+		try {
+			int size = 0;
+			while (size < sizes[target]) {
+				int n = inflater.inflate(raw, size, sizes[target] - size);
+				if ((n == 0) && (inflater.finished() || inflater.needsInput()))
+					throw new IOException("Truncated segment "+target);
+				size += n;
+			}
+		}
+		catch (DataFormatException e) {
+			throw new IOException("Corrupted segment "+target, e);
+		}
+		segment = target;
+		rawPosition = 0;
+		for (int i = 0; i < registers.length; i++)
+			registers[i] = unzigzag(varint());
+		for (int i = 0; i < cells.length; i++)
+			cells[i] = unzigzag(varint());
+		position = firsts[target];
+	}
+
+	/**
+	 * This method applies the next record of the segment loaded
+	 */
+	private void apply() {
+		int count = varint();
+		for (int i = 0; i < count; i++) {
+			int id = varint();
+			registers[id] += unzigzag(varint());
+		}
+		count = varint();
+		int address = 0;
+		for (int i = 0; i < count; i++) {
+			address += unzigzag(varint());
+			int difference = unzigzag(varint());
+			if ((address >= 0) && (address < cells.length))
+				cells[address] += difference;
+		}
+		position++;
+	}
+
+	private int varint() {
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = raw[rawPosition++];
+			value |= (b & 0x7f) << shift;
+			shift += 7;
+		} while (b < 0);
+		return value;
+	}
+
+	private static int unzigzag(int value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	public void close() throws IOException {
+		inflater.end();
+		file.close();
+	}
+
+}
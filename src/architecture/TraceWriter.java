@@ -0,0 +1,345 @@
+package architecture;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import components.Memory;
+import components.MemoryListener;
+import components.Register;
+
+/**
+ * This class writes the trace of a program: a binary record for each instruction executed.
+ * All the numbers are 32 bits integers (big endian):
+ * <header>  magic, version, registers count and the value of each register when the trace started.
+ *           The registers are the ones in the registers list followed by the flags bits
+ *           (a pseudo register: bit zero in the bit 0 and bit negative in the bit 1)
+ * <records> for each instruction: the record size (in integers, including the size itself), PC, the command,
+ *           the operands count and the operands, the changed registers count and, for each changed register,
+ *           its id (the index in the registers list) and its new value, the changed memory positions count
+ *           and, for each changed position, the position and its new value
+ *
+ * The simulation thread only copies the records into a ring buffer. A background thread drains the
+ * ring buffer into the file, so the simulation never waits for the disk, unless the ring buffer
+ * is full (then the simulation goes at the disk speed).
+ * The ring buffer has only one producer (the simulation) and one consumer (the writer), so the
+ * positions written and read are enough to synchronize them: no lock is used.
+ *
+ * The writer thread gives each record to record(), so a subclass can write the records in another
+ * format (see CompressedTraceWriter) without slowing down the simulation.
+ */
+public class TraceWriter implements MemoryListener, Runnable {
+
+	public static final int MAGIC = 0x44585452; //"DXTR"
+	public static final int VERSION = 1;
+	public static final int DEFAULT_CAPACITY = 1 << 20; //integers in the ring buffer (4 MB)
+	public static final String FLAG_BITS = "FlagBits"; //the name of the flags bits pseudo register
+	private static final int OUTPUT_SIZE = 64 * 1024; //bytes written at once into the file
+	private static final long WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+	private ArrayList<Register> registers;
+	private Register flags;
+	protected Memory memory;
+	private int values[]; //the registers values after the last record
+	private int changed[]; //the memory positions stored during the current instruction
+	private int changedCount;
+	private int record[];
+	private int recordSize;
+
+	private int ring[];
+	private int mask;
+	private AtomicLong written; //the integers put by the simulation (only the simulation changes it)
+	private AtomicLong read; //the integers taken by the writer (only the writer changes it)
+	private long readCache; //the last read value seen by the simulation, so it is not read on each record
+	private volatile boolean closed;
+	private FileOutputStream output;
+	private Thread writer;
+	private IOException error; //the error of the writer, thrown by close
+	private ByteBuffer buffer; //the records not written yet into the file
+
+	/**
+	 * This constructor creates the trace file. The trace begins only when start() is called
+	 * @param file
+	 * @param registers
+	 * @param flags
+	 * @param memory
+	 * @param capacity the integers in the ring buffer, rounded up to a power of 2
+	 * @throws IOException
+	 */
+	public TraceWriter(File file, ArrayList<Register> registers, Register flags, Memory memory, int capacity) throws IOException {
+		this.registers = registers;
+		this.flags = flags;
+		this.memory = memory;
+		values = new int[registers.size() + 1];
+		changed = new int[16];
+		record = new int[64];
+		int size = Integer.highestOneBit(Math.max(capacity, 1024) - 1) << 1;
+		ring = new int[size];
+		mask = size - 1;
+		written = new AtomicLong();
+		read = new AtomicLong();
+		output = new FileOutputStream(file);
+		buffer = ByteBuffer.allocateDirect(OUTPUT_SIZE);
+		for (int i = 0; i < values.length; i++)
+			values[i] = registerValue(i);
+	}
+
+	/**
+	 * This method writes the header of the trace and starts the writer thread.
+	 * It must be called before the first record
+	 * @throws IOException
+	 */
+	public void start() throws IOException {
+		writeHeader(output.getChannel(), values.clone());
+		writer = new Thread(this, "trace writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * This method writes the header of the trace file. It is called by the simulation thread,
+	 * so the memory can still be read
+	 * @param channel
+	 * @param registers the registers values when the trace started
+	 * @throws IOException
+	 */
+	protected void writeHeader(FileChannel channel, int registers[]) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(4 * (3 + registers.length));
+		header.putInt(MAGIC).putInt(VERSION).putInt(registers.length);
+		for (int register : registers)
+			header.putInt(register);
+		header.flip();
+		while (header.hasRemaining())
+			channel.write(header);
+	}
+
+	/**
+	 * This method is called by the memory after each store: the position is kept until the end of the instruction
+	 */
+	@Override
+	public void stored(int position) {
+		for (int i = 0; i < changedCount; i++)
+			if (changed[i] == position)
+				return;
+		if (changedCount == changed.length) {
+			int newChanged[] = new int[changed.length * 2];
+			System.arraycopy(changed, 0, newChanged, 0, changedCount);
+			changed = newChanged;
+		}
+		changed[changedCount++] = position;
+	}
+
+	/**
+	 * Nothing is recorded: the trace keeps only the positions stored by the instructions
+	 */
+	@Override
+	public void reloaded() {
+	}
+
+	/**
+	 * This method starts the record of the instruction pointed by pc (before it is executed)
+	 * @param pc
+	 */
+	public void begin(int pc) {
+		int command = memory.getData(pc);
+		int operands = Architecture.getOperandsCount(command);
+		recordSize = 1;
+		add(pc);
+		add(command);
+		add(operands);
+		for (int i = 1; i <= operands; i++)
+			add(memory.getData(pc + i));
+		changedCount = 0;
+	}
+
+	/**
+	 * This method ends the record of the instruction (after it is executed), adding the registers and
+	 * the memory positions changed by it, and puts the record into the ring buffer
+	 */
+	public void end() {
+		int countPosition = recordSize;
+		add(0);
+		for (int i = 0; i < values.length; i++) {
+			int value = registerValue(i);
+			if (value != values[i]) {
+				values[i] = value;
+				add(i);
+				add(value);
+				record[countPosition]++;
+			}
+		}
+		add(changedCount);
+		for (int i = 0; i < changedCount; i++) {
+			add(changed[i]);
+			add(memory.getData(changed[i]));
+		}
+		changedCount = 0;
+		record[0] = recordSize;
+		put(record, recordSize);
+	}
+
+	/**
+	 * This method returns the value of a register, or the flags bits after the last register
+	 * @param id
+	 * @return
+	 */
+	private int registerValue(int id) {
+		if (id < registers.size())
+			return registers.get(id).getData();
+		return flags.getBit(0) | (flags.getBit(1) << 1);
+	}
+
+	/**
+	 * This method returns the names of the registers in the trace (the last one is FLAG_BITS)
+	 * @return
+	 */
+	protected String[] getRegisterNames() {
+		String names[] = new String[registers.size() + 1];
+		for (int i = 0; i < registers.size(); i++)
+			names[i] = registers.get(i).getRegisterName();
+		names[registers.size()] = FLAG_BITS;
+		return names;
+	}
+
+	private void add(int value) {
+		if (recordSize == record.length) {
+			int newRecord[] = new int[record.length * 2];
+			System.arraycopy(record, 0, newRecord, 0, recordSize);
+			record = newRecord;
+		}
+		record[recordSize++] = value;
+	}
+
+	/**
+	 * This method copies the integers into the ring buffer, waiting while there is no room for them
+	 * @param data
+	 * @param length
+	 */
+	private void put(int data[], int length) {
+		if (length > ring.length)
+			throw new IllegalArgumentException("A trace record of "+length+" integers doesn't fit in the ring buffer");
+		long position = written.get();
+		while (position + length - readCache > ring.length) {
+			readCache = read.get();
+			if (position + length - readCache > ring.length)
+				LockSupport.parkNanos(WAIT_NANOS);
+		}
+		int start = (int) position & mask;
+		int first = Math.min(length, ring.length - start);
+		System.arraycopy(data, 0, ring, start, first);
+		System.arraycopy(data, first, ring, 0, length - first);
+		written.lazySet(position + length); //the integers are copied before the writer can see them
+	}
+
+	/**
+	 * This method is the writer thread: it drains the ring buffer into the file until the trace is closed
+	 */
+	@Override
+	public void run() {
+		FileChannel channel = output.getChannel();
+		int drained[] = new int[64];
+		try {
+			long position = read.get();
+			while (true) {
+				boolean last = closed; //read before written, so nothing put before close is lost
+				long end = written.get();
+				if (position == end) {
+					if (last)
+						break;
+					LockSupport.parkNanos(WAIT_NANOS);
+					continue;
+				}
+				while (position < end) { //the records are always whole in the ring buffer
+					int start = (int) position & mask;
+					int size = ring[start];
+					if (size > drained.length)
+						drained = new int[Integer.highestOneBit(size) << 1];
+					int first = Math.min(size, ring.length - start);
+					System.arraycopy(ring, start, drained, 0, first);
+					System.arraycopy(ring, 0, drained, first, size - first);
+					position += size;
+					read.lazySet(position); //the record was copied, so its room can be used again
+					record(drained, size, channel);
+				}
+				flush(channel);
+			}
+			finish(channel);
+		}
+		catch (IOException e) {
+			error = e;
+			read.set(Long.MAX_VALUE / 2); //the simulation must not wait for a writer that is gone
+		}
+	}
+
+	/**
+	 * This method writes a record (called by the writer thread, for each record in the order they were made)
+	 * @param record
+	 * @param size
+	 * @param channel
+	 * @throws IOException
+	 */
+	protected void record(int record[], int size, FileChannel channel) throws IOException {
+		for (int i = 0; i < size; i++) {
+			if (!buffer.hasRemaining())
+				flush(channel);
+			buffer.putInt(record[i]);
+		}
+	}
+
+	/**
+	 * This method writes the records kept in memory (called by the writer thread when the ring buffer is empty)
+	 * @param channel
+	 * @throws IOException
+	 */
+	protected void flush(FileChannel channel) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+
+	/**
+	 * This method is called by the writer thread after the last record, before the file is closed
+	 * @param channel
+	 * @throws IOException
+	 */
+	protected void finish(FileChannel channel) throws IOException {
+	}
+
+	/**
+	 * This method waits for the writer to write all the records, and then closes the file
+	 * @throws IOException if the writer could not write the records
+	 */
+	public void close() throws IOException {
+		if (writer == null) { //never started
+			output.close();
+			return;
+		}
+		closed = true;
+		LockSupport.unpark(writer);
+		try {
+			writer.join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		output.close();
+		if (error != null)
+			throw error;
+	}
+
+	/**
+	 * This method returns how many integers were put into the ring buffer
+	 * @return
+	 */
+	public long getWritten() {
+		return written.get();
+	}
+
+}
@@ -0,0 +1,64 @@
+package architecture;
+
+/**
+ * This predictor keeps a 2 bits saturating counter for each conditional jump, indexed by the lower bits of its address:
+ * 0 and 1 predict not taken, 2 and 3 predict taken. Each outcome moves the counter one step towards it,
+ * so a loop jump is mispredicted only once when the loop ends (and not twice, as with a single bit).
+ * The counters start as 1 (weakly not taken)
+ */
+public class TwoBitPredictor implements BranchPredictor {
+
+	public static final int DEFAULT_ENTRIES = 1024;
+
+	private byte counters[];
+	private int mask;
+
+	public TwoBitPredictor() {
+		this(DEFAULT_ENTRIES);
+	}
+
+	/**
+	 * @param entries the amount of counters (a power of 2)
+	 */
+	public TwoBitPredictor(int entries) {
+		if ((entries <= 0) || ((entries & (entries - 1)) != 0))
+			throw new IllegalArgumentException("The entries must be a power of 2: "+entries);
+		counters = new byte[entries];
+		for (int i = 0; i < entries; i++)
+			counters[i] = 1;
+		mask = entries - 1;
+	}
+
+	/**
+	 * This method returns the counter used by the jump in the address
+	 * @param pc
+	 * @return
+	 */
+	protected int index(int pc) {
+		return pc & mask;
+	}
+
+	@Override
+	public boolean predict(int pc) {
+		return counters[index(pc)] >= 2;
+	}
+
+	@Override
+	public void update(int pc, boolean taken) {
+		int index = index(pc);
+		if (taken && (counters[index] < 3))
+			counters[index]++;
+		else if (!taken && (counters[index] > 0))
+			counters[index]--;
+	}
+
+	protected int getMask() {
+		return mask;
+	}
+
+	@Override
+	public String toString() {
+		return "2-bit ("+counters.length+" counters)";
+	}
+
+}
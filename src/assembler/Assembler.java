@@ -7,18 +7,34 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Reader;
 import java.lang.reflect.Array;
+import java.nio.CharBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
 //import org.hamcrest.core.IsNull;
 
 import components.Register;
 
 import architecture.Architecture;
+import architecture.ExecutableFile;
 
 public class Assembler {
 	
+	//the operands of each command that are memory positions (the bit 0 is the first operand), indexed as the commands list
+	private static final int MEMORY_OPERANDS[] = {0, 1, 2, 0, 0, 1, 2, 0, 1, 2, 0, 1, 2, 0, 0, 0, 1, 1, 1, 4, 4, 4, 4, 1, 1, 0};
+	//the commands that have multiple formats
+	private static final String MULTIPLE_FORMATS[] = {"move", "add", "sub", "imul"};
+	public static final int DEFAULT_CHUNK_SIZE = 16384; //lines parsed by each task in the parallel parse
+	
 	private ArrayList<String> lines;
+	private CharBuffer source; //the whole file read (the lines are found while parsing)
 	private ArrayList<String> objProgram;
 	private ArrayList<String> execProgram;
 	private Architecture arch;
@@ -26,6 +42,19 @@ public class Assembler {
 	private ArrayList<String>labels;
 	private ArrayList<Integer> labelsAdresses;
 	private ArrayList<String>variables;
+	private boolean binary; //the executable is saved in the binary format (see ExecutableFile)
+	private Tokenizer tokenizer;
+	private Tokenizer.Names commandsNames; //the commands list, indexed by the command name
+	private Tokenizer.Names multipleFormatsNames;
+	private int formats[][][]; //the command of each multiple formats command, indexed by the kinds of the two parameters
+	private String commandsCodes[]; //the command numbers as strings, indexed as the commands list
+	private HashMap<String, Integer> registersIds; //the registers list, indexed by the register name (with the %)
+	private int fixups[]; //the positions of the object program that have a label, a variable or a register
+	private int fixupsCount;
+	private int chunkSize;
+	private int lineNumber; //the number (from 1) of the last line parsed
+	private ArrayList<String> errors; //the lines that could not be parsed
+	private ExecutableCache cache; //the executables already made (null when there is no cache)
 	
 	
 	public Assembler() {
@@ -37,6 +66,44 @@ public class Assembler {
 		execProgram = new ArrayList<>();
 		arch = new Architecture();
 		commands = arch.getCommandsList();	
+		tokenizer = new Tokenizer();
+		commandsNames = new Tokenizer.Names(commands);
+		multipleFormatsNames = new Tokenizer.Names(Arrays.asList(MULTIPLE_FORMATS));
+		fillFormats();
+		commandsCodes = new String[commands.size()];
+		for (int i = 0; i < commands.size(); i++)
+			commandsCodes[i] = Integer.toString(i);
+		registersIds = new HashMap<>();
+		for (int i = 0; i < arch.getRegistersList().size(); i++)
+			registersIds.put("%"+arch.getRegistersList().get(i).getRegisterName(), i);
+		fixups = new int[64];
+		chunkSize = DEFAULT_CHUNK_SIZE;
+		errors = new ArrayList<>();
+	}
+	
+	/**
+	 * This constructor creates an assembler for a chunk of the parent source (see parse(pool)).
+	 * The tables, that are only read while parsing, are shared with the parent
+	 * @param parent
+	 */
+	private Assembler(Assembler parent) {
+		lines = parent.lines;
+		source = parent.source;
+		labels = new ArrayList<>();
+		labelsAdresses = new ArrayList<>();
+		variables = new ArrayList<>();
+		objProgram = new ArrayList<>();
+		execProgram = new ArrayList<>();
+		arch = parent.arch;
+		commands = parent.commands;
+		tokenizer = new Tokenizer();
+		commandsNames = parent.commandsNames;
+		multipleFormatsNames = parent.multipleFormatsNames;
+		formats = parent.formats;
+		commandsCodes = parent.commandsCodes;
+		registersIds = parent.registersIds;
+		fixups = new int[64];
+		errors = new ArrayList<>();
 	}
 	
 	//Getters
@@ -45,6 +112,43 @@ public class Assembler {
 		return objProgram;
 	}
 	
+	public int getChunkSize() {
+		return chunkSize;
+	}
+	
+	/**
+	 * This method sets how many lines are parsed by each task in the parallel parse
+	 * @param chunkSize
+	 */
+	public void setChunkSize(int chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+	
+	public boolean isBinary() {
+		return binary;
+	}
+	
+	/**
+	 * This method chooses the format of the executable file: binary (with the symbols) or text
+	 * @param binary
+	 */
+	public void setBinary(boolean binary) {
+		this.binary = binary;
+	}
+	
+	public ExecutableCache getCache() {
+		return cache;
+	}
+	
+	/**
+	 * This method sets the cache where the executables are looked up (see restoreExecutable)
+	 * and stored (by makeExecutable)
+	 * @param cache
+	 */
+	public void setCache(ExecutableCache cache) {
+		this.cache = cache;
+	}
+	
 	/**
 	 * These methods getters and set below are used only for TDD purposes
 	 * @param lines
@@ -62,6 +166,14 @@ public class Assembler {
 		return variables;
 	}
 	
+	/**
+	 * This method returns the errors found while parsing (each one with the number and the text of the line)
+	 * @return
+	 */
+	protected ArrayList<String> getErrors() {
+		return errors;
+	}
+	
 	protected ArrayList<String> getExecProgram() {
 		return execProgram;
 	}
@@ -90,318 +202,359 @@ public class Assembler {
 	 */
 	
 	/**
-	 * This method reads an entire file in assembly 
+	 * This method reads an entire file in assembly.
+	 * The whole file is kept in only one buffer, and the lines are found by parse()
 	 * @param filename
 	 * @throws IOException 
 	 */
 	public void read(String filename) throws IOException {
-		   BufferedReader br = new BufferedReader(new		 
-		   FileReader(filename+".dsf"));
-		   String linha;
-		   while ((linha = br.readLine()) != null) {
-			     lines.add(linha);
-			}
-			br.close();
+		   Reader reader = new FileReader(filename+".dsf");
+		   char chars[] = new char[8192];
+		   int length = 0;
+		   int n;
+		   while ((n = reader.read(chars, length, chars.length - length)) > 0) {
+			   length += n;
+			   if (length == chars.length) {
+				   char newChars[] = new char[chars.length * 2];
+				   System.arraycopy(chars, 0, newChars, 0, length);
+				   chars = newChars;
+			   }
+		   }
+		   reader.close();
+		   source = CharBuffer.wrap(chars, 0, length);
 	}
 
 	/**
-	 * This method scans the strings in lines
+	 * This method scans the strings in lines (or the source read from the file)
 	 * generating, for each one, the corresponding machine code
 	 * @param lines
 	 */
 	public void parse() {
-		for (String s:lines) {
-			String tokens[] = s.split(" ");
-			if (findCommandNumber(tokens)>=0) { //the line is a command
-				proccessCommand(tokens);
-			}
-			else { //the line is not a command: so, it can be a variable or a label
-				if (tokens[0].endsWith(":")){ //if it ends with : it is a label
-					String label = tokens[0].substring(0, tokens[0].length()-1); //removing the last character
-					labels.add(label);
-					labelsAdresses.add(objProgram.size());
-				}
-				else //otherwise, it must be a variable
-					variables.add(tokens[0]);
-			}
-		}	
+		if (source != null)
+			parseSource(0, source.length());
+		parseLines(0, lines.size());
 	}
 
 	/**
-	 * This method processes a command, putting it and its parameters (if they have)
-	 * into the final array
-	 * @param tokens
+	 * This method does the same of parse(), but the source is split into chunks (of chunkSize lines)
+	 * that are parsed at the same time by the pool threads.
+	 * Each chunk makes its own object program, labels and variables, and then they are joined
+	 * in the order of the chunks: the labels addresses are moved by the size of the object program
+	 * before the chunk. So the result is just the same of parse()
+	 * @param pool
 	 */
-	protected void proccessCommand(String[] tokens) {
-		//String command = tokens[0];
-		String parameter = "";
-		String parameter2 = "";
-		String parameter3 = "";
-		int commandNumber = findCommandNumber(tokens);
-	/* 	if (commandNumber == 0) { //must to proccess an add command
-			parameter = tokens[1];
-			parameter = "&"+parameter; // this is a flag to indicate that is a position in memory
-		}
-	*/
-		if (commandNumber == 0) { //must to proccess an addRegReg command
-			parameter = tokens[1];
-			parameter2 = tokens[2];
-		}
-		if (commandNumber == 1) { //must to proccess an addMemReg command
-			parameter = tokens[1];
-			parameter2 = tokens[2];
-			parameter = "&"+parameter;
-		}
-		if (commandNumber == 2) { //must to proccess an addRegMem command
-			parameter = tokens[1];
-			parameter2 = tokens[2];
-			parameter2 = "&"+parameter2;
-		}
-		if (commandNumber == 3) { //must to proccess an addImmReg command
-			parameter = tokens[1];
-			parameter2 = tokens[2];
-		}
-	/*
-		if (commandNumber == 4) { //must to proccess an sub command
-			parameter = tokens[1];
-			parameter = "&"+parameter;//this is a flag to indicate that is a position in memory		
-		}
-	*/
-		if (commandNumber == 4) { //must to proccess an subRegReg command
-			parameter = tokens[1];
-			parameter2 = tokens[2];
-		}
-		if (commandNumber == 5) { //must to proccess an subMemReg command
-			parameter = tokens[1];
-			parameter2 = tokens[2];
-			parameter = "&"+parameter;
-		}
-		if (commandNumber == 6) { //must to proccess an subRegMem command
-			parameter = tokens[1];
-			parameter2 = tokens[2];
-			parameter2 = "&"+parameter2;
-		}
-		if (commandNumber == 7) { //must to proccess an subImmReg command
-			parameter = tokens[1];
-			parameter2 = tokens[2];
-		}
-		if (commandNumber == 8) { //must to proccess an imulMemReg command
-			parameter = tokens[1];
-			parameter2 = tokens[2];
-			parameter = "&"+parameter;
-		}
-		if (commandNumber == 9) { //must to proccess an imulRegMem command
-			parameter = tokens[1];
-			parameter2 = tokens[2];
-			parameter2 = "&"+parameter2;
-		}
-		if (commandNumber == 10) { //must to proccess an imulRegReg command
-			parameter = tokens[1];
-			parameter2 = tokens[2];
-		}
-		if (commandNumber == 11) { //must to proccess an moveMemReg command
-			parameter = tokens[1];
-			parameter2 = tokens[2];
-			parameter = "&"+parameter;
-		}
-		if (commandNumber == 12) { //must to proccess an moveRegMem command
-			parameter = tokens[1];
-			parameter2 = tokens[2];
-			parameter2 = "&"+parameter2;
-		}
-		if (commandNumber == 13) { //must to proccess an moveRegReg command
-			parameter = tokens[1];
-			parameter2 = tokens[2];
-		}
-		if (commandNumber == 14) { //must to proccess an moveImmReg command
-			parameter = tokens[1];
-			parameter2 = tokens[2];
-		}
-		if (commandNumber == 15) { //must to proccess an incReg command
-			parameter = tokens[1];
-		}
-		if (commandNumber == 16) { //must to proccess an jmp command
-			parameter = tokens[1];
-			parameter = "&"+parameter; //this is a flag to indicate that is a position in memory
-		}
-		if (commandNumber == 17) { //must to proccess an jn command
-			parameter = tokens[1];
-			parameter = "&"+parameter; //this is a flag to indicate that is a position in memory
-		}
-		if (commandNumber == 18) { //must to proccess an jz command
-			parameter = tokens[1];
-			parameter = "&"+parameter; //this is a flag to indicate that is a position in memory
-		}
-		if (commandNumber == 19) { //must to proccess an jeq command
-			parameter = tokens[1];
-			parameter2 = tokens[2];
-			parameter3 = tokens[3];
-			parameter3 = "&"+parameter3; //this is a flag to indicate that is a position in memory
-		}
-		if (commandNumber == 20) { //must to proccess an jneq command
-			parameter = tokens[1];
-			parameter2 = tokens[2];
-			parameter3 = tokens[3];
-			parameter3 = "&"+parameter3; //this is a flag to indicate that is a position in memory
-		}
-		if (commandNumber == 21) { //must to proccess an jgt command
-			parameter = tokens[1];
-			parameter2 = tokens[2];
-			parameter3 = tokens[3];
-			parameter3 = "&"+parameter3; //this is a flag to indicate that is a position in memory
-		}
-		if (commandNumber == 22) { //must to proccess an jlw command
-			parameter = tokens[1];
-			parameter2 = tokens[2];
-			parameter3 = tokens[3];
-			parameter3 = "&"+parameter3; //this is a flag to indicate that is a position in memory
-		}
-		if (commandNumber == 23) { //must to proccess an read command
-			parameter = tokens[1];
-			parameter = "&"+parameter; //this is a flag to indicate that is a position in memory
-		}
-		if (commandNumber == 24) { //must to proccess an store command
-			parameter = tokens[1];
-			parameter = "&"+parameter; //this is a flag to indicate that is a position in memory
-		}
-		if (commandNumber == 25) { //must to proccess an ldi command
-			parameter = tokens[1];
+	public void parse(ForkJoinPool pool) {
+		ArrayList<ForkJoinTask<Assembler>> chunks = new ArrayList<>();
+		int sourceLines = 0;
+		if (source != null) {
+			int start = 0;
+			int length = source.length();
+			while (start < length) {
+				int end = start;
+				int count;
+				for (count = 0; (count < chunkSize) && (end < length); count++) //the chunk ends just after a \n
+					end = nextLine(end, length);
+				chunks.add(pool.submit(new Chunk(this, true, start, end, sourceLines)));
+				sourceLines += count;
+				start = end;
+			}
 		}
-		objProgram.add(Integer.toString(commandNumber));
-		if (!parameter.isEmpty()) {
-			objProgram.add(parameter);
+		for (int start = 0; start < lines.size(); start += chunkSize)
+			chunks.add(pool.submit(new Chunk(this, false, start, Math.min(start + chunkSize, lines.size()), sourceLines + start)));
+		for (ForkJoinTask<Assembler> chunk : chunks)
+			append(chunk.join());
+	}
+
+	/**
+	 * This class parses a chunk of the source (or of the lines) in an assembler of its own
+	 */
+	private static class Chunk extends RecursiveTask<Assembler> {
+
+		private static final long serialVersionUID = 1L;
+
+		private Assembler parent;
+		private boolean inSource;
+		private int start;
+		private int end;
+		private int linesBefore; //the lines of the whole source before the chunk
+
+		public Chunk(Assembler parent, boolean inSource, int start, int end, int linesBefore) {
+			this.parent = parent;
+			this.inSource = inSource;
+			this.start = start;
+			this.end = end;
+			this.linesBefore = linesBefore;
 		}
-		if (!parameter2.isEmpty()) {
-			objProgram.add(parameter2);
+
+		@Override
+		protected Assembler compute() {
+			Assembler part = new Assembler(parent);
+			part.lineNumber = linesBefore;
+			if (inSource)
+				part.parseSource(start, end);
+			else
+				part.parseLines(start, end);
+			return part;
 		}
-		if (!parameter3.isEmpty()){
-			objProgram.add(parameter3);
+	}
+
+	/**
+	 * This method puts the object program, the labels and the variables of the part after the ones of this assembler
+	 * @param part
+	 */
+	private void append(Assembler part) {
+		int offset = objProgram.size();
+		objProgram.addAll(part.objProgram);
+		labels.addAll(part.labels);
+		for (int address : part.labelsAdresses)
+			labelsAdresses.add(address + offset);
+		variables.addAll(part.variables);
+		if (fixupsCount + part.fixupsCount > fixups.length) {
+			int newFixups[] = new int[Math.max(fixups.length * 2, fixupsCount + part.fixupsCount)];
+			System.arraycopy(fixups, 0, newFixups, 0, fixupsCount);
+			fixups = newFixups;
+		}
+		for (int i = 0; i < part.fixupsCount; i++)
+			fixups[fixupsCount++] = part.fixups[i] + offset;
+		errors.addAll(part.errors);
+	}
+
+	/**
+	 * This method parses the lines of the source from start to end.
+	 * The lines end with \n or \r\n, just like in BufferedReader.readLine
+	 * @param start
+	 * @param end
+	 */
+	private void parseSource(int start, int end) {
+		while (start < end) {
+			int next = nextLine(start, end);
+			int lineEnd = next - 1; //the \n (or the end of the source)
+			if ((lineEnd >= end) || (source.charAt(lineEnd) != '\n'))
+				lineEnd = end;
+			if ((lineEnd > start) && (source.charAt(lineEnd - 1) == '\r'))
+				lineEnd--;
+			parseLine(source, start, lineEnd);
+			start = next;
 		}
 	}
 
 	/**
-	 * This method uses the tokens to search a command
-	 * in the commands list and returns its id.
-	 * Some commands (as move) can have multiple formats (reg reg, mem reg, reg mem) and
-	 * multiple ids, one for each format.
-	 * @param tokens
+	 * This method returns where the line after the one in start begins (just after the \n),
+	 * or end if there is no other line
+	 * @param start
+	 * @param end
 	 * @return
 	 */
-	private int findCommandNumber(String[] tokens) {
-		int p = commands.indexOf(tokens[0]);
-		if (p<0){ //the command isn't in the list. So it must have multiple formats
-			if ("move".equals(tokens[0])) //the command is a move
-				p = proccessMove(tokens);
-			else if ("add".equals(tokens[0]))
-				p = proccessAdd(tokens);
-			else if ("sub".equals(tokens[0]))
-				p = proccessSub(tokens);
-			else if ("imul".equals(tokens[0]))
-				p = proccessImul(tokens);
+	private int nextLine(int start, int end) {
+		for (int i = start; i < end; i++)
+			if (source.charAt(i) == '\n')
+				return i + 1;
+		return end;
+	}
+
+	/**
+	 * This method parses the lines from the index start to end
+	 * @param start
+	 * @param end
+	 */
+	private void parseLines(int start, int end) {
+		for (int i = start; i < end; i++) {
+			String s = lines.get(i);
+			parseLine(s, 0, s.length());
 		}
-		return p;
 	}
 
 	/**
-	 * This method proccess a move command.
-	 * It must have differents formats, meaning differents internal commands
-	 * @param tokens
+	 * This method parses only this line, after discarding the program parsed before.
+	 * It is used by the incremental assembler, that keeps the object program of each line
+	 * @param line
+	 * @param number the number of the line in the source (from 1), shown in the errors
+	 */
+	void parseOnly(String line, int number) {
+		objProgram.clear();
+		labels.clear();
+		labelsAdresses.clear();
+		variables.clear();
+		fixupsCount = 0;
+		errors.clear();
+		lineNumber = number - 1;
+		parseLine(line, 0, line.length());
+	}
+
+	/**
+	 * This method returns the register id of the name (prefixed by %), or -1 if there is no such register
+	 * @param register
 	 * @return
 	 */
-	private int proccessMove(String[] tokens) {
-		String p1 = tokens[1];
-		String p2 = tokens[2];
-		int p=-1;
-		if ((p1.startsWith("%"))&&(p2.startsWith("%"))) { //this is a moveRegReg comand
-			p = commands.indexOf("moveRegReg");
-		}
-		else if ((p1.startsWith("%"))&&(p2.matches("^[A-Za-z].*"))) { //this is a moveRegMem comand
-			p = commands.indexOf("moveRegMem");
-		}
-		else if ((p1.matches("^[A-Za-z].*"))&&(p2.startsWith("%"))) { //this is a moveMemReg comand
-			p = commands.indexOf("moveMemReg");
+	int registerId(String register) {
+		return searchRegisterId(register);
+	}
+
+	/**
+	 * This method returns the address of the first variable (the next ones are allocated downwards)
+	 * @return
+	 */
+	int firstVariableAddress() {
+		return arch.getMemorySize()-101;
+	}
+
+	/**
+	 * This method generates the machine code of the line that goes from start to end in the source
+	 * @param source
+	 * @param start
+	 * @param end
+	 */
+	private void parseLine(CharSequence source, int start, int end) {
+		lineNumber++;
+		tokenizer.scan(source, start, end);
+		if (tokenizer.getCount() == 0) { //an empty line was always taken as a variable with no name
+			variables.add("");
+			return;
 		}
-		else if ((p1.matches("[-]*[0-9]+"))&&(p2.startsWith("%"))) { //this is a moveImmReg comand
-			p = commands.indexOf("moveImmReg");
+		int commandNumber = findCommandNumber(tokenizer);
+		if (commandNumber>=0) { //the line is a command
+			if (tokenizer.getCount() - 1 != operandsCount(commandNumber)) //the words would be out of place
+				errors.add("Line "+lineNumber+": "+commands.get(commandNumber)+" needs "+operandsCount(commandNumber)
+						+" operands: "+source.subSequence(start, end));
+			else
+				proccessCommand(commandNumber, tokenizer);
+		}
+		else { //the line is not a command: so, it can be a variable or a label
+			if (tokenizer.endsWith(0, ':')){ //if it ends with : it is a label
+				String label = tokenizer.token(0, (char) 0, 1); //removing the last character
+				labels.add(label);
+				labelsAdresses.add(objProgram.size());
+			}
+			else //otherwise, it must be a variable
+				variables.add(tokenizer.token(0));
 		}
-		return p;
 	}
-	
+
 	/**
-	 * This method proccess a add command.
-	 * It must have differents formats, meaning differents internal commands
+	 * This method processes a command, putting it and its parameters (if they have)
+	 * into the final array.
+	 * The parameters that are memory positions (variables or labels) are prefixed by &
 	 * @param tokens
-	 * @return
 	 */
-	private int proccessAdd(String[] tokens) {
-		String p1 = tokens[1];
-		String p2 = tokens[2];
-		int p=-1;
-		if ((p1.startsWith("%"))&&(p2.startsWith("%"))) { // this is a addRegReg comand
-			p = commands.indexOf("addRegReg");
-		}
-		else if ((p1.startsWith("%"))&&(p2.matches("^[A-Za-z].*"))) { // this is a addRegMem comand
-			p = commands.indexOf("addRegMem");
+	protected void proccessCommand(String[] tokens) {
+		int commandNumber = findCommandNumber(tokens);
+		objProgram.add(commandCode(commandNumber));
+		for (int i = 1; i <= operandsCount(commandNumber); i++) {
+			String parameter = tokens[i];
+			if (isMemoryOperand(commandNumber, i))
+				parameter = "&"+parameter; // this is a flag to indicate that is a position in memory
+			if (!parameter.isEmpty())
+				addParameter(parameter);
 		}
-		else if ((p1.matches("^[A-Za-z].*"))&&(p2.startsWith("%"))) { // this is a addMemReg comand
-			p = commands.indexOf("addMemReg");
+	}
+
+	/**
+	 * This method processes a command already found in the tokenizer, just like proccessCommand(tokens) does.
+	 * The line must have all the operands of the command
+	 * @param commandNumber
+	 * @param tokenizer
+	 */
+	private void proccessCommand(int commandNumber, Tokenizer tokenizer) {
+		objProgram.add(commandCode(commandNumber));
+		for (int i = 1; i <= operandsCount(commandNumber); i++) {
+			if (isMemoryOperand(commandNumber, i))
+				addParameter(tokenizer.token(i, '&', 0));
+			else
+				addParameter(tokenizer.token(i));
 		}
-		else if ((p1.matches("[-]*[0-9]+"))&&(p2.startsWith("%"))) { // this is a moveRegReg comand
-			p = commands.indexOf("addImmReg");
+	}
+
+	private String commandCode(int commandNumber) {
+		if (commandNumber < 0)
+			return Integer.toString(commandNumber);
+		return commandsCodes[commandNumber];
+	}
+
+	private static int operandsCount(int commandNumber) {
+		return Architecture.getOperandsCount(commandNumber);
+	}
+
+	/**
+	 * This method returns true if the operand (from 1) of the command is a memory position
+	 * @param commandNumber
+	 * @param operand
+	 * @return
+	 */
+	private static boolean isMemoryOperand(int commandNumber, int operand) {
+		return (MEMORY_OPERANDS[commandNumber] & (1 << (operand - 1))) != 0;
+	}
+
+	/**
+	 * This method puts the parameter into the object program.
+	 * If it is a label, a variable or a register, its position is kept in the fixups list,
+	 * so the executable is made by patching only these positions
+	 * @param parameter
+	 */
+	private void addParameter(String parameter) {
+		char first = parameter.charAt(0);
+		if ((first == '&') || (first == '%')) {
+			if (fixupsCount == fixups.length) {
+				int newFixups[] = new int[fixups.length * 2];
+				System.arraycopy(fixups, 0, newFixups, 0, fixupsCount);
+				fixups = newFixups;
+			}
+			fixups[fixupsCount++] = objProgram.size();
 		}
-		return p;
+		objProgram.add(parameter);
 	}
 
 	/**
-	 * This method proccess a sub command.
-	 * It must have differents formats, meaning differents internal commands
+	 * This method uses the tokens to search a command
+	 * in the commands list and returns its id.
+	 * Some commands (as move) can have multiple formats (reg reg, mem reg, reg mem) and
+	 * multiple ids, one for each format.
 	 * @param tokens
 	 * @return
 	 */
-	private int proccessSub(String[] tokens) {
-		String p1 = tokens[1];
-		String p2 = tokens[2];
-		int p=-1;
-		if ((p1.startsWith("%"))&&(p2.startsWith("%"))) { // this is a subRegReg comand
-			p = commands.indexOf("subRegReg");
-		}
-		else if ((p1.matches("^[A-Za-z].*"))&&(p2.startsWith("%"))) { // this is a subMemReg comand
-			p = commands.indexOf("subMemReg");
-		}
-		else if ((p1.startsWith("%"))&&(p2.matches("^[A-Za-z].*"))) { // this is a subRegMem comand
-			p = commands.indexOf("subRegMem");
-		}
-		else if ((p1.matches("[-]*[0-9]+"))&&(p2.startsWith("%"))) { // this is a subImmReg comand
-			p = commands.indexOf("subImmReg");
+	private int findCommandNumber(String[] tokens) {
+		int p = commandsNames.find(tokens[0], 0, tokens[0].length());
+		if (p<0){ //the command isn't in the list. So it must have multiple formats
+			int command = multipleFormatsNames.find(tokens[0], 0, tokens[0].length());
+			if (command >= 0)
+				p = formats[command][Tokenizer.kind(tokens[1], 0, tokens[1].length())][Tokenizer.kind(tokens[2], 0, tokens[2].length())];
 		}
 		return p;
 	}
 
 	/**
-	 * This method proccess a imul command.
-	 * It must have differents formats, meaning differents internal commands
-	 * @param tokens
+	 * This method searches the command of the line in the tokenizer, just like findCommandNumber(tokens) does
+	 * @param tokenizer
 	 * @return
 	 */
-	private int proccessImul(String[] tokens) {
-		String p1 = tokens[1];
-		String p2 = tokens[2];
-		int p=-1;
-		if ((p1.matches("^[A-Za-z].*"))&&(p2.startsWith("%"))) { // this is a imulMemReg comand
-			p = commands.indexOf("imulMemReg");
-		}
-		else if ((p1.startsWith("%"))&&(p2.matches("^[A-Za-z].*"))) { // this is a imulRegMem comand
-			p = commands.indexOf("imulRegMem");
-		}
-		else if ((p1.startsWith("%"))&&(p2.startsWith("%"))) { // this is a imulRegReg comand
-			p = commands.indexOf("imulRegReg");
-		}
-		else if ((p1.matches("[-]*[0-9]+"))&&(p2.startsWith("%"))) { // this is a subImmReg comand
-			p = commands.indexOf("imulImmReg");
+	private int findCommandNumber(Tokenizer tokenizer) {
+		int p = commandsNames.find(tokenizer, 0);
+		if ((p<0) && (tokenizer.getCount() >= 3)) { //the command isn't in the list. So it must have multiple formats
+			int command = multipleFormatsNames.find(tokenizer, 0);
+			if (command >= 0)
+				p = formats[command][tokenizer.kind(1)][tokenizer.kind(2)];
 		}
 		return p;
 	}
 
+	/**
+	 * This method fills the formats table of the commands that have multiple formats (move, add, sub and imul).
+	 * Each format is identified by the kinds of the two parameters:
+	 * register and register, register and memory, memory and register or immediate and register
+	 */
+	private void fillFormats() {
+		formats = new int[MULTIPLE_FORMATS.length][4][4];
+		for (int c = 0; c < MULTIPLE_FORMATS.length; c++) {
+			for (int k1 = 0; k1 < 4; k1++)
+				for (int k2 = 0; k2 < 4; k2++)
+					formats[c][k1][k2] = -1;
+			String name = MULTIPLE_FORMATS[c];
+			formats[c][Tokenizer.REGISTER][Tokenizer.REGISTER] = commands.indexOf(name+"RegReg");
+			formats[c][Tokenizer.REGISTER][Tokenizer.NAME] = commands.indexOf(name+"RegMem");
+			formats[c][Tokenizer.NAME][Tokenizer.REGISTER] = commands.indexOf(name+"MemReg");
+			formats[c][Tokenizer.IMMEDIATE][Tokenizer.REGISTER] = commands.indexOf(name+"ImmReg");
+		}
+	}
+
 	/**
 	 * This method creates the executable program from the object program
 	 * Step 1: check if all variables and labels mentioned in the object 
@@ -415,32 +568,139 @@ public class Assembler {
 	 * @throws IOException 
 	 */
 	public void makeExecutable(String filename) throws IOException {
-		if (!checkLabels())
+		if (!checkLines() || !checkLabels())
 			return;
 		execProgram = (ArrayList<String>) objProgram.clone();
-		replaceAllVariables();
-		replaceLabels(); //replacing all labels by the address they refer to
-		replaceRegisters(); //replacing all registers by the register id they refer to
-		saveExecFile(filename);
+		replaceFixups(); //replacing all variables, labels and registers in only one pass
+		if (binary)
+			saveBinaryExecFile(filename);
+		else
+			saveExecFile(filename);
+		if ((cache != null) && (source != null))
+			cache.store(cacheKey(), new File(filename+".dxf"));
 		System.out.println("Finished");
 	}
 
+	/**
+	 * This method looks up, in the cache, the executable of the source read, copying it to the output file.
+	 * When it is found, there is no need to parse the source nor to make the executable
+	 * @param filename
+	 * @return true if the executable was in the cache
+	 * @throws IOException
+	 */
+	public boolean restoreExecutable(String filename) throws IOException {
+		if ((cache == null) || (source == null))
+			return false;
+		return cache.restore(cacheKey(), new File(filename+".dxf"));
+	}
+
+	/**
+	 * This method returns the cache key of the source read. Besides the source, the key has
+	 * everything that changes the executable: the commands and the registers of the architecture,
+	 * the operands of each command, the memory size (where the variables are) and the executable format
+	 * @return the key
+	 */
+	private String cacheKey() {
+		StringBuilder isa = new StringBuilder();
+		isa.append(commands).append('\n');
+		for (Register register : arch.getRegistersList())
+			isa.append(register.getRegisterName()).append(',');
+		isa.append('\n');
+		for (int i = 0; i < commands.size(); i++)
+			isa.append(operandsCount(i)).append(',');
+		isa.append(Arrays.toString(MEMORY_OPERANDS));
+		isa.append('\n').append(arch.getMemorySize());
+		isa.append('\n').append(binary ? "binary "+ExecutableFile.VERSION : "text");
+		return cache.key(isa.toString(), source);
+	}
+
+	/**
+	 * This method returns the symbols table: the address of each label and variable,
+	 * indexed by the name as it is found in the object program (with the &).
+	 * The addresses of the variables startes in the end of the memory
+	 * and decreases (creating a stack). A variable with the name of a label hides the label,
+	 * and only the first declaration of a name is used
+	 * @return
+	 */
+	private HashMap<String, String> symbolsTable() {
+		HashMap<String, String> table = variablesTable();
+		HashMap<String, String> labelsTable = labelsTable();
+		for (String label : labelsTable.keySet())
+			if (!table.containsKey(label))
+				table.put(label, labelsTable.get(label));
+		return table;
+	}
+
+	/**
+	 * This method returns the address of each variable, indexed by the name with the &.
+	 * The addresses of the variables startes in the end of the memory
+	 * and decreases (creating a stack). Only the first declaration of a name is used
+	 * @return
+	 */
+	private HashMap<String, String> variablesTable() {
+		HashMap<String, String> table = new HashMap<>();
+		int position = arch.getMemorySize()-101; //starting from the end of the memory
+		for (String var : variables) {
+			if (!table.containsKey("&"+var))
+				table.put("&"+var, Integer.toString(position));
+			position --;
+		}
+		return table;
+	}
+
+	/**
+	 * This method returns the address of each label, indexed by the name with the &
+	 * (only the first declaration of a label is used)
+	 * @return
+	 */
+	private HashMap<String, String> labelsTable() {
+		HashMap<String, String> table = new HashMap<>();
+		for (int i = 0; i < labels.size(); i++)
+			if (!table.containsKey("&"+labels.get(i)))
+				table.put("&"+labels.get(i), Integer.toString(labelsAdresses.get(i)));
+		return table;
+	}
+
+	/**
+	 * This method replaces, in the exec program, all the positions in the fixups list
+	 * (variables, labels and registers) by the addresses or ids they refer to.
+	 * Each position is patched only once, using the symbols and registers tables
+	 */
+	protected void replaceFixups() {
+		replace(fixups, fixupsCount, symbolsTable(), true);
+	}
+
+	/**
+	 * This method replaces the positions of the exec program found in the positions array
+	 * (or all of them, if it is null): the names (with &) found in the symbols table by their addresses
+	 * and, if registers is true, the registers names (with %) by their ids
+	 * @param positions
+	 * @param count the amount of positions (or of words of the exec program)
+	 * @param symbols
+	 * @param registers
+	 */
+	private void replace(int positions[], int count, HashMap<String, String> symbols, boolean registers) {
+		for (int i = 0; i < count; i++) {
+			int p = (positions == null) ? i : positions[i];
+			String line = execProgram.get(p);
+			String newLine = null;
+			if (line.startsWith("%")) { // this line is a register
+				if (registers)
+					newLine = Integer.toString(searchRegisterId(line));
+			}
+			else if (symbols != null)
+				newLine = symbols.get(line);
+			if (newLine != null)
+				execProgram.set(p, newLine);
+		}
+	}
+
 	/**
 	 * This method replaces all the registers names by its correspondings ids.
 	 * registers names must be prefixed by %
 	 */
 	protected void replaceRegisters() {
-		int p=0;
-		for (String line:execProgram) {
-			if (line.startsWith("%")){ // this line is a register
-				line = line.substring(1, line.length());
-				int regId = searchRegisterId(line, arch.getRegistersList());
-				String newLine = Integer.toString(regId);
-				execProgram.set(p, newLine);
-			}
-			p++;
-		}
-		
+		replace(null, execProgram.size(), null, true);
 	}
 
 	/**
@@ -449,11 +709,7 @@ public class Assembler {
 	 * and decreases (creating a stack)
 	 */
 	protected void replaceAllVariables() {
-		int position = arch.getMemorySize()-101; //starting from the end of the memory
-		for (String var : this.variables) { //scanning all variables
-			replaceVariable(var, position);
-			position --;
-		}
+		replace(null, execProgram.size(), variablesTable(), false);
 	}
 
 	/**
@@ -471,26 +727,34 @@ public class Assembler {
 		
 	}
 
+	/**
+	 * This method saves the execFile collection into the output file, in the binary format.
+	 * The code starts in the position 0 (the entry point) and the data are the variables,
+	 * allocated just like replaceAllVariables does. The labels and the variables are saved as symbols
+	 * @param filename
+	 * @throws IOException 
+	 */
+	private void saveBinaryExecFile(String filename) throws IOException {
+		int code[] = new int[execProgram.size()+1];
+		for (int i = 0; i < execProgram.size(); i++)
+			code[i] = Integer.parseInt(execProgram.get(i));
+		code[execProgram.size()] = -1; //-1 is a flag indicating that the program is finished
+		int lastVariable = arch.getMemorySize()-101; //the first variable is in the highest address
+		int dataStart = variables.isEmpty() ? 0 : lastVariable - variables.size() + 1;
+		ExecutableFile executable = new ExecutableFile(0, 0, code, dataStart, new int[variables.size()]);
+		for (int i = 0; i < labels.size(); i++)
+			executable.addSymbol(labels.get(i), labelsAdresses.get(i));
+		for (int i = 0; i < variables.size(); i++)
+			executable.addSymbol(variables.get(i), lastVariable - i);
+		executable.save(new File(filename+".dxf"));
+	}
+
 	/**
 	 * This method replaces all labels in the execprogram by the corresponding
 	 * address they refer to
 	 */
 	protected void replaceLabels() {
-		int i=0;
-		for (String label : labels) { //searching all labels
-			label = "&"+label;
-			int labelPointTo = labelsAdresses.get(i);
-			int lineNumber = 0;
-			for (String l : execProgram) {
-				if (l.equals(label)) {//this label must be replaced by the address
-					String newLine = Integer.toString(labelPointTo); // the address
-					execProgram.set(lineNumber, newLine);
-				}
-				lineNumber++;
-			}
-			i++;
-		}
-		
+		replace(null, execProgram.size(), labelsTable(), false);
 	}
 
 	/**
@@ -501,16 +765,20 @@ public class Assembler {
 	 * @param position
 	 */
 	protected void replaceVariable(String var, int position) {
-		var = "&"+var;
-		int i=0;
-		for (String s:execProgram) {
-			if (s.equals(var)) {
-				s = Integer.toString(position);
-				execProgram.set(i, s);
-			}
-			i++;
-		}
-		
+		HashMap<String, String> table = new HashMap<>();
+		table.put("&"+var, Integer.toString(position));
+		replace(null, execProgram.size(), table, false);
+	}
+
+	/**
+	 * This method checks if all the lines were parsed, showing the ones that were not
+	 * (for example, a command with an operand missing)
+	 * @return
+	 */
+	protected boolean checkLines() {
+		for (String error : errors)
+			System.out.println("FATAL ERROR! "+error);
+		return errors.isEmpty();
 	}
 
 	/**
@@ -520,15 +788,15 @@ public class Assembler {
 	 */
 	protected boolean checkLabels() {
 		System.out.println("Checking labels and variables");
+		HashSet<String> declared = new HashSet<>();
+		for (String label : labels)
+			declared.add("&"+label);
+		for (String var : variables)
+			declared.add("&"+var);
 		for (String line:objProgram) {
-			boolean found = false;
 			if (line.startsWith("&")) { //if starts with "&", it is a label or a variable
-				line = line.substring(1, line.length());
-				if (labels.contains(line))
-					found = true;
-				if (variables.contains(line))
-					found = true;
-				if (!found) {
+				if (!declared.contains(line)) {
+					line = line.substring(1, line.length());
 					System.out.println("FATAL ERROR! Variable or label "+line+" not declared!");
 					return false;
 				}
@@ -539,29 +807,55 @@ public class Assembler {
 	
 	/**
 	 * This method searches for a register in the architecture register list
-	 * by the register name
+	 * by the register name (prefixed by %)
 	 * @param line
-	 * @param registersList
 	 * @return
 	 */
-	private int searchRegisterId(String line, ArrayList<Register> registersList) {
-		int i=0;
-		for (Register r:registersList) {
-			if (line.equals(r.getRegisterName())) {
-				return i;
-			}
-			i++;
-		}
-		return -1;
+	private int searchRegisterId(String line) {
+		Integer id = registersIds.get(line);
+		if (id == null)
+			return -1;
+		return id;
 	}
 
+	/**
+	 * Usage: Assembler [-b] [-p] filename
+	 * -b saves the executable in the binary format
+	 * -p parses the source in parallel, using all the processors
+	 * -c directory looks up the executable in a cache directory before assembling
+	 * @param args
+	 * @throws IOException
+	 */
 	public static void main(String[] args) throws IOException {
-		String filename = args[0];
+		boolean binary = false;
+		boolean parallel = false;
+		ExecutableCache cache = null;
+		for (int i = 0; i < args.length-1; i++) {
+			if ("-b".equals(args[i]))
+				binary = true;
+			else if ("-p".equals(args[i]))
+				parallel = true;
+			else if ("-c".equals(args[i]) && (i < args.length-2))
+				cache = new ExecutableCache(new File(args[++i]), ExecutableCache.DEFAULT_MAX_SIZE);
+		}
+		String filename = args[args.length-1];
 		Assembler assembler = new Assembler();
+		assembler.setBinary(binary);
+		assembler.setCache(cache);
 		System.out.println("Reading source assembler file: "+filename+".dsf");
 		assembler.read(filename);
+		if (assembler.restoreExecutable(filename)) {
+			System.out.println("Executable restored from the cache: "+filename+".dxf");
+			return;
+		}
 		System.out.println("Generating the object program");
-		assembler.parse();
+		if (parallel) {
+			ForkJoinPool pool = new ForkJoinPool();
+			assembler.parse(pool);
+			pool.shutdown();
+		}
+		else
+			assembler.parse();
 		System.out.println("Generating executable: "+filename+".dxf");
 		assembler.makeExecutable(filename);
 	}
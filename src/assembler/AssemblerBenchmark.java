@@ -0,0 +1,88 @@
+package assembler;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * This class measures how the time to assemble a program grows with its size.
+ * Synthetic programs (with many labels and variables) of 1k, 10k, 100k and 1M lines
+ * are parsed and made executable, and the time per line is shown for each size:
+ * it must be almost the same for all of them, since the assembler work is linear.
+ * Each program is also parsed in parallel (see Assembler.parse(pool)), using all the processors.
+ *
+ * Usage: AssemblerBenchmark [max lines]
+ */
+public class AssemblerBenchmark {
+
+	private static final int VARIABLES = 64;
+	private static final int LINES_PER_LABEL = 8;
+
+	/**
+	 * This method creates a program with the amount of lines.
+	 * The commands use the variables and jump to the labels already declared
+	 * @param size
+	 * @return
+	 */
+	public static ArrayList<String> program(int size) {
+		ArrayList<String> lines = new ArrayList<>(size);
+		for (int i = 0; i < VARIABLES; i++)
+			lines.add("v"+i);
+		int labels = 0;
+		for (int i = VARIABLES; i < size; i++) {
+			String var = "v"+(i % VARIABLES);
+			switch (i % LINES_PER_LABEL) {
+				case 0: lines.add("l"+labels+":"); labels++; break;
+				case 1: lines.add("ldi "+i); break;
+				case 2: lines.add("store "+var); break;
+				case 3: lines.add("add "+var+" %RPG0"); break;
+				case 4: lines.add("move %RPG1 %RPG2"); break;
+				case 5: lines.add("read "+var); break;
+				case 6: lines.add("sub "+var+" %RPG3"); break;
+				default: lines.add("jn l"+(i / 2 / LINES_PER_LABEL)); break;
+			}
+		}
+		return lines;
+	}
+
+	/**
+	 * This method assembles the program into a temporary executable
+	 * @param lines
+	 * @param pool the pool used to parse in parallel (null to parse sequentially)
+	 * @return the time in milliseconds
+	 * @throws IOException
+	 */
+	private static double assemble(ArrayList<String> lines, ForkJoinPool pool) throws IOException {
+		File file = File.createTempFile("benchmark", ".dxf");
+		file.deleteOnExit();
+		long start = System.nanoTime();
+		Assembler assembler = new Assembler();
+		assembler.setLines(lines);
+		if (pool == null)
+			assembler.parse();
+		else
+			assembler.parse(pool);
+		assembler.makeExecutable(file.getPath().substring(0, file.getPath().length() - 4));
+		return (System.nanoTime() - start) / 1e6;
+	}
+
+	public static void main(String[] args) throws IOException {
+		int max = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+		ForkJoinPool pool = new ForkJoinPool();
+		assemble(program(100000), null); //warmup
+		assemble(program(100000), pool);
+		ArrayList<String> results = new ArrayList<>();
+		for (int size = 1000; size <= max; size *= 10) {
+			ArrayList<String> program = program(size);
+			double millis = assemble(program, null);
+			double parallel = assemble(program, pool);
+			results.add(String.format("%8d lines: %10.2f ms %8.1f ns/line   parallel: %10.2f ms %8.1f ns/line",
+					size, millis, millis * 1e6 / size, parallel, parallel * 1e6 / size));
+		}
+		pool.shutdown();
+		for (String result : results)
+			System.out.println(result);
+	}
+
+}
@@ -0,0 +1,114 @@
+package assembler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * This class is a long running assembler: it watches the source files (.dsf) and, every time one of them
+ * changes, assembles it again using its IncrementalAssembler, so only the changed lines are parsed again
+ * and only the changed part of the executable (.dxf) is written again.
+ *
+ * Usage: AssemblerDaemon filename [filename ...] (the filenames without the extention)
+ */
+public class AssemblerDaemon implements Runnable {
+
+	private WatchService watcher;
+	private HashMap<Path, IncrementalAssembler> sessions; //indexed by the source file (absolute path)
+	private HashSet<Path> directories; //the directories already watched
+
+	public AssemblerDaemon() throws IOException {
+		watcher = FileSystems.getDefault().newWatchService();
+		sessions = new HashMap<Path, IncrementalAssembler>();
+		directories = new HashSet<Path>();
+	}
+
+	/**
+	 * This method assembles the program for the first time and starts watching its source file
+	 * @param filename
+	 * @return the assembler of the program
+	 * @throws IOException
+	 */
+	public synchronized IncrementalAssembler watch(String filename) throws IOException {
+		IncrementalAssembler session = new IncrementalAssembler(filename);
+		Path source = new File(filename+".dsf").getAbsoluteFile().toPath();
+		sessions.put(source, session);
+		Path directory = source.getParent();
+		if (directories.add(directory))
+			directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		assemble(session);
+		return session;
+	}
+
+	/**
+	 * This method assembles the program again, showing what was done
+	 * @param session
+	 */
+	private void assemble(IncrementalAssembler session) {
+		long start = System.nanoTime();
+		try {
+			if (session.assemble())
+				System.out.printf("%s.dxf: %d lines parsed, %d lines resolved, %d bytes written in %.2f ms%n", session.getFilename(),
+						session.getParsedLines(), session.getResolvedLines(), session.getWrittenBytes(), (System.nanoTime() - start) / 1e6);
+			else
+				System.out.println("FATAL ERROR! Variables or labels "+session.getUndeclared()+" not declared in "+session.getFilename()+".dsf");
+		}
+		catch (IOException e) {
+			System.out.println("Error assembling "+session.getFilename()+": "+e.getMessage());
+		}
+		catch (RuntimeException e) { //an invalid line: the daemon keeps running, waiting for the next change
+			System.out.println("Error assembling "+session.getFilename()+": "+e);
+		}
+	}
+
+	/**
+	 * This method waits for the changes in the source files, until the daemon is closed
+	 */
+	@Override
+	public void run() {
+		try {
+			while (true) {
+				WatchKey key = watcher.take();
+				Path directory = (Path) key.watchable();
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+						continue;
+					IncrementalAssembler session;
+					synchronized (this) {
+						session = sessions.get(directory.resolve((Path) event.context()));
+					}
+					if (session != null)
+						assemble(session);
+				}
+				key.reset();
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		catch (ClosedWatchServiceException e) {
+			//the daemon was closed
+		}
+	}
+
+	public void close() throws IOException {
+		watcher.close();
+	}
+
+	public static void main(String[] args) throws IOException {
+		AssemblerDaemon daemon = new AssemblerDaemon();
+		for (String filename : args)
+			daemon.watch(filename);
+		System.out.println("Watching "+args.length+" source files");
+		daemon.run();
+	}
+
+}
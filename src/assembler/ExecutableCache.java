@@ -0,0 +1,150 @@
+package assembler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * This class is an on disk cache of the executables (.dxf) already made by the assembler.
+ * Each executable is found by a content hash (SHA-256) of its source and of the ISA used to
+ * assemble it (the commands and the registers of the architecture, the memory size...),
+ * so a new opcode or register makes a new key, and the old executables are never found again.
+ *
+ * The cache directory is bounded by a size: when it is bigger, the least recently used
+ * executables (the ones with the oldest modification time, that is updated on each hit) are removed
+ */
+public class ExecutableCache {
+
+	public static final long DEFAULT_MAX_SIZE = 64L * 1024 * 1024;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final char HEX[] = "0123456789abcdef".toCharArray();
+
+	private File directory;
+	private long maxSize;
+
+	public ExecutableCache(File directory, long maxSize) throws IOException {
+		this.directory = directory;
+		this.maxSize = maxSize;
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("Can't create the cache directory "+directory);
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * This method returns the key of a source: the hex SHA-256 of the ISA description and of the source
+	 * @param isa
+	 * @param source
+	 * @return the key
+	 */
+	public String key(String isa, CharSequence source) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e) { //every java platform has SHA-256
+			throw new IllegalStateException(e);
+		}
+		digest.update(isa.getBytes(UTF8));
+		digest.update((byte) 0); //the ISA ends here, so no ISA and source pair has the bytes of another one
+		digest.update(UTF8.encode(CharBuffer.wrap(source)));
+		byte hash[] = digest.digest();
+		char chars[] = new char[hash.length * 2];
+		for (int i = 0; i < hash.length; i++) {
+			chars[2*i] = HEX[(hash[i] >> 4) & 0xf];
+			chars[2*i+1] = HEX[hash[i] & 0xf];
+		}
+		return new String(chars);
+	}
+
+	private File entry(String key) {
+		return new File(directory, key+".dxf");
+	}
+
+	/**
+	 * This method copies the executable of the key (if it is in the cache) to the target file
+	 * @param key
+	 * @param target
+	 * @return true if the executable was found
+	 * @throws IOException
+	 */
+	public boolean restore(String key, File target) throws IOException {
+		File entry = entry(key);
+		try {
+			Files.copy(entry.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch (java.nio.file.NoSuchFileException e) { //a miss (or the entry was just evicted by another process)
+			return false;
+		}
+		entry.setLastModified(System.currentTimeMillis()); //the most recently used
+		return true;
+	}
+
+	/**
+	 * This method puts a copy of the executable in the cache, and then removes the least
+	 * recently used executables while the cache is bigger than its max size.
+	 * The copy is made in a temporary file and then renamed, so another process never
+	 * restores half of an executable
+	 * @param key
+	 * @param executable
+	 * @throws IOException
+	 */
+	public void store(String key, File executable) throws IOException {
+		File temporary = File.createTempFile("entry", ".tmp", directory);
+		try {
+			Files.copy(executable.toPath(), temporary.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			Files.move(temporary.toPath(), entry(key).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally {
+			temporary.delete();
+		}
+		evict();
+	}
+
+	/**
+	 * This method removes the least recently used executables until the cache fits in its max size
+	 */
+	private void evict() {
+		File entries[] = directory.listFiles();
+		if (entries == null)
+			return;
+		final long modified[] = new long[entries.length];
+		long size = 0;
+		Integer order[] = new Integer[entries.length];
+		for (int i = 0; i < entries.length; i++) {
+			modified[i] = entries[i].lastModified(); //read only once: the sort needs stable values
+			size += entries[i].getName().endsWith(".dxf") ? entries[i].length() : 0;
+			order[i] = i;
+		}
+		if (size <= maxSize)
+			return;
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Long.compare(modified[a], modified[b]);
+			}
+		});
+		for (int i = 0; (i < order.length) && (size > maxSize); i++) {
+			File entry = entries[order[i]];
+			if (!entry.getName().endsWith(".dxf"))
+				continue;
+			long length = entry.length();
+			if (entry.delete())
+				size -= length;
+		}
+	}
+
+}
@@ -0,0 +1,383 @@
+package assembler;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import architecture.ExecutableFile;
+
+/**
+ * This class keeps an assembled program ready to be assembled again after the source changes.
+ * The object program of each source line is kept, so when the source changes:
+ * only the lines changed are parsed again (the lines before and after them are reused);
+ * the addresses of the lines after the change move only if the amount of words changed;
+ * only the words that use a label or a variable whose address changed are resolved again;
+ * and only the changed part of the executable file is written again.
+ *
+ * The executable is always saved in the binary format (see ExecutableFile), since its words have a fixed size
+ * and can be written again in place. It is just the same executable made by the Assembler.
+ */
+public class IncrementalAssembler {
+
+	/**
+	 * This class keeps what a source line became
+	 */
+	private static class Line {
+		private String text;
+		private String words[]; //the object program of the line (the labels and variables with &, the registers with %)
+		private String label; //the label declared by the line (or null)
+		private String variable; //the variable declared by the line (or null)
+		private int index; //the position of the line in the source
+	}
+
+	private String filename;
+	private Assembler parser; //used only to parse the lines
+	private ArrayList<Line> lines;
+	private int addresses[]; //the address of the first word of each line (the last one is the code size)
+	private int code[]; //the executable program, with the -1 in the end
+	private HashMap<String, Integer> symbols; //the address of each label and variable, indexed by the name with &
+	private HashMap<String, HashSet<Line>> references; //the lines that use each label or variable, indexed by the name with &
+	private HashSet<Line> unresolved; //the lines that use labels or variables not declared
+	private ArrayList<String> labels; //the labels and the variables as declared (for the symbols of the executable)
+	private ArrayList<Integer> labelsAddresses;
+	private ArrayList<String> variables;
+	private boolean saved; //the executable file has the program
+
+	//what the last update did
+	private int parsedLines;
+	private int resolvedLines;
+	private int writtenBytes;
+	private boolean layoutChanged; //the size of the code, the variables or the symbols changed
+	private int dirty[]; //the code ranges (start and end) changed, if the layout is the same
+	private int dirtyCount;
+
+	public IncrementalAssembler(String filename) {
+		this.filename = filename;
+		parser = new Assembler();
+		lines = new ArrayList<Line>();
+		addresses = new int[64];
+		code = new int[] {-1};
+		symbols = new HashMap<String, Integer>();
+		references = new HashMap<String, HashSet<Line>>();
+		unresolved = new HashSet<Line>();
+		labels = new ArrayList<String>();
+		labelsAddresses = new ArrayList<Integer>();
+		variables = new ArrayList<String>();
+		dirty = new int[16];
+	}
+
+	public String getFilename() {
+		return filename;
+	}
+
+	public int[] getCode() {
+		return code;
+	}
+
+	/**
+	 * This method returns how many lines were parsed in the last update
+	 * @return
+	 */
+	public int getParsedLines() {
+		return parsedLines;
+	}
+
+	/**
+	 * This method returns how many lines had their labels, variables and registers replaced in the last update
+	 * @return
+	 */
+	public int getResolvedLines() {
+		return resolvedLines;
+	}
+
+	/**
+	 * This method returns how many bytes of the executable file were written in the last assemble
+	 * @return
+	 */
+	public int getWrittenBytes() {
+		return writtenBytes;
+	}
+
+	/**
+	 * This method returns the labels and variables used by the program but not declared
+	 * @return
+	 */
+	public ArrayList<String> getUndeclared() {
+		ArrayList<String> undeclared = new ArrayList<String>();
+		for (Line line : unresolved)
+			for (String word : line.words)
+				if (word.startsWith("&") && !symbols.containsKey(word) && !undeclared.contains(word.substring(1)))
+					undeclared.add(word.substring(1));
+		return undeclared;
+	}
+
+	/**
+	 * This method reads the source file again (filename.dsf), assembles only what changed
+	 * and writes only the changed part of the executable (filename.dxf).
+	 * The executable is not written if there are labels or variables not declared
+	 * @return true if the executable was written
+	 * @throws IOException
+	 */
+	public boolean assemble() throws IOException {
+		ArrayList<String> source = new ArrayList<String>();
+		BufferedReader br = new BufferedReader(new FileReader(filename+".dsf"));
+		String linha;
+		while ((linha = br.readLine()) != null)
+			source.add(linha);
+		br.close();
+		writtenBytes = 0;
+		if (!update(source))
+			return false;
+		save();
+		return true;
+	}
+
+	/**
+	 * This method assembles the program again, now with these source lines.
+	 * A line that cannot be parsed throws an IllegalArgumentException, and the program is kept as it was
+	 * @param source
+	 * @return true if all the labels and variables used are declared
+	 */
+	public boolean update(List<String> source) {
+		int oldCount = lines.size();
+		int newCount = source.size();
+		int prefix = 0; //the lines not changed in the begin of the source
+		while ((prefix < oldCount) && (prefix < newCount) && lines.get(prefix).text.equals(source.get(prefix)))
+			prefix++;
+		int suffix = 0; //the lines not changed in the end of the source
+		while ((suffix < oldCount - prefix) && (suffix < newCount - prefix)
+				&& lines.get(oldCount - 1 - suffix).text.equals(source.get(newCount - 1 - suffix)))
+			suffix++;
+
+		//the new lines are parsed before anything changes
+		ArrayList<Line> added = new ArrayList<Line>();
+		for (int i = prefix; i < newCount - suffix; i++)
+			added.add(parse(source.get(i), i + 1));
+
+		//the changed lines are replaced by the new ones
+		boolean declarationsChanged = false;
+		int removedWords = 0;
+		List<Line> removed = lines.subList(prefix, oldCount - suffix);
+		for (Line line : removed) {
+			removedWords += line.words.length;
+			declarationsChanged |= (line.label != null) || (line.variable != null);
+			removeReferences(line);
+			unresolved.remove(line);
+		}
+		int removedCount = removed.size();
+		removed.clear();
+		int addedWords = 0;
+		for (Line line : added) {
+			addedWords += line.words.length;
+			declarationsChanged |= (line.label != null) || (line.variable != null);
+			addReferences(line);
+		}
+		lines.addAll(prefix, added);
+		parsedLines = added.size();
+
+		//the addresses move only after the change, and only if the amount of words changed
+		int delta = addedWords - removedWords;
+		int firstWord = addresses[prefix];
+		int oldEndWord = firstWord + removedWords;
+		if (addresses.length < lines.size() + 1) {
+			int newAddresses[] = new int[(lines.size() + 1) * 2];
+			System.arraycopy(addresses, 0, newAddresses, 0, prefix + 1);
+			addresses = newAddresses;
+		}
+		int last = ((delta == 0) && (removedCount == added.size())) ? prefix + added.size() : lines.size();
+		for (int i = prefix; i < last; i++) {
+			Line line = lines.get(i);
+			line.index = i;
+			addresses[i + 1] = addresses[i] + line.words.length;
+		}
+		if (delta != 0) {
+			int newCode[] = new int[code.length + delta];
+			System.arraycopy(code, 0, newCode, 0, firstWord);
+			System.arraycopy(code, oldEndWord, newCode, oldEndWord + delta, code.length - oldEndWord);
+			code = newCode;
+		}
+		layoutChanged = (delta != 0);
+		dirtyCount = 0;
+		if (delta != 0) //all the words after the change moved
+			markDirty(firstWord, code.length);
+
+		//the lines changed and the lines that use a label or a variable whose address changed are resolved again
+		LinkedHashSet<Line> resolve = new LinkedHashSet<Line>(added);
+		if (declarationsChanged || (delta != 0)) {
+			for (String symbol : updateSymbols()) {
+				HashSet<Line> users = references.get(symbol);
+				if (users != null)
+					resolve.addAll(users);
+			}
+		}
+		for (Line line : resolve)
+			resolve(line);
+		resolvedLines = resolve.size();
+		return unresolved.isEmpty();
+	}
+
+	/**
+	 * This method parses the line alone (an IllegalArgumentException is thrown if it cannot be parsed)
+	 * @param text
+	 * @param number the number of the line in the source (from 1)
+	 * @return
+	 */
+	private Line parse(String text, int number) {
+		Line line = new Line();
+		line.text = text;
+		parser.parseOnly(text, number);
+		if (!parser.getErrors().isEmpty())
+			throw new IllegalArgumentException(parser.getErrors().get(0));
+		line.words = parser.getObjProgram().toArray(new String[parser.getObjProgram().size()]);
+		if (!parser.getLabels().isEmpty())
+			line.label = parser.getLabels().get(0);
+		if (!parser.getVariables().isEmpty())
+			line.variable = parser.getVariables().get(0);
+		return line;
+	}
+
+	private void addReferences(Line line) {
+		for (String word : line.words) {
+			if (word.startsWith("&")) {
+				HashSet<Line> users = references.get(word);
+				if (users == null) {
+					users = new HashSet<Line>();
+					references.put(word, users);
+				}
+				users.add(line);
+			}
+		}
+	}
+
+	private void removeReferences(Line line) {
+		for (String word : line.words) {
+			if (word.startsWith("&")) {
+				HashSet<Line> users = references.get(word);
+				users.remove(line);
+				if (users.isEmpty())
+					references.remove(word);
+			}
+		}
+	}
+
+	/**
+	 * This method finds the labels and the variables again, just like the Assembler does:
+	 * the variables are allocated from the end of the memory, a variable hides a label with
+	 * the same name, and only the first declaration of a name is used
+	 * @return the names (with &) whose addresses changed
+	 */
+	private HashSet<String> updateSymbols() {
+		labels.clear();
+		labelsAddresses.clear();
+		variables.clear();
+		for (Line line : lines) {
+			if (line.label != null) {
+				labels.add(line.label);
+				labelsAddresses.add(addresses[line.index]);
+			}
+			if (line.variable != null)
+				variables.add(line.variable);
+		}
+		HashMap<String, Integer> newSymbols = new HashMap<String, Integer>();
+		int position = parser.firstVariableAddress();
+		for (String var : variables) {
+			if (!newSymbols.containsKey("&"+var))
+				newSymbols.put("&"+var, position);
+			position--;
+		}
+		for (int i = 0; i < labels.size(); i++)
+			if (!newSymbols.containsKey("&"+labels.get(i)))
+				newSymbols.put("&"+labels.get(i), labelsAddresses.get(i));
+
+		HashSet<String> changed = new HashSet<String>();
+		for (String name : newSymbols.keySet())
+			if (!newSymbols.get(name).equals(symbols.get(name)))
+				changed.add(name);
+		for (String name : symbols.keySet())
+			if (!newSymbols.containsKey(name))
+				changed.add(name);
+		symbols = newSymbols;
+		layoutChanged = true; //the symbols of the executable must be written again
+		return changed;
+	}
+
+	/**
+	 * This method puts the words of the line, with the labels, variables and registers replaced, into the code
+	 * @param line
+	 */
+	private void resolve(Line line) {
+		int address = addresses[line.index];
+		boolean changed = false;
+		boolean declared = true;
+		for (int i = 0; i < line.words.length; i++) {
+			String word = line.words[i];
+			int value;
+			if (word.startsWith("&")) {
+				Integer symbol = symbols.get(word);
+				declared &= (symbol != null);
+				value = (symbol == null) ? 0 : symbol;
+			}
+			else if (word.startsWith("%"))
+				value = parser.registerId(word);
+			else
+				value = Integer.parseInt(word);
+			changed |= (code[address + i] != value);
+			code[address + i] = value;
+		}
+		if (declared)
+			unresolved.remove(line);
+		else
+			unresolved.add(line);
+		if (changed)
+			markDirty(address, address + line.words.length);
+	}
+
+	private void markDirty(int start, int end) {
+		if (dirtyCount == dirty.length) {
+			int newDirty[] = new int[dirty.length * 2];
+			System.arraycopy(dirty, 0, newDirty, 0, dirtyCount);
+			dirty = newDirty;
+		}
+		dirty[dirtyCount++] = start;
+		dirty[dirtyCount++] = end;
+	}
+
+	/**
+	 * This method writes the executable file: the whole file the first time, then only the changed words
+	 * (if the size of the code, the variables and the symbols are the same) or else only from the first changed word on
+	 * @throws IOException
+	 */
+	private void save() throws IOException {
+		File file = new File(filename+".dxf");
+		int lastVariable = parser.firstVariableAddress(); //the first variable is in the highest address
+		int dataStart = variables.isEmpty() ? 0 : lastVariable - variables.size() + 1;
+		ExecutableFile executable = new ExecutableFile(0, 0, code, dataStart, new int[variables.size()]);
+		for (int i = 0; i < labels.size(); i++)
+			executable.addSymbol(labels.get(i), labelsAddresses.get(i));
+		for (int i = 0; i < variables.size(); i++)
+			executable.addSymbol(variables.get(i), lastVariable - i);
+		if (!saved || !file.exists()) {
+			writtenBytes = executable.save(file, 0);
+			saved = true;
+		}
+		else if (layoutChanged) {
+			int fromWord = code.length;
+			for (int i = 0; i < dirtyCount; i += 2)
+				fromWord = Math.min(fromWord, dirty[i]);
+			writtenBytes = executable.save(file, fromWord);
+		}
+		else {
+			for (int i = 0; i < dirtyCount; i += 2) {
+				executable.patch(file, dirty[i], dirty[i + 1]);
+				writtenBytes += 4 * (dirty[i + 1] - dirty[i]);
+			}
+		}
+	}
+
+}
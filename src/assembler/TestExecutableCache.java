@@ -0,0 +1,100 @@
+package assembler;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+public class TestExecutableCache {
+
+	private File temporaryDirectory() throws IOException {
+		File directory = Files.createTempDirectory("cache").toFile();
+		directory.deleteOnExit();
+		return directory;
+	}
+
+	private String write(File directory, String name, String source) throws IOException {
+		File file = new File(directory, name+".dsf");
+		FileWriter writer = new FileWriter(file);
+		writer.write(source);
+		writer.close();
+		file.deleteOnExit();
+		new File(directory, name+".dxf").deleteOnExit();
+		return file.getPath().substring(0, file.getPath().length() - 4);
+	}
+
+	private void deleteAll(File directory) {
+		for (File file : directory.listFiles())
+			file.delete();
+		directory.delete();
+	}
+
+	@Test
+	public void testHit() throws IOException {
+		File directory = temporaryDirectory();
+		ExecutableCache cache = new ExecutableCache(new File(directory, "cache"), ExecutableCache.DEFAULT_MAX_SIZE);
+		String first = write(directory, "first", "var1\nldi 3\nlaco:\nmove 5 %RPG1\nadd var1 %RPG0\njn laco\n");
+		Assembler assembler = new Assembler();
+		assembler.setCache(cache);
+		assembler.read(first);
+		assertFalse(assembler.restoreExecutable(first)); //a miss
+		assembler.parse();
+		assembler.makeExecutable(first);
+		assertEquals(1, cache.getDirectory().list().length);
+
+		//the same source in another file: the executable is restored, without parsing
+		String second = write(directory, "second", "var1\nldi 3\nlaco:\nmove 5 %RPG1\nadd var1 %RPG0\njn laco\n");
+		Assembler cached = new Assembler();
+		cached.setCache(cache);
+		cached.read(second);
+		assertTrue(cached.restoreExecutable(second));
+		assertTrue(cached.getObjProgram().isEmpty());
+		assertArrayEquals(Files.readAllBytes(new File(first+".dxf").toPath()), Files.readAllBytes(new File(second+".dxf").toPath()));
+
+		//the binary format is another executable
+		cached.setBinary(true);
+		assertFalse(cached.restoreExecutable(second));
+		deleteAll(cache.getDirectory());
+		deleteAll(directory);
+	}
+
+	@Test
+	public void testKey() throws IOException {
+		File directory = temporaryDirectory();
+		ExecutableCache cache = new ExecutableCache(directory, ExecutableCache.DEFAULT_MAX_SIZE);
+		String key = cache.key("add,sub", "ldi 3\n");
+		assertEquals(64, key.length());
+		assertEquals(key, cache.key("add,sub", new StringBuilder("ldi 3\n")));
+		assertFalse(key.equals(cache.key("add,sub,jmp", "ldi 3\n"))); //a new command in the ISA
+		assertFalse(key.equals(cache.key("add,sub", "ldi 4\n")));
+		assertFalse(cache.key("a", "b").equals(cache.key("ab", ""))); //the ISA and the source are apart
+		deleteAll(directory);
+	}
+
+	@Test
+	public void testEviction() throws IOException {
+		File directory = temporaryDirectory();
+		ExecutableCache cache = new ExecutableCache(new File(directory, "cache"), 2500);
+		File executable = new File(directory, "executable.dxf");
+		Files.write(executable.toPath(), new byte[1000]);
+		long now = System.currentTimeMillis();
+		cache.store("a", executable);
+		new File(cache.getDirectory(), "a.dxf").setLastModified(now - 30000);
+		cache.store("b", executable);
+		new File(cache.getDirectory(), "b.dxf").setLastModified(now - 20000);
+		File restored = new File(directory, "restored.dxf");
+		assertTrue(cache.restore("a", restored)); //now "a" is the most recently used
+		cache.store("c", executable); //3000 bytes: the least recently used ("b") is removed
+		assertTrue(cache.restore("a", restored));
+		assertFalse(cache.restore("b", restored));
+		assertTrue(cache.restore("c", restored));
+		assertEquals(2, cache.getDirectory().list().length);
+		deleteAll(cache.getDirectory());
+		deleteAll(directory);
+	}
+
+}
@@ -0,0 +1,131 @@
+package assembler;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+public class TestIncrementalAssembler {
+
+	private String temporaryName() throws IOException {
+		File file = File.createTempFile("incremental", ".dsf");
+		file.deleteOnExit();
+		new File(file.getPath().replace(".dsf", ".dxf")).deleteOnExit();
+		return file.getPath().substring(0, file.getPath().length() - 4);
+	}
+
+	private void write(String filename, ArrayList<String> source) throws IOException {
+		FileWriter writer = new FileWriter(filename+".dsf");
+		for (String line : source)
+			writer.write(line+"\n");
+		writer.close();
+	}
+
+	/**
+	 * This method checks if the incremental executable is the same made by the whole assembler
+	 * @param filename
+	 * @throws IOException
+	 */
+	private void assertSameAsAssembler(String filename) throws IOException {
+		String expected = temporaryName();
+		Files.copy(new File(filename+".dsf").toPath(), new File(expected+".dsf").toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+		Assembler assembler = new Assembler();
+		assembler.setBinary(true);
+		assembler.read(expected);
+		assembler.parse();
+		assembler.makeExecutable(expected);
+		assertArrayEquals(Files.readAllBytes(new File(expected+".dxf").toPath()), Files.readAllBytes(new File(filename+".dxf").toPath()));
+	}
+
+	@Test
+	public void testEdits() throws IOException {
+		String filename = temporaryName();
+		ArrayList<String> source = AssemblerBenchmark.program(3000);
+		write(filename, source);
+		IncrementalAssembler incremental = new IncrementalAssembler(filename);
+		assertTrue(incremental.assemble());
+		assertEquals(3000, incremental.getParsedLines());
+		assertSameAsAssembler(filename);
+
+		//the same amount of words: only the changed line is parsed, and only its words are written
+		source.set(1001, "ldi 12345");
+		write(filename, source);
+		assertTrue(incremental.assemble());
+		assertEquals(1, incremental.getParsedLines());
+		assertEquals(1, incremental.getResolvedLines());
+		assertEquals(4 * 2, incremental.getWrittenBytes());
+		assertSameAsAssembler(filename);
+
+		//nothing changed: nothing is written
+		assertTrue(incremental.assemble());
+		assertEquals(0, incremental.getParsedLines());
+		assertEquals(0, incremental.getWrittenBytes());
+
+		//a new command moves the labels after it: the lines that use them are resolved again
+		source.add(500, "move %RPG0 %RPG1");
+		write(filename, source);
+		assertTrue(incremental.assemble());
+		assertEquals(1, incremental.getParsedLines());
+		assertTrue(incremental.getResolvedLines() > 1);
+		assertSameAsAssembler(filename);
+
+		//removing a label
+		String label = source.remove(865);
+		assertEquals("l100:", label); //used by the jumps in the lines 1608 and 1616
+		write(filename, source);
+		assertFalse(incremental.assemble()); //the jumps to the label can't be resolved
+		assertEquals("["+label.substring(0, label.length() - 1)+"]", incremental.getUndeclared().toString());
+		source.add(label);
+		write(filename, source);
+		assertTrue(incremental.assemble());
+		assertEquals(1, incremental.getParsedLines());
+		assertSameAsAssembler(filename);
+
+		//a new variable in the begin moves all the variables
+		source.add(0, "first");
+		source.add(1, "");
+		write(filename, source);
+		assertTrue(incremental.assemble());
+		assertEquals(2, incremental.getParsedLines());
+		assertSameAsAssembler(filename);
+
+		//many lines changed at once (keeping the labels, that are used by the jumps)
+		for (int i = 500; i < 600; i++)
+			if (!source.get(i).endsWith(":"))
+				source.set(i, "read v"+(i % 7));
+		for (int i = 150; i > 100; i--)
+			if (!source.get(i).endsWith(":"))
+				source.remove(i);
+		write(filename, source);
+		assertTrue(incremental.assemble());
+		assertSameAsAssembler(filename);
+	}
+
+	@Test
+	public void testWrongLine() throws IOException {
+		String filename = temporaryName();
+		ArrayList<String> source = AssemblerBenchmark.program(200);
+		write(filename, source);
+		IncrementalAssembler incremental = new IncrementalAssembler(filename);
+		assertTrue(incremental.assemble());
+		int code[] = incremental.getCode().clone();
+		ArrayList<String> wrong = new ArrayList<String>(source);
+		wrong.set(100, "jeq %RPG2 %RPG3"); //the target is missing
+		try {
+			incremental.update(wrong);
+			fail("The line 101 was accepted");
+		}
+		catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().startsWith("Line 101: jeq needs 3 operands"));
+		}
+		assertArrayEquals(code, incremental.getCode()); //nothing changed
+		assertTrue(incremental.update(source));
+		assertArrayEquals(code, incremental.getCode());
+	}
+
+}
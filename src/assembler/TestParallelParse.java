@@ -0,0 +1,69 @@
+package assembler;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class TestParallelParse {
+
+	private void assertSameParse(Assembler sequential, Assembler parallel) {
+		assertEquals(sequential.getObjProgram(), parallel.getObjProgram());
+		assertEquals(sequential.getLabels(), parallel.getLabels());
+		assertEquals(sequential.getLabelsAddresses(), parallel.getLabelsAddresses());
+		assertEquals(sequential.getVariables(), parallel.getVariables());
+	}
+
+	private String temporaryName(String suffix) throws IOException {
+		File file = File.createTempFile("parallel", suffix);
+		file.deleteOnExit();
+		return file.getPath().substring(0, file.getPath().length() - suffix.length());
+	}
+
+	@Test
+	public void testSameAsSequential() throws IOException {
+		ArrayList<String> program = AssemblerBenchmark.program(20000);
+		program.add(5000, ""); //an empty line is an unnamed variable
+		program.add(12000, "late"); //a variable declared between the commands
+		String filename = temporaryName(".dsf");
+		FileWriter writer = new FileWriter(filename+".dsf");
+		for (int i = 0; i < program.size(); i++)
+			writer.write(program.get(i) + ((i % 3 == 0) ? "\r\n" : "\n"));
+		writer.close();
+
+		Assembler sequential = new Assembler();
+		sequential.read(filename);
+		sequential.parse();
+		ForkJoinPool pool = new ForkJoinPool(4);
+		Assembler parallel = new Assembler();
+		parallel.setChunkSize(777); //many chunks, none of them starting in a label
+		parallel.read(filename);
+		parallel.parse(pool);
+		assertSameParse(sequential, parallel);
+
+		//the executables (with the variables and the labels replaced) are the same too
+		String sequentialExec = temporaryName(".dxf");
+		String parallelExec = temporaryName(".dxf");
+		sequential.setBinary(true);
+		sequential.makeExecutable(sequentialExec);
+		parallel.setBinary(true);
+		parallel.makeExecutable(parallelExec);
+		assertArrayEquals(Files.readAllBytes(new File(sequentialExec+".dxf").toPath()),
+				Files.readAllBytes(new File(parallelExec+".dxf").toPath()));
+
+		//the lines (instead of the file) are parsed in chunks too
+		Assembler lines = new Assembler();
+		lines.setLines(program);
+		lines.setChunkSize(1000);
+		lines.parse(pool);
+		assertSameParse(sequential, lines);
+		pool.shutdown();
+	}
+
+}
@@ -0,0 +1,82 @@
+package assembler;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class TestTokenizer {
+
+	@Test
+	public void testScan() {
+		Tokenizer tokenizer = new Tokenizer();
+		tokenizer.scan("  move %RPG0   var1  ");
+		assertEquals(3, tokenizer.getCount());
+		assertEquals("move", tokenizer.token(0));
+		assertEquals("%RPG0", tokenizer.token(1));
+		assertEquals("&var1", tokenizer.token(2, '&', 0));
+		assertEquals(Tokenizer.NAME, tokenizer.kind(0));
+		assertEquals(Tokenizer.REGISTER, tokenizer.kind(1));
+
+		//only a part of the source is scanned
+		String source = "laco:\njn laco";
+		tokenizer.scan(source, 0, 5);
+		assertEquals(1, tokenizer.getCount());
+		assertTrue(tokenizer.endsWith(0, ':'));
+		assertEquals("laco", tokenizer.token(0, (char) 0, 1));
+		tokenizer.scan(source, 6, source.length());
+		assertEquals(2, tokenizer.getCount());
+		assertEquals("laco", tokenizer.token(1));
+
+		tokenizer.scan("");
+		assertEquals(0, tokenizer.getCount());
+	}
+
+	@Test
+	public void testKind() {
+		assertEquals(Tokenizer.IMMEDIATE, Tokenizer.kind("10", 0, 2));
+		assertEquals(Tokenizer.IMMEDIATE, Tokenizer.kind("-10", 0, 3));
+		assertEquals(Tokenizer.IMMEDIATE, Tokenizer.kind("--1", 0, 3)); //just like [-]*[0-9]+
+		assertEquals(Tokenizer.OTHER, Tokenizer.kind("-", 0, 1));
+		assertEquals(Tokenizer.OTHER, Tokenizer.kind("1a", 0, 2));
+		assertEquals(Tokenizer.OTHER, Tokenizer.kind("_a", 0, 2));
+		assertEquals(Tokenizer.NAME, Tokenizer.kind("a1", 0, 2));
+		assertEquals(Tokenizer.NAME, Tokenizer.kind("Z", 0, 1));
+		assertEquals(Tokenizer.REGISTER, Tokenizer.kind("%", 0, 1));
+		assertEquals(Tokenizer.OTHER, Tokenizer.kind("", 0, 0));
+	}
+
+	@Test
+	public void testNames() {
+		Tokenizer.Names names = new Tokenizer.Names(Arrays.asList("add", "sub", "jmp", "add"));
+		assertEquals(0, names.find("add", 0, 3));
+		assertEquals(2, names.find("x jmp", 2, 5));
+		assertEquals(-1, names.find("ad", 0, 2));
+		assertEquals(-1, names.find("addd", 0, 4));
+		Tokenizer tokenizer = new Tokenizer();
+		tokenizer.scan("sub a %RPG0");
+		assertEquals(1, names.find(tokenizer, 0));
+		assertEquals(-1, names.find(tokenizer, 1));
+	}
+
+	@Test
+	public void testParseSource() throws IOException {
+		File file = File.createTempFile("source", ".dsf");
+		file.deleteOnExit();
+		FileWriter writer = new FileWriter(file);
+		writer.write("var1\r\nldi 3\r\nlaco:\r\nmove 5 %RPG1\r\nadd var1  %RPG0\r\njn laco"); //the last line has no line break
+		writer.close();
+		Assembler assembler = new Assembler();
+		assembler.read(file.getPath().substring(0, file.getPath().length() - 4));
+		assembler.parse();
+		assertEquals(Arrays.asList("25", "3", "14", "5", "%RPG1", "1", "&var1", "%RPG0", "17", "&laco"), assembler.getObjProgram());
+		assertEquals(Arrays.asList("var1"), assembler.getVariables());
+		assertEquals(Arrays.asList("laco"), assembler.getLabels());
+		assertEquals(2, (int) assembler.getLabelsAddresses().get(0));
+	}
+
+}
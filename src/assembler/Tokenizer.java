@@ -0,0 +1,210 @@
+package assembler;
+
+import java.util.List;
+
+/**
+ * This class splits a line of the assembly program into tokens (separated by spaces) and classifies them,
+ * without regular expressions and without creating a string for each token.
+ * The tokens are kept as positions (start and end) in the source, that can be any sequence of chars
+ * (a line, or the whole file in a buffer). Only the tokens that must be kept
+ * (as the parameters of the object program) become strings.
+ */
+public class Tokenizer {
+
+	public static final int REGISTER = 0; //%name
+	public static final int IMMEDIATE = 1; //[-]*[0-9]+
+	public static final int NAME = 2; //starts with a letter: a command, a variable or a label
+	public static final int OTHER = 3;
+
+	private CharSequence source;
+	private int starts[];
+	private int ends[];
+	private int count;
+	private char chars[]; //used to create the tokens strings
+
+	public Tokenizer() {
+		starts = new int[4];
+		ends = new int[4];
+		chars = new char[32];
+	}
+
+	/**
+	 * This method finds the tokens of the line that goes from start (inclusive) to end (exclusive) in the source.
+	 * Many spaces together separate the tokens just like only one
+	 * @param source
+	 * @param start
+	 * @param end
+	 */
+	public void scan(CharSequence source, int start, int end) {
+		this.source = source;
+		count = 0;
+		int i = start;
+		while (i < end) {
+			while ((i < end) && (source.charAt(i) == ' '))
+				i++;
+			if (i == end)
+				break;
+			if (count == starts.length) {
+				int newStarts[] = new int[count * 2];
+				int newEnds[] = new int[count * 2];
+				System.arraycopy(starts, 0, newStarts, 0, count);
+				System.arraycopy(ends, 0, newEnds, 0, count);
+				starts = newStarts;
+				ends = newEnds;
+			}
+			starts[count] = i;
+			while ((i < end) && (source.charAt(i) != ' '))
+				i++;
+			ends[count] = i;
+			count++;
+		}
+	}
+
+	public void scan(CharSequence line) {
+		scan(line, 0, line.length());
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public int length(int token) {
+		return ends[token] - starts[token];
+	}
+
+	public char charAt(int token, int index) {
+		return source.charAt(starts[token] + index);
+	}
+
+	/**
+	 * This method returns the kind of the token: REGISTER, IMMEDIATE, NAME or OTHER
+	 * @param token
+	 * @return
+	 */
+	public int kind(int token) {
+		return kind(source, starts[token], ends[token]);
+	}
+
+	/**
+	 * This method returns the kind of the chars from start to end: REGISTER, IMMEDIATE, NAME or OTHER
+	 * @param s
+	 * @param start
+	 * @param end
+	 * @return
+	 */
+	public static int kind(CharSequence s, int start, int end) {
+		if (start == end)
+			return OTHER;
+		char first = s.charAt(start);
+		if (first == '%')
+			return REGISTER;
+		if (((first >= 'A') && (first <= 'Z')) || ((first >= 'a') && (first <= 'z')))
+			return NAME;
+		int i = start;
+		while ((i < end) && (s.charAt(i) == '-'))
+			i++;
+		if (i == end)
+			return OTHER;
+		for (; i < end; i++) {
+			char c = s.charAt(i);
+			if ((c < '0') || (c > '9'))
+				return OTHER;
+		}
+		return IMMEDIATE;
+	}
+
+	public boolean endsWith(int token, char c) {
+		return (ends[token] > starts[token]) && (source.charAt(ends[token] - 1) == c);
+	}
+
+	/**
+	 * This method returns the token as a string
+	 * @param token
+	 * @return
+	 */
+	public String token(int token) {
+		return token(token, (char) 0, 0);
+	}
+
+	/**
+	 * This method returns the token as a string, with the prefix (if it is not 0)
+	 * and without its last cut chars
+	 * @param token
+	 * @param prefix
+	 * @param cut
+	 * @return
+	 */
+	public String token(int token, char prefix, int cut) {
+		int length = ends[token] - starts[token] - cut;
+		int p = 0;
+		if (chars.length < length + 1)
+			chars = new char[(length + 1) * 2];
+		if (prefix != 0)
+			chars[p++] = prefix;
+		for (int i = 0; i < length; i++)
+			chars[p++] = source.charAt(starts[token] + i);
+		return new String(chars, 0, p);
+	}
+
+	/**
+	 * This class is a table of names (as the commands or the registers), that finds the index of a token
+	 * without creating a string for it (open addressing, with the same hash of the strings)
+	 */
+	public static class Names {
+
+		private String names[];
+		private int indexes[];
+		private int mask;
+
+		public Names(List<String> list) {
+			int size = 1;
+			while (size < list.size() * 2)
+				size <<= 1;
+			names = new String[size];
+			indexes = new int[size];
+			mask = size - 1;
+			for (int i = 0; i < list.size(); i++) {
+				String name = list.get(i);
+				int p = name.hashCode() & mask;
+				while ((names[p] != null) && !names[p].equals(name))
+					p = (p + 1) & mask;
+				if (names[p] == null) { //only the first index of a name is kept
+					names[p] = name;
+					indexes[p] = i;
+				}
+			}
+		}
+
+		/**
+		 * This method returns the index of the chars from start to end in the list, or -1 if they are not in it
+		 * @param s
+		 * @param start
+		 * @param end
+		 * @return
+		 */
+		public int find(CharSequence s, int start, int end) {
+			int hash = 0;
+			for (int i = start; i < end; i++)
+				hash = 31 * hash + s.charAt(i);
+			int length = end - start;
+			for (int p = hash & mask; names[p] != null; p = (p + 1) & mask) {
+				String name = names[p];
+				if ((name.length() == length) && same(name, s, start))
+					return indexes[p];
+			}
+			return -1;
+		}
+
+		public int find(Tokenizer tokenizer, int token) {
+			return find(tokenizer.source, tokenizer.starts[token], tokenizer.ends[token]);
+		}
+
+		private static boolean same(String name, CharSequence s, int start) {
+			for (int i = 0; i < name.length(); i++)
+				if (name.charAt(i) != s.charAt(start + i))
+					return false;
+			return true;
+		}
+	}
+
+}
@@ -2,7 +2,10 @@ package assembler;
 
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
 
 import org.junit.Test;
 
@@ -896,6 +899,42 @@ public class testAssembler {
 		
 	}
 	
+	@Test
+	public void testCheckLines() throws IOException {
+		Assembler ass = new Assembler();
+		ArrayList<String> lines = new ArrayList<>();
+		lines.add("var1");
+		lines.add("ldi 1");
+		lines.add("jeq %RPG2 %RPG3"); //the target is missing
+		lines.add("label1:");
+		lines.add("move %RPG0 var1 %RPG1"); //an operand too many
+		ass.setLines(lines);
+		ass.parse();
+		assertEquals(2, ass.getErrors().size());
+		assertTrue(ass.getErrors().get(0).startsWith("Line 3: jeq needs 3 operands"));
+		assertTrue(ass.getErrors().get(1).startsWith("Line 5: moveRegMem needs 2 operands"));
+		assertEquals("[25, 1]", ass.getObjProgram().toString()); //the wrong lines put nothing
+		assertFalse(ass.checkLines());
+
+		//the executable is not written
+		File file = File.createTempFile("wrong", ".dxf");
+		file.delete();
+		String filename = file.getPath().substring(0, file.getPath().length() - 4);
+		ass.makeExecutable(filename);
+		assertFalse(file.exists());
+
+		//the lines are numbered in the parallel parse too
+		ass = new Assembler();
+		ass.setLines(lines);
+		ass.setChunkSize(2);
+		ForkJoinPool pool = new ForkJoinPool(2);
+		ass.parse(pool);
+		pool.shutdown();
+		assertEquals(2, ass.getErrors().size());
+		assertTrue(ass.getErrors().get(0).startsWith("Line 3:"));
+		assertTrue(ass.getErrors().get(1).startsWith("Line 5:"));
+	}
+	
 	
 	//@Test
 	public void testRead() {
@@ -3,6 +3,8 @@ package components;
 public class Bus {
 	
 	private int data;
+	private StripedCounter puts; //counts the puts (null when the bus is not counted)
+	private Clock clock; //counts the cycles of the puts (null when the bus is not timed)
 	
 	
 	
@@ -10,12 +12,41 @@ public class Bus {
 		data = 0;
 	}
 
+	/**
+	 * This method sets the counter of the puts into this bus (null stops counting)
+	 * @param puts
+	 */
+	public void setCounter(StripedCounter puts) {
+		this.puts = puts;
+	}
+
+	/**
+	 * This method sets the clock that counts the cycles of the puts (null stops timing)
+	 * @param clock
+	 */
+	public void setClock(Clock clock) {
+		this.clock = clock;
+	}
+
 	/**
 	 * This method implements the storing of a data into the bus
 	 * @param data
 	 */
 	public void put(int data){
 		this.data = data;
+		if (puts != null)
+			puts.increment();
+		if (clock != null)
+			clock.tick(Clock.BUS_PUT);
+	}
+	
+	/**
+	 * This method changes the data without counting a put (nor its cycles).
+	 * It is used to restore a saved state, that is not a transfer of the program
+	 * @param data
+	 */
+	public void setData(int data) {
+		this.data = data;
 	}
 	
 	/**
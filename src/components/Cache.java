@@ -0,0 +1,326 @@
+package components;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * This class simulates a set associative cache in front of a memory (or of another cache, see setNext).
+ * Only the tags are kept (the data is always in the memory), so the cache shows how the accesses would behave:
+ * the hits, the misses, the lines evicted and the writes that reach the next level.
+ *
+ * The lines are replaced by LRU, FIFO or RANDOM. A write-back cache allocates the lines written and writes
+ * a dirty line to the next level only when it is evicted; a write-through cache writes every store to the
+ * next level and does not allocate the lines on a write miss.
+ *
+ * The statistics are kept per address region (see addRegion), the addresses out of all of them in the last one.
+ * The evictions and the write-backs count in the region of the line evicted
+ */
+public class Cache {
+
+	//the replacement policies
+	public static final int LRU = 0;
+	public static final int FIFO = 1;
+	public static final int RANDOM = 2;
+	public static final String REPLACEMENT_NAMES[] = {"lru", "fifo", "random"};
+
+	//the statistics of each region
+	public static final int HITS = 0;
+	public static final int MISSES = 1;
+	public static final int EVICTIONS = 2;
+	public static final int WRITE_BACKS = 3;
+	public static final int WRITE_THROUGHS = 4;
+	public static final int STATISTICS = 5;
+	public static final String STATISTICS_NAMES[] = {"hits", "misses", "evictions", "write-backs", "write-throughs"};
+
+	public static final String OTHER_REGION = "other";
+
+	private String name;
+	private int size;
+	private int lineSize;
+	private int lineBits;
+	private int ways;
+	private int setMask;
+	private int replacement;
+	private boolean writeBack;
+	private Cache next; //null if the next level is the memory
+
+	private int lines[]; //the line (address / lineSize) in each way of each set, -1 if the way is empty
+	private boolean dirty[];
+	private long stamps[]; //the last use (LRU) or the allocation (FIFO) of each way
+	private long time;
+	private Random random;
+
+	private ArrayList<String> regionNames;
+	private ArrayList<int[]> regions; //the first and the last address of each region
+	private ArrayList<long[]> statistics; //indexed as the regions, plus the other addresses
+
+	/**
+	 * @param name
+	 * @param size the amount of words (a power of 2)
+	 * @param lineSize the words in each line (a power of 2)
+	 * @param ways the lines in each set (size / lineSize for a fully associative cache)
+	 * @param replacement LRU, FIFO or RANDOM
+	 * @param writeBack true for write-back, false for write-through
+	 */
+	public Cache(String name, int size, int lineSize, int ways, int replacement, boolean writeBack) {
+		if (!isPowerOf2(size) || !isPowerOf2(lineSize) || !isPowerOf2(ways) || (lineSize * ways > size))
+			throw new IllegalArgumentException("Invalid cache "+name+": "+size+" words, "+lineSize+" words per line, "+ways+" ways");
+		if ((replacement < LRU) || (replacement > RANDOM))
+			throw new IllegalArgumentException("Unknown replacement "+replacement);
+		this.name = name;
+		this.size = size;
+		this.lineSize = lineSize;
+		this.lineBits = Integer.numberOfTrailingZeros(lineSize);
+		this.ways = ways;
+		this.setMask = size / (lineSize * ways) - 1;
+		this.replacement = replacement;
+		this.writeBack = writeBack;
+		int count = size / lineSize;
+		lines = new int[count];
+		for (int i = 0; i < count; i++)
+			lines[i] = -1;
+		dirty = new boolean[count];
+		stamps = new long[count];
+		random = new Random(0); //the same program always evicts the same lines
+		regionNames = new ArrayList<String>();
+		regions = new ArrayList<int[]>();
+		statistics = new ArrayList<long[]>();
+		statistics.add(new long[STATISTICS]);
+	}
+
+	/**
+	 * This method creates a cache from a text like "64/4/2/lru/wb":
+	 * the size, the line size, the ways, the replacement (lru, fifo or random) and wb (write-back) or wt (write-through)
+	 * @param name
+	 * @param configuration
+	 * @return
+	 */
+	public static Cache parse(String name, String configuration) {
+		String fields[] = configuration.split("/");
+		if (fields.length != 5)
+			throw new IllegalArgumentException("Expected size/line/ways/replacement/wb|wt: "+configuration);
+		int replacement = -1;
+		for (int i = 0; i < REPLACEMENT_NAMES.length; i++)
+			if (REPLACEMENT_NAMES[i].equalsIgnoreCase(fields[3]))
+				replacement = i;
+		if (!"wb".equalsIgnoreCase(fields[4]) && !"wt".equalsIgnoreCase(fields[4]))
+			throw new IllegalArgumentException("Expected wb or wt: "+fields[4]);
+		return new Cache(name, Integer.parseInt(fields[0]), Integer.parseInt(fields[1]), Integer.parseInt(fields[2]),
+				replacement, "wb".equalsIgnoreCase(fields[4]));
+	}
+
+	private static boolean isPowerOf2(int value) {
+		return (value > 0) && ((value & (value - 1)) == 0);
+	}
+
+	/**
+	 * This method sets the next level: the cache that receives the misses and the writes of this one
+	 * (null if it is the memory)
+	 * @param next
+	 */
+	public void setNext(Cache next) {
+		this.next = next;
+	}
+
+	public Cache getNext() {
+		return next;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * This method adds a region, from the address start to the address end (inclusive).
+	 * An address in more than one region counts in the first one added
+	 * @param name
+	 * @param start
+	 * @param end
+	 */
+	public void addRegion(String name, int start, int end) {
+		if (end < start)
+			throw new IllegalArgumentException("The region "+name+" ends before it starts: "+start+"-"+end);
+		regionNames.add(name);
+		regions.add(new int[] {start, end});
+		statistics.add(statistics.size() - 1, new long[STATISTICS]); //the other addresses are kept last
+	}
+
+	/**
+	 * This method returns the names of the regions, followed by OTHER_REGION
+	 * @return
+	 */
+	public ArrayList<String> getRegions() {
+		ArrayList<String> names = new ArrayList<String>(regionNames);
+		names.add(OTHER_REGION);
+		return names;
+	}
+
+	private long[] region(int address) {
+		for (int i = 0; i < regions.size(); i++) {
+			int region[] = regions.get(i);
+			if ((address >= region[0]) && (address <= region[1]))
+				return statistics.get(i);
+		}
+		return statistics.get(statistics.size() - 1);
+	}
+
+	/**
+	 * This method reads the address
+	 * @param address
+	 * @return true if it was a hit
+	 */
+	public boolean read(int address) {
+		return access(address, false);
+	}
+
+	/**
+	 * This method writes the address
+	 * @param address
+	 * @return true if it was a hit
+	 */
+	public boolean write(int address) {
+		return access(address, true);
+	}
+
+	private boolean access(int address, boolean write) {
+		long counts[] = region(address);
+		int line = address >>> lineBits;
+		int first = (line & setMask) * ways;
+		for (int way = first; way < first + ways; way++)
+			if (lines[way] == line) {
+				counts[HITS]++;
+				if (replacement == LRU)
+					stamps[way] = ++time;
+				if (write) {
+					if (writeBack)
+						dirty[way] = true;
+					else
+						writeThrough(address, counts);
+				}
+				return true;
+			}
+
+		counts[MISSES]++;
+		if (write && !writeBack) { //no allocation on a write miss
+			writeThrough(address, counts);
+			return false;
+		}
+		int victim = victim(first);
+		if (lines[victim] >= 0) {
+			int evicted = lines[victim] << lineBits;
+			long evictedCounts[] = region(evicted);
+			evictedCounts[EVICTIONS]++;
+			if (dirty[victim]) {
+				evictedCounts[WRITE_BACKS]++;
+				if (next != null)
+					next.write(evicted);
+			}
+		}
+		if (next != null) //the line is filled from the next level
+			next.read(address);
+		lines[victim] = line;
+		dirty[victim] = write;
+		stamps[victim] = ++time;
+		return false;
+	}
+
+	private void writeThrough(int address, long counts[]) {
+		counts[WRITE_THROUGHS]++;
+		if (next != null)
+			next.write(address);
+	}
+
+	/**
+	 * This method chooses the way of the set that receives a new line: an empty one or the one
+	 * chosen by the replacement policy
+	 * @param first the first way of the set
+	 * @return
+	 */
+	private int victim(int first) {
+		for (int way = first; way < first + ways; way++)
+			if (lines[way] < 0)
+				return way;
+		if (replacement == RANDOM)
+			return first + random.nextInt(ways);
+		int victim = first;
+		for (int way = first + 1; way < first + ways; way++)
+			if (stamps[way] < stamps[victim])
+				victim = way;
+		return victim;
+	}
+
+	/**
+	 * This method returns a statistic of a region
+	 * @param region the name of the region (or OTHER_REGION)
+	 * @param statistic HITS, MISSES, EVICTIONS, WRITE_BACKS or WRITE_THROUGHS
+	 * @return
+	 */
+	public long get(String region, int statistic) {
+		int index = OTHER_REGION.equals(region) ? regionNames.size() : regionNames.indexOf(region);
+		if (index < 0)
+			throw new IllegalArgumentException("Unknown region "+region);
+		return statistics.get(index)[statistic];
+	}
+
+	/**
+	 * This method returns a statistic of all the regions together
+	 * @param statistic
+	 * @return
+	 */
+	public long get(int statistic) {
+		long sum = 0;
+		for (long counts[] : statistics)
+			sum += counts[statistic];
+		return sum;
+	}
+
+	/**
+	 * This method returns the fraction of the accesses that were hits (0 if there was no access)
+	 * @return
+	 */
+	public double getHitRate() {
+		long accesses = get(HITS) + get(MISSES);
+		return (accesses == 0) ? 0 : (double) get(HITS) / accesses;
+	}
+
+	/**
+	 * This method empties the cache and clears the statistics
+	 */
+	public void reset() {
+		for (int i = 0; i < lines.length; i++) {
+			lines[i] = -1;
+			dirty[i] = false;
+		}
+		time = 0;
+		random = new Random(0);
+		for (long counts[] : statistics)
+			for (int i = 0; i < STATISTICS; i++)
+				counts[i] = 0;
+	}
+
+	/**
+	 * This method returns the statistics as text, one line per region (only the regions accessed)
+	 * @return
+	 */
+	public String report() {
+		StringBuilder text = new StringBuilder();
+		text.append(String.format("%s: %d words, %d words per line, %d ways, %s, %s, hit rate %.2f%%%n", name, size,
+				lineSize, ways, REPLACEMENT_NAMES[replacement], writeBack ? "write-back" : "write-through", getHitRate() * 100));
+		text.append(String.format("  %-12s", "region"));
+		for (String statistic : STATISTICS_NAMES)
+			text.append(String.format(" %14s", statistic));
+		text.append(String.format("%n"));
+		ArrayList<String> names = getRegions();
+		for (int i = 0; i < names.size(); i++) {
+			long counts[] = statistics.get(i);
+			if (counts[HITS] + counts[MISSES] + counts[EVICTIONS] == 0)
+				continue;
+			text.append(String.format("  %-12s", names.get(i)));
+			for (long count : counts)
+				text.append(String.format(" %14d", count));
+			text.append(String.format("%n"));
+		}
+		return text.toString();
+	}
+
+}
@@ -0,0 +1,135 @@
+package components;
+
+/**
+ * This class counts the simulated cycles of the components attached to it.
+ * Each event (a bus put, a memory read, a register store, an ula operation...) costs some cycles,
+ * that can be changed at any time. Every component attached calls tick with its event
+ * (see the setClock method of each component), so the cycles show how long the datapath took.
+ *
+ * A clock is not thread safe: it belongs to only one architecture. But its cycles can also be added to
+ * a counter shared by many architectures (see setCounter)
+ */
+public class Clock {
+
+	public static final int BUS_PUT = 0;
+	public static final int MEMORY_READ = 1;
+	public static final int MEMORY_STORE = 2;
+	public static final int REGISTER_STORE = 3;
+	public static final int ULA_ADD = 4;
+	public static final int ULA_SUB = 5;
+	public static final int ULA_MUL = 6;
+	public static final int ULA_INC = 7;
+	public static final int EVENTS = 8;
+
+	//the names of the events, indexed as the events
+	public static final String EVENT_NAMES[] = {"bus", "read", "store", "register", "add", "sub", "mul", "inc"};
+
+	private int costs[]; //the cycles of each event
+	private long cycles;
+	private long stallCycles; //the cycles spent waiting (see stall), included in the cycles
+	private StripedCounter counter; //also counts the cycles (null when they are not counted anywhere else)
+
+	/**
+	 * This constructor uses the default costs: one cycle for each bus put, memory access and
+	 * ula operation (the other cycles of a multiplication are counted by the ula itself: see Ula.setMultiplyLatency).
+	 * A register store costs nothing, since the register latches in the same cycle the bus is driven
+	 */
+	public Clock() {
+		costs = new int[EVENTS];
+		costs[BUS_PUT] = 1;
+		costs[MEMORY_READ] = 1;
+		costs[MEMORY_STORE] = 1;
+		costs[REGISTER_STORE] = 0;
+		costs[ULA_ADD] = 1;
+		costs[ULA_SUB] = 1;
+		costs[ULA_MUL] = 1;
+		costs[ULA_INC] = 1;
+	}
+
+	/**
+	 * This method counts the cycles of an event
+	 * @param event
+	 */
+	public void tick(int event) {
+		int cost = costs[event];
+		cycles += cost;
+		if ((counter != null) && (cost != 0))
+			counter.add(cost);
+	}
+
+	/**
+	 * This method sets a counter that receives all the cycles counted from now on (null stops it).
+	 * Unlike the clock, the counter is not cleared by reset
+	 * @param counter
+	 */
+	public void setCounter(StripedCounter counter) {
+		this.counter = counter;
+	}
+
+	public StripedCounter getCounter() {
+		return counter;
+	}
+
+	/**
+	 * This method changes the cycles of an event
+	 * @param event
+	 * @param cost
+	 */
+	public void setCost(int event, int cost) {
+		if (cost < 0)
+			throw new IllegalArgumentException("Negative cost for "+EVENT_NAMES[event]+": "+cost);
+		costs[event] = cost;
+	}
+
+	public int getCost(int event) {
+		return costs[event];
+	}
+
+	/**
+	 * This method returns the event with this name (see EVENT_NAMES), or -1 if there is none
+	 * @param name
+	 * @return
+	 */
+	public static int event(String name) {
+		for (int i = 0; i < EVENT_NAMES.length; i++)
+			if (EVENT_NAMES[i].equals(name))
+				return i;
+		return -1;
+	}
+
+	/**
+	 * This method counts the extra cycles of a component that takes more than one cycle to finish
+	 * its operation (the multiplier of the ula, for example)
+	 * @param cycles
+	 */
+	public void advance(long cycles) {
+		this.cycles += cycles;
+		if ((counter != null) && (cycles != 0))
+			counter.add(cycles);
+	}
+
+	/**
+	 * This method counts cycles spent waiting for a component (a full write buffer, for example)
+	 * @param cycles
+	 */
+	public void stall(long cycles) {
+		this.cycles += cycles;
+		stallCycles += cycles;
+		if ((counter != null) && (cycles != 0))
+			counter.add(cycles);
+	}
+
+	public long getCycles() {
+		return cycles;
+	}
+
+	public long getStallCycles() {
+		return stallCycles;
+	}
+
+	public void reset() {
+		cycles = 0;
+		stallCycles = 0;
+	}
+
+}
@@ -0,0 +1,185 @@
+package components;
+
+/**
+ * This class is the memory of one core of a multi-core architecture: the positions of the shared region
+ * (see SharedMemory) are read and written in the shared memory, and all the others in the private pages of the core
+ * (so each core keeps its own program and its own data).
+ *
+ * Each access to the shared region goes through a private cache of the core: a direct mapped cache that keeps
+ * only the lines (the data is always in the shared memory), so the MESI states of the directory show the
+ * hits, the misses, the invalidations and the evictions the accesses would cause.
+ *
+ * A core must be used by only one thread, since the private cache and the statistics are not shared.
+ * A store into the shared region warns only the listeners of the core that stores, so the other cores
+ * must not keep decoded instructions of it (the programs must not change the shared code)
+ */
+public class CoherentMemory extends Memory {
+
+	public static final int DEFAULT_CACHE_LINES = 16;
+	private static final int PADDING = 8; //longs after the statistics (64 bytes), so two cores never count in the same line
+
+	private Bus bus;
+	private SharedMemory shared;
+	private int core;
+	private int lines[]; //the line in each entry of the private cache, -1 if the entry is empty
+	private long statistics[];
+
+	/**
+	 * @param size
+	 * @param bus
+	 * @param shared
+	 * @param core the number of the core (from 0 to the amount of cores of the shared memory - 1)
+	 * @param cacheLines the amount of lines of the private cache (a power of 2)
+	 */
+	public CoherentMemory(int size, Bus bus, SharedMemory shared, int core, int cacheLines) {
+		super(size, bus);
+		if ((core < 0) || (core >= shared.getCores()))
+			throw new IllegalArgumentException("Invalid core "+core+" of "+shared.getCores());
+		if ((cacheLines <= 0) || ((cacheLines & (cacheLines - 1)) != 0))
+			throw new IllegalArgumentException("Invalid cache: "+cacheLines+" lines");
+		this.bus = bus;
+		this.shared = shared;
+		this.core = core;
+		lines = new int[cacheLines];
+		for (int i = 0; i < cacheLines; i++)
+			lines[i] = -1;
+		statistics = new long[SharedMemory.STATISTICS + PADDING];
+	}
+
+	public SharedMemory getSharedMemory() {
+		return shared;
+	}
+
+	public int getCore() {
+		return core;
+	}
+
+	/**
+	 * This method puts the line of the position into the private cache (evicting the line found in its entry)
+	 * and then gets it from the directory, for reading or for writing
+	 * @param position
+	 * @param write
+	 */
+	private void access(int position, boolean write) {
+		int line = shared.line(position);
+		int entry = line & (lines.length - 1);
+		if (lines[entry] != line) {
+			if (lines[entry] >= 0)
+				shared.release(core, lines[entry], statistics);
+			lines[entry] = line;
+		}
+		if (write)
+			shared.acquireWrite(core, line, statistics);
+		else
+			shared.acquireRead(core, line, statistics);
+	}
+
+	@Override
+	public void read() {
+		int position = bus.get();
+		super.read();
+		if (shared.contains(position)) {
+			access(position, false);
+			bus.setData(shared.get(position)); //the bus was already counted by the private read
+		}
+	}
+
+	/**
+	 * The positions of the shared region are always read from the shared memory, since another core may have changed them
+	 */
+	@Override
+	public void readCached(int data) {
+		if (shared.contains(bus.get()))
+			read();
+		else
+			super.readCached(data);
+	}
+
+	@Override
+	public void store() {
+		int position = getStorePosition();
+		int data = bus.get();
+		super.store();
+		if ((position >= 0) && shared.contains(position)) {
+			access(position, true);
+			shared.set(position, data);
+		}
+	}
+
+	@Override
+	public int getData(int position) {
+		if (shared.contains(position)) {
+			access(position, false);
+			return shared.get(position);
+		}
+		return super.getData(position);
+	}
+
+	@Override
+	public void setData(int position, int data) {
+		super.setData(position, data); //the listeners are warned
+		if (shared.contains(position)) {
+			access(position, true);
+			shared.set(position, data);
+		}
+	}
+
+	/**
+	 * This method copies all the memory positions into the array, the shared region taken from the shared memory
+	 * (without any coherence action)
+	 * @param data
+	 */
+	@Override
+	public void copyTo(int data[]) {
+		super.copyTo(data);
+		int end = Math.min(shared.getEnd(), getSize());
+		for (int i = shared.getStart(); i < end; i++)
+			data[i] = shared.get(i);
+	}
+
+	/**
+	 * This method returns the memory positions (see Memory.getDataList), the shared region updated
+	 * from the shared memory (without any coherence action)
+	 * @return
+	 */
+	@Override
+	public int[] getDataList() {
+		int data[] = super.getDataList();
+		int end = Math.min(shared.getEnd(), getSize());
+		for (int i = shared.getStart(); i < end; i++)
+			data[i] = shared.get(i);
+		return data;
+	}
+
+	/**
+	 * This method copies the shared region of the private pages (for example, the data loaded with the program)
+	 * into the shared memory
+	 */
+	public void publish() {
+		int end = Math.min(shared.getEnd(), getSize());
+		for (int i = shared.getStart(); i < end; i++)
+			shared.set(i, super.getData(i));
+	}
+
+	/**
+	 * This method returns the statistics of the core, indexed by the statistics constants of SharedMemory
+	 * @return
+	 */
+	public long[] getStatistics() {
+		long copy[] = new long[SharedMemory.STATISTICS];
+		System.arraycopy(statistics, 0, copy, 0, copy.length);
+		return copy;
+	}
+
+	/**
+	 * This method empties the private cache and clears the statistics
+	 * (the directory is not changed: see SharedMemory.reset)
+	 */
+	public void reset() {
+		for (int i = 0; i < lines.length; i++)
+			lines[i] = -1;
+		for (int i = 0; i < statistics.length; i++)
+			statistics[i] = 0;
+	}
+
+}
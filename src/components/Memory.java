@@ -1,30 +1,226 @@
 package components;
 
+import java.nio.IntBuffer;
+
+/**
+ * The memory is divided into pages of PAGE_SIZE positions. A page is created only when one of
+ * its positions is written, so a large memory costs only the pages the program really uses
+ * (all the pages never written are the same page, full of zeros).
+ *
+ * A memory can be forked: the fork shares all the pages with the original memory, and a shared page
+ * is copied only before it is written (copy on write). So a program loaded once can be cloned
+ * into many memories, each one copying only the pages it changes.
+ */
 public class Memory {
-	
+
+	public static final int PAGE_BITS = 10;
+	public static final int PAGE_SIZE = 1 << PAGE_BITS;
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+	private static final int ZERO_PAGE[] = new int[PAGE_SIZE]; //used by all the pages never written
+
 	private Bus bus;
 	private int storePosition; //this value indicates that the memory has read an
 					// address and is waiting for a data to be storesd in this position
 	private int size;
-	private int dataList[];
-	
+	private int limit; //size + Integer.MIN_VALUE, so a position is checked with only one compare
+	private int pages[][];
+	private boolean shared[]; //these pages must be copied before written
+	private int allocatedPages;
+	private MemoryListener listeners[]; //these components (if there is any) are warned after each store
+	private int exposed[]; //the page given by getDataList (it can be written without warning the listeners)
+	private StripedCounter reads; //counts the read calls (null when the memory is not counted)
+	private StripedCounter stores; //counts the store calls
+	private Clock clock; //counts the cycles of the read and store calls (null when the memory is not timed)
+	private WriteBuffer writeBuffer; //the stores wait in it (null when there is no write buffer)
+	private Clock bufferClock; //the time of the write buffer
+
 	public Memory(int size, Bus bus) {
 		storePosition = -1; //negative values indicates the memory is not storing
+		listeners = new MemoryListener[0];
 		this.size = size;
-		dataList = new int[size];
+		this.limit = size + Integer.MIN_VALUE;
 		this.bus = bus;
-		for (int i=0;i<size;i++) {
-			dataList[i] = 0;
+		int pagesCount = (size + PAGE_MASK) >>> PAGE_BITS;
+		pages = new int[pagesCount][];
+		shared = new boolean[pagesCount];
+		for (int i=0;i<pagesCount;i++) { //all the positions are 0
+			pages[i] = ZERO_PAGE;
+			shared[i] = true;
+		}
+	}
+
+	/**
+	 * This method creates a new memory, attached to the bus, with the same data of this memory.
+	 * No page is copied now: both memories share all the pages, and each one copies a page
+	 * only before writing it. The listeners are not copied
+	 * @param bus
+	 * @return
+	 */
+	public Memory fork(Bus bus) {
+		Memory fork = new Memory(size, bus);
+		fork.share(this);
+		return fork;
+	}
+
+	/**
+	 * This method overwrites all the positions of this memory with the data of source
+	 * (that must have the same size), sharing its pages instead of copying them.
+	 * The listeners are warned only once (see MemoryListener.reloaded)
+	 * @param source
+	 */
+	public void share(Memory source) {
+		if (source.size != size)
+			throw new IllegalArgumentException("The memories have different sizes: "+source.size+" and "+size);
+		for (int i=0;i<pages.length;i++) {
+			pages[i] = source.pages[i];
+			shared[i] = true;
+			source.shared[i] = true; //from now on, the source must copy its pages too
 		}
+		reloaded();
 	}
 
 	/**
-	 * This method is used for TDD and Simulation purposes only
+	 * This method is used for TDD and Simulation purposes only.
+	 * It works only when the memory has just one page (up to PAGE_SIZE positions), and
+	 * the array returned is the memory itself only until the memory is forked.
+	 * The array can be written without warning the listeners, so they are warned now
+	 * and again each time refresh() is called
 	 * NOT TESTED
 	 * @return
 	 */
 	public int[] getDataList() {
-		return dataList;
+		if (pages.length != 1)
+			throw new IllegalStateException("The memory has "+pages.length+" pages");
+		exposed = writablePage(0);
+		reloaded();
+		return exposed;
+	}
+
+	/**
+	 * This method warns the listeners that the memory may have changed if the array given by getDataList
+	 * is still the memory itself (it may have been written since then). It must be used before each run
+	 */
+	public void refresh() {
+		if (exposed == null)
+			return;
+		if (exposed == pages[0])
+			reloaded();
+		else
+			exposed = null;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * This method returns how many pages were allocated by this memory
+	 * (the pages still shared with other memories are not counted)
+	 * @return
+	 */
+	public int getAllocatedPages() {
+		return allocatedPages;
+	}
+
+	/**
+	 * This method returns the page, copying it before if it is shared.
+	 * The last page has only the positions up to the memory size
+	 * @param page
+	 * @return
+	 */
+	private int[] writablePage(int page) {
+		if (shared[page]) {
+			int length = Math.min(PAGE_SIZE, size - (page << PAGE_BITS));
+			int copy[] = new int[length];
+			System.arraycopy(pages[page], 0, copy, 0, length);
+			pages[page] = copy;
+			shared[page] = false;
+			allocatedPages++;
+		}
+		return pages[page];
+	}
+
+	private void write(int position, int data) {
+		writablePage(position >>> PAGE_BITS)[position & PAGE_MASK] = data;
+	}
+
+	/**
+	 * This method attaches a listener to this memory.
+	 * The listeners are warned every time a position is overwritten
+	 * @param listener
+	 */
+	public void addListener(MemoryListener listener) {
+		MemoryListener newListeners[] = new MemoryListener[listeners.length + 1];
+		System.arraycopy(listeners, 0, newListeners, 0, listeners.length);
+		newListeners[listeners.length] = listener;
+		listeners = newListeners;
+	}
+
+	/**
+	 * This method detaches a listener from this memory
+	 * @param listener
+	 */
+	public void removeListener(MemoryListener listener) {
+		for (int i = 0; i < listeners.length; i++)
+			if (listeners[i] == listener) {
+				MemoryListener newListeners[] = new MemoryListener[listeners.length - 1];
+				System.arraycopy(listeners, 0, newListeners, 0, i);
+				System.arraycopy(listeners, i + 1, newListeners, i, newListeners.length - i);
+				listeners = newListeners;
+				return;
+			}
+	}
+
+	/**
+	 * This method warns all the listeners that the position was overwritten
+	 * @param position
+	 */
+	private void stored(int position) {
+		for (MemoryListener listener : listeners)
+			listener.stored(position);
+	}
+
+	/**
+	 * This method warns all the listeners that many positions were overwritten at once
+	 */
+	private void reloaded() {
+		for (MemoryListener listener : listeners)
+			listener.reloaded();
+	}
+
+	/**
+	 * This method sets the counters of the read and store calls (null stops counting)
+	 * @param reads
+	 * @param stores
+	 */
+	public void setCounters(StripedCounter reads, StripedCounter stores) {
+		this.reads = reads;
+		this.stores = stores;
+	}
+
+	/**
+	 * This method sets the clock that counts the cycles of the read and store calls (null stops timing)
+	 * @param clock
+	 */
+	public void setClock(Clock clock) {
+		this.clock = clock;
+	}
+
+	/**
+	 * This method puts a write buffer in front of this memory (null removes it).
+	 * The stores (the second call of the store handshake) and the data reads (see readData) are given to the buffer
+	 * at the current cycle of the clock, and the cycles a store waits for a free entry are stalled in the clock.
+	 * The memory is still written at once, so the buffer changes only the time
+	 * @param writeBuffer
+	 * @param clock
+	 */
+	public void setWriteBuffer(WriteBuffer writeBuffer, Clock clock) {
+		this.writeBuffer = writeBuffer;
+		this.bufferClock = clock;
+	}
+
+	public WriteBuffer getWriteBuffer() {
+		return writeBuffer;
 	}
 
 	/**
@@ -32,36 +228,177 @@ public class Memory {
 	 * @param position
 	 */
 	public void store() {
+		if (stores != null)
+			stores.increment();
+		if (clock != null)
+			clock.tick(Clock.MEMORY_STORE);
 		if (storePosition < 0) { //the storing is just starting
 			this.storePosition = bus.get();
 		}
 		else {//the storing was initiated, in the bus is the data
-			this.dataList[storePosition] = bus.get();
+			if (writeBuffer != null)
+				bufferClock.stall(writeBuffer.store(storePosition, bufferClock.getCycles()));
+			write(storePosition, bus.get());
+			stored(storePosition);
 			storePosition = -1; //no storing is being performed anymore
 		}
 	}
-	
+
 	/**
 	 * This method gets the data from the position and stores it into the bus
 	 * @param position
 	 */
 	public void read() {
-		if ((bus.get() < size)&&(bus.get() >=0))
-			bus.put(dataList[bus.get()]);
+		if (reads != null)
+			reads.increment();
+		if (clock != null)
+			clock.tick(Clock.MEMORY_READ);
+		int position = bus.get();
+		if (position + Integer.MIN_VALUE < limit) //the same as (position >= 0) && (position < size)
+			bus.put(pages[position >>> PAGE_BITS][position & PAGE_MASK]);
+	}
+
+	/**
+	 * This method reads a data operand (and not a word of the program: a command or its operands), just like read().
+	 * Only these reads are given to the write buffer, since only they can be forwarded from a pending store
+	 */
+	public void readData() {
+		int position = bus.get();
+		read();
+		if (writeBuffer != null)
+			writeBuffer.load(position, bufferClock.getCycles());
+	}
+
+	/**
+	 * This method does what read() does for a position whose data is already known (kept by an instruction cache):
+	 * the data goes into the bus and the read is counted and timed, but the memory is not accessed
+	 * @param data the data in the position found in the bus
+	 */
+	public void readCached(int data) {
+		if (reads != null)
+			reads.increment();
+		if (clock != null)
+			clock.tick(Clock.MEMORY_READ);
+		if (bus.get() + Integer.MIN_VALUE < limit)
+			bus.put(data);
+	}
+
+	/**
+	 * This method returns the data in position without using the bus.
+	 * Just like read(), positions out of the memory range make no effect,
+	 * so the position itself is returned (it would remain in the bus)
+	 * @param position
+	 * @return
+	 */
+	public int getData(int position) {
+		if (position + Integer.MIN_VALUE < limit)
+			return pages[position >>> PAGE_BITS][position & PAGE_MASK];
+		return position;
+	}
+
+	/**
+	 * This method stores data into position without using the bus (and without the
+	 * storing handshake). It is used by the execution engines that don't simulate the buses
+	 * @param position
+	 * @param data
+	 */
+	public void setData(int position, int data) {
+		write(position, data);
+		stored(position);
 	}
-	
+
 	/**
 	 * Special method used in statusm memory to store the data in the position 0
 	 */
-	public void storeIn0() { 
-		this.dataList[0] = bus.get();
+	public void storeIn0() {
+		if (stores != null)
+			stores.increment();
+		if (clock != null)
+			clock.tick(Clock.MEMORY_STORE);
+		write(0, bus.get());
+		stored(0);
 	}
 
 	/**
 	 * Special method used in statusm memory to store the data in the position 1
 	 */
-	public void storeIn1() { 
-		this.dataList[1] = bus.get();
+	public void storeIn1() {
+		if (stores != null)
+			stores.increment();
+		if (clock != null)
+			clock.tick(Clock.MEMORY_STORE);
+		write(1, bus.get());
+		stored(1);
+	}
+
+	/**
+	 * This method returns the position waiting for a data in the store handshake
+	 * (negative if the memory is not storing)
+	 * @return
+	 */
+	public int getStorePosition() {
+		return storePosition;
+	}
+
+	public void setStorePosition(int storePosition) {
+		this.storePosition = storePosition;
+	}
+
+	/**
+	 * This method copies all the memory positions into the array, that must have the memory size
+	 * @param data
+	 */
+	public void copyTo(int data[]) {
+		for (int i = 0; i < pages.length; i++) {
+			int start = i << PAGE_BITS;
+			System.arraycopy(pages[i], 0, data, start, Math.min(PAGE_SIZE, size - start));
+		}
+	}
+
+	/**
+	 * This method overwrites all the memory positions with the array, that must have the memory size.
+	 * Only the positions that really change are written, and the listeners are warned about each one of them.
+	 * So what they keep from the other positions (the program, when a snapshot of it is restored) is still valid,
+	 * and a shared page with the same data is not copied
+	 * @param data
+	 */
+	public void copyFrom(int data[]) {
+		for (int i = 0; i < pages.length; i++) {
+			int start = i << PAGE_BITS;
+			int length = Math.min(PAGE_SIZE, size - start);
+			int page[] = pages[i];
+			for (int j = 0; j < length; j++)
+				if (page[j] != data[start + j]) {
+					page = writablePage(i);
+					page[j] = data[start + j];
+					stored(start + j);
+				}
+		}
+	}
+
+	/**
+	 * This method overwrites length positions, starting in position, with the next data of the buffer.
+	 * The data goes straight into the pages (a page entirely overwritten is not copied before).
+	 * Just like copyFrom(), the listeners are warned only once
+	 * @param position
+	 * @param data
+	 * @param length
+	 */
+	public void load(int position, IntBuffer data, int length) {
+		int end = position + length;
+		while (position < end) {
+			int page = position >>> PAGE_BITS;
+			int offset = position & PAGE_MASK;
+			int count = Math.min(end - position, Math.min(PAGE_SIZE, size - (page << PAGE_BITS)) - offset);
+			if (shared[page] && (offset == 0) && (count == Math.min(PAGE_SIZE, size - position))) {
+				pages[page] = new int[count]; //the whole page is overwritten
+				shared[page] = false;
+				allocatedPages++;
+			}
+			data.get(writablePage(page), offset, count);
+			position += count;
+		}
+		reloaded();
 	}
 
 }
@@ -0,0 +1,17 @@
+package components;
+
+/**
+ * This interface is implemented by the objects that create the main memory of an architecture,
+ * so a memory with another behavior (for example, a CoherentMemory) can be attached to the external bus
+ */
+public interface MemoryFactory {
+
+	/**
+	 * This method creates the memory
+	 * @param size
+	 * @param bus the bus the memory is attached to
+	 * @return
+	 */
+	public Memory create(int size, Bus bus);
+
+}
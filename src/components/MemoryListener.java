@@ -0,0 +1,22 @@
+package components;
+
+/**
+ * This interface is implemented by the components that must be warned 
+ * every time a position of a memory is overwritten
+ * (for example, caches that keep copies of the memory contents)
+ */
+public interface MemoryListener {
+
+	/**
+	 * This method is called by the memory just after a data was stored into position
+	 * @param position
+	 */
+	public void stored(int position);
+
+	/**
+	 * This method is called by the memory after many positions were overwritten at once
+	 * (a program loaded, a snapshot restored, a fork...), so anything read from the memory must be discarded
+	 */
+	public void reloaded();
+
+}
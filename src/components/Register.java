@@ -9,6 +9,7 @@ public class Register {
 	
 	private int data;
 	private Bus busExt, busInt;
+	private Clock clock; //counts the cycles of the stores (null when the register is not timed)
 	
 	/**
 	 * Default constructor
@@ -24,6 +25,15 @@ public class Register {
 		return data;
 	}
 	
+	/**
+	 * This method changes the data without using the buses.
+	 * It is used only by the execution engines that don't simulate the buses
+	 * @param data
+	 */
+	public void setData(int data) {
+		this.data = data;
+	}
+	
 	/**
 	 * This special constructor is used to make Flags register
 	 * with special bits for special informations
@@ -45,6 +55,14 @@ public class Register {
 		return registerName;
 	}
 
+	/**
+	 * This method sets the clock that counts the cycles of the stores from the buses (null stops timing)
+	 * @param clock
+	 */
+	public void setClock(Clock clock) {
+		this.clock = clock;
+	}
+
 	/**
 	 * This method allows the UC or the ULA to access any special bit
 	 * @param pos
@@ -69,6 +87,8 @@ public class Register {
 	 */
 	public void store() {
 		data = busExt.get();
+		if (clock != null)
+			clock.tick(Clock.REGISTER_STORE);
 	}
 	
 	/**
@@ -90,6 +110,8 @@ public class Register {
 	 */
 	public void internalStore() {
 		data = busInt.get();
+		if (clock != null)
+			clock.tick(Clock.REGISTER_STORE);
 	}
 
 
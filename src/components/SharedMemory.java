@@ -0,0 +1,244 @@
+package components;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * This class is a memory region shared by many cores (see CoherentMemory), each one running in its own thread.
+ * The data is kept only here (in an atomic array, so a store is seen at once by all the cores), and a directory
+ * keeps the MESI state of each line in the private caches of the cores:
+ * - MODIFIED: only one core has the line, and it was written
+ * - EXCLUSIVE: only one core has the line, not written yet (so it is written without any bus transaction)
+ * - SHARED: one or more cores have the line, only for reading
+ * - INVALID: the core does not have the line
+ *
+ * The directory entry of a line is only one word (the cores that have it, the owner and the dirty bit),
+ * so each transition is a compare and set of that word, and the cores never lock each other.
+ * Each core counts its own statistics (see the statistics constants) in its own array, so the counting
+ * is not shared either: the totals are summed after the cores stop
+ */
+public class SharedMemory {
+
+	public static final int MAX_CORES = 16;
+
+	//the states of a line in a core
+	public static final int INVALID = 0;
+	public static final int SHARED = 1;
+	public static final int EXCLUSIVE = 2;
+	public static final int MODIFIED = 3;
+	public static final String STATE_NAMES[] = {"I", "S", "E", "M"};
+
+	//the statistics of each core
+	public static final int READ_HITS = 0;
+	public static final int READ_MISSES = 1; //a bus read (BusRd)
+	public static final int WRITE_HITS = 2;
+	public static final int WRITE_MISSES = 3; //a bus read for ownership (BusRdX)
+	public static final int UPGRADES = 4; //a write into a shared line (BusUpgr)
+	public static final int INVALIDATIONS = 5; //the copies invalidated in the other cores
+	public static final int WRITE_BACKS = 6; //the modified lines written back (when taken by another core or evicted)
+	public static final int EVICTIONS = 7;
+	public static final int STATISTICS = 8;
+	public static final String STATISTICS_NAMES[] = {"read hits", "read misses", "write hits", "write misses",
+			"upgrades", "invalidations", "write-backs", "evictions"};
+
+	//the fields of a directory entry
+	private static final int SHARERS = (1 << MAX_CORES) - 1; //a bit per core
+	private static final int OWNER_SHIFT = MAX_CORES; //the owner plus 1 (0 if there is no owner)
+	private static final int OWNER_MASK = 0x1f;
+	private static final int DIRTY = 1 << (OWNER_SHIFT + 5);
+
+	private int start;
+	private int end;
+	private int lineSize;
+	private int lineBits;
+	private int cores;
+	private AtomicIntegerArray data;
+	private AtomicIntegerArray directory;
+
+	/**
+	 * @param start the first position of the region
+	 * @param end the position after the last one
+	 * @param lineSize the words in each line (a power of 2)
+	 * @param cores the amount of cores (up to MAX_CORES)
+	 */
+	public SharedMemory(int start, int end, int lineSize, int cores) {
+		if ((start < 0) || (end <= start) || (lineSize <= 0) || ((lineSize & (lineSize - 1)) != 0))
+			throw new IllegalArgumentException("Invalid shared memory: "+start+"-"+end+", "+lineSize+" words per line");
+		if ((cores <= 0) || (cores > MAX_CORES))
+			throw new IllegalArgumentException("Invalid amount of cores: "+cores+" (up to "+MAX_CORES+")");
+		this.start = start;
+		this.end = end;
+		this.lineSize = lineSize;
+		this.lineBits = Integer.numberOfTrailingZeros(lineSize);
+		this.cores = cores;
+		data = new AtomicIntegerArray(end - start);
+		directory = new AtomicIntegerArray((end - start + lineSize - 1) >>> lineBits);
+	}
+
+	public int getStart() {
+		return start;
+	}
+
+	public int getEnd() {
+		return end;
+	}
+
+	public int getLineSize() {
+		return lineSize;
+	}
+
+	public int getCores() {
+		return cores;
+	}
+
+	/**
+	 * This method tells if the position is in the region
+	 * @param position
+	 * @return
+	 */
+	public boolean contains(int position) {
+		return (position >= start) && (position < end);
+	}
+
+	/**
+	 * This method returns the line of a position of the region
+	 * @param position
+	 * @return
+	 */
+	public int line(int position) {
+		return (position - start) >>> lineBits;
+	}
+
+	/**
+	 * This method returns the data in a position of the region, without any coherence action
+	 * @param position
+	 * @return
+	 */
+	public int get(int position) {
+		return data.get(position - start);
+	}
+
+	/**
+	 * This method writes the data in a position of the region, without any coherence action
+	 * @param position
+	 * @param value
+	 */
+	public void set(int position, int value) {
+		data.set(position - start, value);
+	}
+
+	/**
+	 * This method returns the state of the line of the position in the cache of the core
+	 * @param core
+	 * @param position
+	 * @return INVALID, SHARED, EXCLUSIVE or MODIFIED
+	 */
+	public int getState(int core, int position) {
+		int entry = directory.get(line(position));
+		if ((entry & (1 << core)) == 0)
+			return INVALID;
+		if (owner(entry) != core)
+			return SHARED;
+		return ((entry & DIRTY) != 0) ? MODIFIED : EXCLUSIVE;
+	}
+
+	private static int owner(int entry) {
+		return ((entry >>> OWNER_SHIFT) & OWNER_MASK) - 1;
+	}
+
+	private static int owned(int core, boolean dirty) {
+		return (1 << core) | ((core + 1) << OWNER_SHIFT) | (dirty ? DIRTY : 0);
+	}
+
+	/**
+	 * This method gets the line for reading into the cache of the core.
+	 * A miss takes the line EXCLUSIVE if no other core has it, and SHARED otherwise
+	 * (a modified copy in another core is written back first)
+	 * @param core
+	 * @param line
+	 * @param statistics the statistics of the core
+	 */
+	public void acquireRead(int core, int line, long statistics[]) {
+		int bit = 1 << core;
+		for (;;) {
+			int entry = directory.get(line);
+			if ((entry & bit) != 0) {
+				statistics[READ_HITS]++;
+				return;
+			}
+			int sharers = entry & SHARERS;
+			int next = (sharers == 0) ? owned(core, false) : (sharers | bit);
+			if (directory.compareAndSet(line, entry, next)) {
+				statistics[READ_MISSES]++;
+				if ((entry & DIRTY) != 0)
+					statistics[WRITE_BACKS]++;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * This method gets the line for writing into the cache of the core (it becomes MODIFIED).
+	 * An EXCLUSIVE line is written without any bus transaction, a SHARED line is upgraded and
+	 * a miss reads the line for ownership: both invalidate the copies of the other cores
+	 * @param core
+	 * @param line
+	 * @param statistics the statistics of the core
+	 */
+	public void acquireWrite(int core, int line, long statistics[]) {
+		int bit = 1 << core;
+		int modified = owned(core, true);
+		for (;;) {
+			int entry = directory.get(line);
+			if (entry == modified) {
+				statistics[WRITE_HITS]++;
+				return;
+			}
+			int others = entry & SHARERS & ~bit;
+			if (directory.compareAndSet(line, entry, modified)) {
+				if ((entry & bit) == 0) {
+					statistics[WRITE_MISSES]++;
+					if ((entry & DIRTY) != 0)
+						statistics[WRITE_BACKS]++;
+				}
+				else if (owner(entry) == core) //EXCLUSIVE
+					statistics[WRITE_HITS]++;
+				else
+					statistics[UPGRADES]++;
+				statistics[INVALIDATIONS] += Integer.bitCount(others);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * This method removes the line from the cache of the core (a modified line is written back).
+	 * Nothing happens if the line was already invalidated by another core
+	 * @param core
+	 * @param line
+	 * @param statistics the statistics of the core
+	 */
+	public void release(int core, int line, long statistics[]) {
+		int bit = 1 << core;
+		for (;;) {
+			int entry = directory.get(line);
+			if ((entry & bit) == 0)
+				return;
+			int next = (owner(entry) == core) ? 0 : (entry & ~bit);
+			if (directory.compareAndSet(line, entry, next)) {
+				statistics[EVICTIONS]++;
+				if ((entry & DIRTY) != 0) //only the owner has a dirty line
+					statistics[WRITE_BACKS]++;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * This method invalidates all the lines in all the cores (the data is kept)
+	 */
+	public void reset() {
+		for (int i = 0; i < directory.length(); i++)
+			directory.set(i, 0);
+	}
+
+}
@@ -0,0 +1,55 @@
+package components;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class is a counter that many threads can increment at the same time without fighting for the same
+ * cache line: the count is split into stripes (each one in its own cache line), each thread increments
+ * the stripe of its id, and the value is the sum of the stripes.
+ * An increment is just an atomic add into a line that is (almost always) used only by the current thread
+ */
+public class StripedCounter {
+
+	private static final int STRIPES = stripes();
+	private static final int PADDING = 8; //longs between two stripes (64 bytes, a cache line)
+
+	private AtomicLongArray cells;
+
+	public StripedCounter() {
+		cells = new AtomicLongArray(STRIPES * PADDING);
+	}
+
+	/**
+	 * This method returns the amount of stripes: the processors, rounded up to a power of 2
+	 * @return
+	 */
+	private static int stripes() {
+		int processors = Runtime.getRuntime().availableProcessors();
+		return (processors <= 1) ? 1 : Integer.highestOneBit(processors - 1) << 1;
+	}
+
+	public void increment() {
+		cells.getAndAdd(((int) Thread.currentThread().getId() & (STRIPES - 1)) * PADDING, 1);
+	}
+
+	public void add(long value) {
+		cells.getAndAdd(((int) Thread.currentThread().getId() & (STRIPES - 1)) * PADDING, value);
+	}
+
+	/**
+	 * This method returns the sum of the stripes. Increments made at the same time may be missing
+	 * @return
+	 */
+	public long get() {
+		long sum = 0;
+		for (int i = 0; i < STRIPES; i++)
+			sum += cells.get(i * PADDING);
+		return sum;
+	}
+
+	public void reset() {
+		for (int i = 0; i < STRIPES; i++)
+			cells.set(i * PADDING, 0);
+	}
+
+}
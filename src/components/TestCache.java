@@ -0,0 +1,129 @@
+package components;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TestCache {
+
+	@Test
+	public void testDirectMapped() {
+		Cache cache = new Cache("test", 16, 4, 1, Cache.LRU, true); //4 lines of 4 words
+		assertFalse(cache.read(0));
+		assertTrue(cache.read(1)); //the whole line was filled
+		assertTrue(cache.read(3));
+		assertFalse(cache.read(4));
+		assertFalse(cache.read(16)); //the same line of 0
+		assertFalse(cache.read(2));
+		assertEquals(2, cache.get(Cache.HITS));
+		assertEquals(4, cache.get(Cache.MISSES));
+		assertEquals(2, cache.get(Cache.EVICTIONS));
+		assertEquals(0, cache.get(Cache.WRITE_BACKS));
+		assertEquals(2.0 / 6, cache.getHitRate(), 1e-9);
+	}
+
+	@Test
+	public void testReplacement() {
+		//2 ways, 4 sets of 1 word: 0, 4 and 8 go to the same set
+		Cache lru = new Cache("lru", 8, 1, 2, Cache.LRU, true);
+		Cache fifo = new Cache("fifo", 8, 1, 2, Cache.FIFO, true);
+		for (Cache cache : new Cache[] {lru, fifo}) {
+			cache.read(0);
+			cache.read(4);
+			cache.read(0);
+			cache.read(8);
+		}
+		assertTrue(lru.read(0)); //4 was the least recently used
+		assertFalse(lru.read(4));
+		assertFalse(fifo.read(0)); //0 was the first one in
+		assertTrue(fifo.read(8));
+
+		//the random replacement evicts the same lines in each run
+		Cache random = new Cache("random", 8, 1, 2, Cache.RANDOM, true);
+		long misses[] = new long[2];
+		for (int run = 0; run < 2; run++) {
+			random.reset();
+			for (int i = 0; i < 100; i++)
+				random.read((i * 7) % 12);
+			misses[run] = random.get(Cache.MISSES);
+		}
+		assertEquals(misses[0], misses[1]);
+
+		//a fully associative cache
+		Cache full = new Cache("full", 4, 1, 4, Cache.LRU, true);
+		for (int i = 0; i < 4; i++)
+			full.read(i * 100);
+		for (int i = 0; i < 4; i++)
+			assertTrue(full.read(i * 100));
+	}
+
+	@Test
+	public void testWritePolicies() {
+		Cache next = new Cache("next", 64, 4, 4, Cache.LRU, true);
+		Cache writeBack = new Cache("wb", 16, 4, 1, Cache.LRU, true);
+		writeBack.setNext(next);
+		assertFalse(writeBack.write(0)); //allocated
+		assertTrue(writeBack.write(1));
+		assertTrue(writeBack.read(2));
+		assertEquals(0, next.get(Cache.WRITE_BACKS) + next.get(Cache.HITS));
+		assertEquals(1, next.get(Cache.MISSES)); //the line filled
+		writeBack.read(16); //evicts the dirty line
+		assertEquals(1, writeBack.get(Cache.WRITE_BACKS));
+		assertEquals(0, writeBack.get(Cache.WRITE_THROUGHS));
+		assertEquals(1, next.get(Cache.HITS)); //the write-back (the line was filled before)
+		writeBack.read(32); //the line of 16 is clean
+		assertEquals(1, writeBack.get(Cache.WRITE_BACKS));
+
+		Cache writeThrough = new Cache("wt", 16, 4, 1, Cache.LRU, false);
+		assertFalse(writeThrough.write(0)); //not allocated
+		assertFalse(writeThrough.read(0));
+		assertTrue(writeThrough.write(0));
+		assertEquals(2, writeThrough.get(Cache.WRITE_THROUGHS));
+		writeThrough.read(16);
+		assertEquals(0, writeThrough.get(Cache.WRITE_BACKS));
+	}
+
+	@Test
+	public void testRegions() {
+		Cache cache = new Cache("test", 16, 4, 1, Cache.LRU, true);
+		cache.addRegion("code", 0, 99);
+		cache.addRegion("scratch", 301, 350);
+		assertEquals("[code, scratch, other]", cache.getRegions().toString());
+		cache.read(0);
+		cache.write(320); //the same line of 0 (320 / 4 = 80, 80 % 4 = 0)
+		cache.write(321);
+		cache.read(400);
+		assertEquals(1, cache.get("code", Cache.MISSES));
+		assertEquals(1, cache.get("code", Cache.EVICTIONS));
+		assertEquals(1, cache.get("scratch", Cache.MISSES));
+		assertEquals(1, cache.get("scratch", Cache.HITS));
+		assertEquals(1, cache.get("scratch", Cache.EVICTIONS)); //400 evicted it
+		assertEquals(1, cache.get("scratch", Cache.WRITE_BACKS));
+		assertEquals(1, cache.get(Cache.OTHER_REGION, Cache.MISSES));
+		String report = cache.report();
+		assertTrue(report.contains("scratch"));
+		assertTrue(report.contains("other"));
+
+		cache.reset();
+		assertEquals(0, cache.get(Cache.MISSES));
+		assertFalse(cache.read(0));
+	}
+
+	@Test
+	public void testParse() {
+		Cache cache = Cache.parse("L1", "32/2/4/fifo/wt");
+		assertEquals("L1", cache.getName());
+		assertTrue(cache.report().startsWith("L1: 32 words, 2 words per line, 4 ways, fifo, write-through"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalid() {
+		new Cache("test", 16, 3, 1, Cache.LRU, true);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidParse() {
+		Cache.parse("L1", "32/2/4/mru/wb");
+	}
+
+}
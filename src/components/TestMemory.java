@@ -65,6 +65,77 @@ public class TestMemory {
 		memory.read();//the data from position 1 is now in the bus
 		assertEquals(10, bus.get());
 	}
+	
+	@Test
+	public void testPages() {
+		Bus bus = new Bus();
+		Memory memory = new Memory(1 << 24, bus); //16M positions, but no page is created yet
+		assertEquals(0, memory.getAllocatedPages());
+		bus.put(12345678);
+		memory.read();
+		assertEquals(0, bus.get());
+		
+		//storing into the last position creates only its page
+		bus.put((1 << 24) - 1);
+		memory.store();
+		bus.put(7);
+		memory.store();
+		assertEquals(1, memory.getAllocatedPages());
+		assertEquals(7, memory.getData((1 << 24) - 1));
+		memory.setData(Memory.PAGE_SIZE, 3); //the first position of the second page
+		assertEquals(2, memory.getAllocatedPages());
+		assertEquals(0, memory.getData(Memory.PAGE_SIZE - 1));
+		assertEquals(3, memory.getData(Memory.PAGE_SIZE));
+		
+		//the positions just out of the range, even the huge ones, make no effect into the bus
+		bus.put(1 << 24);
+		memory.read();
+		assertEquals(1 << 24, bus.get());
+		bus.put(Integer.MIN_VALUE);
+		memory.read();
+		assertEquals(Integer.MIN_VALUE, bus.get());
+		
+		//a memory smaller than a page has only one (smaller) page
+		Memory small = new Memory(401, bus);
+		small.setData(400, 1);
+		assertEquals(401, small.getDataList().length);
+		assertEquals(1, small.getDataList()[400]);
+	}
+	
+	@Test
+	public void testFork() {
+		Bus bus = new Bus();
+		Memory memory = new Memory(4 * Memory.PAGE_SIZE, bus);
+		for (int i = 0; i < memory.getSize(); i++)
+			memory.setData(i, i);
+		assertEquals(4, memory.getAllocatedPages());
+		
+		//the fork has the same data, but no page was copied
+		Bus otherBus = new Bus();
+		Memory fork = memory.fork(otherBus);
+		assertEquals(0, fork.getAllocatedPages());
+		otherBus.put(3 * Memory.PAGE_SIZE + 1);
+		fork.read();
+		assertEquals(3 * Memory.PAGE_SIZE + 1, otherBus.get());
+		
+		//writing into the fork copies only that page, and the original memory doesn't change
+		fork.setData(5, -5);
+		assertEquals(1, fork.getAllocatedPages());
+		assertEquals(-5, fork.getData(5));
+		assertEquals(5, memory.getData(5));
+		
+		//writing into the original memory copies its page too, and the fork doesn't change
+		memory.setData(Memory.PAGE_SIZE + 2, -2);
+		assertEquals(5, memory.getAllocatedPages());
+		assertEquals(Memory.PAGE_SIZE + 2, fork.getData(Memory.PAGE_SIZE + 2));
+		
+		//the whole data of the fork can be copied out, shared and private pages alike
+		int data[] = new int[fork.getSize()];
+		fork.copyTo(data);
+		assertEquals(-5, data[5]);
+		assertEquals(Memory.PAGE_SIZE + 2, data[Memory.PAGE_SIZE + 2]);
+		assertEquals(4 * Memory.PAGE_SIZE - 1, data[4 * Memory.PAGE_SIZE - 1]);
+	}
 
 
 }
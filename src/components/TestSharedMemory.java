@@ -0,0 +1,148 @@
+package components;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TestSharedMemory {
+
+	@Test
+	public void testStates() {
+		SharedMemory shared = new SharedMemory(100, 200, 4, 3); //100 to 199, 25 lines
+		long first[] = new long[SharedMemory.STATISTICS];
+		long second[] = new long[SharedMemory.STATISTICS];
+		int line = shared.line(104);
+		assertEquals(1, line);
+		assertEquals(SharedMemory.INVALID, shared.getState(0, 104));
+
+		shared.acquireRead(0, line, first); //alone: exclusive
+		assertEquals(SharedMemory.EXCLUSIVE, shared.getState(0, 107)); //the same line
+		shared.acquireWrite(0, line, first); //no bus transaction
+		assertEquals(SharedMemory.MODIFIED, shared.getState(0, 104));
+		assertEquals(1, first[SharedMemory.READ_MISSES]);
+		assertEquals(1, first[SharedMemory.WRITE_HITS]);
+		assertEquals(0, first[SharedMemory.UPGRADES]);
+
+		shared.acquireRead(1, line, second); //the modified line is written back, both share it
+		assertEquals(SharedMemory.SHARED, shared.getState(0, 104));
+		assertEquals(SharedMemory.SHARED, shared.getState(1, 104));
+		assertEquals(1, second[SharedMemory.WRITE_BACKS]);
+		shared.acquireRead(1, line, second);
+		assertEquals(1, second[SharedMemory.READ_HITS]);
+
+		shared.acquireWrite(0, line, first); //the shared line is upgraded
+		assertEquals(SharedMemory.MODIFIED, shared.getState(0, 104));
+		assertEquals(SharedMemory.INVALID, shared.getState(1, 104));
+		assertEquals(1, first[SharedMemory.UPGRADES]);
+		assertEquals(1, first[SharedMemory.INVALIDATIONS]);
+
+		shared.acquireWrite(1, line, second); //a miss takes the line from the other core
+		assertEquals(SharedMemory.INVALID, shared.getState(0, 104));
+		assertEquals(SharedMemory.MODIFIED, shared.getState(1, 104));
+		assertEquals(1, second[SharedMemory.WRITE_MISSES]);
+		assertEquals(2, second[SharedMemory.WRITE_BACKS]);
+		assertEquals(1, second[SharedMemory.INVALIDATIONS]);
+
+		shared.release(0, line, first); //already invalidated
+		assertEquals(0, first[SharedMemory.EVICTIONS]);
+		shared.release(1, line, second);
+		assertEquals(SharedMemory.INVALID, shared.getState(1, 104));
+		assertEquals(1, second[SharedMemory.EVICTIONS]);
+		assertEquals(3, second[SharedMemory.WRITE_BACKS]);
+
+		//the data is kept apart from the states
+		shared.set(199, 42);
+		assertEquals(42, shared.get(199));
+		assertTrue(shared.contains(199));
+		assertFalse(shared.contains(200));
+		shared.acquireRead(2, shared.line(199), new long[SharedMemory.STATISTICS]);
+		shared.reset();
+		assertEquals(SharedMemory.INVALID, shared.getState(2, 199));
+		assertEquals(42, shared.get(199));
+	}
+
+	@Test
+	public void testThreads() throws InterruptedException {
+		final SharedMemory shared = new SharedMemory(0, 64, 4, 4);
+		final long statistics[][] = new long[4][SharedMemory.STATISTICS];
+		final int writes = 10000;
+		Thread threads[] = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			final int core = i;
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < writes; j++) {
+						shared.acquireRead(core, 0, statistics[core]);
+						shared.acquireWrite(core, 0, statistics[core]);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		//only one core has the line at the end, and each access was counted once
+		int modified = 0;
+		for (int core = 0; core < threads.length; core++) {
+			int state = shared.getState(core, 0);
+			assertTrue((state == SharedMemory.INVALID) || (state == SharedMemory.MODIFIED));
+			if (state == SharedMemory.MODIFIED)
+				modified++;
+			long counts[] = statistics[core];
+			assertEquals(writes, counts[SharedMemory.READ_HITS] + counts[SharedMemory.READ_MISSES]);
+			assertEquals(writes, counts[SharedMemory.WRITE_HITS] + counts[SharedMemory.WRITE_MISSES] + counts[SharedMemory.UPGRADES]);
+		}
+		assertEquals(1, modified);
+	}
+
+	@Test
+	public void testCoherentMemory() {
+		SharedMemory shared = new SharedMemory(8, 16, 2, 2);
+		Bus bus = new Bus();
+		CoherentMemory memory = new CoherentMemory(16, bus, shared, 0, 2); //2 lines of 2 words
+		memory.setData(8, 5);
+		memory.setData(0, 3); //a private position
+		assertEquals(5, shared.get(8));
+		assertEquals(0, shared.get(9));
+		assertEquals(3, memory.getData(0));
+		assertEquals(SharedMemory.MODIFIED, shared.getState(0, 8));
+
+		//the bus handshake works as in Memory
+		bus.put(10);
+		memory.store();
+		bus.put(7);
+		memory.store();
+		assertEquals(7, shared.get(10));
+		bus.put(8);
+		memory.read();
+		assertEquals(5, bus.get());
+		bus.put(12); //the line of 8 and 12 use the same entry: 8 is evicted
+		memory.read();
+		assertEquals(SharedMemory.INVALID, shared.getState(0, 8));
+		assertEquals(SharedMemory.EXCLUSIVE, shared.getState(0, 12));
+		long statistics[] = memory.getStatistics();
+		assertEquals(1, statistics[SharedMemory.EVICTIONS]);
+		assertEquals(1, statistics[SharedMemory.WRITE_BACKS]);
+
+		int data[] = new int[16];
+		memory.copyTo(data);
+		assertEquals(5, data[8]);
+		assertEquals(7, data[10]);
+		assertEquals(3, data[0]);
+
+		//the data loaded into the private pages becomes the shared data
+		SharedMemory other = new SharedMemory(8, 16, 2, 1);
+		CoherentMemory loaded = new CoherentMemory(16, new Bus(), other, 0, 2);
+		loaded.copyFrom(data);
+		assertEquals(0, other.get(10));
+		loaded.publish();
+		assertEquals(7, other.get(10));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCores() {
+		new SharedMemory(0, 16, 4, SharedMemory.MAX_CORES + 1);
+	}
+
+}
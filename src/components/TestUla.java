@@ -129,4 +129,60 @@ public class TestUla {
 		ula.read(1);
 		assertEquals(0, bus.get());
 	}
+
+	@Test
+	public void testMul() {
+		Bus bus = new Bus();
+		Bus bus2 = new Bus();
+		Ula ula = new Ula(bus, bus2);
+		bus.put(7);
+		ula.store(0); //7 is in reg1
+		bus.put(6);
+		ula.store(1); //6 is in reg2
+		ula.mul(); //now we must have 42 in reg2
+		ula.read(1);
+		assertEquals(42, bus.get());
+		ula.read(0);
+		assertEquals(7, bus.get()); //reg1 is not changed
+		
+		//negative numbers
+		bus.put(-5);
+		ula.store(0);
+		bus.put(9);
+		ula.store(1);
+		ula.mul();
+		ula.read(1);
+		assertEquals(-45, bus.get());
+		bus.put(-5);
+		ula.store(0);
+		bus.put(-9);
+		ula.store(1);
+		ula.mul();
+		ula.read(1);
+		assertEquals(45, bus.get());
+		bus.put(0);
+		ula.store(1);
+		ula.mul();
+		ula.read(1);
+		assertEquals(0, bus.get());
+	}
+	
+	@Test
+	public void testMulLatency() {
+		Ula ula = new Ula(new Bus(), new Bus());
+		assertEquals(Ula.DEFAULT_MULTIPLY_LATENCY, ula.getMultiplyLatency());
+		Clock clock = new Clock(); //the cycles are counted only by the clock
+		ula.setClock(clock);
+		ula.add();
+		assertEquals(1, clock.getCycles());
+		ula.mul();
+		assertEquals(1 + Ula.DEFAULT_MULTIPLY_LATENCY, clock.getCycles());
+		ula.setMultiplyLatency(4); //taken at once, the clock is not changed
+		ula.mul();
+		assertEquals(5 + Ula.DEFAULT_MULTIPLY_LATENCY, clock.getCycles());
+		clock.setCost(Clock.ULA_MUL, 2); //the first cycle of the multiplication costs more
+		ula.mul();
+		assertEquals(10 + Ula.DEFAULT_MULTIPLY_LATENCY, clock.getCycles());
+		assertEquals(0, clock.getStallCycles()); //the multiplier is busy, not waiting
+	}
 }
@@ -0,0 +1,96 @@
+package components;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TestWriteBuffer {
+
+	@Test
+	public void testFull() {
+		WriteBuffer buffer = new WriteBuffer(2, 10);
+		assertEquals(0, buffer.store(100, 0)); //written from 0 to 10
+		assertEquals(0, buffer.store(101, 1)); //written from 10 to 20
+		assertEquals(2, buffer.getDepth(2));
+		assertEquals(8, buffer.store(102, 2)); //waits for 100, written from 20 to 30
+		assertEquals(1, buffer.getFullStalls());
+		assertEquals(8, buffer.getStallCycles());
+		assertEquals(30, buffer.drained(10));
+		assertEquals(0, buffer.getDepth(30));
+		assertEquals(0, buffer.store(103, 40));
+		assertEquals(50, buffer.drained(40));
+		assertArrayEquals(new long[] {2, 1, 1}, buffer.getDepthHistogram());
+		assertEquals(3.0 / 4, buffer.getAverageDepth(), 1e-9);
+	}
+
+	@Test
+	public void testCoalescing() {
+		WriteBuffer buffer = new WriteBuffer(4, 10);
+		buffer.store(100, 0); //being written from 0
+		buffer.store(101, 1); //waiting until 10
+		assertEquals(0, buffer.store(101, 2));
+		assertEquals(1, buffer.getCoalesced());
+		assertEquals(2, buffer.getDepth(2));
+		buffer.store(100, 3); //100 is being written, so it needs a new entry
+		assertEquals(1, buffer.getCoalesced());
+		assertEquals(3, buffer.getDepth(3));
+		assertEquals(4, buffer.getStores());
+	}
+
+	@Test
+	public void testForwarding() {
+		WriteBuffer buffer = new WriteBuffer(4, 10);
+		buffer.store(100, 0);
+		buffer.store(101, 0);
+		assertTrue(buffer.load(101, 5));
+		assertFalse(buffer.load(102, 5));
+		assertFalse(buffer.load(101, 20)); //already in the memory
+		assertEquals(3, buffer.getLoads());
+		assertEquals(1, buffer.getForwarded());
+		assertTrue(buffer.report().contains("forwarded: 1"));
+
+		buffer.reset();
+		assertEquals(0, buffer.getStores());
+		assertEquals(0, buffer.getDepth(0));
+	}
+
+	@Test
+	public void testMemory() {
+		//the memory is written at once, and the clock receives the stalls
+		Bus bus = new Bus();
+		Memory memory = new Memory(16, bus);
+		Clock clock = new Clock();
+		WriteBuffer buffer = new WriteBuffer(1, 100);
+		memory.setWriteBuffer(buffer, clock);
+		for (int i = 0; i < 2; i++) {
+			bus.put(i);
+			memory.store();
+			bus.put(10 + i);
+			memory.store();
+			assertEquals(10 + i, memory.getData(i));
+		}
+		assertEquals(100, clock.getStallCycles());
+		assertEquals(100, clock.getCycles());
+		bus.put(1);
+		memory.read(); //a word of the program: not a load
+		assertEquals(11, bus.get());
+		assertEquals(0, buffer.getLoads());
+		bus.put(1);
+		memory.readData();
+		assertEquals(11, bus.get());
+		assertEquals(1, buffer.getLoads());
+		assertEquals(1, buffer.getForwarded());
+		memory.setWriteBuffer(null, null);
+		bus.put(2);
+		memory.store();
+		bus.put(12);
+		memory.store();
+		assertEquals(2, buffer.getStores());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalid() {
+		new WriteBuffer(0, 10);
+	}
+
+}
@@ -7,7 +7,16 @@ public class Ula {
 	private Bus extBus2;
 	private Register reg1;
 	private Register reg2;
+	private int multiplyLatency; //how many cycles a multiplication takes (charged into the clock by mul)
+	private StripedCounter operations[]; //counts each operation, indexed by ADD, SUB, MUL and INC (null when not counted)
+	private Clock clock; //counts the cycles of the operations (null when the ula is not timed)
 	
+	public static final int DEFAULT_MULTIPLY_LATENCY = 32; //one cycle for each bit of the multiplier
+	public static final int ADD = 0;
+	public static final int SUB = 1;
+	public static final int MUL = 2;
+	public static final int INC = 3;
+	public static final int OPERATIONS = 4;
 	
 	public Ula(Bus extBus1, Bus extBus2) {
 		super();
@@ -16,6 +25,62 @@ public class Ula {
 		intBus = new Bus();
 		reg1 = new Register("UlaReg0", extBus1, intBus);
 		reg2 = new Register("UlaReg1", extBus1, intBus);
+		multiplyLatency = DEFAULT_MULTIPLY_LATENCY;
+	}
+	
+	/**
+	 * This method sets how many cycles a multiplication takes (at least one).
+	 * The first cycle is the ULA_MUL event of the clock, like any other operation, and the ula
+	 * keeps the clock busy for the other ones (see Clock.advance)
+	 * @param multiplyLatency
+	 */
+	public void setMultiplyLatency(int multiplyLatency) {
+		if (multiplyLatency < 1)
+			throw new IllegalArgumentException("Invalid multiply latency: "+multiplyLatency);
+		this.multiplyLatency = multiplyLatency;
+	}
+	
+	public int getMultiplyLatency() {
+		return multiplyLatency;
+	}
+	
+	/**
+	 * This method copies the internal registers and the internal bus into the array (3 positions)
+	 * @param state
+	 */
+	public void saveState(int state[]) {
+		state[0] = reg1.getData();
+		state[1] = reg2.getData();
+		state[2] = intBus.get();
+	}
+	
+	/**
+	 * This method restores the internal registers and the internal bus saved by saveState
+	 * @param state
+	 */
+	public void restoreState(int state[]) {
+		reg1.setData(state[0]);
+		reg2.setData(state[1]);
+		intBus.put(state[2]);
+	}
+	
+	/**
+	 * This method sets the counters of the operations, indexed by ADD, SUB, MUL and INC (null stops counting)
+	 * @param operations
+	 */
+	public void setCounters(StripedCounter operations[]) {
+		this.operations = operations;
+	}
+
+	/**
+	 * This method sets the clock that counts the cycles of the operations and of the stores
+	 * into the internal registers (null stops timing)
+	 * @param clock
+	 */
+	public void setClock(Clock clock) {
+		this.clock = clock;
+		reg1.setClock(clock);
+		reg2.setClock(clock); //the internal bus is part of the operations, so it is not timed
 	}
 
 	/**
@@ -30,6 +95,10 @@ public class Ula {
 		res += intBus.get(); //the operation was performed
 		intBus.put(res);
 		reg2.internalStore(); //saves the result into internal store
+		if (operations != null)
+			operations[ADD].increment();
+		if (clock != null)
+			clock.tick(Clock.ULA_ADD);
 	}
 	
 	/**
@@ -46,7 +115,40 @@ public class Ula {
 		res -= intBus.get(); //the operation was performed
 		intBus.put(res);
 		reg2.internalStore(); //saves the result into internal store
-		
+		if (operations != null)
+			operations[SUB].increment();
+		if (clock != null)
+			clock.tick(Clock.ULA_SUB);
+	}
+	
+	/**
+	 * This method multiplies the reg1 and reg2 values, storing the result in reg2.
+	 * The multiplier works by shift and add: for each bit of the multiplier (reg2) that is 1,
+	 * the multiplicand (reg1) shifted to this bit position is added to the result.
+	 * Just like the add, the result keeps only the 32 lower bits (so the signs work as in two's complement).
+	 * The operation takes multiplyLatency cycles (when the ula is timed: see setClock)
+	 */
+	public void mul() {
+		intBus.put(0);
+		reg1.internalRead(); //puts its data into the internal bus
+		int multiplicand = intBus.get();
+		reg2.internalRead();
+		int multiplier = intBus.get();
+		int res = 0;
+		while (multiplier != 0) {
+			if ((multiplier & 1) == 1)
+				res += multiplicand;
+			multiplicand <<= 1;
+			multiplier >>>= 1;
+		}
+		intBus.put(res);
+		reg2.internalStore(); //saves the result into internal store
+		if (operations != null)
+			operations[MUL].increment();
+		if (clock != null) {
+			clock.tick(Clock.ULA_MUL);
+			clock.advance(multiplyLatency - 1);
+		}
 	}
 	
 	/**
@@ -59,6 +161,10 @@ public class Ula {
 		res ++;
 		intBus.put(res);
 		reg2.internalStore();
+		if (operations != null)
+			operations[INC].increment();
+		if (clock != null)
+			clock.tick(Clock.ULA_INC);
 		
 	}
 	
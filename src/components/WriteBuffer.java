@@ -0,0 +1,219 @@
+package components;
+
+/**
+ * This class models a write buffer between the buses and a memory: each store waits in a queue (FIFO)
+ * and is written into the memory in the background, one at a time, taking drainCycles cycles each.
+ * So a store costs nothing while there is a free entry, and stalls until the oldest one is written otherwise.
+ *
+ * A store to an address already waiting (and not being written yet) is coalesced into its entry,
+ * and a load of an address waiting in the buffer is forwarded from it.
+ *
+ * The buffer keeps only the addresses and the times (the memory is always written at once),
+ * so it shows how the stores would behave: see Memory.setWriteBuffer
+ */
+public class WriteBuffer {
+
+	public static final int DEFAULT_DEPTH = 4;
+	public static final int DEFAULT_DRAIN_CYCLES = 8;
+
+	private int depth;
+	private int drainCycles;
+	private int addresses[]; //a circular queue with the addresses waiting
+	private long done[]; //the cycle each one will be in the memory
+	private int head;
+	private int count;
+
+	private long stores;
+	private long coalesced;
+	private long loads;
+	private long forwarded;
+	private long fullStalls; //the stores that found the buffer full
+	private long stallCycles;
+	private long depthHistogram[]; //how many stores found each depth
+
+	public WriteBuffer() {
+		this(DEFAULT_DEPTH, DEFAULT_DRAIN_CYCLES);
+	}
+
+	/**
+	 * @param depth the amount of entries
+	 * @param drainCycles the cycles to write an entry into the memory
+	 */
+	public WriteBuffer(int depth, int drainCycles) {
+		if ((depth <= 0) || (drainCycles < 0))
+			throw new IllegalArgumentException("Invalid write buffer: "+depth+" entries, "+drainCycles+" cycles");
+		this.depth = depth;
+		this.drainCycles = drainCycles;
+		addresses = new int[depth];
+		done = new long[depth];
+		depthHistogram = new long[depth + 1];
+	}
+
+	/**
+	 * This method removes the entries already written into the memory at the cycle
+	 * @param cycle
+	 */
+	private void retire(long cycle) {
+		while ((count > 0) && (done[head] <= cycle)) {
+			head = (head + 1) % depth;
+			count--;
+		}
+	}
+
+	/**
+	 * This method returns the position in the queue of the address waiting (-1 if it is not in the buffer)
+	 * @param address
+	 * @return
+	 */
+	private int find(int address) {
+		for (int i = count - 1; i >= 0; i--) {
+			int entry = (head + i) % depth;
+			if (addresses[entry] == address)
+				return entry;
+		}
+		return -1;
+	}
+
+	/**
+	 * This method puts a store into the buffer
+	 * @param address
+	 * @param cycle the cycle of the store
+	 * @return the cycles the store waited for a free entry
+	 */
+	public long store(int address, long cycle) {
+		retire(cycle);
+		stores++;
+		depthHistogram[count]++;
+		int entry = find(address);
+		if ((entry >= 0) && (done[entry] - drainCycles > cycle)) { //not being written yet
+			coalesced++;
+			return 0;
+		}
+		long stall = 0;
+		if (count == depth) {
+			stall = done[head] - cycle;
+			fullStalls++;
+			stallCycles += stall;
+			retire(done[head]);
+		}
+		int tail = (head + count) % depth;
+		long previous = (count == 0) ? 0 : done[(tail + depth - 1) % depth];
+		addresses[tail] = address;
+		done[tail] = Math.max(cycle + stall, previous) + drainCycles;
+		count++;
+		return stall;
+	}
+
+	/**
+	 * This method looks for a load in the buffer
+	 * @param address
+	 * @param cycle the cycle of the load
+	 * @return true if the load was forwarded from a store waiting
+	 */
+	public boolean load(int address, long cycle) {
+		retire(cycle);
+		loads++;
+		if (find(address) < 0)
+			return false;
+		forwarded++;
+		return true;
+	}
+
+	/**
+	 * This method returns the cycle when all the stores waiting will be in the memory
+	 * @param cycle the current cycle
+	 * @return
+	 */
+	public long drained(long cycle) {
+		retire(cycle);
+		return (count == 0) ? cycle : done[(head + count - 1) % depth];
+	}
+
+	/**
+	 * This method returns the amount of stores waiting at the cycle
+	 * @param cycle
+	 * @return
+	 */
+	public int getDepth(long cycle) {
+		retire(cycle);
+		return count;
+	}
+
+	public int getCapacity() {
+		return depth;
+	}
+
+	public int getDrainCycles() {
+		return drainCycles;
+	}
+
+	public long getStores() {
+		return stores;
+	}
+
+	public long getCoalesced() {
+		return coalesced;
+	}
+
+	public long getLoads() {
+		return loads;
+	}
+
+	public long getForwarded() {
+		return forwarded;
+	}
+
+	public long getFullStalls() {
+		return fullStalls;
+	}
+
+	public long getStallCycles() {
+		return stallCycles;
+	}
+
+	/**
+	 * This method returns how many stores found each depth (indexed by the depth, from 0 to the capacity)
+	 * @return
+	 */
+	public long[] getDepthHistogram() {
+		return depthHistogram.clone();
+	}
+
+	/**
+	 * This method returns the average depth found by the stores (0 if there was no store)
+	 * @return
+	 */
+	public double getAverageDepth() {
+		long sum = 0;
+		for (int i = 0; i < depthHistogram.length; i++)
+			sum += i * depthHistogram[i];
+		return (stores == 0) ? 0 : (double) sum / stores;
+	}
+
+	/**
+	 * This method empties the buffer and clears the statistics
+	 */
+	public void reset() {
+		head = count = 0;
+		stores = coalesced = loads = forwarded = fullStalls = stallCycles = 0;
+		for (int i = 0; i < depthHistogram.length; i++)
+			depthHistogram[i] = 0;
+	}
+
+	/**
+	 * This method returns the statistics as text
+	 * @return
+	 */
+	public String report() {
+		StringBuilder text = new StringBuilder();
+		text.append(String.format("write buffer: %d entries, %d cycles per write%n", depth, drainCycles));
+		text.append(String.format("stores: %d, coalesced: %d, loads: %d, forwarded: %d%n", stores, coalesced, loads, forwarded));
+		text.append(String.format("full: %d stores, %d stall cycles%n", fullStalls, stallCycles));
+		text.append(String.format("average depth: %.2f, depths:", getAverageDepth()));
+		for (int i = 0; i < depthHistogram.length; i++)
+			text.append(' ').append(i).append('=').append(depthHistogram[i]);
+		text.append(String.format("%n"));
+		return text.toString();
+	}
+
+}